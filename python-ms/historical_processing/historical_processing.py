@@ -31,6 +31,8 @@ import logging
 import math
 import json
 import random
+import struct
+import zlib
 from fastapi import status
 from dateutil.relativedelta import relativedelta
 import asyncio
@@ -1349,18 +1351,57 @@ import json
 
 # … keep your existing imports and your original `process_data` …
 
+# Binary alternative to NDJSON, negotiated through the Accept header.
+# The stream is a sequence of frames, all integers big-endian:
+#   uint32 frame length (bytes after this field)
+#   uint32 header length, header as UTF-8 JSON (every top-level field except aggregated_results)
+#   uint32 group count, then per group:
+#     uint16 key length, key as UTF-8
+#     uint32 point count n, n x int64 epoch milliseconds, n x float64 values (NaN for null)
+SERIES_MEDIA_TYPE = "application/vnd.sara.series"
+
+
+def _epoch_millis(value) -> int:
+    if isinstance(value, str):
+        value = datetime.fromisoformat(value.replace('Z', '+00:00'))
+    if value.tzinfo is None:
+        value = value.replace(tzinfo=timezone.utc)
+    return (value - datetime(1970, 1, 1, tzinfo=timezone.utc)) // timedelta(milliseconds=1)
+
+
+def encode_series_frame(header: dict, groups: Dict[str, List[dict]]) -> bytes:
+    header_bytes = json.dumps(header).encode("utf-8")
+    parts = [struct.pack(">I", len(header_bytes)), header_bytes, struct.pack(">I", len(groups))]
+    for group, items in groups.items():
+        key_bytes = group.encode("utf-8")
+        n = len(items)
+        parts.append(struct.pack(">H", len(key_bytes)))
+        parts.append(key_bytes)
+        parts.append(struct.pack(">I", n))
+        parts.append(struct.pack(f">{n}q", *(_epoch_millis(item["time"]) for item in items)))
+        parts.append(struct.pack(f">{n}d", *(math.nan if item["value"] is None else float(item["value"])
+                                             for item in items)))
+    body = b"".join(parts)
+    return struct.pack(">I", len(body)) + body
+
+
 @app.post("/process/batched_stream")
 async def process_data_batched_stream(
     request: ProcessingRequest,
+    http_request: Request,
     token: str = Depends(get_token),
 ):
     """
     Streams the exact same fields as /process, but in daily-size chunks
     of `aggregated_results`.  All datetime objects are converted to ISO.
+    Clients accepting application/vnd.sara.series get binary frames instead.
     """
     # 1) Call your original handler to get the full response dict
     full: dict = await process_data(request, token)
 
+    if SERIES_MEDIA_TYPE in http_request.headers.get("accept", ""):
+        return _binary_batched_stream(full)
+
     # 2) Convert every datetime under `aggregated_results` into ISO-strings
     raw_results: dict = full["aggregated_results"]
     stringified_results = {
@@ -1409,6 +1450,26 @@ async def process_data_batched_stream(
     )
 
 
+def _binary_batched_stream(full: dict) -> StreamingResponse:
+    """Same chunking as the NDJSON stream, one binary frame per chunk."""
+    header = {
+        "facility":          full["facility"],
+        "agent_serial":      full["agent_serial"],
+        "sensor_type":       full["sensor_type"],
+        "aggregation_level": full["aggregation_level"],
+        "metric":            full["metric"],
+        "meta":              full["meta"],
+    }
+
+    async def frame_generator():
+        batch_size = 24 * 60
+        entries = list(full["aggregated_results"].items())
+        for i in range(0, len(entries), batch_size):
+            yield encode_series_frame(header, dict(entries[i : i + batch_size]))
+
+    return StreamingResponse(frame_generator(), media_type=SERIES_MEDIA_TYPE)
+
+
 
 
 # --------------------------
@@ -1610,3 +1671,146 @@ async def thermalmap_reading_at_time(
         "time": ts_utc,
         "reading": reading
     }
+
+
+# --------------------------
+# Thermalmap frame sequence (playback)
+# --------------------------
+
+THERMAL_FRAMES_MEDIA_TYPE = "application/vnd.sara.thermal-frames"
+FRAME_ENCODING_FLOAT32 = 0
+FRAME_ENCODING_UINT16 = 1
+FRAME_FLAG_DELTA = 0x01
+FRAME_FLAG_ZLIB = 0x02
+# time (int64 epoch millis), rows, cols, encoding, flags, scale, offset
+FRAME_HEADER = struct.Struct(">qHHBBff")
+
+
+class ThermalmapFramesRequest(BaseModel):
+    facility: str = Field(..., pattern="^(uoa|istic)$")
+    agent_serial: str = Field(..., description="Sensor module identifier")
+    start: datetime = Field(..., description="First frame time (ISO 8601, UTC)")
+    end: datetime = Field(..., description="Last frame time, inclusive (ISO 8601, UTC)")
+    encoding: str = Field("float32", pattern="^(float32|uint16)$")
+    scale: float = Field(0.01, gt=0, description="uint16 only: degrees per quantisation step")
+    offset: float = Field(-100.0, description="uint16 only: value of step 0")
+    delta: bool = Field(True, description="Encode frames against the previous one")
+    compress: bool = Field(True, description="zlib-compress every frame payload")
+    keyframe_interval: int = Field(60, ge=1, description="A full frame at least every n frames")
+
+    @field_validator('start', 'end', mode='before')
+    @classmethod
+    def ensure_utc(cls, value):
+        return to_utc(value)
+
+
+class ThermalFrameEncoder:
+    """
+    Encodes a sequence of thermal frames into length-prefixed binary frames.
+
+    float32 values are sent as IEEE 754 bit patterns; a delta frame is the
+    XOR with the previous frame's bits, lossless and mostly zero bytes when
+    the scene is static. uint16 values are round((v - offset) / scale),
+    clamped to 0..65535 (NaN -> 0); a delta frame is the difference with the
+    previous frame modulo 65536.
+    """
+
+    def __init__(self, request: ThermalmapFramesRequest):
+        self.uint16 = request.encoding == "uint16"
+        self.scale = request.scale
+        self.offset = request.offset
+        self.delta = request.delta
+        self.compress = request.compress
+        self.keyframe_interval = request.keyframe_interval
+        self.previous = None
+        self.since_keyframe = 0
+
+    def encode(self, time_ms: int, reading: List[List[float]]) -> bytes:
+        values = np.asarray(reading, dtype=np.float64)
+        if values.ndim != 2:
+            values = values.reshape(1, -1)
+        rows, cols = values.shape
+        if self.uint16:
+            steps = np.rint((np.nan_to_num(values, nan=self.offset) - self.offset) / self.scale)
+            raw = np.clip(steps, 0, 65535).astype(">u2")
+        else:
+            raw = values.astype(">f4").view(">u4")
+
+        flags = 0
+        keyframe = (not self.delta or self.previous is None or self.previous.shape != raw.shape
+                    or self.since_keyframe >= self.keyframe_interval)
+        if keyframe:
+            payload = raw
+            self.since_keyframe = 1
+        else:
+            if self.uint16:
+                payload = ((raw.astype(np.int64) - self.previous.astype(np.int64)) % 65536).astype(">u2")
+            else:
+                payload = (raw ^ self.previous).astype(">u4")
+            flags |= FRAME_FLAG_DELTA
+            self.since_keyframe += 1
+        self.previous = raw
+
+        body = payload.tobytes()
+        if self.compress:
+            body = zlib.compress(body, 1)
+            flags |= FRAME_FLAG_ZLIB
+        encoding = FRAME_ENCODING_UINT16 if self.uint16 else FRAME_ENCODING_FLOAT32
+        header = FRAME_HEADER.pack(time_ms, rows, cols, encoding, flags,
+                                   self.scale if self.uint16 else 0.0, self.offset if self.uint16 else 0.0)
+        return struct.pack(">I", len(header) + len(body)) + header + body
+
+
+@app.post("/thermalmap/frames")
+async def thermalmap_frames(
+    request: ThermalmapFramesRequest = Body(...),
+    token: str = Depends(get_token)
+):
+    """
+    Streams every thermalmap reading of an agent between start and end as
+    binary frames (application/vnd.sara.thermal-frames), oldest first.
+
+    Each frame, big-endian: uint32 length of the rest of the frame, int64
+    time (epoch millis), uint16 rows, uint16 cols, uint8 encoding
+    (0 = float32, 1 = uint16), uint8 flags (1 = delta against the previous
+    frame, 2 = zlib-compressed payload), float32 scale, float32 offset
+    (uint16 only: value = offset + q * scale), then the payload of
+    rows * cols values in row-major order.
+
+    Days are fetched one after the other and their frames sent as soon as
+    they are encoded, so playback can start before the range is read.
+    """
+    if request.end < request.start:
+        raise HTTPException(status_code=422, detail="end must not be before start")
+
+    async def frame_generator():
+        encoder = ThermalFrameEncoder(request)
+        day = request.start.replace(hour=0, minute=0, second=0, microsecond=0)
+        while day <= request.end:
+            proc_req = ProcessingRequest(
+                facility=request.facility,
+                sensor_type="thermalmap",
+                agent_serial=[request.agent_serial],
+                start=day,
+                end=day.replace(hour=23, minute=59, second=59, microsecond=999999),
+                aggregation_level="minute",
+                metric="average"  # metric is not used for raw fetch
+            )
+            raw_data = await fetch_raw_data(proc_req, token=token)
+
+            frames = []
+            for entry in raw_data:
+                try:
+                    entry_time = datetime.fromisoformat(
+                        entry["timeOfReading"].replace('Z', '+00:00')).astimezone(timezone.utc)
+                except Exception:
+                    continue
+                if request.start <= entry_time <= request.end and entry.get("reading"):
+                    frames.append((entry_time, entry["reading"]))
+            frames.sort(key=lambda frame: frame[0])
+
+            for entry_time, reading in frames:
+                yield encoder.encode(_epoch_millis(entry_time), reading)
+            day += timedelta(days=1)
+
+    return StreamingResponse(frame_generator(), media_type=THERMAL_FRAMES_MEDIA_TYPE)
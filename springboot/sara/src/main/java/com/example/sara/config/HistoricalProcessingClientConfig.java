@@ -0,0 +1,104 @@
+package com.example.sara.config;
+
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Builds the single, pooled WebClient used to talk to historical-processing-ms.
+ *
+ * Every call from HistoricalProcessingService goes through this client, so
+ * connections are reused across requests instead of being opened per call.
+ * Requests are spread over the configured replicas by HistoricalReplicaBalancer.
+ * Response timeouts are applied per request by the service, because the
+ * endpoints have very different latency profiles.
+ */
+@Configuration
+public class HistoricalProcessingClientConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalProcessingClientConfig.class);
+    private static final String POOL_NAME = "historical-processing";
+
+    @Value("${historical.processing.url}")
+    private String historicalProcessingUrl;
+
+    @Value("${historical.processing.pool.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${historical.processing.pool.pending-acquire-max-count:500}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${historical.processing.pool.pending-acquire-timeout:PT30S}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${historical.processing.pool.max-idle-time:PT30S}")
+    private Duration maxIdleTime;
+
+    @Value("${historical.processing.pool.max-life-time:PT10M}")
+    private Duration maxLifeTime;
+
+    @Value("${historical.processing.pool.evict-in-background:PT60S}")
+    private Duration evictInBackground;
+
+    @Value("${historical.processing.connect-timeout:PT5S}")
+    private Duration connectTimeout;
+
+    @Value("${historical.processing.h2c:false}")
+    private boolean h2c;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider historicalProcessingConnectionProvider(HistoricalProcessingPoolMetrics poolMetrics) {
+        return ConnectionProvider.builder(POOL_NAME)
+            .maxConnections(maxConnections)
+            .pendingAcquireMaxCount(pendingAcquireMaxCount)
+            .pendingAcquireTimeout(pendingAcquireTimeout)
+            .maxIdleTime(maxIdleTime)
+            .maxLifeTime(maxLifeTime)
+            .evictInBackground(evictInBackground)
+            .metrics(true, () -> poolMetrics)
+            .build();
+    }
+
+    @Bean
+    public WebClient historicalProcessingWebClient(
+        WebClient.Builder webClientBuilder,
+        ConnectionProvider historicalProcessingConnectionProvider,
+        HistoricalReplicaBalancer replicaBalancer
+    ) {
+        HttpClient httpClient = HttpClient.create(historicalProcessingConnectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .keepAlive(true);
+
+        if (h2c) {
+            // Both protocols: Reactor Netty starts with an HTTP/1.1 Upgrade to h2c (no prior knowledge),
+            // so replicas that do not speak HTTP/2 keep answering over HTTP/1.1
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        logger.info("Historical processing client: url={}, maxConnections={}, h2c={}",
+            historicalProcessingUrl, maxConnections, h2c);
+
+        // The base URL only fixes the path; the balancer picks the replica host for every request
+        return webClientBuilder
+            .baseUrl(historicalProcessingUrl)
+            .filter(replicaBalancer)
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .codecs(configurer -> configurer
+                .defaultCodecs()
+                .maxInMemorySize(16 * 1024 * 1024) // 16MB buffer
+            )
+            .build();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.sara.config;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.example.sara.dto.UpstreamPoolStatsDTO;
+
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Keeps a handle on every connection pool Reactor Netty creates for the
+ * historical-processing client (one per remote address) so their
+ * utilisation can be reported without a metrics backend.
+ */
+@Component
+public class HistoricalProcessingPoolMetrics implements ConnectionProvider.MeterRegistrar {
+
+    private final Map<String, PoolEntry> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(id + "@" + remoteAddress, new PoolEntry(poolName, String.valueOf(remoteAddress), metrics));
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(id + "@" + remoteAddress);
+    }
+
+    public List<UpstreamPoolStatsDTO> snapshot() {
+        List<UpstreamPoolStatsDTO> stats = new ArrayList<>();
+        for (PoolEntry entry : pools.values()) {
+            ConnectionPoolMetrics m = entry.metrics();
+            UpstreamPoolStatsDTO dto = new UpstreamPoolStatsDTO();
+            dto.setPool(entry.poolName());
+            dto.setRemote_address(entry.remoteAddress());
+            dto.setAcquired(m.acquiredSize());
+            dto.setIdle(m.idleSize());
+            dto.setAllocated(m.allocatedSize());
+            dto.setPending_acquire(m.pendingAcquireSize());
+            dto.setMax_connections(m.maxAllocatedSize());
+            dto.setMax_pending_acquire(m.maxPendingAcquireSize());
+            stats.add(dto);
+        }
+        return stats;
+    }
+
+    private record PoolEntry(String poolName, String remoteAddress, ConnectionPoolMetrics metrics) {}
+}
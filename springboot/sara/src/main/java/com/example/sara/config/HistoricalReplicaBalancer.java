@@ -0,0 +1,166 @@
+package com.example.sara.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Client-side load balancing over the historical-processing-ms replicas.
+ *
+ * Installed as a filter on the shared WebClient, so every call is routed
+ * without the service knowing about replicas: the request URL's host is
+ * swapped for the replica with the fewest outstanding requests. A request
+ * stays outstanding until its response body is fully read, which matters
+ * for the long NDJSON streams.
+ *
+ * Passive health checking: a replica failing several requests in a row
+ * (connection error, read timeout or 5xx) is ejected for a while. When all
+ * replicas are ejected the least recently ejected one is used anyway.
+ */
+@Component
+public class HistoricalReplicaBalancer implements ExchangeFilterFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalReplicaBalancer.class);
+
+    private final List<Replica> replicas;
+    private final AtomicInteger nextTieBreak = new AtomicInteger();
+
+    @Value("${historical.processing.balancer.failures-before-ejection:3}")
+    private int failuresBeforeEjection;
+
+    @Value("${historical.processing.balancer.ejection-time:PT30S}")
+    private Duration ejectionTime;
+
+    public HistoricalReplicaBalancer(@Value("${historical.processing.urls:${historical.processing.url}}") String urls) {
+        this.replicas = Arrays.stream(urls.split(","))
+            .map(String::trim)
+            .filter(url -> !url.isEmpty())
+            .map(url -> new Replica(URI.create(url)))
+            .toList();
+        if (replicas.isEmpty()) {
+            throw new IllegalStateException("No historical-processing-ms replica configured");
+        }
+        logger.info("Historical processing replicas: {}", replicas.stream().map(r -> r.baseUri).toList());
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            Replica replica = choose();
+            URI target = UriComponentsBuilder.fromUri(request.url())
+                .scheme(replica.baseUri.getScheme())
+                .host(replica.baseUri.getHost())
+                .port(replica.baseUri.getPort())
+                .build(true)
+                .toUri();
+
+            replica.outstanding.incrementAndGet();
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    replica.outstanding.decrementAndGet();
+                }
+            };
+
+            return next.exchange(ClientRequest.from(request).url(target).build())
+                .map(response -> {
+                    if (response.statusCode().is5xxServerError()) {
+                        replica.failed(failuresBeforeEjection, ejectionTime);
+                    } else {
+                        replica.succeeded();
+                    }
+                    // Outstanding until the body has been consumed, released or cancelled
+                    return response.mutate()
+                        .body(body -> body.doFinally(signal -> release.run()))
+                        .build();
+                })
+                .doOnError(e -> {
+                    replica.failed(failuresBeforeEjection, ejectionTime);
+                    release.run();
+                })
+                .doOnCancel(release);
+        });
+    }
+
+    /** Least outstanding requests among healthy replicas, ties rotated. */
+    private Replica choose() {
+        if (replicas.size() == 1) {
+            return replicas.get(0);
+        }
+        long now = System.currentTimeMillis();
+        int offset = Math.floorMod(nextTieBreak.getAndIncrement(), replicas.size());
+        Replica best = null;
+        Replica leastRecentlyEjected = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica candidate = replicas.get((offset + i) % replicas.size());
+            if (candidate.ejectedUntil.get() > now) {
+                if (leastRecentlyEjected == null || candidate.ejectedUntil.get() < leastRecentlyEjected.ejectedUntil.get()) {
+                    leastRecentlyEjected = candidate;
+                }
+                continue;
+            }
+            if (best == null || candidate.outstanding.get() < best.outstanding.get()) {
+                best = candidate;
+            }
+        }
+        return best != null ? best : leastRecentlyEjected;
+    }
+
+    /** State of every replica, for monitoring. */
+    public List<Map<String, Object>> snapshot() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> states = new ArrayList<>();
+        for (Replica replica : replicas) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("url", replica.baseUri.toString());
+            state.put("outstanding", replica.outstanding.get());
+            state.put("consecutive_failures", replica.consecutiveFailures.get());
+            state.put("ejected", replica.ejectedUntil.get() > now);
+            states.add(state);
+        }
+        return states;
+    }
+
+    private static final class Replica {
+
+        private final URI baseUri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicLong ejectedUntil = new AtomicLong();
+
+        Replica(URI baseUri) {
+            this.baseUri = baseUri;
+        }
+
+        void succeeded() {
+            consecutiveFailures.set(0);
+        }
+
+        void failed(int failuresBeforeEjection, Duration ejectionTime) {
+            if (consecutiveFailures.incrementAndGet() >= failuresBeforeEjection) {
+                consecutiveFailures.set(0);
+                ejectedUntil.set(System.currentTimeMillis() + ejectionTime.toMillis());
+                logger.warn("Ejecting historical processing replica {} for {}s", baseUri, ejectionTime.toSeconds());
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 
 import com.example.sara.model.ApiTokenEntry;
@@ -74,5 +75,14 @@ public class RedisConfig {
         template.setValueSerializer(new Jackson2JsonRedisSerializer<>(mapper, ApiTokenEntry.class));
         return template;
     }
+    
+    
+    @Bean
+    public StringRedisTemplate aggregateCacheRedisTemplate(
+        RedisConnectionFactory connectionFactory
+    ) {
+        // Bucket values are stored as plain strings, like the Python service does
+        return new StringRedisTemplate(connectionFactory);
+    }
 }
 
@@ -0,0 +1,179 @@
+package com.example.sara.controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.example.sara.dto.HistoricalJobStatusDTO;
+import com.example.sara.exception.ResourceNotFoundException;
+import com.example.sara.model.ProcessingRequestDTO;
+import com.example.sara.model.User;
+import com.example.sara.service.HistoricalJobService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+
+@RestController
+@RequestMapping("/api/historical/jobs")
+@Tag(name = "Historical Jobs", description = "Submit long historical queries as jobs, poll them and fetch their results")
+public class HistoricalJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalJobController.class);
+
+    // Request attributes of Tomcat's sendfile support (see its DefaultServlet)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final HistoricalJobService jobService;
+
+    @Value("${historical.jobs.sendfile:true}")
+    private boolean sendfileEnabled;
+
+    public HistoricalJobController(HistoricalJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @Operation(summary = "Submit a historical query as a job", description = "Returns immediately with the job id; the result has the NDJSON layout of /api/historical/process.")
+    @PostMapping
+    public ResponseEntity<?> submit(@Valid @RequestBody ProcessingRequestDTO request, @AuthenticationPrincipal User user) {
+        try {
+            HistoricalJobStatusDTO status = jobService.submitProcessing(request, user.getEmail());
+            URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/{id}")
+                .buildAndExpand(status.getJob_id())
+                .toUri();
+            return ResponseEntity.accepted().location(location).body(status);
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            logger.warn("Historical job queue full, rejecting job for {}", user.getEmail());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of(
+                    "error", "Job queue is full",
+                    "message", "Too many historical jobs are pending, retry later",
+                    "status", HttpStatus.SERVICE_UNAVAILABLE.value()
+                ));
+        }
+    }
+
+    @Operation(summary = "Job status and progress")
+    @GetMapping("/{id}")
+    public ResponseEntity<HistoricalJobStatusDTO> status(@PathVariable String id, @AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(jobService.status(id, user.getEmail()));
+        } catch (ResourceNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+
+    @Operation(summary = "Download the result of a finished job", description = "Supports Range requests (206 Partial Content), so an interrupted download can resume where it stopped.")
+    @GetMapping("/{id}/result")
+    public ResponseEntity<?> result(
+        @PathVariable String id,
+        @RequestHeader HttpHeaders requestHeaders,
+        @AuthenticationPrincipal User user,
+        HttpServletRequest request
+    ) {
+        try {
+            HistoricalJobService.JobResult result = jobService.result(id, user.getEmail());
+            FileSystemResource file = new FileSystemResource(result.path());
+            String etag = "\"" + id + "\"";
+            ResponseEntity<?> sent = sendfile(request, requestHeaders, file, etag, result.mediaType());
+            if (sent != null) {
+                return sent;
+            }
+            // Spring turns a Range request on a Resource body into 206 (or 416) itself
+            return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.parseMediaType(result.mediaType()))
+                .body(file);
+        } catch (ResourceNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of(
+                    "error", "Result not available",
+                    "message", e.getMessage(),
+                    "status", HttpStatus.CONFLICT.value()
+                ));
+        }
+    }
+
+    /**
+     * Hands the file, or the single requested range of it, to Tomcat's
+     * sendfile so it is copied by the kernel instead of through the heap.
+     *
+     * @return the response to send, or null to fall back to a regular copy
+     *         (no sendfile support, several ranges, or a range to reject)
+     */
+    private ResponseEntity<?> sendfile(HttpServletRequest request, HttpHeaders requestHeaders,
+                                       FileSystemResource file, String etag, String mediaType) {
+        if (!sendfileEnabled || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            return null;
+        }
+        try {
+            long length = file.contentLength();
+            // A stale If-Range means the client's partial copy is of another file: send it whole
+            String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+            List<HttpRange> ranges = ifRange == null || ifRange.equals(etag) ? requestHeaders.getRange() : List.of();
+            if (ranges.size() > 1) {
+                return null;
+            }
+            long start = 0;
+            long end = length;
+            if (!ranges.isEmpty()) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length) + 1;
+                if (start >= length) {
+                    return null;
+                }
+            }
+            request.setAttribute(SENDFILE_FILENAME, file.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.status(ranges.isEmpty() ? HttpStatus.OK : HttpStatus.PARTIAL_CONTENT)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(etag)
+                .contentType(MediaType.parseMediaType(mediaType))
+                .contentLength(end - start);
+            if (!ranges.isEmpty()) {
+                response.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+            return response.build();
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    @Operation(summary = "Cancel a job and discard its result")
+    @DeleteMapping("/{id}")
+    public ResponseEntity<HistoricalJobStatusDTO> cancel(@PathVariable String id, @AuthenticationPrincipal User user) {
+        try {
+            return ResponseEntity.ok(jobService.cancel(id, user.getEmail()));
+        } catch (ResourceNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+}
@@ -1,32 +1,71 @@
 package com.example.sara.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.example.sara.config.HistoricalProcessingPoolMetrics;
+import com.example.sara.config.HistoricalReplicaBalancer;
+import com.example.sara.dto.AtTimeBatchRequestDTO;
+import com.example.sara.dto.AtTimeBatchResultDTO;
+import com.example.sara.dto.CorrelationRequestDTO;
+import com.example.sara.dto.ExportBundleRequestDTO;
 import com.example.sara.dto.ExportRequestDTO;
+import com.example.sara.dto.HistoricalJobStatusDTO;
 import com.example.sara.dto.RadioDevicesAtTimeRequestDTO;
 import com.example.sara.dto.RadioDevicesAtTimeResponseDTO;
+import com.example.sara.dto.RawStoreBackfillRequestDTO;
 import com.example.sara.dto.ThermalmapAtTimeRequestDTO;
 import com.example.sara.dto.ThermalmapAtTimeResponseDTO;
+import com.example.sara.dto.ThermalmapFramesRequestDTO;
+import com.example.sara.dto.UpstreamPoolStatsDTO;
+import com.example.sara.exception.CircuitOpenException;
+import com.example.sara.exception.TooManyRequestsException;
+import com.example.sara.exception.UpstreamServiceException;
+import com.example.sara.exception.ValidationException;
 import com.example.sara.model.ProcessingRequestDTO;
 import com.example.sara.model.ProcessingResponseDTO;
 import com.example.sara.model.User;
+import com.example.sara.service.AggregatePyramidService;
+import com.example.sara.service.CorrelationService;
+import com.example.sara.service.ExportBundleService;
+import com.example.sara.service.ExportEncoder;
+import com.example.sara.service.HistoricalBulkhead;
+import com.example.sara.service.HistoricalJobService;
 import com.example.sara.service.HistoricalProcessingService;
+import com.example.sara.service.RawReadingStore;
+import com.example.sara.service.RawStoreService;
+import com.example.sara.service.ThermalFrameCache;
+import com.example.sara.service.UpstreamCircuitBreaker;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import reactor.core.publisher.Flux;
 
@@ -40,21 +79,67 @@ import org.slf4j.LoggerFactory;
 
 public class HistoricalProcessingController {
 	private static final Logger logger = LoggerFactory.getLogger(HistoricalProcessingController.class);
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
 
 
     private final HistoricalProcessingService processingService;
+    private final HistoricalProcessingPoolMetrics poolMetrics;
+    private final HistoricalBulkhead bulkhead;
+    private final HistoricalReplicaBalancer replicaBalancer;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final ThermalFrameCache frameCache;
+    private final HistoricalJobService jobService;
+    private final ExportEncoder exportEncoder;
+    private final ExportBundleService bundleService;
+    private final CorrelationService correlationService;
+    private final RawStoreService rawStoreService;
+    private final RawReadingStore rawStore;
+    private final AggregatePyramidService pyramidService;
 
-    public HistoricalProcessingController(HistoricalProcessingService processingService) {
+    @Value("${historical.streaming.prefetch:8}")
+    private int streamingPrefetch;
+
+    @Value("${historical.export.gzip:true}")
+    private boolean exportGzip;
+
+    public HistoricalProcessingController(HistoricalProcessingService processingService,
+                                          HistoricalProcessingPoolMetrics poolMetrics,
+                                          HistoricalBulkhead bulkhead,
+                                          HistoricalReplicaBalancer replicaBalancer,
+                                          UpstreamCircuitBreaker circuitBreaker,
+                                          ThermalFrameCache frameCache,
+                                          HistoricalJobService jobService,
+                                          ExportEncoder exportEncoder,
+                                          ExportBundleService bundleService,
+                                          CorrelationService correlationService,
+                                          RawStoreService rawStoreService,
+                                          RawReadingStore rawStore,
+                                          AggregatePyramidService pyramidService) {
         this.processingService = processingService;
+        this.poolMetrics = poolMetrics;
+        this.bulkhead = bulkhead;
+        this.replicaBalancer = replicaBalancer;
+        this.circuitBreaker = circuitBreaker;
+        this.frameCache = frameCache;
+        this.jobService = jobService;
+        this.exportEncoder = exportEncoder;
+        this.bundleService = bundleService;
+        this.correlationService = correlationService;
+        this.rawStoreService = rawStoreService;
+        this.rawStore = rawStore;
+        this.pyramidService = pyramidService;
     }
 
-    @Operation(summary = "Process Historical Sensor Data", description = "Aggregates sensor data based on specified time ranges, aggregation level, and metric.")
+    @Operation(summary = "Process Historical Sensor Data", description = "Aggregates sensor data based on specified time ranges, aggregation level, and metric. With format=columnar each group is returned as parallel time (epoch millis) and value arrays.")
     @PostMapping("/process")
-    public ResponseEntity<?> processHistoricalData(@Valid @RequestBody ProcessingRequestDTO request,@AuthenticationPrincipal User user
+    public ResponseEntity<?> processHistoricalData(@Valid @RequestBody ProcessingRequestDTO request,@AuthenticationPrincipal User user,
+        @RequestParam(name = "format", required = false) String format
  ) {
-    	System.out.println("DEBUG - Request received at: tawa ");
         logger.info("Received processing request: {}", request);
-        try {
+        try (HistoricalBulkhead.Permit permit = bulkhead.acquire(user.getEmail())) {
+            if ("columnar".equalsIgnoreCase(format)) {
+                return ResponseEntity.ok(processingService.processHistoricalDataColumnar(request, user.getEmail()));
+            }
             ProcessingResponseDTO response = processingService.processHistoricalData(request, user.getEmail());
             
             if (response == null) {
@@ -64,6 +149,10 @@ public class HistoricalProcessingController {
             
             return ResponseEntity.ok(response);
             
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
+        } catch (CircuitOpenException e) {
+            return serviceUnavailable(e);
         } catch (WebClientResponseException e) {
             return ResponseEntity.status(e.getStatusCode())
                     .body(Map.of(
@@ -83,15 +172,135 @@ public class HistoricalProcessingController {
     
     
     
+    @Operation(summary = "Correlate Sensor Series", description = "Pearson, Spearman and (with max_lag) lagged cross-correlation of two or more (sensor_type, agent_serial) series aggregated at one level, aligned on the buckets they all have. Returns the coefficients and a small sample of the aligned points, not the series.")
+    @PostMapping("/correlate")
+    public ResponseEntity<?> correlate(
+        @Valid @RequestBody CorrelationRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        // One admission slot for all series; their fan-out is bounded by correlation.parallelism
+        try (HistoricalBulkhead.Permit permit = bulkhead.acquire(user.getEmail())) {
+            return ResponseEntity.ok(correlationService.correlate(request, user.getEmail()));
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
+        } catch (CircuitOpenException e) {
+            return serviceUnavailable(e);
+        } catch (ValidationException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of(
+                    "error", "Invalid correlation",
+                    "message", e.getMessage(),
+                    "status", HttpStatus.BAD_REQUEST.value()
+                ));
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        } catch (UpstreamServiceException e) {
+            return ResponseEntity.status(e.getStatusCode())
+                .body(Map.of(
+                    "error", "Processing service error",
+                    "message", e.getMessage(),
+                    "status", e.getStatusCode()
+                ));
+        }
+    }
+    
+    
+    
+    @Operation(summary = "Stream Historical Sensor Data", description = "Same aggregation as /process, but each upstream chunk is forwarded as one NDJSON line as soon as it arrives.")
+    @PostMapping(value = "/process", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<ProcessingResponseDTO>> streamHistoricalData(
+        @Valid @RequestBody ProcessingRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        logger.info("Received streaming processing request: {}", request);
+        HistoricalBulkhead.Permit permit;
+        try {
+            permit = bulkhead.acquire(user.getEmail());
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Flux.empty());
+        }
+        try {
+            // The slot is held until the stream completes, fails or is cancelled
+            Flux<ProcessingResponseDTO> chunks = processingService.streamHistoricalData(request, user.getEmail())
+                .doOnNext(chunk -> permit.responded())
+                .doFinally(signal -> permit.close());
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(chunks);
+        } catch (CircuitOpenException e) {
+            permit.close();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Flux.empty());
+        } catch (SecurityException e) {
+            permit.close();
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        } catch (Exception e) {
+            permit.close();
+            logger.error("Internal error opening historical stream: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Internal server error");
+        }
+    }
+    
+    
+    
+    @Operation(summary = "Progressive Historical Sensor Data", description = "Server-sent events: coarse previews (e.g. monthly, then daily) as soon as they are ready, then the result of /process at the requested level. Each event is named after its aggregation_level; a final 'complete' event closes the stream.")
+    @PostMapping(value = "/process/progressive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<?>>> progressiveHistoricalData(
+        @Valid @RequestBody ProcessingRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        logger.info("Received progressive processing request: {}", request);
+        HistoricalBulkhead.Permit permit;
+        try {
+            permit = bulkhead.acquire(user.getEmail());
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Flux.empty());
+        }
+        try {
+            Flux<ServerSentEvent<?>> results = processingService.progressiveHistoricalData(request, user.getEmail())
+                .doOnNext(result -> permit.responded())
+                .<ServerSentEvent<?>>map(result -> ServerSentEvent.builder(result)
+                    .event(result.getAggregation_level())
+                    .build());
+            return ResponseEntity.ok(results.concatWith(Flux.just(ServerSentEvent.builder(request.getAggregation_level())
+                    .event("complete")
+                    .build()))
+                .doFinally(signal -> permit.close())
+                .onErrorResume(e -> {
+                    logger.error("Progressive stream failed for {}: {}", user.getEmail(), e.getMessage());
+                    return Flux.just(ServerSentEvent.builder(Map.of(
+                            "error", "Internal server error",
+                            "message", String.valueOf(e.getMessage()),
+                            "status", HttpStatus.INTERNAL_SERVER_ERROR.value()))
+                        .event("error")
+                        .build());
+                }));
+        } catch (SecurityException e) {
+            permit.close();
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        }
+    }
+    
+    
+    
     @PostMapping("/radio/devices_at_time")
     public ResponseEntity<?> getRadioDevicesAtTime(
         @Valid @RequestBody RadioDevicesAtTimeRequestDTO request,
         @AuthenticationPrincipal User user
     ) {
         logger.info("Fetching radio devices at {} for agent {}", request.getTimestamp(), request.getAgent_serial());
-        try {
+        try (HistoricalBulkhead.Permit permit = bulkhead.acquire(user.getEmail())) {
             RadioDevicesAtTimeResponseDTO response = processingService.fetchRadioDevicesAtTime(request, user.getEmail());
             return ResponseEntity.ok(response);
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
+        } catch (CircuitOpenException e) {
+            return serviceUnavailable(e);
         } catch (WebClientResponseException e) {
             logger.error("Error from processing service: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
             return ResponseEntity.status(e.getStatusCode())
@@ -113,9 +322,13 @@ public class HistoricalProcessingController {
         @AuthenticationPrincipal User user
     ) {
         logger.info("Fetching thermalmap reading at {} for agent {}", request.getTimestamp(), request.getAgentSerial());
-        try {
+        try (HistoricalBulkhead.Permit permit = bulkhead.acquire(user.getEmail())) {
             ThermalmapAtTimeResponseDTO response = processingService.fetchThermalmapReadingAtTime(request, user.getEmail());
             return ResponseEntity.ok(response);
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
+        } catch (CircuitOpenException e) {
+            return serviceUnavailable(e);
         } catch (WebClientResponseException e) {
             logger.error("Error from processing service: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
             return ResponseEntity.status(e.getStatusCode())
@@ -134,39 +347,474 @@ public class HistoricalProcessingController {
 
 
     
+    @Operation(summary = "Thermalmap Frames", description = "Every thermalmap frame of an agent between start and end, streamed as binary frames (application/vnd.sara.thermal-frames): per frame a big-endian header (uint32 length, int64 epoch millis, uint16 rows, uint16 cols, uint8 encoding 0=float32 1=uint16, uint8 flags 1=delta 2=zlib, float32 scale, float32 offset) followed by rows*cols values. Delta frames are the XOR (float32 bits) or the difference modulo 65536 (uint16) with the previous frame.")
+    @PostMapping(value = "/thermalmap/frames", produces = HistoricalProcessingService.THERMAL_FRAMES_MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamThermalmapFrames(
+        @Valid @RequestBody ThermalmapFramesRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        logger.info("Streaming thermalmap frames {} - {} for agent {}", request.getStart(), request.getEnd(), request.getAgent_serial());
+        HistoricalBulkhead.Permit permit;
+        try {
+            permit = bulkhead.acquire(user.getEmail());
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+        }
+        Stream<DataBuffer> frames;
+        try {
+            frames = processingService.streamThermalmapFrames(request, user.getEmail()).toStream(streamingPrefetch);
+        } catch (CircuitOpenException e) {
+            permit.close();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+        } catch (ValidationException e) {
+            permit.close();
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (SecurityException e) {
+            permit.close();
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        }
+
+        // Each buffer is flushed as it arrives, so playback starts with the first frames
+        StreamingResponseBody body = out -> {
+            try (frames) {
+                Iterator<DataBuffer> buffers = frames.iterator();
+                if (buffers.hasNext()) {
+                    permit.responded();
+                }
+                writeBuffers(buffers, out, true);
+            } finally {
+                permit.close();
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(HistoricalProcessingService.THERMAL_FRAMES_MEDIA_TYPE))
+            .body(body);
+    }
+    
+    
+    @Operation(summary = "Batch Radio Devices At Time", description = "Radio lookups for a list of (agent_serial, timestamp) pairs and/or a time grid (agent_serials x start..end by step), run concurrently. Results are in request order; each carries its own status and either result or error.")
+    @PostMapping("/radio/devices_at_time/batch")
+    public ResponseEntity<?> getRadioDevicesBatch(
+        @Valid @RequestBody AtTimeBatchRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        return batchResults(user, email -> processingService.fetchRadioDevicesBatch(request, email));
+    }
+    
+    @Operation(summary = "Stream Batch Radio Devices At Time", description = "Same lookups as the batch endpoint, each result sent as one NDJSON line as soon as it and the ones before it are done.")
+    @PostMapping(value = "/radio/devices_at_time/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<AtTimeBatchResultDTO<RadioDevicesAtTimeResponseDTO>>> streamRadioDevicesBatch(
+        @Valid @RequestBody AtTimeBatchRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        return streamBatch(user, email -> processingService.fetchRadioDevicesBatch(request, email));
+    }
+    
+    
+    @Operation(summary = "Batch Thermalmap Readings At Time", description = "Thermalmap lookups for a list of (agent_serial, timestamp) pairs and/or a time grid, run concurrently, with per-item status.")
+    @PostMapping("/thermalmap/reading_at_time/batch")
+    public ResponseEntity<?> getThermalmapReadingsBatch(
+        @Valid @RequestBody AtTimeBatchRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        return batchResults(user, email -> processingService.fetchThermalmapReadingsBatch(request, email));
+    }
+    
+    @Operation(summary = "Stream Batch Thermalmap Readings At Time", description = "Same lookups as the batch endpoint, streamed as NDJSON in request order.")
+    @PostMapping(value = "/thermalmap/reading_at_time/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<AtTimeBatchResultDTO<ThermalmapAtTimeResponseDTO>>> streamThermalmapReadingsBatch(
+        @Valid @RequestBody AtTimeBatchRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        return streamBatch(user, email -> processingService.fetchThermalmapReadingsBatch(request, email));
+    }
+    
+    
+
+
+    
+    @Operation(summary = "Export Data", description = "Export streamed without being buffered in the gateway. csv and json come from historical-processing-ms (gzip-encoded on the fly when the client sends Accept-Encoding: gzip); parquet and arrow (Arrow IPC stream) are written by the gateway with int64 timestamps, float64 readings and dictionary-encoded agent serials.")
     @PostMapping("/export-data")
-    public ResponseEntity<byte[]> exportData(
+    public void exportData(
         @Valid @RequestBody ExportRequestDTO request,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+        @AuthenticationPrincipal User user,
+        HttpServletResponse response
+    ) throws IOException {
+        // Written on the request thread rather than as an async StreamingResponseBody,
+        // so a multi-gigabyte export is not cut off by spring.mvc.async.request-timeout
+        try (HistoricalBulkhead.Permit permit = bulkhead.acquire(user.getEmail());
+             Stream<DataBuffer> export = processingService.streamExport(request, user.getEmail()).toStream(streamingPrefetch)) {
+
+            // Wait for the first bytes before committing, so upstream errors still get a proper status
+            Iterator<DataBuffer> buffers = export.iterator();
+            buffers.hasNext();
+            permit.responded();
+
+            // Build filename
+            List<String> agents = request.getAgentSerial();
+            String filename = String.format(
+                "%s_%s_%s_%s.%s",
+                request.getFacility(),
+                request.getSensorType(),
+                agents.size() == 1 ? agents.get(0) : agents.size() + "-agents",
+                request.getStart().toString().replace(':', '-'),
+                request.getFormat()
+            );
+
+            // Prepare response headers
+            boolean columnar = ExportEncoder.isColumnar(request.getFormat());
+            response.setContentType(ExportEncoder.mediaType(request.getFormat()));
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition
+                .attachment()
+                .filename(filename)
+                .build()
+                .toString()
+            );
+            // Parquet and Arrow are compressed already
+            boolean gzip = exportGzip && !columnar && acceptsGzip(acceptEncoding);
+            if (exportGzip) {
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (gzip) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+
+            // At most streaming-prefetch upstream buffers are held at a time, whatever the export size
+            OutputStream out = response.getOutputStream();
+            try {
+                if (columnar) {
+                    exportEncoder.writeColumnar(request.getFormat(), request.getAgentSerial(), buffers, out, rows -> {});
+                    out.flush();
+                } else if (gzip) {
+                    GZIPOutputStream compressed = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+                    writeBuffers(buffers, compressed, false);
+                    // Only a complete export gets the gzip trailer, so a truncated one is detectable
+                    compressed.finish();
+                } else {
+                    writeBuffers(buffers, out, false);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Export for {} aborted after the response started: {}", user.getEmail(), e.getMessage());
+                throw e;
+            }
+        } catch (TooManyRequestsException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        } catch (CircuitOpenException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        } catch (UpstreamServiceException e) {
+            throw new ResponseStatusException(HttpStatusCode.valueOf(e.getStatusCode()), e.getMessage());
+        }
+    }
+    
+    @Operation(summary = "Export Data As A Job", description = "With async=true the export is spooled to disk by a job: returns 202 with the job status and its URL under /api/historical/jobs. The finished file is downloaded from /api/historical/jobs/{id}/result, which supports Range requests. An identical pending or finished export is reused.")
+    @PostMapping(value = "/export-data", params = "async=true")
+    public ResponseEntity<?> submitExportJob(
+        @Valid @RequestBody ExportRequestDTO request,
+        @AuthenticationPrincipal User user
+    ) {
+        try {
+            HistoricalJobStatusDTO status = jobService.submitExport(request, user.getEmail());
+            URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/historical/jobs/{id}")
+                .buildAndExpand(status.getJob_id())
+                .toUri();
+            return ResponseEntity.accepted().location(location).body(status);
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            logger.warn("Historical job queue full, rejecting export job for {}", user.getEmail());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of(
+                    "error", "Job queue is full",
+                    "message", "Too many historical jobs are pending, retry later",
+                    "status", HttpStatus.SERVICE_UNAVAILABLE.value()
+                ));
+        }
+    }
+    
+    @Operation(summary = "Backfill Raw Store", description = "Copies the raw readings of every finished UTC day touched by [start, end] from historical-processing-ms into the gateway's compressed raw store, for each agent, as a job. Sealed days answer single-agent queries without a round trip upstream. Returns 202 with the job status; the result lists the outcome of each agent and day as NDJSON.")
+    @PostMapping("/raw-store/backfill")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<?> backfillRawStore(
+        @Valid @RequestBody RawStoreBackfillRequestDTO request,
         @AuthenticationPrincipal User user
     ) {
-        // Delegate to the blocking service
-        byte[] payload = processingService.exportData(request, user.getEmail());
-
-        // Build filename
-        String filename = String.format(
-            "%s_%s_%s.%s",
-            request.getFacility(),
-            request.getAgentSerial().get(0),
-            request.getStart().toString().replace(':', '-'),
-            request.getFormat()
-        );
-
-        // Prepare response headers
-        HttpHeaders headers = new HttpHeaders();
-        if ("csv".equalsIgnoreCase(request.getFormat())) {
-            headers.setContentType(MediaType.TEXT_PLAIN);
-        } else {
-            headers.setContentType(MediaType.APPLICATION_JSON);
-        }
-        headers.setContentDisposition(ContentDisposition
-            .attachment()
-            .filename(filename)
-            .build()
-        );
-
-        return new ResponseEntity<>(payload, headers, HttpStatus.OK);
+        try {
+            HistoricalJobStatusDTO status = jobService.submitBackfill(request, user.getEmail());
+            URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/historical/jobs/{id}")
+                .buildAndExpand(status.getJob_id())
+                .toUri();
+            return ResponseEntity.accepted().location(location).body(status);
+        } catch (ValidationException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of(
+                    "error", "Invalid backfill",
+                    "message", e.getMessage(),
+                    "status", HttpStatus.BAD_REQUEST.value()
+                ));
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            logger.warn("Historical job queue full, rejecting raw store backfill for {}", user.getEmail());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of(
+                    "error", "Job queue is full",
+                    "message", "Too many historical jobs are pending, retry later",
+                    "status", HttpStatus.SERVICE_UNAVAILABLE.value()
+                ));
+        }
+    }
+    
+    @Operation(summary = "Ingest Raw Readings", description = "Appends live readings, a JSON array as returned by the Sense API, to the raw store. Readings are cleaned like historical-processing-ms does; readings of sealed days are ignored. Returns the number of readings stored per agent.")
+    @PostMapping(value = "/raw-store/readings", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<?> ingestRawReadings(
+        @RequestParam String facility,
+        @RequestParam("sensor_type") String sensorType,
+        InputStream body
+    ) {
+        try {
+            return ResponseEntity.ok(rawStoreService.ingest(facility, sensorType, body));
+        } catch (ValidationException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of(
+                    "error", "Invalid readings",
+                    "message", e.getMessage(),
+                    "status", HttpStatus.BAD_REQUEST.value()
+                ));
+        } catch (IOException e) {
+            logger.error("Error ingesting raw readings: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Could not store readings");
+        }
+    }
+    
+    @Operation(summary = "Export Bundle", description = "Exports every (sensor type, agent) series of a location or site of the hierarchy, or every combination of sensor_types and agent_serials, as one ZIP with an entry per series (<sensor_type>/<agent_serial>.<format>). Series are fetched from historical-processing-ms in parallel and compressed as they arrive; manifest.json lists the outcome of each series.")
+    @PostMapping("/export-bundle")
+    public void exportBundle(
+        @Valid @RequestBody ExportBundleRequestDTO request,
+        @AuthenticationPrincipal User user,
+        HttpServletResponse response
+    ) throws IOException {
+        List<ExportBundleService.Series> series;
+        try {
+            series = bundleService.resolveSeries(request);
+        } catch (ValidationException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (series.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No exportable sensors match the bundle");
+        }
+
+        // One admission slot for the bundle; its fan-out is bounded by export.bundle.parallelism
+        try (HistoricalBulkhead.Permit permit = bulkhead.acquire(user.getEmail())) {
+            // Fail before the response starts rather than with every series
+            circuitBreaker.rejectIfOpen("export");
+            permit.responded();
+
+            String scope = request.getLocation_id() != null ? "location-" + request.getLocation_id()
+                : request.getSite_id() != null ? "site-" + request.getSite_id()
+                : "bundle";
+            String filename = String.format(
+                "%s_%s_%s.zip",
+                request.getFacility(),
+                scope,
+                request.getStart().toString().replace(':', '-')
+            );
+            response.setContentType("application/zip");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition
+                .attachment()
+                .filename(filename)
+                .build()
+                .toString()
+            );
+
+            try {
+                bundleService.writeBundle(request, series, user.getEmail(), response.getOutputStream());
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Export bundle for {} aborted after the response started: {}", user.getEmail(), e.getMessage());
+                throw e;
+            }
+        } catch (TooManyRequestsException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        } catch (CircuitOpenException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        }
+    }
+    
+    /** Copies upstream buffers to the response, releasing each once written. */
+    private static void writeBuffers(Iterator<DataBuffer> buffers, OutputStream out, boolean flushEach) throws IOException {
+        while (buffers.hasNext()) {
+            try (InputStream in = buffers.next().asInputStream(true)) {
+                in.transferTo(out);
+            }
+            if (flushEach) {
+                out.flush();
+            }
+        }
+        out.flush();
+    }
+    
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+    
+    
+    
+    @Operation(summary = "Upstream Connection Pool Stats", description = "Utilisation of the pooled connections to historical-processing-ms.")
+    @GetMapping("/upstream/pool")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<List<UpstreamPoolStatsDTO>> getUpstreamPoolStats() {
+        return ResponseEntity.ok(poolMetrics.snapshot());
+    }
+    
+    
+    
+    @Operation(summary = "Upstream Replicas", description = "Outstanding requests and health of each historical-processing-ms replica.")
+    @GetMapping("/upstream/replicas")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<List<Map<String, Object>>> getUpstreamReplicas() {
+        return ResponseEntity.ok(replicaBalancer.snapshot());
+    }
+    
+    
+    
+    @Operation(summary = "Upstream Circuit Breakers", description = "State, failure rate and slow-call rate of the circuit breaker of each historical-processing-ms endpoint.")
+    @GetMapping("/upstream/circuits")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getUpstreamCircuits() {
+        return ResponseEntity.ok(circuitBreaker.snapshot());
+    }
+    
+    
+    
+    @Operation(summary = "Thermal Frame Cache", description = "Size and hit rate of the gateway's thermalmap frame cache.")
+    @GetMapping("/thermalmap/frame-cache")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getThermalFrameCache() {
+        return ResponseEntity.ok(frameCache.snapshot());
+    }
+    
+    
+    
+    @Operation(summary = "Raw Store", description = "Directory, open segments and block and reading counters of the gateway's raw reading store.")
+    @GetMapping("/raw-store")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getRawStore() {
+        return ResponseEntity.ok(rawStore.snapshot());
     }
     
     
     
+    @Operation(summary = "Aggregate Pyramid", description = "Runs and progress of the job maintaining the hourly, daily, monthly and yearly pre-aggregates built from sealed days of the raw store.")
+    @GetMapping("/pyramid")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getAggregatePyramid() {
+        return ResponseEntity.ok(pyramidService.snapshot());
+    }
+    
+    
+    
+    @Operation(summary = "Admission Control State", description = "Current global concurrency limit, requests in flight and waiting.")
+    @GetMapping("/admission")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getAdmissionState() {
+        return ResponseEntity.ok(bulkhead.snapshot());
+    }
+    
+    
+    
+    private ResponseEntity<Map<String, Object>> tooManyRequests(TooManyRequestsException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(Map.of(
+                "error", "Too many requests",
+                "message", e.getMessage(),
+                "status", HttpStatus.TOO_MANY_REQUESTS.value()
+            ));
+    }
+    
+    /** A whole batch takes one admission slot; its concurrency is bounded by the service. */
+    private ResponseEntity<?> batchResults(User user, Function<String, Flux<? extends AtTimeBatchResultDTO<?>>> batch) {
+        try (HistoricalBulkhead.Permit permit = bulkhead.acquire(user.getEmail())) {
+            return ResponseEntity.ok(batch.apply(user.getEmail()).collectList().block());
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
+        } catch (ValidationException e) {
+            return invalidBatch(e);
+        } catch (SecurityException e) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Internal error running lookup batch: {}", e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Internal server error");
+        }
+    }
+    
+    private <T> ResponseEntity<Flux<T>> streamBatch(User user, Function<String, Flux<T>> batch) {
+        HistoricalBulkhead.Permit permit;
+        try {
+            permit = bulkhead.acquire(user.getEmail());
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Flux.empty());
+        }
+        try {
+            Flux<T> results = batch.apply(user.getEmail())
+                .doOnNext(result -> permit.responded())
+                .doFinally(signal -> permit.close());
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(results);
+        } catch (ValidationException e) {
+            permit.close();
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (SecurityException e) {
+            permit.close();
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, e.getMessage());
+        }
+    }
+    
+    private ResponseEntity<Map<String, Object>> invalidBatch(ValidationException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+            .body(Map.of(
+                "error", "Invalid batch",
+                "message", e.getMessage(),
+                "status", HttpStatus.BAD_REQUEST.value()
+            ));
+    }
+    
+    private ResponseEntity<Map<String, Object>> serviceUnavailable(CircuitOpenException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(Map.of(
+                "error", "Processing service unavailable",
+                "message", e.getMessage(),
+                "status", HttpStatus.SERVICE_UNAVAILABLE.value()
+            ));
+    }
+    
+    
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package com.example.sara.dto;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+
+/**
+ * Many radio or thermalmap at-time lookups in one request: either explicit
+ * (agent_serial, timestamp) pairs in items, or a grid of every agent in
+ * agent_serials at every step from start to end (inclusive). Both may be given.
+ */
+public class AtTimeBatchRequestDTO {
+
+    @NotBlank
+    @Pattern(regexp = "^(uoa|istic)$", message = "Facility must be 'uoa' or 'istic'")
+    private String facility;
+
+    @Valid
+    @Schema(description = "Explicit lookups")
+    private List<Item> items;
+
+    @Schema(description = "Agents of the time grid", example = "[\"AGENT_001\", \"AGENT_002\"]")
+    private List<String> agent_serials;
+
+    @Schema(description = "First timestamp of the time grid", example = "2024-03-01T08:00:00Z")
+    private Instant start;
+
+    @Schema(description = "Last timestamp of the time grid (inclusive)", example = "2024-03-01T09:00:00Z")
+    private Instant end;
+
+    @Schema(description = "Time grid step, ISO-8601 duration", example = "PT5M")
+    private Duration step;
+
+    public static class Item {
+
+        @NotBlank
+        private String agent_serial;
+
+        @NotNull
+        private Instant timestamp;
+
+        public String getAgent_serial() { return agent_serial; }
+        public void setAgent_serial(String agent_serial) { this.agent_serial = agent_serial; }
+
+        public Instant getTimestamp() { return timestamp; }
+        public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
+    }
+
+    // getters & setters
+    public String getFacility() { return facility; }
+    public void setFacility(String facility) { this.facility = facility; }
+
+    public List<Item> getItems() { return items; }
+    public void setItems(List<Item> items) { this.items = items; }
+
+    public List<String> getAgent_serials() { return agent_serials; }
+    public void setAgent_serials(List<String> agent_serials) { this.agent_serials = agent_serials; }
+
+    public Instant getStart() { return start; }
+    public void setStart(Instant start) { this.start = start; }
+
+    public Instant getEnd() { return end; }
+    public void setEnd(Instant end) { this.end = end; }
+
+    public Duration getStep() { return step; }
+    public void setStep(Duration step) { this.step = step; }
+}
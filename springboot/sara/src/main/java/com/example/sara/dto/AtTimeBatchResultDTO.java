@@ -0,0 +1,43 @@
+package com.example.sara.dto;
+
+import java.time.Instant;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Outcome of one lookup of a batch: the upstream response, or the error
+ * that lookup alone failed with.
+ */
+public class AtTimeBatchResultDTO<T> {
+
+    @Schema(description = "Agent of this lookup", example = "AGENT_001")
+    private String agent_serial;
+
+    @Schema(description = "Timestamp of this lookup", example = "2024-03-01T08:00:00Z")
+    private Instant timestamp;
+
+    @Schema(description = "HTTP status this lookup would have had on its own", example = "200")
+    private int status;
+
+    @Schema(description = "Response of the lookup, when it succeeded")
+    private T result;
+
+    @Schema(description = "Failure reason, when it did not")
+    private String error;
+
+    // getters & setters
+    public String getAgent_serial() { return agent_serial; }
+    public void setAgent_serial(String agent_serial) { this.agent_serial = agent_serial; }
+
+    public Instant getTimestamp() { return timestamp; }
+    public void setTimestamp(Instant timestamp) { this.timestamp = timestamp; }
+
+    public int getStatus() { return status; }
+    public void setStatus(int status) { this.status = status; }
+
+    public T getResult() { return result; }
+    public void setResult(T result) { this.result = result; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
@@ -0,0 +1,63 @@
+package com.example.sara.dto;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.sara.timeseries.ColumnarSeries;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Columnar variant of ProcessingResponseDTO (format=columnar): each group of
+ * aggregated_results becomes two parallel arrays, epoch milliseconds and values.
+ */
+public class ColumnarProcessingResponseDTO {
+
+    @Schema(description = "Facility name", example = "Facility_A")
+    private String facility;
+
+    @Schema(description = "List of agent serials", example = "[\"AGENT_001\", \"AGENT_002\"]")
+    private List<String> agent_serial;
+
+    @Schema(description = "Sensor type", example = "temperature")
+    private String sensor_type;
+
+    @Schema(description = "Aggregation level", example = "hourly")
+    private String aggregation_level;
+
+    @Schema(description = "Metric", example = "average")
+    private String metric;
+
+    @Schema(description = "Group key -> {\"time\": [epoch millis], \"value\": [values]}")
+    private Map<String, ColumnarSeries> series = new LinkedHashMap<>();
+
+    private MetaDTO meta;
+
+    /** The series of a group, created empty on first use. */
+    public ColumnarSeries seriesFor(String group) {
+        return series.computeIfAbsent(group, k -> new ColumnarSeries());
+    }
+
+    // getters & setters
+    public String getFacility() { return facility; }
+    public void setFacility(String facility) { this.facility = facility; }
+
+    public List<String> getAgent_serial() { return agent_serial; }
+    public void setAgent_serial(List<String> agent_serial) { this.agent_serial = agent_serial; }
+
+    public String getSensor_type() { return sensor_type; }
+    public void setSensor_type(String sensor_type) { this.sensor_type = sensor_type; }
+
+    public String getAggregation_level() { return aggregation_level; }
+    public void setAggregation_level(String aggregation_level) { this.aggregation_level = aggregation_level; }
+
+    public String getMetric() { return metric; }
+    public void setMetric(String metric) { this.metric = metric; }
+
+    public Map<String, ColumnarSeries> getSeries() { return series; }
+    public void setSeries(Map<String, ColumnarSeries> series) { this.series = series; }
+
+    public MetaDTO getMeta() { return meta; }
+    public void setMeta(MetaDTO meta) { this.meta = meta; }
+}
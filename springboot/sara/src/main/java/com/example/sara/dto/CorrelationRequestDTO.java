@@ -0,0 +1,105 @@
+package com.example.sara.dto;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Two or more (sensor_type, agent_serial) series to correlate, aggregated
+ * at one aggregation_level over [start, end].
+ */
+public class CorrelationRequestDTO {
+
+    private static final String METRICS = "average|sum|median|min|max|skewness|event_count|activity_percent|event_duration_avg|event_duration_max";
+
+    @NotBlank
+    @Pattern(regexp = "uoa|istic|museum", message = "Facility must be 'uoa' or 'istic'")
+    private String facility;
+
+    @NotNull
+    @Schema(example = "2024-03-01T00:00:00Z")
+    private ZonedDateTime start;
+
+    @NotNull
+    @Schema(example = "2024-03-08T00:00:00Z")
+    private ZonedDateTime end;
+
+    @NotBlank
+    @Pattern(regexp = "minute|hourly|daily|monthly|yearly", message = "Aggregation level must be one of 'minute', 'hourly', 'daily', 'monthly', or 'yearly'")
+    @Schema(description = "Bucket size the series are aligned on", example = "hourly")
+    private String aggregation_level;
+
+    @Pattern(regexp = METRICS)
+    @Schema(description = "Metric of the series that do not name one (default average)", example = "average")
+    private String metric;
+
+    @NotNull
+    @Size(min = 2, message = "At least two series must be given")
+    @Valid
+    private List<Series> series;
+
+    @Min(0)
+    @Schema(description = "Largest lag, in buckets of the aggregation level, of the cross-correlation (0 for none)", example = "24")
+    private Integer max_lag;
+
+    @Min(0)
+    @Schema(description = "Aligned points returned as a sample (default historical.correlation.sample-points)", example = "200")
+    private Integer sample_points;
+
+    public static class Series {
+
+        @NotBlank
+        @Pattern(regexp = "humidity|luminance|microphone|motion|presence|radio|temperature|thermalmap|thermography")
+        @Schema(example = "microphone")
+        private String sensor_type;
+
+        @NotBlank
+        @Schema(example = "AGENT_001")
+        private String agent_serial;
+
+        @Pattern(regexp = METRICS)
+        @Schema(example = "average")
+        private String metric;
+
+        public String getSensor_type() { return sensor_type; }
+        public void setSensor_type(String sensor_type) { this.sensor_type = sensor_type; }
+
+        public String getAgent_serial() { return agent_serial; }
+        public void setAgent_serial(String agent_serial) { this.agent_serial = agent_serial; }
+
+        public String getMetric() { return metric; }
+        public void setMetric(String metric) { this.metric = metric; }
+    }
+
+    // getters & setters
+    public String getFacility() { return facility; }
+    public void setFacility(String facility) { this.facility = facility; }
+
+    public ZonedDateTime getStart() { return start; }
+    public void setStart(ZonedDateTime start) { this.start = start; }
+
+    public ZonedDateTime getEnd() { return end; }
+    public void setEnd(ZonedDateTime end) { this.end = end; }
+
+    public String getAggregation_level() { return aggregation_level; }
+    public void setAggregation_level(String aggregation_level) { this.aggregation_level = aggregation_level; }
+
+    public String getMetric() { return metric; }
+    public void setMetric(String metric) { this.metric = metric; }
+
+    public List<Series> getSeries() { return series; }
+    public void setSeries(List<Series> series) { this.series = series; }
+
+    public Integer getMax_lag() { return max_lag; }
+    public void setMax_lag(Integer max_lag) { this.max_lag = max_lag; }
+
+    public Integer getSample_points() { return sample_points; }
+    public void setSample_points(Integer sample_points) { this.sample_points = sample_points; }
+}
@@ -0,0 +1,121 @@
+package com.example.sara.dto;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Correlation of the requested series over their aligned buckets. Matrices
+ * and coefficient lists are indexed like series; a coefficient is null when
+ * it is undefined (fewer than three aligned points or a constant series).
+ */
+public class CorrelationResponseDTO {
+
+    @Schema(description = "Facility identifier", example = "uoa")
+    private String facility;
+
+    @Schema(description = "Aggregation level", example = "hourly")
+    private String aggregation_level;
+
+    @Schema(description = "The correlated series, in request order")
+    private List<SeriesSummary> series;
+
+    @Schema(description = "Buckets present in every series", example = "168")
+    private int aligned_points;
+
+    @Schema(description = "Pearson correlation matrix")
+    private Double[][] pearson;
+
+    @Schema(description = "Spearman rank correlation matrix")
+    private Double[][] spearman;
+
+    @Schema(description = "Largest lag of cross_correlation, in buckets of the aggregation level", example = "24")
+    private int max_lag;
+
+    @Schema(description = "Lagged cross-correlation of every pair of series")
+    private List<CrossCorrelation> cross_correlation;
+
+    @Schema(description = "Epoch millis of the sampled aligned buckets")
+    private long[] sample_time;
+
+    @Schema(description = "Values of each series at sample_time")
+    private double[][] sample_values;
+
+    public static class SeriesSummary {
+
+        private String sensor_type;
+        private String agent_serial;
+        private String metric;
+        @Schema(description = "Buckets of the series before alignment")
+        private int points;
+
+        public String getSensor_type() { return sensor_type; }
+        public void setSensor_type(String sensor_type) { this.sensor_type = sensor_type; }
+
+        public String getAgent_serial() { return agent_serial; }
+        public void setAgent_serial(String agent_serial) { this.agent_serial = agent_serial; }
+
+        public String getMetric() { return metric; }
+        public void setMetric(String metric) { this.metric = metric; }
+
+        public int getPoints() { return points; }
+        public void setPoints(int points) { this.points = points; }
+    }
+
+    /** Cross-correlation of series a and b; coefficients[k] is lag k - max_lag, positive when b follows a. */
+    public static class CrossCorrelation {
+
+        private int a;
+        private int b;
+        private Double[] coefficients;
+        @Schema(description = "Lag of the coefficient of largest magnitude")
+        private Integer best_lag;
+        private Double best_coefficient;
+
+        public int getA() { return a; }
+        public void setA(int a) { this.a = a; }
+
+        public int getB() { return b; }
+        public void setB(int b) { this.b = b; }
+
+        public Double[] getCoefficients() { return coefficients; }
+        public void setCoefficients(Double[] coefficients) { this.coefficients = coefficients; }
+
+        public Integer getBest_lag() { return best_lag; }
+        public void setBest_lag(Integer best_lag) { this.best_lag = best_lag; }
+
+        public Double getBest_coefficient() { return best_coefficient; }
+        public void setBest_coefficient(Double best_coefficient) { this.best_coefficient = best_coefficient; }
+    }
+
+    // getters & setters
+    public String getFacility() { return facility; }
+    public void setFacility(String facility) { this.facility = facility; }
+
+    public String getAggregation_level() { return aggregation_level; }
+    public void setAggregation_level(String aggregation_level) { this.aggregation_level = aggregation_level; }
+
+    public List<SeriesSummary> getSeries() { return series; }
+    public void setSeries(List<SeriesSummary> series) { this.series = series; }
+
+    public int getAligned_points() { return aligned_points; }
+    public void setAligned_points(int aligned_points) { this.aligned_points = aligned_points; }
+
+    public Double[][] getPearson() { return pearson; }
+    public void setPearson(Double[][] pearson) { this.pearson = pearson; }
+
+    public Double[][] getSpearman() { return spearman; }
+    public void setSpearman(Double[][] spearman) { this.spearman = spearman; }
+
+    public int getMax_lag() { return max_lag; }
+    public void setMax_lag(int max_lag) { this.max_lag = max_lag; }
+
+    public List<CrossCorrelation> getCross_correlation() { return cross_correlation; }
+    public void setCross_correlation(List<CrossCorrelation> cross_correlation) { this.cross_correlation = cross_correlation; }
+
+    public long[] getSample_time() { return sample_time; }
+    public void setSample_time(long[] sample_time) { this.sample_time = sample_time; }
+
+    public double[][] getSample_values() { return sample_values; }
+    public void setSample_values(double[][] sample_values) { this.sample_values = sample_values; }
+}
@@ -0,0 +1,70 @@
+package com.example.sara.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+
+/**
+ * Several exports in one ZIP, one entry per (sensor type, agent) series.
+ * The series are those assigned at location_id or site_id in the hierarchy,
+ * narrowed by sensor_types and agent_serials when given; without a location
+ * or site they are every combination of sensor_types and agent_serials.
+ */
+public class ExportBundleRequestDTO {
+
+    @NotBlank
+    @Pattern(regexp = "^(uoa|istic)$", message = "Facility must be 'uoa' or 'istic'")
+    private String facility;
+
+    @Schema(description = "Site whose assigned sensors are exported", example = "1")
+    private Long site_id;
+
+    @Schema(description = "Location whose assigned sensors are exported", example = "3")
+    private Long location_id;
+
+    @Schema(description = "Sensor types to export", example = "[\"temperature\", \"humidity\"]")
+    private List<String> sensor_types;
+
+    @Schema(description = "Agents to export", example = "[\"AGENT_001\", \"AGENT_002\"]")
+    private List<String> agent_serials;
+
+    @NotNull
+    private Instant start;
+
+    @NotNull
+    private Instant end;
+
+    @NotBlank
+    @Pattern(regexp = "^(csv|json|parquet|arrow)$")
+    @Schema(description = "Format of every entry", example = "csv")
+    private String format;
+
+    // getters & setters
+    public String getFacility() { return facility; }
+    public void setFacility(String facility) { this.facility = facility; }
+
+    public Long getSite_id() { return site_id; }
+    public void setSite_id(Long site_id) { this.site_id = site_id; }
+
+    public Long getLocation_id() { return location_id; }
+    public void setLocation_id(Long location_id) { this.location_id = location_id; }
+
+    public List<String> getSensor_types() { return sensor_types; }
+    public void setSensor_types(List<String> sensor_types) { this.sensor_types = sensor_types; }
+
+    public List<String> getAgent_serials() { return agent_serials; }
+    public void setAgent_serials(List<String> agent_serials) { this.agent_serials = agent_serials; }
+
+    public Instant getStart() { return start; }
+    public void setStart(Instant start) { this.start = start; }
+
+    public Instant getEnd() { return end; }
+    public void setEnd(Instant end) { this.end = end; }
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+}
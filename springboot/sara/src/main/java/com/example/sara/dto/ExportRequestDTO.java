@@ -31,7 +31,7 @@ public class ExportRequestDTO {
     private Instant end;
 
     @NotBlank
-    @Pattern(regexp = "^(csv|json)$")
+    @Pattern(regexp = "^(csv|json|parquet|arrow)$")
     @JsonProperty("format")
     private String format;
 
@@ -0,0 +1,79 @@
+package com.example.sara.dto;
+
+import java.time.Instant;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * State and progress of an asynchronous historical job.
+ */
+public class HistoricalJobStatusDTO {
+
+    @Schema(description = "Job identifier", example = "5b0c0a4e-3f2e-4b7a-9a59-0f3c2d9f1f1e")
+    private String job_id;
+
+    @Schema(description = "queued, running, succeeded, failed or cancelled", example = "running")
+    private String status;
+
+    @Schema(description = "Chunks received from historical-processing-ms so far", example = "42")
+    private long chunks_received;
+
+    @Schema(description = "Points (buckets or raw readings) written so far", example = "60480")
+    private long buckets_received;
+
+    @Schema(description = "Expected number of buckets, when known in advance (not for minute level)", example = "8760")
+    private Long buckets_expected;
+
+    @Schema(description = "Size of the result in bytes", example = "5242880")
+    private long result_bytes;
+
+    @Schema(description = "Media type of the result", example = "application/x-ndjson")
+    private String result_type;
+
+    @Schema(description = "Failure reason, for failed jobs")
+    private String error;
+
+    private Instant submitted_at;
+    private Instant started_at;
+    private Instant finished_at;
+
+    @Schema(description = "When the job and its result are discarded")
+    private Instant expires_at;
+
+    // getters & setters
+    public String getJob_id() { return job_id; }
+    public void setJob_id(String job_id) { this.job_id = job_id; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public long getChunks_received() { return chunks_received; }
+    public void setChunks_received(long chunks_received) { this.chunks_received = chunks_received; }
+
+    public long getBuckets_received() { return buckets_received; }
+    public void setBuckets_received(long buckets_received) { this.buckets_received = buckets_received; }
+
+    public Long getBuckets_expected() { return buckets_expected; }
+    public void setBuckets_expected(Long buckets_expected) { this.buckets_expected = buckets_expected; }
+
+    public long getResult_bytes() { return result_bytes; }
+    public void setResult_bytes(long result_bytes) { this.result_bytes = result_bytes; }
+
+    public String getResult_type() { return result_type; }
+    public void setResult_type(String result_type) { this.result_type = result_type; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public Instant getSubmitted_at() { return submitted_at; }
+    public void setSubmitted_at(Instant submitted_at) { this.submitted_at = submitted_at; }
+
+    public Instant getStarted_at() { return started_at; }
+    public void setStarted_at(Instant started_at) { this.started_at = started_at; }
+
+    public Instant getFinished_at() { return finished_at; }
+    public void setFinished_at(Instant finished_at) { this.finished_at = finished_at; }
+
+    public Instant getExpires_at() { return expires_at; }
+    public void setExpires_at(Instant expires_at) { this.expires_at = expires_at; }
+}
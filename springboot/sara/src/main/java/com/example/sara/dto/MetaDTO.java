@@ -15,6 +15,12 @@ public class MetaDTO {
     @Schema(description = "Number of empty buckets", example = "0")
     private int empty_buckets;
 
+    @Schema(description = "Number of points removed by downsampling (max_points)", example = "0")
+    private int dropped_points;
+
+    @Schema(description = "True when upstream is unavailable and this is the last known good response", example = "false")
+    private boolean stale;
+
     // getters & setters
     public int getTotal_buckets() { return total_buckets; }
     public void setTotal_buckets(int total_buckets) { this.total_buckets = total_buckets; }
@@ -27,4 +33,10 @@ public class MetaDTO {
 
     public int getEmpty_buckets() { return empty_buckets; }
     public void setEmpty_buckets(int empty_buckets) { this.empty_buckets = empty_buckets; }
+
+    public int getDropped_points() { return dropped_points; }
+    public void setDropped_points(int dropped_points) { this.dropped_points = dropped_points; }
+
+    public boolean isStale() { return stale; }
+    public void setStale(boolean stale) { this.stale = stale; }
 }
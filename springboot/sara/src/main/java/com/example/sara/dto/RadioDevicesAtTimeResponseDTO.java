@@ -7,6 +7,8 @@ public class RadioDevicesAtTimeResponseDTO {
 
     private Instant time;
     private List<RadioDeviceDTO> devices;
+    // Set by the gateway when upstream is unavailable and this is the last known good response
+    private boolean stale;
 
     // ----- Getters & Setters -----
     public Instant getTime() {
@@ -24,4 +26,12 @@ public class RadioDevicesAtTimeResponseDTO {
     public void setDevices(List<RadioDeviceDTO> devices) {
         this.devices = devices;
     }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public void setStale(boolean stale) {
+        this.stale = stale;
+    }
 }
\ No newline at end of file
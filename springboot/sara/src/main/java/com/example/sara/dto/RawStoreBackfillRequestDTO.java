@@ -0,0 +1,53 @@
+package com.example.sara.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Days of raw readings to copy from the Sense API into the gateway's raw
+ * store: every UTC day touched by [start, end], for each agent.
+ */
+public class RawStoreBackfillRequestDTO {
+
+    @NotBlank
+    @Pattern(regexp = "^(uoa|istic)$", message = "Facility must be 'uoa' or 'istic'")
+    private String facility;
+
+    @NotBlank
+    @Pattern(regexp = "^(humidity|luminance|microphone|motion|presence|radio|temperature|thermalmap|thermography)$")
+    @Schema(description = "Sensor type of the readings", example = "temperature")
+    private String sensor_type;
+
+    @NotNull
+    @Size(min = 1)
+    @Schema(description = "Agents to backfill", example = "[\"AGENT_001\"]")
+    private List<String> agent_serial;
+
+    @NotNull
+    private Instant start;
+
+    @NotNull
+    private Instant end;
+
+    // getters & setters
+    public String getFacility() { return facility; }
+    public void setFacility(String facility) { this.facility = facility; }
+
+    public String getSensor_type() { return sensor_type; }
+    public void setSensor_type(String sensor_type) { this.sensor_type = sensor_type; }
+
+    public List<String> getAgent_serial() { return agent_serial; }
+    public void setAgent_serial(List<String> agent_serial) { this.agent_serial = agent_serial; }
+
+    public Instant getStart() { return start; }
+    public void setStart(Instant start) { this.start = start; }
+
+    public Instant getEnd() { return end; }
+    public void setEnd(Instant end) { this.end = end; }
+}
@@ -6,6 +6,8 @@ public class ThermalmapAtTimeResponseDTO {
 
     private Instant time;
     private List<List<Double>> reading;
+    // Set by the gateway when upstream is unavailable and this is the last known good response
+    private boolean stale;
 
     // ----- Getters & Setters -----
     public Instant getTime() {
@@ -23,4 +25,12 @@ public class ThermalmapAtTimeResponseDTO {
     public void setReading(List<List<Double>> reading) {
         this.reading = reading;
     }
-}
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public void setStale(boolean stale) {
+        this.stale = stale;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+package com.example.sara.dto;
+
+import java.time.Instant;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+
+/**
+ * Thermalmap frames of one agent over a time range, for playback.
+ */
+public class ThermalmapFramesRequestDTO {
+
+    @NotBlank
+    @Pattern(regexp = "^(uoa|istic)$", message = "Facility must be 'uoa' or 'istic'")
+    private String facility;
+
+    @NotBlank
+    private String agent_serial;
+
+    @NotNull
+    @Schema(description = "First frame time", example = "2024-03-01T08:00:00Z")
+    private Instant start;
+
+    @NotNull
+    @Schema(description = "Last frame time (inclusive)", example = "2024-03-01T09:00:00Z")
+    private Instant end;
+
+    @Pattern(regexp = "^(float32|uint16)$", message = "Encoding must be 'float32' or 'uint16'")
+    @Schema(description = "float32 (lossless) or uint16 (quantised with scale and offset)", example = "float32")
+    private String encoding = "float32";
+
+    @DecimalMin(value = "0", inclusive = false)
+    @Schema(description = "uint16 only: degrees per quantisation step", example = "0.01")
+    private double scale = 0.01;
+
+    @Schema(description = "uint16 only: value of quantisation step 0", example = "-100")
+    private double offset = -100;
+
+    @Schema(description = "Encode each frame against the previous one", example = "true")
+    private boolean delta = true;
+
+    @Schema(description = "zlib-compress every frame payload", example = "true")
+    private boolean compress = true;
+
+    @Min(1)
+    @Schema(description = "A full (non-delta) frame at least every n frames", example = "60")
+    private int keyframe_interval = 60;
+
+    // getters & setters
+    public String getFacility() { return facility; }
+    public void setFacility(String facility) { this.facility = facility; }
+
+    public String getAgent_serial() { return agent_serial; }
+    public void setAgent_serial(String agent_serial) { this.agent_serial = agent_serial; }
+
+    public Instant getStart() { return start; }
+    public void setStart(Instant start) { this.start = start; }
+
+    public Instant getEnd() { return end; }
+    public void setEnd(Instant end) { this.end = end; }
+
+    public String getEncoding() { return encoding; }
+    public void setEncoding(String encoding) { this.encoding = encoding; }
+
+    public double getScale() { return scale; }
+    public void setScale(double scale) { this.scale = scale; }
+
+    public double getOffset() { return offset; }
+    public void setOffset(double offset) { this.offset = offset; }
+
+    public boolean isDelta() { return delta; }
+    public void setDelta(boolean delta) { this.delta = delta; }
+
+    public boolean isCompress() { return compress; }
+    public void setCompress(boolean compress) { this.compress = compress; }
+
+    public int getKeyframe_interval() { return keyframe_interval; }
+    public void setKeyframe_interval(int keyframe_interval) { this.keyframe_interval = keyframe_interval; }
+}
@@ -0,0 +1,58 @@
+package com.example.sara.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Utilisation of one upstream connection pool (one per remote address).
+ */
+public class UpstreamPoolStatsDTO {
+
+    @Schema(description = "Connection pool name", example = "historical-processing")
+    private String pool;
+
+    @Schema(description = "Remote address the pool connects to", example = "historical-processing-ms/172.18.0.5:5000")
+    private String remote_address;
+
+    @Schema(description = "Connections currently in use", example = "3")
+    private int acquired;
+
+    @Schema(description = "Open connections waiting in the pool", example = "7")
+    private int idle;
+
+    @Schema(description = "Open connections (acquired + idle)", example = "10")
+    private int allocated;
+
+    @Schema(description = "Requests waiting for a connection", example = "0")
+    private int pending_acquire;
+
+    @Schema(description = "Maximum number of connections", example = "50")
+    private int max_connections;
+
+    @Schema(description = "Maximum number of requests allowed to wait", example = "500")
+    private int max_pending_acquire;
+
+    // getters & setters
+    public String getPool() { return pool; }
+    public void setPool(String pool) { this.pool = pool; }
+
+    public String getRemote_address() { return remote_address; }
+    public void setRemote_address(String remote_address) { this.remote_address = remote_address; }
+
+    public int getAcquired() { return acquired; }
+    public void setAcquired(int acquired) { this.acquired = acquired; }
+
+    public int getIdle() { return idle; }
+    public void setIdle(int idle) { this.idle = idle; }
+
+    public int getAllocated() { return allocated; }
+    public void setAllocated(int allocated) { this.allocated = allocated; }
+
+    public int getPending_acquire() { return pending_acquire; }
+    public void setPending_acquire(int pending_acquire) { this.pending_acquire = pending_acquire; }
+
+    public int getMax_connections() { return max_connections; }
+    public void setMax_connections(int max_connections) { this.max_connections = max_connections; }
+
+    public int getMax_pending_acquire() { return max_pending_acquire; }
+    public void setMax_pending_acquire(int max_pending_acquire) { this.max_pending_acquire = max_pending_acquire; }
+}
@@ -0,0 +1,25 @@
+package com.example.sara.exception;
+
+/**
+ * Thrown instead of calling an upstream endpoint whose circuit breaker is
+ * open; carries the delay after which the endpoint is probed again (Retry-After).
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    private final String endpoint;
+    private final long retryAfterSeconds;
+
+    public CircuitOpenException(String endpoint, long retryAfterSeconds) {
+        super("Upstream endpoint '" + endpoint + "' is unavailable, retry in " + retryAfterSeconds + "s");
+        this.endpoint = endpoint;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
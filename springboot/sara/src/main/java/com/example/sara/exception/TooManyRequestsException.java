@@ -0,0 +1,19 @@
+package com.example.sara.exception;
+
+/**
+ * Thrown when admission control rejects a request; carries the delay after
+ * which the client may retry (Retry-After).
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.sara.exception;
+
+/**
+ * Error status returned by historical-processing-ms, with the status code
+ * kept so client errors can be told apart from upstream failures.
+ */
+public class UpstreamServiceException extends RuntimeException {
+
+    private final int statusCode;
+
+    public UpstreamServiceException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isServerError() {
+        return statusCode >= 500;
+    }
+}
@@ -10,8 +10,8 @@ public class AggregatedResultDTO {
     @Schema(description = "Time bucket for the aggregated value", example = "2022-03-10T00:00:00Z")
     private ZonedDateTime time;
     
-    @Schema(description = "Aggregated value for this time bucket", example = "24.8")
-    private double value;
+    @Schema(description = "Aggregated value for this time bucket, null when it has none", example = "24.8", nullable = true)
+    private Double value;
 
     // Getters and Setters
     public ZonedDateTime getTime() {
@@ -20,10 +20,20 @@ public class AggregatedResultDTO {
     public void setTime(ZonedDateTime time) {
         this.time = time;
     }
-    public double getValue() {
+    public Double getValue() {
         return value;
     }
-    public void setValue(double value) {
+    public void setValue(Double value) {
         this.value = value;
     }
+
+    /** The value as carried in columnar series, where a missing value is NaN. */
+    public double valueOrNaN() {
+        return value == null ? Double.NaN : value;
+    }
+
+    /** Sets a columnar value: NaN becomes null, as upstream sends it in JSON. */
+    public void setValueOrNaN(double value) {
+        this.value = Double.isNaN(value) ? null : value;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.example.sara.model;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
@@ -53,6 +54,16 @@ public class ProcessingRequestDTO {
    @Pattern(regexp = "average|sum|median|min|max|skewness|event_count|activity_percent|event_duration_avg|event_duration_max", message = "Metric must be one of average|sum|median|min|max|skewness|event_count|activity_percent|event_duration_avg|event_duration_max")
    private String metric;
 
+   @Schema(description = "Optional point budget for charts: the whole series is downsampled to at most this many points (not applied to NDJSON streaming)", example = "1500")
+   @Min(value = 3, message = "max_points must be at least 3")
+   @JsonProperty(value = "max_points", access = JsonProperty.Access.WRITE_ONLY)
+   private Integer max_points;
+
+   @Schema(description = "Downsampling method used with max_points: lttb (shape preserving, default) or minmax (envelope)", example = "lttb")
+   @Pattern(regexp = "lttb|minmax", message = "Downsampling must be 'lttb' or 'minmax'")
+   @JsonProperty(value = "downsampling", access = JsonProperty.Access.WRITE_ONLY)
+   private String downsampling;
+
    // Getters and Setters
    
    public String getFacility() {
@@ -109,4 +120,20 @@ public class ProcessingRequestDTO {
    public void setMetric(String metric) {
        this.metric = metric;
    }
+
+   public Integer getMax_points() {
+       return max_points;
+   }
+
+   public void setMax_points(Integer max_points) {
+       this.max_points = max_points;
+   }
+
+   public String getDownsampling() {
+       return downsampling;
+   }
+
+   public void setDownsampling(String downsampling) {
+       this.downsampling = downsampling;
+   }
 }
@@ -0,0 +1,108 @@
+package com.example.sara.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+/**
+ * One closed bucket of the pre-aggregation pyramid: the mergeable summary
+ * (BucketSummary bytes) of an agent's readings of one sensor type over an
+ * hour, day, month or year. Rows are written once, when the bucket is
+ * closed, and never updated.
+ */
+@Entity
+@Table(name = "aggregate_pyramid", uniqueConstraints = @UniqueConstraint(
+    name = "uk_aggregate_pyramid_bucket",
+    columnNames = { "facility", "sensor_type", "agent_serial", "level", "bucket_start" }))
+public class PyramidBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 20)
+    private String facility;
+
+    @Column(name = "sensor_type", nullable = false, length = 50)
+    private String sensorType;
+
+    @Column(name = "agent_serial", nullable = false, length = 100)
+    private String agentSerial;
+
+    /** AggregationLevel key. */
+    @Column(nullable = false, length = 10)
+    private String level;
+
+    @Column(name = "bucket_start", nullable = false)
+    private Instant bucketStart;
+
+    @Column(nullable = false)
+    private long readings;
+
+    @Column(nullable = false)
+    private byte[] summary;
+
+    @Column(name = "computed_at", nullable = false)
+    private Instant computedAt;
+
+    public Long getId() {
+        return id;
+    }
+    public void setId(Long id) {
+        this.id = id;
+    }
+    public String getFacility() {
+        return facility;
+    }
+    public void setFacility(String facility) {
+        this.facility = facility;
+    }
+    public String getSensorType() {
+        return sensorType;
+    }
+    public void setSensorType(String sensorType) {
+        this.sensorType = sensorType;
+    }
+    public String getAgentSerial() {
+        return agentSerial;
+    }
+    public void setAgentSerial(String agentSerial) {
+        this.agentSerial = agentSerial;
+    }
+    public String getLevel() {
+        return level;
+    }
+    public void setLevel(String level) {
+        this.level = level;
+    }
+    public Instant getBucketStart() {
+        return bucketStart;
+    }
+    public void setBucketStart(Instant bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+    public long getReadings() {
+        return readings;
+    }
+    public void setReadings(long readings) {
+        this.readings = readings;
+    }
+    public byte[] getSummary() {
+        return summary;
+    }
+    public void setSummary(byte[] summary) {
+        this.summary = summary;
+    }
+    public Instant getComputedAt() {
+        return computedAt;
+    }
+    public void setComputedAt(Instant computedAt) {
+        this.computedAt = computedAt;
+    }
+}
@@ -3,6 +3,7 @@ package com.example.sara.repositories;
 import com.example.sara.model.SensorType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 
@@ -58,4 +59,31 @@ public interface HierarchyRepository extends JpaRepository<SensorType, Long> {
         ORDER BY s.site_id, l.location_id, sb.sensor_box_id, st.sensor_type_id
         """, nativeQuery = true)
     List<Object[]> getLocationCentricHierarchy();
-}
\ No newline at end of file
+
+    /** (agentSerial, sensorType) of every sensor assigned at a location. */
+    @Query(value = """
+        SELECT DISTINCT
+            sb.agent_serial AS agentSerial,
+            st.name AS sensorType
+        FROM sensor_box sb
+        JOIN sensor_assignment sa ON sb.sensor_box_id = sa.sensor_box_id
+        JOIN sensor_type st ON sa.sensor_type_id = st.sensor_type_id
+        WHERE sb.location_id = :locationId
+        ORDER BY st.name, sb.agent_serial
+        """, nativeQuery = true)
+    List<Object[]> getAssignedSeriesByLocation(@Param("locationId") Long locationId);
+
+    /** (agentSerial, sensorType) of every sensor assigned at any location of a site. */
+    @Query(value = """
+        SELECT DISTINCT
+            sb.agent_serial AS agentSerial,
+            st.name AS sensorType
+        FROM location l
+        JOIN sensor_box sb ON l.location_id = sb.location_id
+        JOIN sensor_assignment sa ON sb.sensor_box_id = sa.sensor_box_id
+        JOIN sensor_type st ON sa.sensor_type_id = st.sensor_type_id
+        WHERE l.site_id = :siteId
+        ORDER BY st.name, sb.agent_serial
+        """, nativeQuery = true)
+    List<Object[]> getAssignedSeriesBySite(@Param("siteId") Long siteId);
+}
@@ -0,0 +1,56 @@
+package com.example.sara.repositories;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.sara.model.PyramidBucket;
+
+/**
+ * Closed buckets of the pre-aggregation pyramid, looked up per series
+ * (facility, sensor type, agent) and level.
+ */
+@Repository
+public interface PyramidBucketRepository extends JpaRepository<PyramidBucket, Long> {
+
+    /**
+     * Buckets of one series and level starting in [from, to), by start.
+     */
+    @Query("SELECT b FROM PyramidBucket b WHERE b.facility = :facility AND b.sensorType = :sensorType"
+        + " AND b.agentSerial = :agentSerial AND b.level = :level"
+        + " AND b.bucketStart >= :from AND b.bucketStart < :to ORDER BY b.bucketStart")
+    List<PyramidBucket> findRange(@Param("facility") String facility,
+                                  @Param("sensorType") String sensorType,
+                                  @Param("agentSerial") String agentSerial,
+                                  @Param("level") String level,
+                                  @Param("from") Instant from,
+                                  @Param("to") Instant to);
+
+    /**
+     * Starts of the buckets of one series and level in [from, to), without
+     * loading their summaries.
+     */
+    @Query("SELECT b.bucketStart FROM PyramidBucket b WHERE b.facility = :facility AND b.sensorType = :sensorType"
+        + " AND b.agentSerial = :agentSerial AND b.level = :level"
+        + " AND b.bucketStart >= :from AND b.bucketStart < :to")
+    List<Instant> findStarts(@Param("facility") String facility,
+                             @Param("sensorType") String sensorType,
+                             @Param("agentSerial") String agentSerial,
+                             @Param("level") String level,
+                             @Param("from") Instant from,
+                             @Param("to") Instant to);
+
+    /**
+     * Start of the latest bucket of one series and level, or null.
+     */
+    @Query("SELECT MAX(b.bucketStart) FROM PyramidBucket b WHERE b.facility = :facility"
+        + " AND b.sensorType = :sensorType AND b.agentSerial = :agentSerial AND b.level = :level")
+    Instant findLatestStart(@Param("facility") String facility,
+                            @Param("sensorType") String sensorType,
+                            @Param("agentSerial") String agentSerial,
+                            @Param("level") String level);
+}
@@ -0,0 +1,260 @@
+package com.example.sara.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.sara.model.PyramidBucket;
+import com.example.sara.repositories.PyramidBucketRepository;
+import com.example.sara.timeseries.AggregationLevel;
+import com.example.sara.timeseries.BucketSummary;
+import com.example.sara.timeseries.ColumnarSeries;
+
+/**
+ * Maintains the pre-aggregation pyramid: hourly, daily, monthly and yearly
+ * bucket summaries per agent and sensor type, in the aggregate_pyramid
+ * table. The minute level is the raw store itself.
+ *
+ * A day is closed once the raw store has sealed it. Each run summarises the
+ * newly sealed days into their hourly buckets and the day, then closes a
+ * month once all its days are in and a year once all its months are. Only
+ * segments written since the last complete run are looked at, so a run
+ * does work in proportion to what was sealed in between.
+ */
+@Service
+public class AggregatePyramidService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregatePyramidService.class);
+    // Margin for the resolution of file modification times
+    private static final Duration MODIFIED_MARGIN = Duration.ofSeconds(5);
+
+    private final PyramidBucketRepository repository;
+    private final RawReadingStore rawStore;
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong daysBuilt = new AtomicLong();
+    private final AtomicLong bucketsWritten = new AtomicLong();
+
+    @Value("${historical.pyramid.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.pyramid.sketch-k:200}")
+    private int sketchK;
+
+    @Value("${historical.pyramid.max-days-per-run:366}")
+    private int maxDaysPerRun;
+
+    // Segments written since then still need a look; null until a run completed
+    private volatile Instant scannedSince;
+    private volatile Instant lastRun;
+
+    public AggregatePyramidService(PyramidBucketRepository repository, RawReadingStore rawStore) {
+        this.repository = repository;
+        this.rawStore = rawStore;
+    }
+
+    public boolean isEnabled() {
+        return enabled && rawStore.isEnabled();
+    }
+
+    /**
+     * Builds the buckets closed since the last run. A run that stops early
+     * (errors, or max-days-per-run reached) leaves the next one to look at
+     * the same segments again.
+     */
+    @Scheduled(initialDelayString = "${historical.pyramid.initial-delay:PT1M}",
+               fixedDelayString = "${historical.pyramid.refresh-interval:PT10M}")
+    public void refresh() {
+        if (!isEnabled()) {
+            return;
+        }
+        Instant runStart = Instant.now();
+        boolean complete = true;
+        int budget = maxDaysPerRun;
+        int built = 0;
+        try {
+            for (RawReadingStore.Series series : rawStore.series()) {
+                try {
+                    int days = refresh(series, scannedSince, budget - built);
+                    built += days;
+                } catch (IOException | RuntimeException e) {
+                    complete = false;
+                    logger.warn("Aggregate pyramid refresh of {}/{}/{} failed: {}", series.facility(),
+                        series.sensorType(), series.agentSerial(), e.getMessage());
+                }
+                if (built >= budget) {
+                    complete = false;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            complete = false;
+            logger.warn("Aggregate pyramid refresh could not list the raw store: {}", e.getMessage());
+        }
+        if (complete) {
+            scannedSince = runStart.minus(MODIFIED_MARGIN);
+        }
+        runs.incrementAndGet();
+        lastRun = runStart;
+        if (built > 0) {
+            logger.info("Aggregate pyramid refresh built {} days in {} ms{}", built,
+                Duration.between(runStart, Instant.now()).toMillis(), complete ? "" : ", more to do");
+        }
+    }
+
+    /** @return the number of days built, at most budget */
+    private int refresh(RawReadingStore.Series series, Instant modifiedSince, int budget) throws IOException {
+        List<LocalDate> sealed = rawStore.sealedDays(series, modifiedSince);
+        if (sealed.isEmpty()) {
+            return 0;
+        }
+        Instant from = startOf(sealed.get(0));
+        Instant to = startOf(sealed.get(sealed.size() - 1).plusDays(1));
+        Set<Instant> builtDays = new HashSet<>(starts(series, AggregationLevel.DAILY, from, to));
+
+        int built = 0;
+        Set<YearMonth> months = new TreeSet<>();
+        for (LocalDate day : sealed) {
+            months.add(YearMonth.from(day));
+            if (builtDays.contains(startOf(day))) {
+                continue;
+            }
+            if (built >= budget) {
+                break;
+            }
+            buildDay(series, day);
+            built++;
+        }
+
+        // Months whose days were all built before also get closed here, should an earlier run have stopped short
+        Set<Integer> years = new TreeSet<>();
+        for (YearMonth month : months) {
+            if (closeMonth(series, month)) {
+                years.add(month.getYear());
+            }
+        }
+        for (int year : years) {
+            closeYear(series, year);
+        }
+        return built;
+    }
+
+    /** Writes the hourly buckets holding readings and the daily bucket, even when empty, of a sealed day. */
+    private void buildDay(RawReadingStore.Series series, LocalDate day) throws IOException {
+        Instant from = startOf(day);
+        Instant to = startOf(day.plusDays(1));
+        ColumnarSeries readings = rawStore.read(series, from, to);
+        long[] times = readings.rawTimes();
+        double[] values = readings.rawValues();
+
+        List<PyramidBucket> rows = new ArrayList<>();
+        int cursor = 0;
+        for (Instant hour = from; hour.isBefore(to); hour = AggregationLevel.HOURLY.next(hour)) {
+            long hourEnd = AggregationLevel.HOURLY.next(hour).toEpochMilli();
+            int first = cursor;
+            while (cursor < readings.size() && times[cursor] < hourEnd) {
+                cursor++;
+            }
+            if (cursor > first) {
+                rows.add(row(series, AggregationLevel.HOURLY, hour, BucketSummary.of(values, first, cursor, sketchK)));
+            }
+        }
+        rows.add(row(series, AggregationLevel.DAILY, from, BucketSummary.of(values, 0, readings.size(), sketchK)));
+        // One transaction, so a daily row always comes with its hourly rows
+        save(rows);
+        daysBuilt.incrementAndGet();
+    }
+
+    /** @return whether the month is closed, now or before */
+    private boolean closeMonth(RawReadingStore.Series series, YearMonth month) {
+        Instant from = startOf(month.atDay(1));
+        Instant to = startOf(month.plusMonths(1).atDay(1));
+        return close(series, AggregationLevel.MONTHLY, from, AggregationLevel.DAILY, to, month.lengthOfMonth());
+    }
+
+    private void closeYear(RawReadingStore.Series series, int year) {
+        Instant from = startOf(LocalDate.of(year, 1, 1));
+        Instant to = startOf(LocalDate.of(year + 1, 1, 1));
+        close(series, AggregationLevel.YEARLY, from, AggregationLevel.MONTHLY, to, 12);
+    }
+
+    /** Merges the parts of a bucket into it once all of them are there. */
+    private boolean close(RawReadingStore.Series series, AggregationLevel level, Instant from,
+                          AggregationLevel partLevel, Instant to, int parts) {
+        if (!starts(series, level, from, AggregationLevel.DAILY.next(from)).isEmpty()) {
+            return true;
+        }
+        List<PyramidBucket> children = repository.findRange(series.facility(), series.sensorType(),
+            series.agentSerial(), partLevel.key(), from, to);
+        if (children.size() < parts) {
+            return false;
+        }
+        // In time order, for the motion runs that cross part boundaries
+        BucketSummary total = new BucketSummary(sketchK);
+        for (PyramidBucket child : children) {
+            total.merge(BucketSummary.fromBytes(child.getSummary()));
+        }
+        save(List.of(row(series, level, from, total)));
+        return true;
+    }
+
+    private void save(List<PyramidBucket> rows) {
+        try {
+            repository.saveAll(rows);
+            bucketsWritten.addAndGet(rows.size());
+        } catch (DataIntegrityViolationException e) {
+            // Another instance built the same buckets
+            logger.debug("Aggregate pyramid buckets already present: {}", e.getMessage());
+        }
+    }
+
+    private List<Instant> starts(RawReadingStore.Series series, AggregationLevel level, Instant from, Instant to) {
+        return repository.findStarts(series.facility(), series.sensorType(), series.agentSerial(), level.key(), from, to);
+    }
+
+    private static PyramidBucket row(RawReadingStore.Series series, AggregationLevel level, Instant start,
+                                     BucketSummary summary) {
+        PyramidBucket row = new PyramidBucket();
+        row.setFacility(series.facility());
+        row.setSensorType(series.sensorType());
+        row.setAgentSerial(series.agentSerial());
+        row.setLevel(level.key());
+        row.setBucketStart(start);
+        row.setReadings(summary.count());
+        row.setSummary(summary.toBytes());
+        row.setComputedAt(Instant.now());
+        return row;
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", isEnabled());
+        state.put("runs", runs.get());
+        state.put("last_run", lastRun);
+        state.put("scanned_since", scannedSince);
+        state.put("days_built", daysBuilt.get());
+        state.put("buckets_written", bucketsWritten.get());
+        return state;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.sara.service;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Writes export rows as an Arrow IPC stream, one record batch per
+ * batchRows rows, so memory stays at one batch whatever the export size.
+ *
+ * agent_serial is dictionary-encoded against the agents of the request,
+ * which are known before the first row; the stream format needs the
+ * dictionary up front. Columns as in ParquetExportWriter.
+ */
+final class ArrowExportWriter implements Closeable {
+
+    private static final ArrowType TIMESTAMP = new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC");
+
+    private final BufferAllocator allocator = new RootAllocator();
+    private final VarCharVector agentDictionary;
+    private final Map<String, Integer> agentIndex = new HashMap<>();
+    private final VectorSchemaRoot root;
+    private final ArrowStreamWriter writer;
+    private final int batchRows;
+    private int rows;
+
+    private final TimeStampMilliTZVector timeOfReading;
+    private final IntVector agentSerial;
+    private final Float8Vector reading;
+    private final VarCharVector deviceType;
+    private final VarCharVector unit;
+    private final TimeStampMilliTZVector timeOfCreate;
+    private final VarCharVector id;
+
+    ArrowExportWriter(OutputStream out, List<String> agentSerials, int batchRows, CompressionUtil.CodecType codec) {
+        this.batchRows = Math.max(1, batchRows);
+        agentDictionary = new VarCharVector("agent_serial", allocator);
+        agentDictionary.allocateNew();
+        for (String serial : agentSerials) {
+            if (!agentIndex.containsKey(serial)) {
+                agentDictionary.setSafe(agentIndex.size(), serial.getBytes(StandardCharsets.UTF_8));
+                agentIndex.put(serial, agentIndex.size());
+            }
+        }
+        agentDictionary.setValueCount(agentIndex.size());
+        DictionaryEncoding encoding = new DictionaryEncoding(0, false, new ArrowType.Int(32, true));
+        DictionaryProvider.MapDictionaryProvider dictionaries =
+            new DictionaryProvider.MapDictionaryProvider(new Dictionary(agentDictionary, encoding));
+
+        Schema schema = new Schema(List.of(
+            Field.notNullable("time_of_reading", TIMESTAMP),
+            new Field("agent_serial", new FieldType(false, new ArrowType.Int(32, true), encoding), null),
+            Field.notNullable("reading", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            Field.notNullable("device_type", ArrowType.Utf8.INSTANCE),
+            Field.notNullable("unit", ArrowType.Utf8.INSTANCE),
+            Field.nullable("time_of_create", TIMESTAMP),
+            Field.notNullable("id", ArrowType.Utf8.INSTANCE)
+        ));
+        root = VectorSchemaRoot.create(schema, allocator);
+        timeOfReading = (TimeStampMilliTZVector) root.getVector("time_of_reading");
+        agentSerial = (IntVector) root.getVector("agent_serial");
+        reading = (Float8Vector) root.getVector("reading");
+        deviceType = (VarCharVector) root.getVector("device_type");
+        unit = (VarCharVector) root.getVector("unit");
+        timeOfCreate = (TimeStampMilliTZVector) root.getVector("time_of_create");
+        id = (VarCharVector) root.getVector("id");
+
+        // The writer closes its channel, which must not close the response
+        writer = new ArrowStreamWriter(root, dictionaries, Channels.newChannel(new NonClosingOutputStream(out)),
+            IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE, codec);
+    }
+
+    /** Writes the schema and the agent dictionary. */
+    void start() throws IOException {
+        writer.start();
+        root.allocateNew();
+    }
+
+    void write(ExportCsvReader.Row row) throws IOException {
+        Integer agent = agentIndex.get(row.agentSerial());
+        if (agent == null) {
+            throw new IOException("Export row of agent " + row.agentSerial() + " that was not requested");
+        }
+        timeOfReading.setSafe(rows, row.timeOfReading());
+        agentSerial.setSafe(rows, agent);
+        reading.setSafe(rows, row.reading());
+        deviceType.setSafe(rows, row.deviceType().getBytes(StandardCharsets.UTF_8));
+        unit.setSafe(rows, row.unit().getBytes(StandardCharsets.UTF_8));
+        if (row.timeOfCreate() != null) {
+            timeOfCreate.setSafe(rows, row.timeOfCreate());
+        } else {
+            timeOfCreate.setNull(rows);
+        }
+        id.setSafe(rows, row.id().getBytes(StandardCharsets.UTF_8));
+        if (++rows >= batchRows) {
+            flushBatch();
+        }
+    }
+
+    /** Writes the last batch and the end-of-stream marker; does not close the stream. */
+    void finish() throws IOException {
+        if (rows > 0) {
+            flushBatch();
+        }
+        writer.end();
+    }
+
+    private void flushBatch() throws IOException {
+        root.setRowCount(rows);
+        writer.writeBatch();
+        root.allocateNew();
+        rows = 0;
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+        root.close();
+        agentDictionary.close();
+        allocator.close();
+    }
+
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
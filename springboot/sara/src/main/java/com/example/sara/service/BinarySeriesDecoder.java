@@ -0,0 +1,147 @@
+package com.example.sara.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+
+import com.example.sara.dto.ColumnarProcessingResponseDTO;
+import com.example.sara.dto.MetaDTO;
+import com.example.sara.timeseries.ColumnarSeries;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decodes the binary variant of /process/batched_stream
+ * (application/vnd.sara.series) into columnar chunks.
+ *
+ * One frame per chunk, all integers big-endian:
+ * <pre>
+ * uint32 frame length (bytes after this field)
+ * uint32 header length, header as UTF-8 JSON (every top-level field except aggregated_results)
+ * uint32 group count, then per group:
+ *   uint16 key length, key as UTF-8
+ *   uint32 point count n, n x int64 epoch millis, n x float64 values
+ * </pre>
+ * Timestamps and values are copied in bulk into the series arrays; only the
+ * small header is parsed as JSON. The encoder is encode_series_frame in
+ * historical-processing-ms.
+ */
+final class BinarySeriesDecoder {
+
+    static final MediaType MEDIA_TYPE = new MediaType("application", "vnd.sara.series");
+
+    private static final ObjectMapper HEADER_MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private BinarySeriesDecoder() {}
+
+    /** One columnar chunk per frame; frames may be split across network buffers. */
+    static Flux<ColumnarProcessingResponseDTO> decode(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            FrameReader reader = new FrameReader();
+            return body
+                .concatMapIterable(reader::feed)
+                .concatWith(Mono.fromRunnable(reader::finish));
+        });
+    }
+
+    /** Accumulates bytes until whole frames are available. */
+    private static final class FrameReader {
+
+        private byte[] pending = new byte[64 * 1024];
+        private int pendingLength;
+
+        List<ColumnarProcessingResponseDTO> feed(DataBuffer buffer) {
+            int readable = buffer.readableByteCount();
+            ensureCapacity(pendingLength + readable);
+            buffer.read(pending, pendingLength, readable);
+            DataBufferUtils.release(buffer);
+            pendingLength += readable;
+
+            List<ColumnarProcessingResponseDTO> chunks = new ArrayList<>(1);
+            int offset = 0;
+            while (pendingLength - offset >= Integer.BYTES) {
+                int frameLength = ByteBuffer.wrap(pending, offset, Integer.BYTES).getInt();
+                if (pendingLength - offset - Integer.BYTES < frameLength) {
+                    break;
+                }
+                chunks.add(readFrame(ByteBuffer.wrap(pending, offset + Integer.BYTES, frameLength)));
+                offset += Integer.BYTES + frameLength;
+            }
+            if (offset > 0) {
+                System.arraycopy(pending, offset, pending, 0, pendingLength - offset);
+                pendingLength -= offset;
+            }
+            return chunks;
+        }
+
+        void finish() {
+            if (pendingLength > 0) {
+                throw new IllegalStateException("Binary series stream ended inside a frame (" + pendingLength + " bytes left)");
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > pending.length) {
+                byte[] grown = new byte[Math.max(capacity, pending.length * 2)];
+                System.arraycopy(pending, 0, grown, 0, pendingLength);
+                pending = grown;
+            }
+        }
+    }
+
+    private static ColumnarProcessingResponseDTO readFrame(ByteBuffer frame) {
+        ColumnarProcessingResponseDTO chunk = readHeader(frame);
+
+        int groupCount = frame.getInt();
+        for (int g = 0; g < groupCount; g++) {
+            byte[] key = new byte[Short.toUnsignedInt(frame.getShort())];
+            frame.get(key);
+            int n = frame.getInt();
+
+            long[] times = new long[n];
+            double[] values = new double[n];
+            frame.asLongBuffer().get(times);
+            frame.position(frame.position() + n * Long.BYTES);
+            frame.asDoubleBuffer().get(values);
+            frame.position(frame.position() + n * Double.BYTES);
+
+            chunk.getSeries().put(new String(key, StandardCharsets.UTF_8), new ColumnarSeries(times, values, n));
+        }
+        return chunk;
+    }
+
+    private static ColumnarProcessingResponseDTO readHeader(ByteBuffer frame) {
+        byte[] json = new byte[frame.getInt()];
+        frame.get(json);
+        try {
+            JsonNode header = HEADER_MAPPER.readTree(json);
+            ColumnarProcessingResponseDTO chunk = new ColumnarProcessingResponseDTO();
+            chunk.setFacility(header.path("facility").asText(null));
+            chunk.setSensor_type(header.path("sensor_type").asText(null));
+            chunk.setAggregation_level(header.path("aggregation_level").asText(null));
+            chunk.setMetric(header.path("metric").asText(null));
+            List<String> agents = new ArrayList<>();
+            header.path("agent_serial").forEach(agent -> agents.add(agent.asText()));
+            chunk.setAgent_serial(agents);
+            JsonNode meta = header.get("meta");
+            if (meta != null && !meta.isNull()) {
+                chunk.setMeta(HEADER_MAPPER.treeToValue(meta, MetaDTO.class));
+            }
+            return chunk;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid binary series frame header", e);
+        }
+    }
+}
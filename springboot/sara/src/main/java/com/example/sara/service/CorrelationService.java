@@ -0,0 +1,225 @@
+package com.example.sara.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.sara.dto.ColumnarProcessingResponseDTO;
+import com.example.sara.dto.CorrelationRequestDTO;
+import com.example.sara.dto.CorrelationResponseDTO;
+import com.example.sara.exception.ValidationException;
+import com.example.sara.model.ProcessingRequestDTO;
+import com.example.sara.timeseries.AggregationLevel;
+import com.example.sara.timeseries.ColumnarSeries;
+import com.example.sara.timeseries.Correlation;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Cross-sensor correlation (e.g. noise versus occupancy) computed in the
+ * gateway, so clients get coefficients instead of aligning full series.
+ *
+ * Each series is fetched like a columnar /process request, so it shares
+ * the bucket cache, the circuit breaker and the stale fallback; the series
+ * are fetched concurrently. Pairs are then correlated on the common
+ * ForkJoin pool when there is enough work to be worth splitting.
+ */
+@Service
+public class CorrelationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CorrelationService.class);
+    private static final String DEFAULT_METRIC = "average";
+    private static final int MAX_SAMPLE_POINTS = 5_000;
+    // Pair-lag-points below which splitting across cores costs more than it saves
+    private static final long PARALLEL_THRESHOLD = 1_000_000;
+
+    private final HistoricalProcessingService processingService;
+
+    @Value("${historical.correlation.parallelism:4}")
+    private int parallelism;
+
+    @Value("${historical.correlation.max-series:12}")
+    private int maxSeries;
+
+    @Value("${historical.correlation.max-lag:168}")
+    private int maxLag;
+
+    @Value("${historical.correlation.sample-points:200}")
+    private int defaultSamplePoints;
+
+    public CorrelationService(HistoricalProcessingService processingService) {
+        this.processingService = processingService;
+    }
+
+    /**
+     * @throws ValidationException when there are too many series, max_lag is
+     *         above correlation.max-lag or end is before start
+     */
+    public CorrelationResponseDTO correlate(CorrelationRequestDTO request, String userEmail) {
+        List<CorrelationRequestDTO.Series> requested = request.getSeries();
+        if (requested.size() > maxSeries) {
+            throw new ValidationException("At most " + maxSeries + " series can be correlated at once");
+        }
+        int lag = request.getMax_lag() != null ? request.getMax_lag() : 0;
+        if (lag > maxLag) {
+            throw new ValidationException("max_lag must not exceed " + maxLag);
+        }
+        if (request.getEnd().isBefore(request.getStart())) {
+            throw new ValidationException("end must not be before start");
+        }
+        int samplePoints = Math.min(MAX_SAMPLE_POINTS,
+            request.getSample_points() != null ? request.getSample_points() : defaultSamplePoints);
+        AggregationLevel level = AggregationLevel.fromKey(request.getAggregation_level());
+
+        // The fetches block, so each runs on its own elastic thread
+        List<ColumnarSeries> series = Flux.range(0, requested.size())
+            .flatMapSequential(index -> Mono.fromCallable(() -> fetch(request, requested.get(index), userEmail))
+                    .subscribeOn(Schedulers.boundedElastic()),
+                Math.max(1, parallelism))
+            .collectList()
+            .block();
+
+        List<CorrelationResponseDTO.SeriesSummary> summaries = new ArrayList<>(requested.size());
+        for (int s = 0; s < requested.size(); s++) {
+            CorrelationResponseDTO.SeriesSummary summary = new CorrelationResponseDTO.SeriesSummary();
+            summary.setSensor_type(requested.get(s).getSensor_type());
+            summary.setAgent_serial(requested.get(s).getAgent_serial());
+            summary.setMetric(metricOf(request, requested.get(s)));
+            summary.setPoints(series.get(s).size());
+            summaries.add(summary);
+        }
+
+        // Minute level carries raw readings, averaged per minute here like any other bucket
+        Correlation.Aligned aligned = Correlation.align(series,
+            time -> level.normalize(Instant.ofEpochMilli(time)).toEpochMilli());
+        double[][] values = aligned.values();
+        int count = values.length;
+        // Lags are counted in buckets of the level, so they need every bucket, gaps included
+        double[][] grid = lag > 0
+            ? Correlation.grid(series, time -> level.normalize(Instant.ofEpochMilli(time)).toEpochMilli(),
+                time -> level.next(Instant.ofEpochMilli(time)).toEpochMilli()).values()
+            : null;
+
+        double[][] ranks = new double[count][];
+        parallelIf(IntStream.range(0, count), (long) count * aligned.size())
+            .forEach(s -> ranks[s] = Correlation.ranks(values[s]));
+
+        Double[][] pearson = new Double[count][count];
+        Double[][] spearman = new Double[count][count];
+        int pairCount = count * (count - 1) / 2;
+        int[] pairA = new int[pairCount];
+        int[] pairB = new int[pairCount];
+        for (int a = 0, p = 0; a < count; a++) {
+            pearson[a][a] = coefficient(Correlation.pearson(values[a], values[a]));
+            spearman[a][a] = coefficient(Correlation.pearson(ranks[a], ranks[a]));
+            for (int b = a + 1; b < count; b++, p++) {
+                pairA[p] = a;
+                pairB[p] = b;
+            }
+        }
+
+        CorrelationResponseDTO.CrossCorrelation[] lagged = new CorrelationResponseDTO.CrossCorrelation[pairCount];
+        parallelIf(IntStream.range(0, pairCount), (long) pairCount * aligned.size() * (2L * lag + 3))
+            .forEach(p -> {
+                int a = pairA[p];
+                int b = pairB[p];
+                Double r = coefficient(Correlation.pearson(values[a], values[b]));
+                Double rho = coefficient(Correlation.pearson(ranks[a], ranks[b]));
+                // Distinct cells per pair, so the matrices need no locking
+                pearson[a][b] = r;
+                pearson[b][a] = r;
+                spearman[a][b] = rho;
+                spearman[b][a] = rho;
+                if (lag > 0) {
+                    lagged[p] = crossCorrelation(a, b, Correlation.crossCorrelation(grid[a], grid[b], lag), lag);
+                }
+            });
+
+        int[] sampled = Correlation.sample(aligned.size(), samplePoints);
+        long[] sampleTime = new long[sampled.length];
+        double[][] sampleValues = new double[count][sampled.length];
+        for (int i = 0; i < sampled.length; i++) {
+            sampleTime[i] = aligned.times()[sampled[i]];
+            for (int s = 0; s < count; s++) {
+                sampleValues[s][i] = values[s][sampled[i]];
+            }
+        }
+
+        CorrelationResponseDTO response = new CorrelationResponseDTO();
+        response.setFacility(request.getFacility());
+        response.setAggregation_level(level.key());
+        response.setSeries(summaries);
+        response.setAligned_points(aligned.size());
+        response.setPearson(pearson);
+        response.setSpearman(spearman);
+        response.setMax_lag(lag);
+        response.setCross_correlation(lag > 0 ? List.of(lagged) : List.of());
+        response.setSample_time(sampleTime);
+        response.setSample_values(sampleValues);
+        logger.info("Correlated {} series over {} aligned {} buckets for {}", count, aligned.size(), level.key(), userEmail);
+        return response;
+    }
+
+    /** One series as a single time-ordered column, whatever its groups. */
+    private ColumnarSeries fetch(CorrelationRequestDTO request, CorrelationRequestDTO.Series series, String userEmail) {
+        ProcessingRequestDTO single = new ProcessingRequestDTO();
+        single.setFacility(request.getFacility());
+        single.setStart(request.getStart());
+        single.setEnd(request.getEnd());
+        single.setSensor_type(series.getSensor_type());
+        single.setAgent_serial(List.of(series.getAgent_serial()));
+        single.setAggregation_level(request.getAggregation_level());
+        single.setMetric(metricOf(request, series));
+
+        ColumnarProcessingResponseDTO response = processingService.processHistoricalDataColumnar(single, userEmail);
+        ColumnarSeries flat = new ColumnarSeries();
+        if (response != null) {
+            response.getSeries().values().forEach(flat::append);
+        }
+        return flat;
+    }
+
+    private static String metricOf(CorrelationRequestDTO request, CorrelationRequestDTO.Series series) {
+        if (series.getMetric() != null) {
+            return series.getMetric();
+        }
+        return request.getMetric() != null ? request.getMetric() : DEFAULT_METRIC;
+    }
+
+    private static CorrelationResponseDTO.CrossCorrelation crossCorrelation(int a, int b, double[] coefficients, int lag) {
+        CorrelationResponseDTO.CrossCorrelation result = new CorrelationResponseDTO.CrossCorrelation();
+        result.setA(a);
+        result.setB(b);
+        Double[] boxed = new Double[coefficients.length];
+        int best = -1;
+        for (int k = 0; k < coefficients.length; k++) {
+            boxed[k] = coefficient(coefficients[k]);
+            if (boxed[k] != null && (best < 0 || Math.abs(coefficients[k]) > Math.abs(coefficients[best]))) {
+                best = k;
+            }
+        }
+        result.setCoefficients(boxed);
+        if (best >= 0) {
+            result.setBest_lag(best - lag);
+            result.setBest_coefficient(coefficients[best]);
+        }
+        return result;
+    }
+
+    /** NaN (undefined) becomes null, which JSON can carry. */
+    private static Double coefficient(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static IntStream parallelIf(IntStream stream, long work) {
+        return work >= PARALLEL_THRESHOLD ? stream.parallel() : stream;
+    }
+}
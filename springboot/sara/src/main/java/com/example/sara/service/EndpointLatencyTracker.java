@@ -0,0 +1,63 @@
+package com.example.sara.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recent latencies of upstream endpoints, kept in a fixed-size ring per
+ * endpoint, from which percentiles are read (e.g. the hedging delay).
+ */
+@Component
+public class EndpointLatencyTracker {
+
+    private static final int WINDOW = 256;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    @Value("${historical.processing.hedging.min-samples:20}")
+    private int minSamples;
+
+    public void record(String endpoint, long latencyMillis) {
+        windows.computeIfAbsent(endpoint, k -> new Window()).add(latencyMillis);
+    }
+
+    /**
+     * @return the given percentile (0..1) of the recent latencies, or null
+     *         while fewer than min-samples have been recorded
+     */
+    public Duration percentile(String endpoint, double percentile) {
+        Window window = windows.get(endpoint);
+        if (window == null) {
+            return null;
+        }
+        long[] samples = window.samples();
+        if (samples.length < minSamples) {
+            return null;
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile * samples.length) - 1;
+        return Duration.ofMillis(samples[Math.max(0, Math.min(index, samples.length - 1))]);
+    }
+
+    private static final class Window {
+
+        private final long[] ring = new long[WINDOW];
+        private int next;
+        private int size;
+
+        synchronized void add(long value) {
+            ring[next] = value;
+            next = (next + 1) % WINDOW;
+            size = Math.min(size + 1, WINDOW);
+        }
+
+        synchronized long[] samples() {
+            return Arrays.copyOf(ring, size);
+        }
+    }
+}
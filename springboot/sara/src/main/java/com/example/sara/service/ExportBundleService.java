@@ -0,0 +1,367 @@
+package com.example.sara.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+
+import com.example.sara.dto.ExportBundleRequestDTO;
+import com.example.sara.dto.ExportRequestDTO;
+import com.example.sara.exception.UpstreamServiceException;
+import com.example.sara.exception.ValidationException;
+import com.example.sara.repositories.HierarchyRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Export bundles: one ZIP entry per (sensor type, agent) series.
+ *
+ * Up to bundle.parallelism series exports are requested from upstream at
+ * once and merged back in series order; while the head series is written,
+ * the ones behind it hold at most streaming.prefetch buffers each and are
+ * otherwise held back by backpressure. Entries are deflated as the buffers
+ * arrive, so memory does not grow with the size of the bundle. A series
+ * that fails does not fail the bundle: it is recorded in manifest.json,
+ * the last entry.
+ */
+@Service
+public class ExportBundleService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportBundleService.class);
+    private static final int ZIP_BUFFER_SIZE = 64 * 1024;
+
+    /** Sensor types accepted by /export (see ExportRequestDTO). */
+    static final Set<String> EXPORTABLE_SENSOR_TYPES = Set.of(
+        "humidity", "luminance", "microphone", "motion", "presence",
+        "radio", "temperature", "thermalmap", "thermography");
+
+    /**
+     * One exported series. fileName is the agent serial made safe for a ZIP
+     * entry, with a suffix when that would clash with another agent's.
+     */
+    public record Series(String sensorType, String agentSerial, String fileName) {
+
+        public Series(String sensorType, String agentSerial) {
+            this(sensorType, agentSerial, agentSerial.replaceAll("[^A-Za-z0-9._-]", "_"));
+        }
+
+        String entryName(String format) {
+            return sensorType + "/" + fileName + "." + format;
+        }
+    }
+
+    private final HierarchyRepository hierarchyRepository;
+    private final HistoricalProcessingService processingService;
+    private final ExportEncoder exportEncoder;
+    private final ObjectWriter manifestWriter;
+
+    @Value("${historical.export.bundle.parallelism:4}")
+    private int parallelism;
+
+    @Value("${historical.export.bundle.max-series:500}")
+    private int maxSeries;
+
+    @Value("${historical.export.bundle.compression-level:6}")
+    private int compressionLevel;
+
+    @Value("${historical.streaming.prefetch:8}")
+    private int streamingPrefetch;
+
+    public ExportBundleService(HierarchyRepository hierarchyRepository,
+                               HistoricalProcessingService processingService,
+                               ExportEncoder exportEncoder,
+                               ObjectMapper objectMapper) {
+        this.hierarchyRepository = hierarchyRepository;
+        this.processingService = processingService;
+        this.exportEncoder = exportEncoder;
+        // The manifest is written into the ZIP, which must stay open
+        this.manifestWriter = objectMapper.writerWithDefaultPrettyPrinter()
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Series of the bundle, sorted by sensor type then agent.
+     *
+     * @throws ValidationException when the request names no series, names
+     *         both a site and a location, names a sensor type that cannot be
+     *         exported or exceeds bundle.max-series
+     */
+    public List<Series> resolveSeries(ExportBundleRequestDTO request) {
+        if (request.getSite_id() != null && request.getLocation_id() != null) {
+            throw new ValidationException("Give either site_id or location_id, not both");
+        }
+        Set<String> sensorTypes = sensorTypes(request.getSensor_types());
+        Set<String> agents = request.getAgent_serials() != null && !request.getAgent_serials().isEmpty()
+            ? new LinkedHashSet<>(request.getAgent_serials()) : null;
+
+        Set<Series> series = new LinkedHashSet<>();
+        if (request.getSite_id() != null || request.getLocation_id() != null) {
+            List<Object[]> rows = request.getLocation_id() != null
+                ? hierarchyRepository.getAssignedSeriesByLocation(request.getLocation_id())
+                : hierarchyRepository.getAssignedSeriesBySite(request.getSite_id());
+            for (Object[] row : rows) {
+                String agentSerial = (String) row[0];
+                String sensorType = ((String) row[1]).trim().toLowerCase(Locale.ROOT);
+                if (!EXPORTABLE_SENSOR_TYPES.contains(sensorType)) {
+                    logger.debug("Leaving sensor type {} of {} out of the bundle: not exportable", sensorType, agentSerial);
+                    continue;
+                }
+                if ((sensorTypes == null || sensorTypes.contains(sensorType))
+                        && (agents == null || agents.contains(agentSerial))) {
+                    series.add(new Series(sensorType, agentSerial));
+                }
+            }
+        } else {
+            if (sensorTypes == null || agents == null) {
+                throw new ValidationException("A bundle needs site_id, location_id or both sensor_types and agent_serials");
+            }
+            for (String sensorType : sensorTypes) {
+                for (String agentSerial : agents) {
+                    series.add(new Series(sensorType, agentSerial));
+                }
+            }
+        }
+
+        if (series.size() > maxSeries) {
+            throw new ValidationException("Bundle has " + series.size() + " series, more than " + maxSeries
+                + "; narrow it with sensor_types or agent_serials");
+        }
+        List<Series> sorted = new ArrayList<>(series);
+        sorted.sort(Comparator.comparing(Series::sensorType).thenComparing(Series::agentSerial));
+        return withUniqueFileNames(sorted);
+    }
+
+    /**
+     * Suffixes file names that clash within a sensor type, such as those of
+     * A/1 and A_1. Names are compared ignoring case, as the bundle may be
+     * unpacked on a case-insensitive file system.
+     */
+    private static List<Series> withUniqueFileNames(List<Series> sorted) {
+        List<Series> unique = new ArrayList<>(sorted.size());
+        Set<String> taken = new HashSet<>();
+        for (Series series : sorted) {
+            String fileName = series.fileName();
+            for (int n = 2; !taken.add(series.sensorType() + "/" + fileName.toLowerCase(Locale.ROOT)); n++) {
+                fileName = series.fileName() + "-" + n;
+            }
+            unique.add(fileName.equals(series.fileName())
+                ? series
+                : new Series(series.sensorType(), series.agentSerial(), fileName));
+        }
+        return unique;
+    }
+
+    /**
+     * Writes the bundle of the given series as a ZIP. Must be called on a
+     * thread that may block; out is finished but not closed.
+     *
+     * @throws SecurityException when the user has no valid upstream token
+     */
+    public void writeBundle(ExportBundleRequestDTO request, List<Series> series, String userEmail, OutputStream out)
+            throws IOException {
+        // Checked once here rather than failing every series
+        processingService.getValidatedToken(userEmail);
+
+        Flux<Part> parts = Flux.range(0, series.size())
+            .flatMapSequential(index -> Flux.defer(() -> processingService.streamExport(
+                        exportRequest(request, series.get(index)), userEmail))
+                    .map(buffer -> new Part(index, buffer, null))
+                    .concatWith(Mono.fromSupplier(() -> new Part(index, null, null)))
+                    .onErrorResume(e -> Mono.just(new Part(index, null, e))),
+                Math.max(1, parallelism), Math.max(1, streamingPrefetch))
+            .doOnDiscard(Part.class, Part::release);
+
+        List<Map<String, Object>> manifest = new ArrayList<>(series.size());
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, ZIP_BUFFER_SIZE));
+        zip.setLevel(compressionLevel);
+        try (Stream<Part> stream = parts.toStream(Math.max(1, streamingPrefetch))) {
+            Iterator<Part> merged = stream.iterator();
+            for (int index = 0; index < series.size(); index++) {
+                manifest.add(writeEntry(zip, request.getFormat(), series.get(index), new SeriesBuffers(merged, index)));
+            }
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("facility", request.getFacility());
+        summary.put("start", request.getStart());
+        summary.put("end", request.getEnd());
+        summary.put("format", request.getFormat());
+        summary.put("series", manifest);
+        zip.putNextEntry(new ZipEntry("manifest.json"));
+        manifestWriter.writeValue(zip, summary);
+        zip.closeEntry();
+        zip.finish();
+        zip.flush();
+    }
+
+    /** Writes one series and returns its manifest record. */
+    private Map<String, Object> writeEntry(ZipOutputStream zip, String format, Series series, SeriesBuffers buffers)
+            throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sensor_type", series.sensorType());
+        result.put("agent_serial", series.agentSerial());
+
+        // No entry for a series without data or that failed before its first byte
+        if (!buffers.hasNext()) {
+            result.put("status", buffers.error != null ? status(buffers.error) : "no_data");
+            if (buffers.error != null) {
+                result.put("error", buffers.error.getMessage());
+            }
+            return result;
+        }
+
+        ZipEntry entry = new ZipEntry(series.entryName(format));
+        zip.putNextEntry(entry);
+        try {
+            if (ExportEncoder.isColumnar(format)) {
+                exportEncoder.writeColumnar(format, List.of(series.agentSerial()), buffers, zip, rows -> {});
+            } else {
+                while (buffers.hasNext()) {
+                    try (InputStream in = buffers.next().asInputStream(true)) {
+                        in.transferTo(zip);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // A conversion cut short by the upstream failure is recorded below; anything else ends the bundle
+            if (!buffers.ended || buffers.error == null) {
+                throw e;
+            }
+        }
+        buffers.drain();
+        zip.closeEntry();
+
+        result.put("entry", entry.getName());
+        result.put("bytes", entry.getSize());
+        result.put("compressed_bytes", entry.getCompressedSize());
+        if (buffers.error != null) {
+            // Upstream failed mid-series: the entry is truncated
+            logger.warn("Bundle series {}/{} failed after {} bytes: {}", series.sensorType(), series.agentSerial(),
+                entry.getSize(), buffers.error.getMessage());
+            result.put("status", "failed");
+            result.put("error", buffers.error.getMessage());
+        } else {
+            result.put("status", "ok");
+        }
+        return result;
+    }
+
+    private static String status(Throwable error) {
+        return error instanceof UpstreamServiceException e && e.getStatusCode() == 404 ? "no_data" : "failed";
+    }
+
+    private static Set<String> sensorTypes(List<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return null;
+        }
+        Set<String> sensorTypes = new LinkedHashSet<>();
+        for (String sensorType : requested) {
+            String normalized = sensorType.trim().toLowerCase(Locale.ROOT);
+            if (!EXPORTABLE_SENSOR_TYPES.contains(normalized)) {
+                throw new ValidationException("Sensor type " + sensorType + " cannot be exported");
+            }
+            sensorTypes.add(normalized);
+        }
+        return sensorTypes;
+    }
+
+    private static ExportRequestDTO exportRequest(ExportBundleRequestDTO request, Series series) {
+        ExportRequestDTO export = new ExportRequestDTO();
+        export.setFacility(request.getFacility());
+        export.setSensorType(series.sensorType());
+        export.setAgentSerial(List.of(series.agentSerial()));
+        export.setStart(request.getStart());
+        export.setEnd(request.getEnd());
+        export.setFormat(request.getFormat());
+        return export;
+    }
+
+    /**
+     * A buffer of a series, or the end of the series when buffer is null;
+     * error is set when the series ended by failing.
+     */
+    private record Part(int series, DataBuffer buffer, Throwable error) {
+
+        void release() {
+            if (buffer != null) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+
+    /** The buffers of one series, read off the merged parts up to its end. */
+    private static final class SeriesBuffers implements Iterator<DataBuffer> {
+
+        private final Iterator<Part> parts;
+        private final int series;
+        private DataBuffer next;
+        private boolean ended;
+        private Throwable error;
+
+        SeriesBuffers(Iterator<Part> parts, int series) {
+            this.parts = parts;
+            this.series = series;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !ended) {
+                // Every series ends with a part without buffer, so this cannot run past it
+                Part part = parts.next();
+                if (part.series() != series) {
+                    part.release();
+                    throw new IllegalStateException("Bundle part of series " + part.series() + " while reading " + series);
+                }
+                if (part.buffer() != null) {
+                    next = part.buffer();
+                } else {
+                    ended = true;
+                    error = part.error();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public DataBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DataBuffer buffer = next;
+            next = null;
+            return buffer;
+        }
+
+        /** Skips what is left of the series. */
+        void drain() {
+            while (hasNext()) {
+                DataBufferUtils.release(next());
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.sara.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the CSV produced by /export of historical-processing-ms (Python
+ * csv.DictWriter: header line, CRLF line ends, fields quoted when needed)
+ * one row at a time. Columns are found by name in the header.
+ */
+final class ExportCsvReader {
+
+    /** One exported reading. timeOfCreate is null when upstream had none. */
+    record Row(String id, String agentSerial, String deviceType, double reading, String unit,
+               long timeOfReading, Long timeOfCreate) {}
+
+    private final Reader in;
+    private final int id;
+    private final int agentSerial;
+    private final int deviceType;
+    private final int reading;
+    private final int unit;
+    private final int timeOfReading;
+    private final int timeOfCreate;
+
+    ExportCsvReader(Reader in) throws IOException {
+        this.in = in;
+        List<String> header = readRecord();
+        if (header == null) {
+            header = List.of();
+        }
+        this.id = header.indexOf("id");
+        this.agentSerial = header.indexOf("agentSerial");
+        this.deviceType = header.indexOf("deviceType");
+        this.reading = header.indexOf("reading");
+        this.unit = header.indexOf("unit");
+        this.timeOfReading = header.indexOf("timeOfReading");
+        this.timeOfCreate = header.indexOf("timeOfCreate");
+        if (agentSerial < 0 || reading < 0 || timeOfReading < 0) {
+            throw new IOException("Export CSV lacks agentSerial, reading or timeOfReading: " + header);
+        }
+    }
+
+    /** @return the next row, or null at the end of the export */
+    Row next() throws IOException {
+        List<String> fields;
+        do {
+            fields = readRecord();
+            if (fields == null) {
+                return null;
+            }
+        } while (fields.size() == 1 && fields.get(0).isEmpty());
+
+        String readingText = field(fields, reading);
+        Instant time = parseInstant(field(fields, timeOfReading));
+        if (time == null) {
+            throw new IOException("Export row without timeOfReading: " + fields);
+        }
+        Instant created = parseInstant(field(fields, timeOfCreate));
+        return new Row(
+            field(fields, id),
+            field(fields, agentSerial),
+            field(fields, deviceType),
+            readingText.isEmpty() ? Double.NaN : Double.parseDouble(readingText),
+            field(fields, unit),
+            time.toEpochMilli(),
+            created != null ? created.toEpochMilli() : null
+        );
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index) : "";
+    }
+
+    /** ISO-8601 with or without offset (UTC assumed), 'T' or space separated. */
+    private static Instant parseInstant(String text) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        String iso = text.replace(' ', 'T');
+        try {
+            return OffsetDateTime.parse(iso).toInstant();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC);
+        }
+    }
+
+    private List<String> readRecord() throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Export CSV ended inside a quoted field");
+                }
+                if (c == '"') {
+                    c = in.read();
+                    if (c != '"') {
+                        // Closing quote: c is the character after it
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                fields.add(field.toString());
+                return fields;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+    }
+}
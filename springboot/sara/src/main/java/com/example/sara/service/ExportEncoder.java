@@ -0,0 +1,145 @@
+package com.example.sara.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongConsumer;
+
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Export formats: csv and json are passed through from upstream, parquet
+ * and arrow are written by the gateway from the CSV export, row group by
+ * row group (record batch by record batch), so they stream in bounded
+ * memory like the others.
+ */
+@Component
+public class ExportEncoder {
+
+    public static final String PARQUET_MEDIA_TYPE = "application/vnd.apache.parquet";
+    public static final String ARROW_STREAM_MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    private static final int PROGRESS_ROWS = 10_000;
+
+    @Value("${historical.export.parquet.row-group-rows:262144}")
+    private int parquetRowGroupRows;
+
+    @Value("${historical.export.parquet.gzip:true}")
+    private boolean parquetGzip;
+
+    @Value("${historical.export.arrow.batch-rows:65536}")
+    private int arrowBatchRows;
+
+    @Value("${historical.export.arrow.compression:ZSTD}")
+    private CompressionUtil.CodecType arrowCompression;
+
+    /** True for the formats written by the gateway rather than by upstream. */
+    public static boolean isColumnar(String format) {
+        return "parquet".equalsIgnoreCase(format) || "arrow".equalsIgnoreCase(format);
+    }
+
+    public static String mediaType(String format) {
+        return switch (format.toLowerCase(Locale.ROOT)) {
+            case "csv" -> MediaType.TEXT_PLAIN_VALUE;
+            case "parquet" -> PARQUET_MEDIA_TYPE;
+            case "arrow" -> ARROW_STREAM_MEDIA_TYPE;
+            default -> MediaType.APPLICATION_JSON_VALUE;
+        };
+    }
+
+    /**
+     * Converts the CSV export read from upstream into a columnar format.
+     * Buffers are released as they are consumed.
+     *
+     * @param progress receives the number of rows written since its last call
+     */
+    public void writeColumnar(String format, List<String> agentSerials, Iterator<DataBuffer> csv, OutputStream out,
+                              LongConsumer progress) throws IOException {
+        try (DataBufferInputStream in = new DataBufferInputStream(csv)) {
+            ExportCsvReader reader = new ExportCsvReader(
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024));
+            long pending = 0;
+            if ("parquet".equalsIgnoreCase(format)) {
+                ParquetExportWriter writer = new ParquetExportWriter(out, parquetRowGroupRows,
+                    parquetGzip ? ParquetExportWriter.GZIP : ParquetExportWriter.UNCOMPRESSED);
+                for (ExportCsvReader.Row row = reader.next(); row != null; row = reader.next()) {
+                    writer.write(row);
+                    if (++pending >= PROGRESS_ROWS) {
+                        progress.accept(pending);
+                        pending = 0;
+                    }
+                }
+                writer.finish();
+            } else {
+                try (ArrowExportWriter writer = new ArrowExportWriter(out, agentSerials, arrowBatchRows, arrowCompression)) {
+                    writer.start();
+                    for (ExportCsvReader.Row row = reader.next(); row != null; row = reader.next()) {
+                        writer.write(row);
+                        if (++pending >= PROGRESS_ROWS) {
+                            progress.accept(pending);
+                            pending = 0;
+                        }
+                    }
+                    writer.finish();
+                }
+            }
+            progress.accept(pending);
+        }
+    }
+
+    /** Reads across upstream buffers, releasing each once drained. */
+    static final class DataBufferInputStream extends InputStream {
+
+        private final Iterator<DataBuffer> buffers;
+        private DataBuffer current;
+
+        DataBufferInputStream(Iterator<DataBuffer> buffers) {
+            this.buffers = buffers;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            while (current == null || current.readableByteCount() == 0) {
+                if (current != null) {
+                    DataBufferUtils.release(current);
+                    current = null;
+                }
+                if (!buffers.hasNext()) {
+                    return -1;
+                }
+                current = buffers.next();
+            }
+            int count = Math.min(length, current.readableByteCount());
+            current.read(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (current != null) {
+                DataBufferUtils.release(current);
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.sara.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.sara.model.ProcessingRequestDTO;
+import com.example.sara.timeseries.AggregationLevel;
+import com.example.sara.timeseries.BucketSummary;
+
+/**
+ * Two-tier cache of aggregated bucket values: a bounded in-process LRU in
+ * front of Redis. Entries are per bucket, not per request, so any request
+ * whose range covers a bucket can reuse it.
+ *
+ * A bucket with no data is stored as an "empty" marker with a short TTL, so
+ * late-arriving readings are picked up again soon.
+ *
+ * Besides final values it holds daily BucketSummary entries per agent,
+ * which are metric-independent: any metric of a monthly or yearly bucket
+ * can be computed by merging the summaries of its days.
+ */
+@Component
+public class HistoricalAggregateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalAggregateCache.class);
+    private static final String KEY_PREFIX = "gateway:aggregate:";
+    private static final String SUMMARY_KEY_PREFIX = "gateway:summary:";
+    private static final String EMPTY = "empty";
+
+    private final StringRedisTemplate redisTemplate;
+    private final Map<String, LocalEntry<Double>> local;
+    private final Map<String, LocalEntry<BucketSummary>> localSummaries;
+
+    @Value("${historical.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.cache.empty-ttl:PT5M}")
+    private Duration emptyTtl;
+
+    @Value("${historical.cache.summary.enabled:true}")
+    private boolean summaryEnabled;
+
+    @Value("${historical.cache.summary.sketch-k:200}")
+    private int summarySketchK;
+
+    public HistoricalAggregateCache(
+        StringRedisTemplate aggregateCacheRedisTemplate,
+        @Value("${historical.cache.local.max-entries:100000}") int maxLocalEntries,
+        @Value("${historical.cache.summary.local.max-entries:5000}") int maxLocalSummaries
+    ) {
+        this.redisTemplate = aggregateCacheRedisTemplate;
+        this.local = lru(maxLocalEntries);
+        this.localSummaries = lru(maxLocalSummaries);
+    }
+
+    private static <T> Map<String, LocalEntry<T>> lru(int maxEntries) {
+        return new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalEntry<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Cache key of one bucket. Same dimensions as generate_cache_key in
+     * historical-processing-ms, minus the bucket end (only full buckets are cached).
+     */
+    public String key(ProcessingRequestDTO request, Instant bucketStart) {
+        return KEY_PREFIX
+            + request.getFacility() + ":"
+            + request.getSensor_type() + ":"
+            + String.join(",", request.getAgent_serial()) + ":"
+            + request.getAggregation_level() + ":"
+            + request.getMetric() + ":"
+            + bucketStart;
+    }
+
+    /**
+     * Looks the buckets up, local tier first, then Redis for the rest.
+     * Redis hits are copied into the local tier.
+     *
+     * @return bucket start → value (NaN for a known-empty bucket); missing buckets are absent
+     */
+    public Map<Instant, Double> getAll(ProcessingRequestDTO request, List<Instant> bucketStarts) {
+        AggregationLevel level = AggregationLevel.fromKey(request.getAggregation_level());
+        return lookup(local, bucketStarts, bucket -> key(request, bucket), level,
+            raw -> EMPTY.equals(raw) ? Double.NaN : Double.parseDouble(raw), value -> value.isNaN());
+    }
+
+    /**
+     * Stores bucket values in both tiers. NaN marks an empty bucket.
+     */
+    public void putAll(ProcessingRequestDTO request, Map<Instant, Double> values) {
+        AggregationLevel level = AggregationLevel.fromKey(request.getAggregation_level());
+        store(local, values, bucket -> key(request, bucket), level,
+            value -> value.isNaN() ? EMPTY : Double.toString(value), value -> value.isNaN());
+    }
+
+    public boolean isSummaryEnabled() {
+        return enabled && summaryEnabled;
+    }
+
+    /** k of the quantile sketch of new summaries. */
+    public int summarySketchK() {
+        return summarySketchK;
+    }
+
+    /**
+     * Cache key of the daily summary of one agent. Summaries hold every
+     * metric at once, so the key has neither level nor metric.
+     */
+    public String summaryKey(ProcessingRequestDTO request, String agentSerial, Instant dayStart) {
+        return SUMMARY_KEY_PREFIX
+            + request.getFacility() + ":"
+            + request.getSensor_type() + ":"
+            + agentSerial + ":"
+            + dayStart;
+    }
+
+    /**
+     * Daily summaries of one agent, local tier first, then Redis. A day
+     * without readings comes back as an empty summary. Returned summaries
+     * are shared: merge them into a new one rather than adding to them.
+     *
+     * @return day start → summary; missing days are absent
+     */
+    public Map<Instant, BucketSummary> getSummaries(ProcessingRequestDTO request, String agentSerial,
+                                                   List<Instant> dayStarts) {
+        return lookup(localSummaries, dayStarts, day -> summaryKey(request, agentSerial, day), AggregationLevel.DAILY,
+            raw -> EMPTY.equals(raw)
+                ? new BucketSummary(summarySketchK)
+                : BucketSummary.fromBytes(Base64.getDecoder().decode(raw)),
+            BucketSummary::isEmpty);
+    }
+
+    /** Stores daily summaries of one agent in both tiers. */
+    public void putSummaries(ProcessingRequestDTO request, String agentSerial, Map<Instant, BucketSummary> summaries) {
+        store(localSummaries, summaries, day -> summaryKey(request, agentSerial, day), AggregationLevel.DAILY,
+            summary -> summary.isEmpty() ? EMPTY : Base64.getEncoder().encodeToString(summary.toBytes()),
+            BucketSummary::isEmpty);
+    }
+
+    private <T> Map<Instant, T> lookup(Map<String, LocalEntry<T>> tier, List<Instant> bucketStarts,
+                                       Function<Instant, String> keyOf, AggregationLevel level,
+                                       Function<String, T> decode, Predicate<T> isEmpty) {
+        Map<Instant, T> found = new HashMap<>();
+        List<Instant> remoteBuckets = new ArrayList<>();
+        List<String> remoteKeys = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (tier) {
+            for (Instant bucket : bucketStarts) {
+                String key = keyOf.apply(bucket);
+                LocalEntry<T> entry = tier.get(key);
+                if (entry != null && entry.expiresAt() > now) {
+                    found.put(bucket, entry.value());
+                } else {
+                    if (entry != null) {
+                        tier.remove(key);
+                    }
+                    remoteBuckets.add(bucket);
+                    remoteKeys.add(key);
+                }
+            }
+        }
+
+        if (remoteKeys.isEmpty()) {
+            return found;
+        }
+
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(remoteKeys);
+            if (values == null) {
+                return found;
+            }
+            synchronized (tier) {
+                for (int i = 0; i < values.size(); i++) {
+                    String raw = values.get(i);
+                    if (raw == null) {
+                        continue;
+                    }
+                    T value = decode.apply(raw);
+                    Instant bucket = remoteBuckets.get(i);
+                    found.put(bucket, value);
+                    // Redis does not hand back the remaining TTL with MGET; re-derive it
+                    long ttl = isEmpty.test(value) ? emptyTtl.getSeconds() : level.ttlSeconds(bucket, Instant.now());
+                    tier.put(remoteKeys.get(i), new LocalEntry<>(value, now + ttl * 1000));
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Aggregate cache lookup in Redis failed, continuing with local tier only: {}", e.getMessage());
+        }
+        return found;
+    }
+
+    private <T> void store(Map<String, LocalEntry<T>> tier, Map<Instant, T> values, Function<Instant, String> keyOf,
+                           AggregationLevel level, Function<T, String> encode, Predicate<T> isEmpty) {
+        if (values.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        Map<String, Entry> entries = new LinkedHashMap<>();
+
+        synchronized (tier) {
+            for (Map.Entry<Instant, T> e : values.entrySet()) {
+                T value = e.getValue();
+                long ttl = isEmpty.test(value) ? emptyTtl.getSeconds() : level.ttlSeconds(e.getKey(), now);
+                String key = keyOf.apply(e.getKey());
+                tier.put(key, new LocalEntry<>(value, now.toEpochMilli() + ttl * 1000));
+                entries.put(key, new Entry(encode.apply(value), ttl));
+            }
+        }
+
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                writeEntries(connection, entries);
+                return null;
+            });
+            logger.debug("Stored {} {} buckets", entries.size(), level.key());
+        } catch (Exception e) {
+            logger.warn("Failed to store {} aggregate buckets in Redis: {}", entries.size(), e.getMessage());
+        }
+    }
+
+    private void writeEntries(RedisConnection connection, Map<String, Entry> entries) {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            connection.stringCommands().setEx(
+                e.getKey().getBytes(StandardCharsets.UTF_8),
+                e.getValue().ttlSeconds(),
+                e.getValue().value().getBytes(StandardCharsets.UTF_8)
+            );
+        }
+    }
+
+    private record LocalEntry<T>(T value, long expiresAt) {}
+
+    private record Entry(String value, long ttlSeconds) {}
+}
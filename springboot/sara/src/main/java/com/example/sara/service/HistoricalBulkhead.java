@@ -0,0 +1,204 @@
+package com.example.sara.service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.sara.exception.TooManyRequestsException;
+
+/**
+ * Admission control in front of HistoricalProcessingService.
+ *
+ * Each user may have at most perUserLimit requests in flight; beyond that
+ * requests are rejected at once. The gateway as a whole admits up to an
+ * adaptive global limit; requests over it wait in a bounded queue for at
+ * most maxWait, and are rejected when the queue is full or the wait expires.
+ *
+ * The global limit follows AIMD on observed latency: every request that
+ * completes under the latency threshold raises it by 1/limit (about +1 per
+ * limit's worth of requests), every slower one multiplies it by the backoff
+ * ratio. The gateway therefore sheds load as soon as upstream slows down,
+ * before requests start timing out.
+ */
+@Component
+public class HistoricalBulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalBulkhead.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<String, Integer> inFlightPerUser = new HashMap<>();
+    private int inFlight;
+    private int waiting;
+    private double limit;
+
+    @Value("${historical.bulkhead.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.bulkhead.per-user-limit:4}")
+    private int perUserLimit;
+
+    @Value("${historical.bulkhead.queue-size:64}")
+    private int queueSize;
+
+    @Value("${historical.bulkhead.max-wait:PT5S}")
+    private Duration maxWait;
+
+    @Value("${historical.bulkhead.retry-after:PT5S}")
+    private Duration retryAfter;
+
+    @Value("${historical.bulkhead.global.min-limit:4}")
+    private int minLimit;
+
+    @Value("${historical.bulkhead.global.max-limit:128}")
+    private int maxLimit;
+
+    @Value("${historical.bulkhead.global.latency-threshold:PT30S}")
+    private Duration latencyThreshold;
+
+    @Value("${historical.bulkhead.global.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    public HistoricalBulkhead(@Value("${historical.bulkhead.global.initial-limit:32}") int initialLimit) {
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Held for the duration of one admitted request; closing it releases the
+     * slot. Streaming responses call responded() on their first element, so
+     * the latency sample is the time to first data, not the stream's length.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final String user;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long firstResponseNanos = -1L;
+
+        private Permit(String user) {
+            this.user = user;
+        }
+
+        public void responded() {
+            if (firstResponseNanos < 0L) {
+                firstResponseNanos = System.nanoTime() - startNanos;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(user, firstResponseNanos >= 0L ? firstResponseNanos : System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * Admits one request of the user, waiting up to maxWait for a global slot.
+     *
+     * @throws TooManyRequestsException when the request is not admitted
+     */
+    public Permit acquire(String user) {
+        if (!enabled) {
+            return new Permit(null);
+        }
+        long remaining = maxWait.toNanos();
+        lock.lock();
+        try {
+            if (inFlightPerUser.getOrDefault(user, 0) >= perUserLimit) {
+                throw reject("Too many concurrent historical requests for this user (limit " + perUserLimit + ")");
+            }
+            if (inFlight >= currentLimit()) {
+                if (waiting >= queueSize) {
+                    throw reject("Historical processing is saturated, request queue is full");
+                }
+                waiting++;
+                try {
+                    while (inFlight >= currentLimit()) {
+                        if (remaining <= 0L) {
+                            throw reject("Historical processing is saturated, no slot freed within " + maxWait.toSeconds() + "s");
+                        }
+                        remaining = released.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw reject("Interrupted while waiting for a historical processing slot");
+                } finally {
+                    waiting--;
+                }
+                // The same user may have been admitted elsewhere while this request waited
+                if (inFlightPerUser.getOrDefault(user, 0) >= perUserLimit) {
+                    throw reject("Too many concurrent historical requests for this user (limit " + perUserLimit + ")");
+                }
+            }
+            inFlight++;
+            inFlightPerUser.merge(user, 1, Integer::sum);
+            return new Permit(user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(String user, long latencyNanos) {
+        if (user == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            inFlight--;
+            inFlightPerUser.computeIfPresent(user, (k, count) -> count <= 1 ? null : count - 1);
+
+            double previous = limit;
+            if (latencyNanos > latencyThreshold.toNanos()) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            if ((int) previous != (int) limit) {
+                logger.info("Historical global concurrency limit {} -> {} (last latency {} ms)",
+                    (int) previous, (int) limit, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private TooManyRequestsException reject(String message) {
+        logger.warn("Rejecting historical request: {} (in flight {}, waiting {}, limit {})",
+            message, inFlight, waiting, currentLimit());
+        return new TooManyRequestsException(message, Math.max(1L, retryAfter.toSeconds()));
+    }
+
+    /** Current state, for monitoring. */
+    public Map<String, Object> snapshot() {
+        lock.lock();
+        try {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("enabled", enabled);
+            state.put("limit", currentLimit());
+            state.put("in_flight", inFlight);
+            state.put("waiting", waiting);
+            state.put("queue_size", queueSize);
+            state.put("per_user_limit", perUserLimit);
+            state.put("users_in_flight", inFlightPerUser.size());
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
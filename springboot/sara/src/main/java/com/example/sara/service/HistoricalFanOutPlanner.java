@@ -0,0 +1,108 @@
+package com.example.sara.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.sara.model.ProcessingRequestDTO;
+import com.example.sara.timeseries.AggregationLevel;
+
+/**
+ * Splits a large historical request into slices that historical-processing-ms
+ * can serve independently and concurrently.
+ *
+ * Time slices are aligned to the boundaries of the aggregated_results groups
+ * of the requested level (days for hourly, months for daily, years for
+ * monthly), so every bucket and every group lands in exactly one slice and
+ * the slices concatenate back into the unsplit result.
+ *
+ * Agents are only split apart at minute level, where the service returns
+ * raw readings. At coarser levels it reduces all agents of a bucket to one
+ * value, which cannot be rebuilt from per-agent answers.
+ */
+@Component
+public class HistoricalFanOutPlanner {
+
+    @Value("${historical.fanout.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.fanout.units-per-slice.minute:1}")
+    private int minuteDaysPerSlice;
+
+    @Value("${historical.fanout.units-per-slice.hourly:7}")
+    private int hourlyDaysPerSlice;
+
+    @Value("${historical.fanout.units-per-slice.daily:3}")
+    private int dailyMonthsPerSlice;
+
+    @Value("${historical.fanout.units-per-slice.monthly:1}")
+    private int monthlyYearsPerSlice;
+
+    /**
+     * Slices in result order (time first, then agent). A request small enough
+     * to send as is yields a single slice.
+     *
+     * @param slices      the sub-requests
+     * @param agentsSplit whether agents were split apart, in which case the
+     *                    merged groups must be re-sorted by time
+     */
+    public record Plan(List<ProcessingRequestDTO> slices, boolean agentsSplit) {}
+
+    public Plan plan(ProcessingRequestDTO request) {
+        if (!enabled) {
+            return new Plan(List.of(request), false);
+        }
+        AggregationLevel level = AggregationLevel.fromKey(request.getAggregation_level());
+        List<Instant[]> ranges = timeSlices(level, request.getStart().toInstant(), request.getEnd().toInstant());
+        boolean splitAgents = level == AggregationLevel.MINUTE && request.getAgent_serial().size() > 1;
+
+        List<ProcessingRequestDTO> slices = new ArrayList<>();
+        for (Instant[] range : ranges) {
+            ProcessingRequestDTO ranged = ranges.size() == 1
+                ? request
+                : HistoricalRequests.withRange(request, range[0], range[1]);
+            if (!splitAgents) {
+                slices.add(ranged);
+                continue;
+            }
+            for (String agent : request.getAgent_serial()) {
+                ProcessingRequestDTO perAgent = HistoricalRequests.copy(ranged);
+                perAgent.setAgent_serial(List.of(agent));
+                slices.add(perAgent);
+            }
+        }
+        return new Plan(slices, splitAgents);
+    }
+
+    private List<Instant[]> timeSlices(AggregationLevel level, Instant start, Instant end) {
+        AggregationLevel unit;
+        int unitsPerSlice;
+        switch (level) {
+            case MINUTE -> { unit = AggregationLevel.DAILY; unitsPerSlice = minuteDaysPerSlice; }
+            case HOURLY -> { unit = AggregationLevel.DAILY; unitsPerSlice = hourlyDaysPerSlice; }
+            case DAILY -> { unit = AggregationLevel.MONTHLY; unitsPerSlice = dailyMonthsPerSlice; }
+            case MONTHLY -> { unit = AggregationLevel.YEARLY; unitsPerSlice = monthlyYearsPerSlice; }
+            default -> { return List.<Instant[]>of(new Instant[] { start, end }); }
+        }
+        if (unitsPerSlice <= 0) {
+            return List.<Instant[]>of(new Instant[] { start, end });
+        }
+
+        List<Instant[]> slices = new ArrayList<>();
+        Instant sliceStart = start;
+        Instant boundary = unit.normalize(start);
+        while (!sliceStart.isAfter(end)) {
+            for (int i = 0; i < unitsPerSlice; i++) {
+                boundary = unit.next(boundary);
+            }
+            // The slice ends just before the next boundary; the Python service treats end as inclusive
+            Instant lastInstant = boundary.minusMillis(1);
+            slices.add(new Instant[] { sliceStart, lastInstant.isAfter(end) ? end : lastInstant });
+            sliceStart = boundary;
+        }
+        return slices;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.sara.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.sara.dto.HistoricalJobStatusDTO;
+
+/**
+ * One asynchronous job: its owner, progress and spooled result file.
+ * Progress is written by the worker thread and read by status requests.
+ */
+final class HistoricalJob {
+
+    enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED;
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final String id;
+    private final String owner;
+    private final Path resultPath;
+    private final String resultType;
+    private final Long bucketsExpected;
+    private final Instant submittedAt = Instant.now();
+
+    private final AtomicLong chunksReceived = new AtomicLong();
+    private final AtomicLong bucketsReceived = new AtomicLong();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile Future<?> task;
+
+    HistoricalJob(String id, String owner, Path resultPath, String resultType, Long bucketsExpected) {
+        this.id = id;
+        this.owner = owner;
+        this.resultPath = resultPath;
+        this.resultType = resultType;
+        this.bucketsExpected = bucketsExpected;
+    }
+
+    String id() { return id; }
+    String owner() { return owner; }
+    Path resultPath() { return resultPath; }
+    String resultType() { return resultType; }
+    Status status() { return status; }
+    Instant finishedAt() { return finishedAt; }
+
+    /** Called by the worker for every chunk written to the result. */
+    void chunkWritten(long buckets) {
+        chunksReceived.incrementAndGet();
+        bucketsReceived.addAndGet(buckets);
+    }
+
+    void attach(Future<?> task) {
+        this.task = task;
+    }
+
+    /** False when the job was cancelled before a worker picked it up. */
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    synchronized void finish(Status outcome, String reason) {
+        if (isFinished()) {
+            return;
+        }
+        status = outcome;
+        error = reason;
+        finishedAt = Instant.now();
+    }
+
+    /** Interrupts the worker, or keeps a queued job from ever starting. */
+    void cancel() {
+        finish(Status.CANCELLED, null);
+        Future<?> running = task;
+        if (running != null) {
+            running.cancel(true);
+        }
+    }
+
+    boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    boolean isExpired(Instant now, Duration ttl) {
+        return isFinished() && finishedAt.plus(ttl).isBefore(now);
+    }
+
+    HistoricalJobStatusDTO toStatus(Duration ttl) {
+        HistoricalJobStatusDTO dto = new HistoricalJobStatusDTO();
+        dto.setJob_id(id);
+        dto.setStatus(status.key());
+        dto.setChunks_received(chunksReceived.get());
+        dto.setBuckets_received(bucketsReceived.get());
+        dto.setBuckets_expected(bucketsExpected);
+        dto.setResult_type(resultType);
+        dto.setError(error);
+        dto.setSubmitted_at(submittedAt);
+        dto.setStarted_at(startedAt);
+        dto.setFinished_at(finishedAt);
+        if (finishedAt != null) {
+            dto.setExpires_at(finishedAt.plus(ttl));
+        }
+        try {
+            dto.setResult_bytes(Files.exists(resultPath) ? Files.size(resultPath) : 0L);
+        } catch (IOException e) {
+            dto.setResult_bytes(0L);
+        }
+        return dto;
+    }
+}
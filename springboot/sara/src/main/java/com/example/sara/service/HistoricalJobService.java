@@ -0,0 +1,385 @@
+package com.example.sara.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.sara.dto.ExportRequestDTO;
+import com.example.sara.dto.HistoricalJobStatusDTO;
+import com.example.sara.dto.RawStoreBackfillRequestDTO;
+import com.example.sara.exception.ResourceNotFoundException;
+import com.example.sara.model.AggregatedResultDTO;
+import com.example.sara.model.ProcessingRequestDTO;
+import com.example.sara.model.ProcessingResponseDTO;
+import com.example.sara.timeseries.AggregationLevel;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs long historical queries as jobs, off the request threads.
+ *
+ * Jobs run on a small fixed pool with a bounded queue; a full queue rejects
+ * the submission instead of piling work up. Results are spooled to local
+ * disk and kept for a TTL after the job finishes. The registry is in memory,
+ * so a job is only visible on the gateway instance that accepted it.
+ */
+@Service
+public class HistoricalJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalJobService.class);
+    // <job id>.<extension>, the only files the service writes to the spool directory
+    private static final Pattern RESULT_FILE =
+        Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}\\.[A-Za-z0-9]+");
+
+    /** Writes a job's result; called on a job worker thread. */
+    @FunctionalInterface
+    interface JobWriter {
+        void write(HistoricalJob job, OutputStream out) throws Exception;
+    }
+
+    private final HistoricalProcessingService processingService;
+    private final ExportEncoder exportEncoder;
+    private final RawStoreService rawStoreService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter lineWriter;
+    private final ThreadPoolExecutor executor;
+    private final Path spoolDir;
+    private final Map<String, HistoricalJob> jobs = new ConcurrentHashMap<>();
+    // Export request hash -> job producing or holding that export
+    private final Map<String, String> exportJobs = new ConcurrentHashMap<>();
+
+    @Value("${historical.jobs.result-ttl:PT1H}")
+    private Duration resultTtl;
+
+    @Value("${historical.streaming.prefetch:8}")
+    private int streamingPrefetch;
+
+    public HistoricalJobService(
+        HistoricalProcessingService processingService,
+        ExportEncoder exportEncoder,
+        RawStoreService rawStoreService,
+        ObjectMapper objectMapper,
+        @Value("${historical.jobs.workers:4}") int workers,
+        @Value("${historical.jobs.queue-capacity:50}") int queueCapacity,
+        @Value("${historical.jobs.spool-dir:${java.io.tmpdir}/sara-historical-jobs}") String spoolDir
+    ) throws IOException {
+        this.processingService = processingService;
+        this.exportEncoder = exportEncoder;
+        this.rawStoreService = rawStoreService;
+        this.objectMapper = objectMapper;
+        // Jackson would close the result stream after every chunk otherwise
+        this.lineWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.spoolDir = Files.createDirectories(Paths.get(spoolDir));
+
+        // The registry does not survive a restart, so earlier results are orphans; other files are not ours
+        try (Stream<Path> leftovers = Files.list(this.spoolDir)) {
+            leftovers.filter(path -> RESULT_FILE.matcher(path.getFileName().toString()).matches())
+                .forEach(this::deleteQuietly);
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "historical-job-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a historical query. Minute-level queries are streamed chunk by
+     * chunk into the result, the others go through processHistoricalData
+     * (bucket cache, downsampling) and are written as one chunk.
+     * The result has the layout of the NDJSON variant of /process.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException when the job queue is full
+     */
+    public HistoricalJobStatusDTO submitProcessing(ProcessingRequestDTO request, String userEmail) {
+        // Fail now rather than in the job when the user has no token
+        processingService.getValidatedToken(userEmail);
+
+        AggregationLevel level = AggregationLevel.fromKey(request.getAggregation_level());
+        Long expected = level == AggregationLevel.MINUTE
+            ? null
+            : (long) level.bucketStarts(request.getStart().toInstant(), request.getEnd().toInstant()).size();
+        boolean stream = level == AggregationLevel.MINUTE && request.getMax_points() == null;
+
+        return submit(userEmail, MediaType.APPLICATION_NDJSON_VALUE, "ndjson", expected, (job, out) -> {
+            if (stream) {
+                // Blocking iteration keeps the disk writes on this worker; closing the stream cancels upstream
+                try (Stream<ProcessingResponseDTO> chunks =
+                         processingService.streamHistoricalData(request, userEmail).toStream(1)) {
+                    chunks.forEach(chunk -> writeLine(job, out, chunk));
+                }
+            } else {
+                writeLine(job, out, processingService.processHistoricalData(request, userEmail));
+            }
+        });
+    }
+
+    /**
+     * Queues an export, spooled to disk as it streams from upstream so that
+     * the finished file can be downloaded in ranges. An identical export of
+     * the same user that is queued, running or still available is returned
+     * instead of starting another one. Progress is reported as chunks and
+     * bytes written, and as rows for CSV, Parquet and Arrow.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException when the job queue is full
+     */
+    public HistoricalJobStatusDTO submitExport(ExportRequestDTO request, String userEmail) {
+        processingService.getValidatedToken(userEmail);
+
+        String hash = exportHash(request, userEmail);
+        synchronized (exportJobs) {
+            String existingId = exportJobs.get(hash);
+            HistoricalJob existing = existingId != null ? jobs.get(existingId) : null;
+            if (existing != null && existing.status() != HistoricalJob.Status.FAILED
+                && existing.status() != HistoricalJob.Status.CANCELLED
+                && !existing.isExpired(Instant.now(), resultTtl)) {
+                logger.info("Export job {} reused for {}", existing.id(), userEmail);
+                return existing.toStatus(resultTtl);
+            }
+
+            boolean csv = "csv".equalsIgnoreCase(request.getFormat());
+            String resultType = ExportEncoder.mediaType(request.getFormat());
+            HistoricalJobStatusDTO status = submit(userEmail, resultType, request.getFormat(), null, (job, out) -> {
+                boolean[] header = { csv };
+                try (Stream<DataBuffer> buffers = processingService.streamExport(request, userEmail).toStream(streamingPrefetch)) {
+                    if (ExportEncoder.isColumnar(request.getFormat())) {
+                        exportEncoder.writeColumnar(request.getFormat(), request.getAgentSerial(), buffers.iterator(), out,
+                            job::chunkWritten);
+                        return;
+                    }
+                    buffers.forEach(buffer -> {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        DataBufferUtils.release(buffer);
+                        try {
+                            out.write(bytes);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        long rows = 0;
+                        if (csv) {
+                            for (byte b : bytes) {
+                                if (b == '\n') {
+                                    rows++;
+                                }
+                            }
+                            // The first line is the CSV header
+                            if (header[0] && rows > 0) {
+                                header[0] = false;
+                                rows--;
+                            }
+                        }
+                        job.chunkWritten(rows);
+                    });
+                }
+            });
+            exportJobs.put(hash, status.getJob_id());
+            return status;
+        }
+    }
+
+    /**
+     * Queues a backfill of the raw store. The result is NDJSON with one line
+     * per agent and day, telling whether the day was sealed, already sealed
+     * or is still open.
+     *
+     * @throws com.example.sara.exception.ValidationException for an invalid range
+     * @throws java.util.concurrent.RejectedExecutionException when the job queue is full
+     */
+    public HistoricalJobStatusDTO submitBackfill(RawStoreBackfillRequestDTO request, String userEmail) {
+        processingService.getValidatedToken(userEmail);
+        rawStoreService.validate(request);
+
+        return submit(userEmail, MediaType.APPLICATION_NDJSON_VALUE, "ndjson", rawStoreService.resultCount(request),
+            (job, out) -> rawStoreService.backfill(request, userEmail, day -> {
+                try {
+                    lineWriter.writeValue(out, day);
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                job.chunkWritten(1);
+            }));
+    }
+
+    /** Same user and same request body; agent order is kept as it shapes the file. */
+    private String exportHash(ExportRequestDTO request, String userEmail) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(userEmail.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Could not hash export request", e);
+        }
+    }
+
+    /**
+     * Registers a job and hands it to the pool.
+     *
+     * @param resultType      media type of what the writer produces
+     * @param extension       file extension of the spooled result
+     * @param bucketsExpected expected number of buckets, or null if unknown
+     */
+    HistoricalJobStatusDTO submit(String owner, String resultType, String extension, Long bucketsExpected,
+                                  JobWriter writer) {
+        String id = UUID.randomUUID().toString();
+        HistoricalJob job = new HistoricalJob(id, owner, spoolDir.resolve(id + "." + extension), resultType, bucketsExpected);
+        jobs.put(id, job);
+        try {
+            job.attach(executor.submit(() -> run(job, writer)));
+        } catch (RuntimeException e) {
+            jobs.remove(id);
+            throw e;
+        }
+        logger.info("Queued historical job {} for {} ({} queued, {} running)", id, owner,
+            executor.getQueue().size(), executor.getActiveCount());
+        return job.toStatus(resultTtl);
+    }
+
+    private void run(HistoricalJob job, JobWriter writer) {
+        if (!job.start()) {
+            return;
+        }
+        logger.info("Historical job {} started", job.id());
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(job.resultPath()), 64 * 1024)) {
+            writer.write(job, out);
+        } catch (Throwable e) {
+            if (job.status() == HistoricalJob.Status.CANCELLED || Thread.currentThread().isInterrupted()) {
+                job.finish(HistoricalJob.Status.CANCELLED, null);
+                logger.info("Historical job {} cancelled", job.id());
+            } else {
+                job.finish(HistoricalJob.Status.FAILED, e.getMessage());
+                logger.error("Historical job {} failed: {}", job.id(), e.getMessage(), e);
+            }
+            deleteQuietly(job.resultPath());
+            return;
+        }
+        job.finish(HistoricalJob.Status.SUCCEEDED, null);
+        if (job.status() == HistoricalJob.Status.CANCELLED) {
+            deleteQuietly(job.resultPath());
+        }
+        logger.info("Historical job {} finished with status {}", job.id(), job.status().key());
+    }
+
+    private void writeLine(HistoricalJob job, OutputStream out, ProcessingResponseDTO chunk) {
+        try {
+            lineWriter.writeValue(out, chunk);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long buckets = 0;
+        if (chunk.getAggregated_results() != null) {
+            for (List<AggregatedResultDTO> points : chunk.getAggregated_results().values()) {
+                buckets += points.size();
+            }
+        }
+        job.chunkWritten(buckets);
+    }
+
+    public HistoricalJobStatusDTO status(String jobId, String userEmail) {
+        return find(jobId, userEmail).toStatus(resultTtl);
+    }
+
+    /**
+     * Result file of a successful job.
+     *
+     * @throws IllegalStateException while the job has not succeeded
+     */
+    public JobResult result(String jobId, String userEmail) {
+        HistoricalJob job = find(jobId, userEmail);
+        if (job.status() != HistoricalJob.Status.SUCCEEDED) {
+            throw new IllegalStateException("Job " + jobId + " is " + job.status().key());
+        }
+        return new JobResult(job.resultPath(), job.resultType());
+    }
+
+    public record JobResult(Path path, String mediaType) {}
+
+    /** Cancels a queued or running job and discards its result. */
+    public HistoricalJobStatusDTO cancel(String jobId, String userEmail) {
+        HistoricalJob job = find(jobId, userEmail);
+        job.cancel();
+        jobs.remove(jobId);
+        executor.purge();
+        deleteQuietly(job.resultPath());
+        logger.info("Historical job {} cancelled by {}", jobId, userEmail);
+        return job.toStatus(resultTtl);
+    }
+
+    private HistoricalJob find(String jobId, String userEmail) {
+        HistoricalJob job = jobs.get(jobId);
+        // Other users' jobs are reported as missing, not forbidden
+        if (job == null || !job.owner().equals(userEmail)) {
+            throw new ResourceNotFoundException("Job not found: " + jobId);
+        }
+        return job;
+    }
+
+    @Scheduled(fixedDelayString = "${historical.jobs.cleanup-interval:PT1M}")
+    void purgeExpired() {
+        Instant now = Instant.now();
+        jobs.values().removeIf(job -> {
+            if (!job.isExpired(now, resultTtl)) {
+                return false;
+            }
+            deleteQuietly(job.resultPath());
+            logger.debug("Historical job {} expired", job.id());
+            return true;
+        });
+        exportJobs.values().removeIf(id -> !jobs.containsKey(id));
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Could not delete job file {}: {}", path, e.getMessage());
+        }
+    }
+}
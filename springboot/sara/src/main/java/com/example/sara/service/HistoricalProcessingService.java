@@ -1,157 +1,804 @@
 package com.example.sara.service;
 
+import com.example.sara.dto.AtTimeBatchRequestDTO;
+import com.example.sara.dto.AtTimeBatchResultDTO;
+import com.example.sara.dto.ColumnarProcessingResponseDTO;
 import com.example.sara.dto.ExportRequestDTO;
+import com.example.sara.dto.MetaDTO;
 import com.example.sara.dto.RadioDevicesAtTimeRequestDTO;
 
 import com.example.sara.dto.RadioDevicesAtTimeResponseDTO;
 import com.example.sara.dto.ThermalmapAtTimeRequestDTO;
 import com.example.sara.dto.ThermalmapAtTimeResponseDTO;
+import com.example.sara.dto.ThermalmapFramesRequestDTO;
+import com.example.sara.exception.CircuitOpenException;
+import com.example.sara.exception.UpstreamServiceException;
+import com.example.sara.exception.ValidationException;
 import com.example.sara.model.AggregatedResultDTO;
 import com.example.sara.model.ProcessingRequestDTO;
 
 
 import com.example.sara.model.ProcessingResponseDTO;
+import com.example.sara.timeseries.AggregationEngine;
+import com.example.sara.timeseries.AggregationLevel;
+import com.example.sara.timeseries.AggregationMetric;
+import com.example.sara.timeseries.BucketSummary;
+import com.example.sara.timeseries.ColumnarSeries;
+import com.example.sara.timeseries.Downsampler;
+import com.example.sara.timeseries.ThermalFrame;
 
-import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.TimeoutException;
-import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
 import reactor.util.retry.Retry;
-import reactor.netty.http.client.HttpClient; // Correct HttpClient
+import reactor.netty.http.client.HttpClientRequest;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.concurrent.TimeUnit;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class HistoricalProcessingService {
 
     private static final Logger logger = LoggerFactory.getLogger(HistoricalProcessingService.class);
-    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(300);
-    
-    private  WebClient webClient;
+    // Progress of a hedged call: the primary alone, the primary failed first, or the hedge sent
+    private static final int HEDGE_PENDING = 0;
+    private static final int HEDGE_PRIMARY_FAILED = 1;
+    private static final int HEDGE_SENT = 2;
+
+    /** Binary frame sequence of /thermalmap/frames; passed through to clients undecoded. */
+    public static final String THERMAL_FRAMES_MEDIA_TYPE = "application/vnd.sara.thermal-frames";
+
+    // Shared, pooled client built in HistoricalProcessingClientConfig
+    private final WebClient webClient;
     private final TokenService tokenService;
-    
-    @Value("${historical.processing.url}")
-    private String historicalProcessingUrl;
+    private final HistoricalAggregateCache aggregateCache;
+    private final InFlightRequestCoalescer coalescer;
+    private final HistoricalFanOutPlanner fanOutPlanner;
+    private final EndpointLatencyTracker latencyTracker;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final StaleResponseCache staleCache;
+    private final ThermalFrameCache frameCache;
+    private final ThermalFramePrefetcher framePrefetcher;
+    private final RawReadingStore rawStore;
+    private final PyramidQueryPlanner pyramidPlanner;
+    private final AggregationEngine aggregationEngine = new AggregationEngine();
+
+    @Value("${historical.fanout.parallelism:4}")
+    private int fanOutParallelism;
+
+    @Value("${historical.progressive.max-previews:2}")
+    private int progressiveMaxPreviews;
+
+    @Value("${historical.processing.wire-format:binary}")
+    private String wireFormat;
+
+    @Value("${historical.batch.parallelism:8}")
+    private int batchParallelism;
+
+    @Value("${historical.batch.max-items:2000}")
+    private int batchMaxItems;
+
+    @Value("${historical.processing.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${historical.processing.hedging.percentile:0.95}")
+    private double hedgingPercentile;
+
+    @Value("${historical.processing.hedging.min-delay:PT0.05S}")
+    private Duration hedgingMinDelay;
+
+    @Value("${historical.processing.timeout.process:PT300S}")
+    private Duration processTimeout;
+
+    @Value("${historical.processing.timeout.radio:PT300S}")
+    private Duration radioTimeout;
+
+    @Value("${historical.processing.timeout.thermalmap:PT300S}")
+    private Duration thermalmapTimeout;
+
+    @Value("${historical.processing.timeout.export:PT600S}")
+    private Duration exportTimeout;
+
+    @Value("${historical.cache.summary.fetch-days:31}")
+    private int summaryFetchDays;
+
+    @Value("${historical.streaming.prefetch:8}")
+    private int streamingPrefetch;
 
     public HistoricalProcessingService(
-            WebClient.Builder webClientBuilder, 
-            TokenService tokenService
+            @Qualifier("historicalProcessingWebClient") WebClient webClient,
+            TokenService tokenService,
+            HistoricalAggregateCache aggregateCache,
+            InFlightRequestCoalescer coalescer,
+            HistoricalFanOutPlanner fanOutPlanner,
+            EndpointLatencyTracker latencyTracker,
+            UpstreamCircuitBreaker circuitBreaker,
+            StaleResponseCache staleCache,
+            ThermalFrameCache frameCache,
+            ThermalFramePrefetcher framePrefetcher,
+            RawReadingStore rawStore,
+            PyramidQueryPlanner pyramidPlanner
         ) {
+            this.webClient = webClient;
             this.tokenService = tokenService;
-            
-            // Defer WebClient initialization to @PostConstruct
-            this.webClient = webClientBuilder
-                    .codecs(configurer -> configurer
-                        .defaultCodecs()
-                        .maxInMemorySize(16 * 1024 * 1024) // 16MB buffer
-                    )
-                    .build(); // Keep this here 
+            this.aggregateCache = aggregateCache;
+            this.coalescer = coalescer;
+            this.fanOutPlanner = fanOutPlanner;
+            this.latencyTracker = latencyTracker;
+            this.circuitBreaker = circuitBreaker;
+            this.staleCache = staleCache;
+            this.frameCache = frameCache;
+            this.framePrefetcher = framePrefetcher;
+            this.rawStore = rawStore;
+            this.pyramidPlanner = pyramidPlanner;
         }
     
     
-    @PostConstruct // Ensures injection happens firs
-    public void init() {
-        // Rebuild WebClient with injected URL
-        this.webClient = this.webClient.mutate()
-            .baseUrl(this.historicalProcessingUrl)
-            .build();
-        
-        logger.error("!!! CONFIGURED URL: {} !!!", this.historicalProcessingUrl);
-    }
-    
-    
     public ProcessingResponseDTO processHistoricalData(ProcessingRequestDTO request, String userEmail) {
         logger.info("Processing historical data request for user: {}", userEmail);
-        String authToken = getValidatedToken(userEmail);
+        ProcessingRequestDTO normalized = HistoricalRequests.normalized(request);
+        return withStaleFallback("process:" + responseKey(normalized), ProcessingResponseDTO.class,
+            () -> process(normalized, userEmail), this::staleProcessing);
+    }
+
+    private ProcessingResponseDTO process(ProcessingRequestDTO request, String userEmail) {
+        // Checked even when every bucket is served by the gateway, as upstream would
+        getValidatedToken(userEmail);
+        AggregationLevel level = AggregationLevel.fromKey(request.getAggregation_level());
+        if (level == AggregationLevel.MINUTE || !aggregateCache.isEnabled()) {
+            // Minute level returns raw readings (several per bucket), so there is nothing to cache per bucket
+            ColumnarProcessingResponseDTO merged = fetchMergedColumnar(request, userEmail);
+            if (merged == null) {
+                throw new RuntimeException("No data received from streaming endpoint");
+            }
+            logger.info("Successfully processed historical data for {}", userEmail);
+            // Downsample before building per-point DTOs, so dropped points never get one
+            return toProcessingResponse(downsample(request, merged));
+        }
 
+        ProcessingResponseDTO response = processWithBucketCache(request, level, userEmail);
+        logger.info("Successfully processed historical data for {} ({} cached / {} fetched buckets)", userEmail,
+            response.getMeta().getCache_hits(), response.getMeta().getRaw_hits());
+        if (request.getMax_points() != null) {
+            return toProcessingResponse(downsample(request, toColumnar(response)));
+        }
+        return response;
+    }
+
+    /**
+     * Same result as processHistoricalData, in columnar form. Minute-level
+     * requests, by far the largest, are decoded from the upstream stream
+     * straight into primitive arrays. Coarser levels go through the bucket
+     * cache and are converted at the end; they are small by comparison.
+     */
+    public ColumnarProcessingResponseDTO processHistoricalDataColumnar(ProcessingRequestDTO request, String userEmail) {
+        logger.info("Processing columnar historical data request for user: {}", userEmail);
+        ProcessingRequestDTO normalized = HistoricalRequests.normalized(request);
+        return withStaleFallback("columnar:" + responseKey(normalized), ColumnarProcessingResponseDTO.class,
+            () -> processColumnar(normalized, userEmail), this::staleColumnar);
+    }
+
+    private ColumnarProcessingResponseDTO processColumnar(ProcessingRequestDTO request, String userEmail) {
+        getValidatedToken(userEmail);
+        AggregationLevel level = AggregationLevel.fromKey(request.getAggregation_level());
+        if (level != AggregationLevel.MINUTE && aggregateCache.isEnabled()) {
+            return downsample(request, toColumnar(processWithBucketCache(request, level, userEmail)));
+        }
+
+        ColumnarProcessingResponseDTO merged = fetchMergedColumnar(request, userEmail);
+        if (merged == null) {
+            throw new RuntimeException("No data received from streaming endpoint");
+        }
+        logger.info("Successfully processed columnar historical data for {}", userEmail);
+        return downsample(request, merged);
+    }
+
+    /**
+     * Coarse-to-fine answers for one request: cheap previews at coarser
+     * levels, then the requested level, which is exactly what
+     * processHistoricalData returns. All levels are computed concurrently;
+     * a preview that completes after a finer answer was already emitted is
+     * dropped, so every emitted element refines the previous one.
+     *
+     * A failing preview is skipped, only the requested level's error ends the stream.
+     */
+    public Flux<ProcessingResponseDTO> progressiveHistoricalData(ProcessingRequestDTO request, String userEmail) {
+        // Fail before the stream opens when the user has no token
+        getValidatedToken(userEmail);
+
+        AggregationLevel requested = AggregationLevel.fromKey(request.getAggregation_level());
+        List<AggregationLevel> previews = previewLevels(requested, request.getStart().toInstant(), request.getEnd().toInstant());
+        logger.info("Progressive request for {}: previews {} before {}", userEmail, previews, requested.key());
+
+        List<Mono<ProcessingResponseDTO>> steps = new ArrayList<>();
+        for (AggregationLevel preview : previews) {
+            ProcessingRequestDTO coarse = HistoricalRequests.copy(request);
+            coarse.setAggregation_level(preview.key());
+            steps.add(Mono.fromCallable(() -> processHistoricalData(coarse, userEmail))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.warn("Skipping {} preview for {}: {}", preview.key(), userEmail, e.getMessage());
+                    return Mono.empty();
+                }));
+        }
+        steps.add(Mono.fromCallable(() -> processHistoricalData(request, userEmail))
+            .subscribeOn(Schedulers.boundedElastic()));
+
+        AtomicInteger finestEmitted = new AtomicInteger(Integer.MAX_VALUE);
+        return Flux.merge(steps)
+            .filter(result -> {
+                int rank = AggregationLevel.fromKey(result.getAggregation_level()).ordinal();
+                return finestEmitted.getAndUpdate(finest -> Math.min(finest, rank)) > rank;
+            })
+            .doOnNext(r -> logger.info("Progressive {} result sent to {}", r.getAggregation_level(), userEmail));
+    }
+
+    /**
+     * Levels coarser than the requested one, coarsest first, that still give
+     * at least two buckets over the range; at most progressiveMaxPreviews of them.
+     */
+    private List<AggregationLevel> previewLevels(AggregationLevel requested, Instant start, Instant end) {
+        List<AggregationLevel> levels = new ArrayList<>();
+        for (AggregationLevel level = AggregationLevel.MONTHLY;
+             level != null && level.ordinal() > requested.ordinal() && levels.size() < progressiveMaxPreviews;
+             level = level.lower()) {
+            if (level.bucketStarts(start, end).size() >= 2) {
+                levels.add(level);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Runs the call and remembers its result as the last known good answer.
+     * When the call fails because an upstream circuit is open, that answer is
+     * returned instead, marked stale; without one the request fails fast
+     * with the CircuitOpenException.
+     */
+    private <T> T withStaleFallback(String key, Class<T> type, Supplier<T> call, UnaryOperator<T> markStale) {
         try {
-            logger.debug("Sending request to processing service: {}", request);
+            T result = call.get();
+            staleCache.put(key, result);
+            return result;
+        } catch (CircuitOpenException e) {
+            T stale = staleCache.get(key, type);
+            if (stale == null) {
+                throw e;
+            }
+            logger.warn("Circuit for {} is open, serving last known good response for {}", e.getEndpoint(), key);
+            return markStale.apply(stale);
+        }
+    }
 
-            HttpClient httpClient = HttpClient.create()
-                .responseTimeout(REQUEST_TIMEOUT)
-                .doOnConnected(conn ->
-                    conn.addHandlerLast(new ReadTimeoutHandler(REQUEST_TIMEOUT.getSeconds(), TimeUnit.SECONDS))
-                );
+    /** Cache key of a whole response: the upstream parameters plus the gateway-side downsampling. */
+    private String responseKey(ProcessingRequestDTO request) {
+        return HistoricalRequests.key(request) + "|" + request.getMax_points() + "|" + request.getDownsampling();
+    }
 
-            // 1) Fire the POST and get a Flux of daily (or minute‐batch) DTOs
-            Flux<ProcessingResponseDTO> flux = webClient.mutate()
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
-                .build()
-                .post()
-                .uri("/process/batched_stream")
-                .header("Authorization", "Bearer " + authToken)
-                .accept(MediaType.valueOf("application/x-ndjson"))
-                .bodyValue(request)
-                .retrieve()
-                .onStatus(this::isErrorResponse, this::handleErrorResponse)
-                .bodyToFlux(ProcessingResponseDTO.class)
-                .timeout(REQUEST_TIMEOUT)
-                .retryWhen(Retry.backoff(2, Duration.ofMillis(100))
-                    .filter(ex -> {
-                        if (ex instanceof WebClientResponseException) {
-                            return ((WebClientResponseException) ex)
-                                     .getStatusCode()
-                                     .is5xxServerError();
-                        }
-                        return ex instanceof IOException;
+    /** Copy sharing the (never modified) results, with its own meta flagged stale. */
+    private ProcessingResponseDTO staleProcessing(ProcessingResponseDTO response) {
+        ProcessingResponseDTO copy = new ProcessingResponseDTO();
+        copy.setFacility(response.getFacility());
+        copy.setAgent_serial(response.getAgent_serial());
+        copy.setSensor_type(response.getSensor_type());
+        copy.setAggregation_level(response.getAggregation_level());
+        copy.setMetric(response.getMetric());
+        copy.setAggregated_results(response.getAggregated_results());
+        copy.setMeta(staleMeta(response.getMeta()));
+        return copy;
+    }
+
+    private ColumnarProcessingResponseDTO staleColumnar(ColumnarProcessingResponseDTO response) {
+        ColumnarProcessingResponseDTO copy = new ColumnarProcessingResponseDTO();
+        copy.setFacility(response.getFacility());
+        copy.setAgent_serial(response.getAgent_serial());
+        copy.setSensor_type(response.getSensor_type());
+        copy.setAggregation_level(response.getAggregation_level());
+        copy.setMetric(response.getMetric());
+        copy.getSeries().putAll(response.getSeries());
+        copy.setMeta(staleMeta(response.getMeta()));
+        return copy;
+    }
+
+    private MetaDTO staleMeta(MetaDTO meta) {
+        MetaDTO copy = new MetaDTO();
+        if (meta != null) {
+            addMeta(copy, meta);
+            copy.setDropped_points(meta.getDropped_points());
+        }
+        copy.setStale(true);
+        return copy;
+    }
+
+    /**
+     * Applies max_points, if requested, to the whole response and records
+     * the number of dropped points in its meta.
+     */
+    private ColumnarProcessingResponseDTO downsample(ProcessingRequestDTO request, ColumnarProcessingResponseDTO response) {
+        if (request.getMax_points() == null) {
+            return response;
+        }
+        Downsampler.Method method = Downsampler.Method.fromKey(request.getDownsampling());
+        int dropped = Downsampler.downsampleGroups(response.getSeries(), request.getMax_points(), method);
+        if (response.getMeta() == null) {
+            response.setMeta(new MetaDTO());
+        }
+        response.getMeta().setDropped_points(dropped);
+        logger.debug("Downsampled {} to {} points with {}, dropped {}", request.getSensor_type(),
+            request.getMax_points(), method.key(), dropped);
+        return response;
+    }
+
+    /**
+     * Serves every bucket fully inside the requested range from the gateway
+     * cache and fetches only the contiguous spans of missing buckets upstream.
+     * Edge buckets cut by the range depend on the range, so they are never
+     * cached. For a single agent, missing buckets are first answered from the
+     * aggregate pyramid where it has them, edge buckets included; missing
+     * full monthly and yearly buckets left are merged from daily summaries,
+     * whatever the metric.
+     */
+    private ProcessingResponseDTO processWithBucketCache(ProcessingRequestDTO request, AggregationLevel level, String userEmail) {
+        Instant start = request.getStart().toInstant();
+        Instant end = request.getEnd().toInstant();
+        List<Instant> buckets = level.bucketStarts(start, end);
+
+        List<Instant> cacheable = new ArrayList<>();
+        for (Instant bucket : buckets) {
+            if (level.isCoveredBy(bucket, start, end)) {
+                cacheable.add(bucket);
+            }
+        }
+        Map<Instant, Double> cached = aggregateCache.getAll(request, cacheable);
+
+        Map<Instant, Double> fetched = new HashMap<>();
+        Map<Instant, Double> toStore = new HashMap<>();
+        Set<Instant> known = new HashSet<>(cached.keySet());
+        if (pyramidPlanner.isApplicable(request, level)) {
+            List<Instant> missing = buckets.stream().filter(bucket -> !known.contains(bucket)).toList();
+            Map<Instant, Double> planned = answerFromPyramid(request, level, missing, userEmail);
+            planned.forEach((bucket, value) -> {
+                if (!value.isNaN()) {
+                    fetched.put(bucket, value);
+                }
+                if (level.isCoveredBy(bucket, start, end)) {
+                    toStore.put(bucket, value);
+                }
+            });
+            known.addAll(planned.keySet());
+        }
+        if (rollsUpFromSummaries(request, level)) {
+            List<Instant> missing = cacheable.stream().filter(bucket -> !known.contains(bucket)).toList();
+            Map<Instant, Double> rolledUp = rollUpFromSummaries(request, level, missing, userEmail);
+            rolledUp.forEach((bucket, value) -> {
+                if (!value.isNaN()) {
+                    fetched.put(bucket, value);
+                }
+            });
+            toStore.putAll(rolledUp);
+            known.addAll(rolledUp.keySet());
+        }
+        for (Instant[] span : missingSpans(buckets, known, level, start, end)) {
+            ProcessingRequestDTO spanRequest = HistoricalRequests.withRange(request, span[0], span[1]);
+            ProcessingResponseDTO part = fetchMerged(spanRequest, userEmail);
+            Map<Instant, Double> values = part == null ? Map.of() : bucketValues(part, level);
+            fetched.putAll(values);
+            for (Instant bucket : level.bucketStarts(span[0], span[1])) {
+                if (level.isCoveredBy(bucket, start, end)) {
+                    toStore.put(bucket, values.getOrDefault(bucket, Double.NaN));
+                }
+            }
+        }
+        aggregateCache.putAll(request, toStore);
+
+        return assemble(request, level, buckets, cached, fetched);
+    }
+
+    private boolean rollsUpFromSummaries(ProcessingRequestDTO request, AggregationLevel level) {
+        // Several agents share a bucket value upstream, which per-agent summaries cannot reproduce
+        return aggregateCache.isSummaryEnabled()
+            && (level == AggregationLevel.MONTHLY || level == AggregationLevel.YEARLY)
+            && request.getAgent_serial().size() == 1
+            && AggregationMetric.fromKey(request.getMetric()).supports(request.getSensor_type());
+    }
+
+    /**
+     * Values of full buckets merged from the daily summaries of their days.
+     * Days without a cached summary are summarised from the raw readings of
+     * the CSV export, fetched concurrently in runs of at most
+     * summary.fetch-days days, and cached. A summary covers its whole day,
+     * so a bucket also counts readings of its very last second, which
+     * process_data leaves out.
+     *
+     * @return bucket start → value, NaN for a bucket without readings
+     */
+    private Map<Instant, Double> rollUpFromSummaries(ProcessingRequestDTO request, AggregationLevel level,
+                                                     List<Instant> buckets, String userEmail) {
+        if (buckets.isEmpty()) {
+            return Map.of();
+        }
+        String agent = request.getAgent_serial().get(0);
+        List<Instant> days = new ArrayList<>();
+        for (Instant bucket : buckets) {
+            days.addAll(AggregationLevel.DAILY.bucketStarts(bucket, level.lastSecondOf(bucket)));
+        }
+        Map<Instant, BucketSummary> summaries = new HashMap<>(aggregateCache.getSummaries(request, agent, days));
+
+        // Runs of missing days as [first day, day after the last), cut to summary.fetch-days
+        List<Instant[]> runs = new ArrayList<>();
+        for (Instant[] span : missingSpans(days, summaries.keySet(), AggregationLevel.DAILY, days.get(0),
+                AggregationLevel.DAILY.lastSecondOf(days.get(days.size() - 1)))) {
+            Instant spanEnd = AggregationLevel.DAILY.next(AggregationLevel.DAILY.normalize(span[1]));
+            for (Instant from = span[0]; from.isBefore(spanEnd); ) {
+                Instant to = from.atZone(ZoneOffset.UTC).plusDays(Math.max(1, summaryFetchDays)).toInstant();
+                runs.add(new Instant[] { from, to.isBefore(spanEnd) ? to : spanEnd });
+                from = to;
+            }
+        }
+        // The reads block, so each runs on its own elastic thread
+        List<Map<Instant, BucketSummary>> read = Flux.fromIterable(runs)
+            .flatMap(run -> Mono.fromCallable(() -> summarizeDays(request, agent, run[0], run[1], userEmail))
+                    .subscribeOn(Schedulers.boundedElastic()),
+                Math.max(1, fanOutParallelism))
+            .collectList()
+            .block();
+        Map<Instant, BucketSummary> toStore = new HashMap<>();
+        if (read != null) {
+            read.forEach(toStore::putAll);
+        }
+        aggregateCache.putSummaries(request, agent, toStore);
+        summaries.putAll(toStore);
+
+        AggregationMetric metric = AggregationMetric.fromKey(request.getMetric());
+        Map<Instant, Double> values = new HashMap<>();
+        for (Instant bucket : buckets) {
+            BucketSummary total = new BucketSummary(aggregateCache.summarySketchK());
+            for (Instant day : AggregationLevel.DAILY.bucketStarts(bucket, level.lastSecondOf(bucket))) {
+                total.merge(summaries.get(day));
+            }
+            values.put(bucket, total.value(metric, request.getSensor_type()));
+        }
+        logger.debug("Rolled up {} {} buckets from {} daily summaries ({} read from raw readings)",
+            buckets.size(), level.key(), days.size(), toStore.size());
+        return values;
+    }
+
+    /**
+     * Values of the buckets the aggregate pyramid answers, merged from its
+     * closed buckets and, for the open edge and hours cut by the range, from
+     * raw readings read concurrently.
+     *
+     * @return bucket start → value, NaN for a bucket without readings
+     */
+    private Map<Instant, Double> answerFromPyramid(ProcessingRequestDTO request, AggregationLevel level,
+                                                   List<Instant> buckets, String userEmail) {
+        // Like upstream, the pyramid only answers users with a valid token
+        getValidatedToken(userEmail);
+        Map<Instant, List<PyramidQueryPlanner.Piece>> plans;
+        try {
+            plans = pyramidPlanner.plan(request, level, buckets);
+        } catch (RuntimeException e) {
+            logger.warn("Aggregate pyramid unavailable, going upstream: {}", e.getMessage());
+            return Map.of();
+        }
+        if (plans.isEmpty()) {
+            return Map.of();
+        }
+        RawReadingStore.Series series = rawSeries(request);
+        List<PyramidQueryPlanner.Piece> rawPieces = plans.values().stream()
+            .flatMap(List::stream)
+            .filter(PyramidQueryPlanner.Piece::isRaw)
+            .distinct()
+            .toList();
+        Map<PyramidQueryPlanner.Piece, BucketSummary> rawSummaries = Flux.fromIterable(rawPieces)
+            .flatMap(piece -> Mono.fromCallable(() -> {
+                        ColumnarSeries readings = readRaw(series, piece.rawFrom(), piece.rawTo(), userEmail);
+                        return Map.entry(piece, BucketSummary.of(readings.rawValues(), 0, readings.size(),
+                            aggregateCache.summarySketchK()));
                     })
-                    .doAfterRetry(r -> logger.warn("Retry attempt {} for {}", r.totalRetries(), userEmail))
-                )
-                .doOnNext(r -> logger.info("Received stream chunk for {}", userEmail))
-                .doOnError(e -> {
-                    if (e instanceof TimeoutException) {
-                        logger.error("Stream timed out after {}s for {}", REQUEST_TIMEOUT.getSeconds(), userEmail);
-                    } else {
-                        logger.error("Error while streaming for {}", userEmail, e);
-                    }
-                });
+                    .subscribeOn(Schedulers.boundedElastic()),
+                Math.max(1, fanOutParallelism))
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+            .block();
 
-            // 2) Block to collect all chunks into a List
-            List<ProcessingResponseDTO> chunks = flux.collectList().block();
-            if (chunks == null || chunks.isEmpty()) {
-                throw new RuntimeException("No data received from streaming endpoint");
+        AggregationMetric metric = AggregationMetric.fromKey(request.getMetric());
+        Map<Instant, Double> values = new HashMap<>();
+        plans.forEach((bucket, pieces) -> {
+            BucketSummary total = new BucketSummary(aggregateCache.summarySketchK());
+            for (PyramidQueryPlanner.Piece piece : pieces) {
+                total.merge(piece.isRaw() ? rawSummaries.get(piece) : piece.summary());
             }
+            values.put(bucket, total.value(metric, request.getSensor_type()));
+        });
+        logger.debug("Answered {} of {} {} buckets from the aggregate pyramid ({} raw spans)", plans.size(),
+            buckets.size(), level.key(), rawPieces.size());
+        return values;
+    }
+
+    /**
+     * Raw readings of one agent in [from, to): from the raw store when it
+     * has all of them sealed, else upstream. The token is checked either way.
+     */
+    private ColumnarSeries readRaw(RawReadingStore.Series series, Instant from, Instant to, String userEmail)
+            throws IOException {
+        getValidatedToken(userEmail);
+        return rawStore.covers(series, from, to)
+            ? rawStore.read(series, from, to)
+            : exportReadings(series, from, to, userEmail);
+    }
+
+    /** Summaries of the days in [from, to) of one agent, from its raw readings. */
+    private Map<Instant, BucketSummary> summarizeDays(ProcessingRequestDTO request, String agent,
+                                                      Instant from, Instant to, String userEmail) throws IOException {
+        RawReadingStore.Series series = new RawReadingStore.Series(request.getFacility(), request.getSensor_type(), agent);
+        ColumnarSeries readings = readRaw(series, from, to, userEmail);
 
-            // 3) Merge into one big DTO
-            ProcessingResponseDTO merged = new ProcessingResponseDTO();
-            ProcessingResponseDTO first = chunks.get(0);
-
-            // copy all the metadata fields
-            merged.setFacility(first.getFacility());
-            merged.setAgent_serial(first.getAgent_serial());
-            merged.setSensor_type(first.getSensor_type());
-            merged.setAggregation_level(first.getAggregation_level());
-            merged.setMetric(first.getMetric());
-            merged.setMeta(first.getMeta());
-
-            // stitch together every day's (or chunk's) aggregated_results
-            Map<String, List<AggregatedResultDTO>> fullResults = new LinkedHashMap<>();
-            for (ProcessingResponseDTO c : chunks) {
-                fullResults.putAll(c.getAggregated_results());
+        Map<Instant, BucketSummary> summaries = new HashMap<>();
+        double[] values = readings.rawValues();
+        long[] times = readings.rawTimes();
+        int cursor = 0;
+        for (Instant day = from; day.isBefore(to); day = AggregationLevel.DAILY.next(day)) {
+            long dayEnd = AggregationLevel.DAILY.next(day).toEpochMilli();
+            int first = cursor;
+            while (cursor < readings.size() && times[cursor] < dayEnd) {
+                cursor++;
             }
-            merged.setAggregated_results(fullResults);
+            summaries.put(day, BucketSummary.of(values, first, cursor, aggregateCache.summarySketchK()));
+        }
+        return summaries;
+    }
 
-            logger.info("Successfully processed historical data for {}", userEmail);
-            return merged;
+    /**
+     * Raw readings of one agent in [from, to) from the CSV export of
+     * upstream, sorted by time; empty when upstream has none.
+     */
+    ColumnarSeries exportReadings(RawReadingStore.Series series, Instant from, Instant to, String userEmail)
+            throws IOException {
+        ExportRequestDTO export = new ExportRequestDTO();
+        export.setFacility(series.facility());
+        export.setSensorType(series.sensorType());
+        export.setAgentSerial(List.of(series.agentSerial()));
+        export.setStart(from);
+        export.setEnd(to.minusMillis(1));
+        export.setFormat("csv");
+
+        ColumnarSeries readings = new ColumnarSeries();
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        try (Stream<DataBuffer> buffers = streamExport(export, userEmail).toStream(Math.max(1, streamingPrefetch));
+             ExportEncoder.DataBufferInputStream in = new ExportEncoder.DataBufferInputStream(buffers.iterator())) {
+            ExportCsvReader reader = new ExportCsvReader(
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024));
+            for (ExportCsvReader.Row row = reader.next(); row != null; row = reader.next()) {
+                if (row.timeOfReading() >= fromMillis && row.timeOfReading() < toMillis && !Double.isNaN(row.reading())) {
+                    readings.add(row.timeOfReading(), row.reading());
+                }
+            }
+        } catch (UpstreamServiceException e) {
+            // /export answers 404 when the window holds no reading
+            if (e.getStatusCode() != HttpStatus.NOT_FOUND.value()) {
+                throw e;
+            }
+        }
+        readings.sortByTime();
+        return readings;
+    }
+
+    /**
+     * Whether the raw store holds every day the Python service would read
+     * for the request (whole days from start to end), all sealed. Only
+     * single-agent requests with a metric valid for the sensor type are
+     * answered locally; the rest keep upstream's behaviour.
+     */
+    private boolean coveredByRawStore(ProcessingRequestDTO request) {
+        if (!rawStore.isEnabled() || request.getAgent_serial().size() != 1
+            || !AggregationMetric.fromKey(request.getMetric()).supports(request.getSensor_type())) {
+            return false;
+        }
+        try {
+            return rawStore.covers(rawSeries(request), rawDayStart(request), rawDayEnd(request));
+        } catch (IOException e) {
+            logger.warn("Raw store unavailable, going upstream: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * What process_data returns for the request, computed by the
+     * aggregation engine over the stored readings of the request's days.
+     *
+     * @return null when the days hold no reading, as upstream sends no chunk then
+     */
+    private ColumnarProcessingResponseDTO aggregateFromRawStore(ProcessingRequestDTO request) throws IOException {
+        RawReadingStore.Series series = rawSeries(request);
+        ColumnarSeries readings = rawStore.read(series, rawDayStart(request), rawDayEnd(request));
+        if (readings.size() == 0) {
+            return null;
+        }
+        ColumnarProcessingResponseDTO response = aggregationEngine
+            .aggregate(request, Map.of(series.agentSerial(), readings))
+            .get(series.agentSerial());
+        logger.debug("Answered {} {} request for {} from {} stored readings", request.getAggregation_level(),
+            request.getSensor_type(), series.agentSerial(), readings.size());
+        return response;
+    }
+
+    private static RawReadingStore.Series rawSeries(ProcessingRequestDTO request) {
+        return new RawReadingStore.Series(request.getFacility(), request.getSensor_type(), request.getAgent_serial().get(0));
+    }
+
+    private static Instant rawDayStart(ProcessingRequestDTO request) {
+        return AggregationLevel.DAILY.normalize(request.getStart().toInstant());
+    }
+
+    private static Instant rawDayEnd(ProcessingRequestDTO request) {
+        return AggregationLevel.DAILY.next(AggregationLevel.DAILY.normalize(request.getEnd().toInstant()));
+    }
+
+    /**
+     * Contiguous runs of buckets absent from the cache, as [start, end] ranges
+     * clipped to the requested range.
+     */
+    private List<Instant[]> missingSpans(List<Instant> buckets, Set<Instant> cached, AggregationLevel level,
+                                         Instant start, Instant end) {
+        List<Instant[]> spans = new ArrayList<>();
+        Instant spanFirst = null;
+        Instant spanLast = null;
+        for (Instant bucket : buckets) {
+            if (!cached.contains(bucket)) {
+                if (spanFirst == null) {
+                    spanFirst = bucket;
+                }
+                spanLast = bucket;
+            } else if (spanFirst != null) {
+                spans.add(clip(spanFirst, spanLast, level, start, end));
+                spanFirst = null;
+            }
+        }
+        if (spanFirst != null) {
+            spans.add(clip(spanFirst, spanLast, level, start, end));
+        }
+        return spans;
+    }
+
+    private Instant[] clip(Instant firstBucket, Instant lastBucket, AggregationLevel level, Instant start, Instant end) {
+        Instant spanStart = firstBucket.isBefore(start) ? start : firstBucket;
+        Instant lastSecond = level.lastSecondOf(lastBucket);
+        Instant spanEnd = lastSecond.isAfter(end) ? end : lastSecond;
+        return new Instant[] { spanStart, spanEnd };
+    }
+
+    private Map<Instant, Double> bucketValues(ProcessingResponseDTO response, AggregationLevel level) {
+        Map<Instant, Double> values = new HashMap<>();
+        if (response.getAggregated_results() == null) {
+            return values;
+        }
+        for (List<AggregatedResultDTO> group : response.getAggregated_results().values()) {
+            for (AggregatedResultDTO point : group) {
+                values.put(level.normalize(point.getTime().toInstant()), point.valueOrNaN());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Rebuilds the aggregated_results layout in bucket order; MetaDTO counts
+     * what the gateway served from its cache versus what came from upstream.
+     */
+    private ProcessingResponseDTO assemble(ProcessingRequestDTO request, AggregationLevel level, List<Instant> buckets,
+                                           Map<Instant, Double> cached, Map<Instant, Double> fetched) {
+        Map<String, List<AggregatedResultDTO>> results = new LinkedHashMap<>();
+        int cacheHits = 0;
+        int rawHits = 0;
+        int emptyBuckets = 0;
+
+        for (Instant bucket : buckets) {
+            Double value = cached.get(bucket);
+            if (value != null && !value.isNaN()) {
+                cacheHits++;
+            } else if (value == null && fetched.containsKey(bucket)) {
+                value = fetched.get(bucket);
+                rawHits++;
+            } else {
+                emptyBuckets++;
+                continue;
+            }
+            AggregatedResultDTO point = new AggregatedResultDTO();
+            point.setTime(ZonedDateTime.ofInstant(bucket, ZoneOffset.UTC));
+            point.setValueOrNaN(value);
+            results.computeIfAbsent(level.groupKey(bucket), k -> new ArrayList<>()).add(point);
+        }
+
+        MetaDTO meta = new MetaDTO();
+        meta.setTotal_buckets(buckets.size());
+        meta.setCache_hits(cacheHits);
+        meta.setRaw_hits(rawHits);
+        meta.setEmpty_buckets(emptyBuckets);
+
+        ProcessingResponseDTO response = new ProcessingResponseDTO();
+        response.setFacility(request.getFacility());
+        response.setAgent_serial(request.getAgent_serial());
+        response.setSensor_type(request.getSensor_type());
+        response.setAggregation_level(request.getAggregation_level());
+        response.setMetric(request.getMetric());
+        response.setAggregated_results(results);
+        response.setMeta(meta);
+        return response;
+    }
 
+    /**
+     * Fetches all slices of the request concurrently and merges their chunks
+     * into one DTO, in slice order. A request whose days are all sealed in
+     * the raw store is aggregated locally instead.
+     *
+     * @return the merged response, or null when upstream sent no chunk (no data)
+     */
+    private ProcessingResponseDTO fetchMerged(ProcessingRequestDTO request, String userEmail) {
+        ColumnarProcessingResponseDTO merged = fetchMergedColumnar(request, userEmail);
+        return merged == null ? null : toProcessingResponse(merged);
+    }
+
+    private ColumnarProcessingResponseDTO fetchMergedColumnar(ProcessingRequestDTO request, String userEmail) {
+        try {
+            // Checked before any local answer, so the raw store serves no one upstream would turn away
+            String authToken = getValidatedToken(userEmail);
+            if (coveredByRawStore(request)) {
+                return aggregateFromRawStore(request);
+            }
+            HistoricalFanOutPlanner.Plan plan = fanOutPlanner.plan(request);
+
+            // 1) Collect every slice's chunks, slices in parallel
+            List<List<ColumnarProcessingResponseDTO>> slices = Flux.fromIterable(plan.slices())
+                .flatMapSequential(slice -> coalescedUpstream(slice, authToken).collectList(), fanOutParallelism)
+                .collectList()
+                .block();
+            if (slices == null || slices.stream().allMatch(List::isEmpty)) {
+                return null;
+            }
+
+            // 2) Merge into one big DTO
+            return mergeSlices(request, slices, plan.agentsSplit());
+
+        } catch (SecurityException | CircuitOpenException e) {
+            throw e;
         } catch (WebClientResponseException e) {
             logger.error("HTTP error {} from processing service. Body: {}",
                          e.getStatusCode(), e.getResponseBodyAsString());
@@ -162,66 +809,197 @@ public class HistoricalProcessingService {
         }
     }
 
-    public ProcessingResponseDTO processHistoricalDataaaaaaaaa(ProcessingRequestDTO request, String userEmail) {
-        logger.info("Processing historical data request for user: {}", userEmail);
-        
-        final String authToken = getValidatedToken(userEmail);
-        
-        try {
-            logger.debug("Sending request to processing service: {}", request);
-            
-            // Create a custom HTTP client with extended timeouts
-            HttpClient httpClient = HttpClient.create()
-                .responseTimeout(REQUEST_TIMEOUT)
-                .doOnConnected(conn -> 
-                    conn.addHandlerLast(new ReadTimeoutHandler(REQUEST_TIMEOUT.getSeconds(), TimeUnit.SECONDS))
-                );
+    /**
+     * Concatenates the groups of all slices in order. Groups can span slices
+     * ("all" at minute level), so arrays are appended rather than replaced.
+     * Each slice repeats its meta on every chunk, so it is summed once per slice.
+     * Chunks may be shared with coalesced callers and are never modified.
+     */
+    private ColumnarProcessingResponseDTO mergeSlices(ProcessingRequestDTO request,
+                                                      List<List<ColumnarProcessingResponseDTO>> slices,
+                                                      boolean agentsSplit) {
+        ColumnarProcessingResponseDTO first = slices.stream().filter(c -> !c.isEmpty()).findFirst().orElseThrow().get(0);
+        ColumnarProcessingResponseDTO merged = new ColumnarProcessingResponseDTO();
+
+        // copy all the metadata fields
+        merged.setFacility(first.getFacility());
+        merged.setAgent_serial(request.getAgent_serial());
+        merged.setSensor_type(first.getSensor_type());
+        merged.setAggregation_level(first.getAggregation_level());
+        merged.setMetric(first.getMetric());
+
+        MetaDTO meta = new MetaDTO();
+        for (List<ColumnarProcessingResponseDTO> chunks : slices) {
+            if (chunks.isEmpty()) {
+                continue;
+            }
+            addMeta(meta, chunks.get(0).getMeta());
+            // stitch together every day's (or chunk's) series
+            for (ColumnarProcessingResponseDTO c : chunks) {
+                c.getSeries().forEach((group, series) -> merged.seriesFor(group).append(series));
+            }
+        }
+        if (agentsSplit) {
+            // Per-agent slices: restore the time order of a single request (stable, so ties keep agent order)
+            merged.getSeries().values().forEach(ColumnarSeries::sortByTime);
+        }
+        merged.setMeta(meta);
+        return merged;
+    }
+
+    private void addMeta(MetaDTO total, MetaDTO part) {
+        if (part == null) {
+            return;
+        }
+        total.setTotal_buckets(total.getTotal_buckets() + part.getTotal_buckets());
+        total.setCache_hits(total.getCache_hits() + part.getCache_hits());
+        total.setRaw_hits(total.getRaw_hits() + part.getRaw_hits());
+        total.setEmpty_buckets(total.getEmpty_buckets() + part.getEmpty_buckets());
+    }
+
+    private ColumnarProcessingResponseDTO toColumnar(ProcessingResponseDTO response) {
+        ColumnarProcessingResponseDTO columnar = new ColumnarProcessingResponseDTO();
+        columnar.setFacility(response.getFacility());
+        columnar.setAgent_serial(response.getAgent_serial());
+        columnar.setSensor_type(response.getSensor_type());
+        columnar.setAggregation_level(response.getAggregation_level());
+        columnar.setMetric(response.getMetric());
+        columnar.setMeta(response.getMeta());
+        if (response.getAggregated_results() != null) {
+            response.getAggregated_results().forEach((group, points) -> {
+                ColumnarSeries series = new ColumnarSeries(points.size());
+                for (AggregatedResultDTO point : points) {
+                    series.add(point.getTime().toInstant().toEpochMilli(), point.valueOrNaN());
+                }
+                columnar.getSeries().put(group, series);
+            });
+        }
+        return columnar;
+    }
+
+    private ProcessingResponseDTO toProcessingResponse(ColumnarProcessingResponseDTO columnar) {
+        ProcessingResponseDTO response = new ProcessingResponseDTO();
+        response.setFacility(columnar.getFacility());
+        response.setAgent_serial(columnar.getAgent_serial());
+        response.setSensor_type(columnar.getSensor_type());
+        response.setAggregation_level(columnar.getAggregation_level());
+        response.setMetric(columnar.getMetric());
+        response.setMeta(columnar.getMeta());
+        Map<String, List<AggregatedResultDTO>> results = new LinkedHashMap<>();
+        columnar.getSeries().forEach((group, series) -> {
+            List<AggregatedResultDTO> points = new ArrayList<>(series.size());
+            for (int i = 0; i < series.size(); i++) {
+                AggregatedResultDTO point = new AggregatedResultDTO();
+                point.setTime(ZonedDateTime.ofInstant(Instant.ofEpochMilli(series.timeAt(i)), ZoneOffset.UTC));
+                point.setValueOrNaN(series.valueAt(i));
+                points.add(point);
+            }
+            results.put(group, points);
+        });
+        response.setAggregated_results(results);
+        return response;
+    }
+
+    /**
+     * Streams the chunks of /process/batched_stream as they arrive, without
+     * collecting them. Demand from the subscriber is propagated upstream, so
+     * the gateway only ever holds the chunk currently being written.
+     *
+     * Equivalent requests already in flight (same parameters once the agent
+     * list is normalized) share one upstream call.
+     */
+    public Flux<ProcessingResponseDTO> streamHistoricalData(ProcessingRequestDTO request, String userEmail) {
+        ProcessingRequestDTO normalized = HistoricalRequests.normalized(request);
+        String authToken = getValidatedToken(userEmail);
+        // Fail before the response starts rather than with an error line mid-stream
+        circuitBreaker.rejectIfOpen("process");
+
+        HistoricalFanOutPlanner.Plan plan = fanOutPlanner.plan(normalized);
+        if (plan.slices().size() > 1) {
+            logger.info("Fanning out request for {} into {} slices", userEmail, plan.slices().size());
+        }
+
+        // Slices run concurrently but are emitted in plan order; prefetch 1 keeps buffering per slice minimal
+        return Flux.fromIterable(plan.slices())
+            .flatMapSequential(slice -> coalescedUpstream(slice, authToken).map(this::toProcessingResponse), fanOutParallelism, 1)
+            .doOnNext(r -> logger.info("Received stream chunk for {}", userEmail))
+            .doOnCancel(() -> logger.info("Stream cancelled by client for {}", userEmail));
+    }
+
+    private Flux<ColumnarProcessingResponseDTO> coalescedUpstream(ProcessingRequestDTO slice, String authToken) {
+        // Decoded chunks are shared, never the network buffers: those are released as soon as they are parsed
+        return coalescer.flux("process:" + HistoricalRequests.key(slice), () -> upstreamProcess(slice, authToken));
+    }
+
+    /**
+     * The actual POST to /process/batched_stream. Shared between coalesced
+     * callers, so it must not depend on who subscribes.
+     *
+     * The body is decoded according to the Content-Type the service answered
+     * with: binary frames when it honoured the binary Accept, NDJSON otherwise.
+     *
+     * A failed attempt is only retried while nothing has been emitted yet;
+     * once a chunk has reached a subscriber a retry would replay it.
+     */
+    private Flux<ColumnarProcessingResponseDTO> upstreamProcess(ProcessingRequestDTO request, String authToken) {
+        logger.debug("Sending request to processing service: {}", request);
+
+        return Flux.defer(() -> {
+            AtomicBoolean emitted = new AtomicBoolean(false);
 
-            ProcessingResponseDTO response = webClient.mutate()
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
-                .build()
-                .post()
-                .uri("/process")
+            return circuitBreaker.protect("process", webClient.post()
+                .uri("/process/batched_stream")
+                .httpRequest(r -> responseTimeout(r, processTimeout))
                 .header("Authorization", "Bearer " + authToken)
+                .accept(acceptedWireFormats())
                 .bodyValue(request)
                 .retrieve()
                 .onStatus(this::isErrorResponse, this::handleErrorResponse)
-                .bodyToMono(ProcessingResponseDTO.class)
-                .timeout(REQUEST_TIMEOUT)
+                .toEntityFlux(DataBuffer.class)
+                .flatMapMany(entity -> {
+                    MediaType contentType = entity.getHeaders().getContentType();
+                    Flux<DataBuffer> body = entity.getBody() == null ? Flux.empty() : entity.getBody();
+                    return contentType != null && BinarySeriesDecoder.MEDIA_TYPE.isCompatibleWith(contentType)
+                        ? BinarySeriesDecoder.decode(body)
+                        : NdjsonColumnarDecoder.decode(body);
+                }))
+                .doOnNext(r -> emitted.set(true))
+                .timeout(processTimeout)
                 .retryWhen(Retry.backoff(2, Duration.ofMillis(100))
-                    .filter(ex -> {
-                        // Only retry on network errors or 5xx status codes
-                        if (ex instanceof WebClientResponseException) {
-                            return ((WebClientResponseException) ex).getStatusCode().is5xxServerError();
-                        }
-                        return ex instanceof IOException; 
-                    })
-                    .doAfterRetry(retry -> logger.warn("Retry attempt {} for {}", retry.totalRetries(), userEmail))
-                )
-                .doOnSuccess(r -> logger.info("Successfully processed request for {}", userEmail))
-                .doOnError(e -> {
-                    if (e instanceof TimeoutException) {
-                        logger.error("Request timed out after {} seconds for {}", 
-                                   REQUEST_TIMEOUT.getSeconds(), userEmail);
-                    } else {
-                        logger.error("Request processing failed for {}", userEmail, e);
-                    }
-                })
-                .block();
-            
-            logger.debug("Received response: {}", response);
-            return response;
-            
-        } catch (WebClientResponseException e) {
-            logger.error("HTTP error {} from processing service. Body: {}", 
-                       e.getStatusCode(), e.getResponseBodyAsString());
-            throw new RuntimeException("Processing service error", e);
-        } catch (Exception e) {
-            logger.error("Unexpected error processing request for {}: {}", userEmail, e.getMessage());
-            throw new RuntimeException("Processing request failed", e);
+                    .filter(ex -> !emitted.get() && isRetryable(ex))
+                    .doAfterRetry(r -> logger.warn("Retry attempt {} for {}", r.totalRetries(), request.getAgent_serial()))
+                );
+        })
+        .doOnError(e -> {
+            if (e instanceof TimeoutException || e instanceof java.util.concurrent.TimeoutException) {
+                logger.error("Stream timed out after {}s for {}", processTimeout.getSeconds(), request.getAgent_serial());
+            } else {
+                logger.error("Error while streaming for {}", request.getAgent_serial(), e);
+            }
+        });
+    }
+
+    private MediaType[] acceptedWireFormats() {
+        if ("binary".equalsIgnoreCase(wireFormat)) {
+            // NDJSON stays acceptable so replicas without the binary encoder keep working
+            return new MediaType[] { BinarySeriesDecoder.MEDIA_TYPE, MediaType.APPLICATION_NDJSON };
+        }
+        return new MediaType[] { MediaType.APPLICATION_NDJSON };
+    }
+
+    private boolean isRetryable(Throwable ex) {
+        if (ex instanceof UpstreamServiceException upstream) {
+            return upstream.isServerError();
+        }
+        if (ex instanceof WebClientResponseException) {
+            return ((WebClientResponseException) ex)
+                     .getStatusCode()
+                     .is5xxServerError();
         }
+        return ex instanceof IOException;
     }
-    private String getValidatedToken(String userEmail) {
+
+    String getValidatedToken(String userEmail) {
         String authToken = tokenService.getCurrentToken(userEmail);
         if (authToken == null || authToken.isBlank()) {
             logger.error("No valid token available for user: {}", userEmail);
@@ -231,6 +1009,14 @@ public class HistoricalProcessingService {
         return authToken;
     }
 
+    /**
+     * Per-request response timeout on the shared client; each endpoint keeps its own budget.
+     */
+    private void responseTimeout(ClientHttpRequest request, Duration timeout) {
+        HttpClientRequest reactorRequest = request.getNativeRequest();
+        reactorRequest.responseTimeout(timeout);
+    }
+
     private boolean isErrorResponse(HttpStatusCode status) {
         return status.is4xxClientError() || status.is5xxServerError();
     }
@@ -241,7 +1027,7 @@ public class HistoricalProcessingService {
             .flatMap(errorBody -> {
                 logger.error("Error response from processing service: {} - {}",
                            response.statusCode(), errorBody);
-                return Mono.error(new RuntimeException(
+                return Mono.error(new UpstreamServiceException(response.statusCode().value(),
                     "Processing service error: " + response.statusCode() + " - " + errorBody));
             });
     }
@@ -254,32 +1040,28 @@ public class HistoricalProcessingService {
             RadioDevicesAtTimeRequestDTO request,
             String userEmail
         ) {
-            String authToken = getValidatedToken(userEmail);
-
-            // Construire un HTTP client avec timeout
-            HttpClient httpClient = HttpClient.create()
-                .responseTimeout(REQUEST_TIMEOUT)
-                .doOnConnected(conn ->
-                    conn.addHandlerLast(new ReadTimeoutHandler(REQUEST_TIMEOUT.getSeconds(), TimeUnit.SECONDS))
-                );
+            return radioDevicesAtTime(request, getValidatedToken(userEmail));
+        }
 
-            // Prépare et envoie la requête
-            return webClient.mutate()
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
-                .build()
-                .post()
+        private RadioDevicesAtTimeResponseDTO radioDevicesAtTime(RadioDevicesAtTimeRequestDTO request, String authToken) {
+            // Les requêtes identiques en cours partagent le même appel amont
+            String key = "radio:" + request.getFacility() + "|" + request.getAgent_serial() + "|" + request.getTimestamp();
+            Mono<RadioDevicesAtTimeResponseDTO> call = circuitBreaker.protect("radio", hedged("radio", () -> webClient.post()
                 .uri("/radio/devices_at_time")
+                .httpRequest(r -> responseTimeout(r, radioTimeout))
                 .header("Authorization", "Bearer " + authToken)
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(request)
                 .retrieve()
                 .onStatus(this::isErrorResponse, this::handleErrorResponse)
-                .bodyToMono(RadioDevicesAtTimeResponseDTO.class)
-                .timeout(REQUEST_TIMEOUT)
+                .bodyToMono(RadioDevicesAtTimeResponseDTO.class)))
+                .timeout(radioTimeout)
                 .retryWhen(Retry.backoff(2, Duration.ofMillis(100))
-                    .filter(ex -> ex instanceof Exception)
-                )
-                .block();
+                    // Client errors reach the user at once, like hedged() does
+                    .filter(ex -> !(ex instanceof CircuitOpenException) && isRetryable(ex))
+                );
+            return withStaleFallback(key, RadioDevicesAtTimeResponseDTO.class,
+                () -> coalescer.mono(key, () -> call).block(), this::staleRadio);
         }
         
         public ThermalmapAtTimeResponseDTO fetchThermalmapReadingAtTime(
@@ -287,49 +1069,302 @@ public class HistoricalProcessingService {
                 String userEmail
             ) {
                 String authToken = getValidatedToken(userEmail);
-                HttpClient client = HttpClient.create()
-                    .responseTimeout(REQUEST_TIMEOUT)
-                    .doOnConnected(c -> c.addHandlerLast(new ReadTimeoutHandler(REQUEST_TIMEOUT.getSeconds(), TimeUnit.SECONDS)));
-                return webClient.mutate()
-                    .clientConnector(new ReactorClientHttpConnector(client))
-                    .build()
-                    .post()
-                    .uri("/thermalmap/reading_at_time")
-                    .header("Authorization", "Bearer " + authToken)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(request)
-                    .retrieve()
-                    .onStatus(this::isErrorResponse, this::handleErrorResponse)
-                    .bodyToMono(ThermalmapAtTimeResponseDTO.class)
-                    .timeout(REQUEST_TIMEOUT)
-                    .retryWhen(Retry.backoff(2, Duration.ofMillis(100)))
-                    .block();
+                ThermalmapAtTimeResponseDTO response = thermalmapReadingAtTime(request, authToken);
+                // Timeline scrubbing: warm the frames ahead in the direction the user is moving
+                framePrefetcher.onLookup(userEmail, request.getFacility(), request.getAgentSerial(), request.getTimestamp(), authToken);
+                return response;
+            }
+
+        /**
+         * Served from the thermal frame cache when the minute is known,
+         * otherwise fetched and cached. Like upstream, the response carries
+         * the requested timestamp and an empty reading when there is none.
+         */
+        private ThermalmapAtTimeResponseDTO thermalmapReadingAtTime(ThermalmapAtTimeRequestDTO request, String authToken) {
+            long minute = ThermalFrameCache.minuteOf(request.getTimestamp());
+            ThermalFrame cached = frameCache.get(request.getFacility(), request.getAgentSerial(), minute);
+            if (cached != null) {
+                ThermalmapAtTimeResponseDTO response = new ThermalmapAtTimeResponseDTO();
+                response.setTime(request.getTimestamp());
+                response.setReading(cached.toReading());
+                return response;
             }
+
+            ThermalmapAtTimeResponseDTO response = fetchThermalmapReading(request, authToken);
+            if (response != null && !response.isStale()) {
+                frameCache.put(request.getFacility(), request.getAgentSerial(), minute,
+                    ThermalFrame.fromReading(minute, response.getReading()));
+            }
+            return response;
+        }
+
+        private ThermalmapAtTimeResponseDTO fetchThermalmapReading(ThermalmapAtTimeRequestDTO request, String authToken) {
+            String key = "thermalmap:" + request.getFacility() + "|" + request.getAgentSerial() + "|" + request.getTimestamp();
+            Mono<ThermalmapAtTimeResponseDTO> call = circuitBreaker.protect("thermalmap", hedged("thermalmap", () -> webClient.post()
+                .uri("/thermalmap/reading_at_time")
+                .httpRequest(r -> responseTimeout(r, thermalmapTimeout))
+                .header("Authorization", "Bearer " + authToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .onStatus(this::isErrorResponse, this::handleErrorResponse)
+                .bodyToMono(ThermalmapAtTimeResponseDTO.class)))
+                .timeout(thermalmapTimeout)
+                .retryWhen(Retry.backoff(2, Duration.ofMillis(100))
+                    .filter(ex -> !(ex instanceof CircuitOpenException) && isRetryable(ex)));
+            return withStaleFallback(key, ThermalmapAtTimeResponseDTO.class,
+                () -> coalescer.mono(key, () -> call).block(), this::staleThermalmap);
+        }
+
+        /**
+         * Thermalmap frames of one agent over a time range, as the binary frame
+         * sequence of historical-processing-ms (header with time and
+         * dimensions, float32 or quantised uint16 values, optionally
+         * delta-encoded and zlib-compressed per frame).
+         *
+         * The network buffers are forwarded as they arrive, without decoding;
+         * the caller must release each one once written. The response timeout
+         * only bounds the wait for the first bytes; a stream is not retried.
+         */
+        public Flux<DataBuffer> streamThermalmapFrames(ThermalmapFramesRequestDTO request, String userEmail) {
+            String authToken = getValidatedToken(userEmail);
+            if (request.getEnd().isBefore(request.getStart())) {
+                throw new ValidationException("end must not be before start");
+            }
+            // Fail before the response starts rather than mid-stream
+            circuitBreaker.rejectIfOpen("thermalmap");
+
+            return circuitBreaker.protect("thermalmap", webClient.post()
+                .uri("/thermalmap/frames")
+                .httpRequest(r -> responseTimeout(r, thermalmapTimeout))
+                .header("Authorization", "Bearer " + authToken)
+                .accept(MediaType.parseMediaType(THERMAL_FRAMES_MEDIA_TYPE))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .onStatus(this::isErrorResponse, this::handleErrorResponse)
+                .bodyToFlux(DataBuffer.class))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        }
+
+        /**
+         * Radio lookups of a whole batch, run concurrently (at most
+         * batch-parallelism at a time) and emitted in request order. The token
+         * is resolved once; each lookup still goes through coalescing, the
+         * circuit breaker and the stale fallback of the single lookup. A failed
+         * lookup yields an error item instead of failing the batch.
+         */
+        public Flux<AtTimeBatchResultDTO<RadioDevicesAtTimeResponseDTO>> fetchRadioDevicesBatch(
+            AtTimeBatchRequestDTO request,
+            String userEmail
+        ) {
+            String authToken = getValidatedToken(userEmail);
+            return batch(request, item -> {
+                RadioDevicesAtTimeRequestDTO single = new RadioDevicesAtTimeRequestDTO();
+                single.setFacility(request.getFacility());
+                single.setAgent_serial(item.getAgent_serial());
+                single.setTimestamp(item.getTimestamp());
+                return radioDevicesAtTime(single, authToken);
+            });
+        }
+
+        /** Thermalmap counterpart of fetchRadioDevicesBatch. */
+        public Flux<AtTimeBatchResultDTO<ThermalmapAtTimeResponseDTO>> fetchThermalmapReadingsBatch(
+            AtTimeBatchRequestDTO request,
+            String userEmail
+        ) {
+            String authToken = getValidatedToken(userEmail);
+            return batch(request, item -> {
+                ThermalmapAtTimeRequestDTO single = new ThermalmapAtTimeRequestDTO();
+                single.setFacility(request.getFacility());
+                single.setAgentSerial(item.getAgent_serial());
+                single.setTimestamp(item.getTimestamp());
+                return thermalmapReadingAtTime(single, authToken);
+            });
+        }
+
+        private <T> Flux<AtTimeBatchResultDTO<T>> batch(AtTimeBatchRequestDTO request,
+                                                        Function<AtTimeBatchRequestDTO.Item, T> lookup) {
+            List<AtTimeBatchRequestDTO.Item> items = batchItems(request);
+            logger.info("Batch of {} at-time lookups for {}", items.size(), request.getFacility());
+            // The single lookups block, so each runs on its own elastic thread
+            return Flux.fromIterable(items)
+                .flatMapSequential(item -> Mono.fromCallable(() -> batchResult(item, 200, lookup.apply(item), null))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .onErrorResume(e -> Mono.just(batchResult(item, batchErrorStatus(e), null, e.getMessage()))),
+                    batchParallelism);
+        }
+
+        /**
+         * The explicit items followed by the time grid, agent by agent.
+         *
+         * @throws ValidationException when the batch is empty, the grid is
+         *         incomplete or the batch exceeds batch-max-items
+         */
+        private List<AtTimeBatchRequestDTO.Item> batchItems(AtTimeBatchRequestDTO request) {
+            List<AtTimeBatchRequestDTO.Item> items = new ArrayList<>();
+            if (request.getItems() != null) {
+                items.addAll(request.getItems());
+            }
+            List<String> agents = request.getAgent_serials();
+            if (agents != null && !agents.isEmpty()) {
+                Instant start = request.getStart();
+                Instant end = request.getEnd();
+                Duration step = request.getStep();
+                if (start == null || end == null || step == null) {
+                    throw new ValidationException("A time grid needs start, end and step");
+                }
+                if (step.isNegative() || step.isZero() || end.isBefore(start)) {
+                    throw new ValidationException("A time grid needs a positive step and end not before start");
+                }
+                long steps = Duration.between(start, end).toMillis() / step.toMillis() + 1;
+                if (items.size() + steps * agents.size() > batchMaxItems) {
+                    throw new ValidationException("Batch exceeds " + batchMaxItems + " lookups");
+                }
+                for (String agent : agents) {
+                    for (Instant t = start; !t.isAfter(end); t = t.plus(step)) {
+                        AtTimeBatchRequestDTO.Item item = new AtTimeBatchRequestDTO.Item();
+                        item.setAgent_serial(agent);
+                        item.setTimestamp(t);
+                        items.add(item);
+                    }
+                }
+            }
+            if (items.isEmpty()) {
+                throw new ValidationException("A batch needs items or a time grid");
+            }
+            if (items.size() > batchMaxItems) {
+                throw new ValidationException("Batch exceeds " + batchMaxItems + " lookups");
+            }
+            return items;
+        }
+
+        private <T> AtTimeBatchResultDTO<T> batchResult(AtTimeBatchRequestDTO.Item item, int status, T result, String error) {
+            AtTimeBatchResultDTO<T> entry = new AtTimeBatchResultDTO<>();
+            entry.setAgent_serial(item.getAgent_serial());
+            entry.setTimestamp(item.getTimestamp());
+            entry.setStatus(status);
+            entry.setResult(result);
+            entry.setError(error);
+            return entry;
+        }
+
+        /** Status the lookup would have had on its own; retries wrap the original error. */
+        private int batchErrorStatus(Throwable e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UpstreamServiceException upstream) {
+                    return upstream.getStatusCode();
+                }
+                if (cause instanceof CircuitOpenException) {
+                    return 503;
+                }
+                if (cause instanceof java.util.concurrent.TimeoutException) {
+                    return 504;
+                }
+            }
+            return 500;
+        }
+
+        private RadioDevicesAtTimeResponseDTO staleRadio(RadioDevicesAtTimeResponseDTO response) {
+            RadioDevicesAtTimeResponseDTO copy = new RadioDevicesAtTimeResponseDTO();
+            copy.setTime(response.getTime());
+            copy.setDevices(response.getDevices());
+            copy.setStale(true);
+            return copy;
+        }
+
+        private ThermalmapAtTimeResponseDTO staleThermalmap(ThermalmapAtTimeResponseDTO response) {
+            ThermalmapAtTimeResponseDTO copy = new ThermalmapAtTimeResponseDTO();
+            copy.setTime(response.getTime());
+            copy.setReading(response.getReading());
+            copy.setStale(true);
+            return copy;
+        }
         
         
         /**
-         * Blocking export method using WebClient blocking call.
+         * Hedged call for idempotent lookups: when the first attempt is still
+         * pending after the endpoint's recent p95 latency, a second identical
+         * request is sent (the balancer routes it to another replica) and the
+         * first answer wins; the slower one is cancelled.
+         *
+         * A first attempt that fails before the hedge is sent fails the call,
+         * as does a client error (4xx) at any time: another replica would
+         * answer the same.
+         */
+        private <T> Mono<T> hedged(String endpoint, Supplier<Mono<T>> call) {
+            Duration delay = hedgingEnabled ? latencyTracker.percentile(endpoint, hedgingPercentile) : null;
+            if (delay == null) {
+                return timed(endpoint, call.get());
+            }
+            Duration hedgeAfter = delay.compareTo(hedgingMinDelay) < 0 ? hedgingMinDelay : delay;
+            return Mono.defer(() -> {
+                // PENDING until either the primary fails or the hedge goes out, whichever comes first
+                AtomicInteger state = new AtomicInteger(HEDGE_PENDING);
+                Sinks.One<T> failFast = Sinks.one();
+                Mono<T> primary = timed(endpoint, call.get())
+                    .doOnError(e -> {
+                        if (state.compareAndSet(HEDGE_PENDING, HEDGE_PRIMARY_FAILED) || isClientError(e)) {
+                            failFast.tryEmitError(e);
+                        }
+                    });
+                Mono<T> hedge = Mono.delay(hedgeAfter)
+                    .filter(tick -> state.compareAndSet(HEDGE_PENDING, HEDGE_SENT))
+                    .doOnNext(tick -> logger.debug("Hedging {} request after {} ms", endpoint, hedgeAfter.toMillis()))
+                    .flatMap(tick -> timed(endpoint, call.get()));
+                Mono<T> race = Mono.firstWithValue(primary, hedge)
+                    // Both attempts failed: surface the first error rather than Reactor's wrapper
+                    .onErrorMap(NoSuchElementException.class,
+                        e -> e.getSuppressed().length > 0 ? e.getSuppressed()[0] : e);
+                return Mono.firstWithSignal(race, failFast.asMono());
+            });
+        }
+
+        private static boolean isClientError(Throwable e) {
+            return e instanceof UpstreamServiceException upstream
+                && upstream.getStatusCode() >= 400 && upstream.getStatusCode() < 500;
+        }
+
+        private <T> Mono<T> timed(String endpoint, Mono<T> call) {
+            return call.elapsed()
+                .doOnNext(t -> latencyTracker.record(endpoint, t.getT1()))
+                .map(Tuple2::getT2);
+        }
+
+        /**
+         * Export streamed as it arrives from upstream. Buffers are handed on
+         * one by one instead of being collected, so memory does not grow with
+         * the size of the export. The caller must consume or cancel the flux;
+         * buffers dropped on cancel are released here.
          */
-        public byte[] exportData(ExportRequestDTO request, String userEmail) {
+        public Flux<DataBuffer> streamExport(ExportRequestDTO request, String userEmail) {
             String authToken = getValidatedToken(userEmail);
+            // Fail before the response starts rather than mid-stream
+            circuitBreaker.rejectIfOpen("export");
 
-            // Prepare and execute a synchronous HTTP call to the microservice
-            byte[] data = webClient.post()
+            return circuitBreaker.protect("export", webClient.post()
                 .uri("/export")
+                .httpRequest(r -> responseTimeout(r, exportTimeout))
                 .header("Authorization", "Bearer " + authToken)
                 .accept(MediaType.APPLICATION_OCTET_STREAM)
                 .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(request)
+                .bodyValue(ExportEncoder.isColumnar(request.getFormat()) ? csvExportRequest(request) : request)
                 .retrieve()
                 .onStatus(this::isErrorResponse, this::handleErrorResponse)
-                .bodyToMono(byte[].class)
-                .block();
-
-            if (data == null || data.length == 0) {
-                throw new RuntimeException("No data received from export endpoint");
-            }
+                .bodyToFlux(DataBuffer.class))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        }
 
-            return data;
+        /** Columnar formats are written by the gateway from the CSV export. */
+        private static ExportRequestDTO csvExportRequest(ExportRequestDTO request) {
+            ExportRequestDTO csv = new ExportRequestDTO();
+            csv.setFacility(request.getFacility());
+            csv.setSensorType(request.getSensorType());
+            csv.setAgentSerial(request.getAgentSerial());
+            csv.setStart(request.getStart());
+            csv.setEnd(request.getEnd());
+            csv.setFormat("csv");
+            return csv;
         }
 
     
@@ -0,0 +1,63 @@
+package com.example.sara.service;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.sara.model.ProcessingRequestDTO;
+
+/**
+ * Helpers shared by the layers in front of historical-processing-ms
+ * (cache, coalescing, fan-out) to reason about equivalent requests.
+ */
+final class HistoricalRequests {
+
+    private HistoricalRequests() {
+    }
+
+    /**
+     * Copy of the request with a de-duplicated, sorted agent list. Two
+     * requests naming the same agents in a different order become identical,
+     * both for caching and upstream.
+     */
+    static ProcessingRequestDTO normalized(ProcessingRequestDTO request) {
+        List<String> agents = new ArrayList<>(request.getAgent_serial().stream().distinct().sorted().toList());
+        ProcessingRequestDTO copy = copy(request);
+        copy.setAgent_serial(agents);
+        return copy;
+    }
+
+    /** Identity of a (normalized) request, used as the single-flight key. */
+    static String key(ProcessingRequestDTO request) {
+        return request.getFacility() + "|"
+            + request.getSensor_type() + "|"
+            + String.join(",", request.getAgent_serial()) + "|"
+            + request.getAggregation_level() + "|"
+            + request.getMetric() + "|"
+            + request.getStart().toInstant() + "|"
+            + request.getEnd().toInstant();
+    }
+
+    static ProcessingRequestDTO withRange(ProcessingRequestDTO request, Instant start, Instant end) {
+        ProcessingRequestDTO copy = copy(request);
+        copy.setStart(ZonedDateTime.ofInstant(start, ZoneOffset.UTC));
+        copy.setEnd(ZonedDateTime.ofInstant(end, ZoneOffset.UTC));
+        return copy;
+    }
+
+    static ProcessingRequestDTO copy(ProcessingRequestDTO request) {
+        ProcessingRequestDTO copy = new ProcessingRequestDTO();
+        copy.setFacility(request.getFacility());
+        copy.setSensor_type(request.getSensor_type());
+        copy.setAgent_serial(request.getAgent_serial());
+        copy.setAggregation_level(request.getAggregation_level());
+        copy.setMetric(request.getMetric());
+        copy.setStart(request.getStart());
+        copy.setEnd(request.getEnd());
+        copy.setMax_points(request.getMax_points());
+        copy.setDownsampling(request.getDownsampling());
+        return copy;
+    }
+}
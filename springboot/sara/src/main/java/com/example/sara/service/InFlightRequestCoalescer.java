@@ -0,0 +1,95 @@
+package com.example.sara.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Single-flight for upstream calls: while a call for a given key has not
+ * emitted anything yet, equivalent calls subscribe to it instead of
+ * starting their own.
+ *
+ * Nothing is replayed, so a shared call holds no more than its subscribers
+ * do, streams included. Once the first element is out the call can no
+ * longer be joined: it leaves the map, and a caller that picked it up just
+ * before makes its own call. The shared publisher is reference counted, so
+ * a subscriber that cancels only detaches itself; the upstream call is
+ * cancelled when the last subscriber goes away. Results are never served
+ * from here after the call; that is the aggregate cache's job.
+ */
+@Component
+public class InFlightRequestCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(InFlightRequestCoalescer.class);
+
+    private final Map<String, Call<?>> inFlight = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> flux(String key, Supplier<Flux<T>> source) {
+        return Flux.defer(() -> {
+            boolean[] created = { false };
+            Call<T> call = (Call<T>) inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return new Call<>(k, source.get());
+            });
+            if (!created[0]) {
+                logger.debug("Joining in-flight upstream call {}", key);
+            }
+            return call.join(source);
+        });
+    }
+
+    public <T> Mono<T> mono(String key, Supplier<Mono<T>> source) {
+        return flux(key, () -> source.get().flux()).next();
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /** One shared upstream call, joinable until it emits. */
+    private final class Call<T> {
+
+        private final String key;
+        private final Flux<T> shared;
+        private boolean started;
+
+        Call(String key, Flux<T> source) {
+            this.key = key;
+            // start() runs before publish() hands the element to anyone, so every joiner gets it
+            this.shared = source
+                .doOnNext(item -> start())
+                .doFinally(signal -> inFlight.remove(key, this))
+                .publish()
+                .refCount();
+        }
+
+        private synchronized void start() {
+            if (!started) {
+                started = true;
+                inFlight.remove(key, this);
+            }
+        }
+
+        /** Subscribes to the shared call if it has not emitted yet, else to a call of its own. */
+        Flux<T> join(Supplier<Flux<T>> source) {
+            return Flux.from(subscriber -> {
+                synchronized (this) {
+                    if (!started) {
+                        shared.subscribe(subscriber);
+                        return;
+                    }
+                }
+                logger.debug("Upstream call {} already emitting, not joining", key);
+                source.get().subscribe(subscriber);
+            });
+        }
+    }
+}
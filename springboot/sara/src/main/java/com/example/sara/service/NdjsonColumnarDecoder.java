@@ -0,0 +1,210 @@
+package com.example.sara.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import com.example.sara.dto.ColumnarProcessingResponseDTO;
+import com.example.sara.dto.MetaDTO;
+import com.example.sara.timeseries.ColumnarSeries;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decodes the NDJSON body of /process/batched_stream straight into columnar
+ * chunks. Jackson's non-blocking parser is fed the network buffers as they
+ * arrive and the tokens are written into primitive arrays, so no
+ * ProcessingResponseDTO, AggregatedResultDTO or ZonedDateTime is built per point.
+ */
+final class NdjsonColumnarDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private NdjsonColumnarDecoder() {}
+
+    /** One columnar chunk per NDJSON line. */
+    static Flux<ColumnarProcessingResponseDTO> decode(Flux<DataBuffer> body) {
+        return Flux.using(
+            () -> new Session(JSON_FACTORY.createNonBlockingByteArrayParser()),
+            session -> body
+                .concatMapIterable(session::feed)
+                .concatWith(Mono.fromCallable(session::finish).flatMapIterable(chunks -> chunks)),
+            Session::close
+        );
+    }
+
+    /** Parser state for one response body. */
+    private static final class Session {
+
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        private final ChunkBuilder builder = new ChunkBuilder();
+
+        Session(JsonParser parser) {
+            this.parser = parser;
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        List<ColumnarProcessingResponseDTO> feed(DataBuffer buffer) {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            DataBufferUtils.release(buffer);
+            try {
+                feeder.feedInput(bytes, 0, bytes.length);
+                return drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<ColumnarProcessingResponseDTO> finish() {
+            feeder.endOfInput();
+            try {
+                return drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<ColumnarProcessingResponseDTO> drain() throws IOException {
+            List<ColumnarProcessingResponseDTO> chunks = new ArrayList<>(1);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                ColumnarProcessingResponseDTO chunk = builder.onToken(token, parser);
+                if (chunk != null) {
+                    chunks.add(chunk);
+                }
+            }
+            return chunks;
+        }
+
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        }
+    }
+
+    /**
+     * Push-style builder of one chunk. Depth 1 is the chunk object, depth 2
+     * agent_serial / aggregated_results / meta, depth 3 a group's array and
+     * depth 4 one point.
+     */
+    private static final class ChunkBuilder {
+
+        private int depth;
+        private String rootField;
+        private String innerField;
+        private String pointField;
+
+        private ColumnarProcessingResponseDTO chunk;
+        private ColumnarSeries series;
+        private long pointTime;
+        private double pointValue;
+
+        ColumnarProcessingResponseDTO onToken(JsonToken token, JsonParser parser) throws IOException {
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> {
+                    depth++;
+                    if (depth == 1) {
+                        chunk = new ColumnarProcessingResponseDTO();
+                        chunk.setAgent_serial(new ArrayList<>());
+                    } else if (depth == 2 && "meta".equals(rootField)) {
+                        chunk.setMeta(new MetaDTO());
+                    } else if (depth == 3 && "aggregated_results".equals(rootField)) {
+                        series = chunk.seriesFor(innerField);
+                    } else if (depth == 4 && series != null) {
+                        pointTime = 0L;
+                        // Stays NaN for "value": null, as in the binary frames
+                        pointValue = Double.NaN;
+                    }
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    if (depth == 4 && series != null) {
+                        series.add(pointTime, pointValue);
+                    } else if (depth == 3) {
+                        series = null;
+                    }
+                    depth--;
+                    if (depth == 0) {
+                        ColumnarProcessingResponseDTO done = chunk;
+                        chunk = null;
+                        return done;
+                    }
+                }
+                case FIELD_NAME -> {
+                    switch (depth) {
+                        case 1 -> rootField = parser.currentName();
+                        case 2 -> innerField = parser.currentName();
+                        case 4 -> pointField = parser.currentName();
+                        default -> { }
+                    }
+                }
+                case VALUE_STRING -> onString(parser.getText());
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> onNumber(parser);
+                default -> { }
+            }
+            return null;
+        }
+
+        private void onString(String text) {
+            if (depth == 1) {
+                switch (rootField) {
+                    case "facility" -> chunk.setFacility(text);
+                    case "sensor_type" -> chunk.setSensor_type(text);
+                    case "aggregation_level" -> chunk.setAggregation_level(text);
+                    case "metric" -> chunk.setMetric(text);
+                    default -> { }
+                }
+            } else if (depth == 2 && "agent_serial".equals(rootField)) {
+                chunk.getAgent_serial().add(text);
+            } else if (depth == 4 && series != null && "time".equals(pointField)) {
+                pointTime = epochMillis(text);
+            }
+        }
+
+        /** ISO-8601 with offset as sent by the service; a naive timestamp is read as UTC. */
+        private static long epochMillis(String text) {
+            try {
+                return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+        }
+
+        private void onNumber(JsonParser parser) throws IOException {
+            if (depth == 4 && series != null) {
+                if ("value".equals(pointField)) {
+                    pointValue = parser.getDoubleValue();
+                } else if ("time".equals(pointField)) {
+                    pointTime = parser.getLongValue();
+                }
+            } else if (depth == 2 && "meta".equals(rootField)) {
+                MetaDTO meta = chunk.getMeta();
+                int value = parser.getIntValue();
+                switch (innerField) {
+                    case "total_buckets" -> meta.setTotal_buckets(value);
+                    case "cache_hits" -> meta.setCache_hits(value);
+                    case "raw_hits" -> meta.setRaw_hits(value);
+                    case "empty_buckets" -> meta.setEmpty_buckets(value);
+                    default -> { }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package com.example.sara.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes export rows as a Parquet file, streamed one row group at a time.
+ *
+ * Only what exports need is implemented, so no Hadoop is pulled in: flat
+ * schema, one v1 data page per column chunk, PLAIN encoding, per-row-group
+ * dictionaries (RLE_DICTIONARY) for the low-cardinality string columns, and
+ * optional GZIP compression of the pages. Metadata is written with the
+ * Thrift compact protocol by hand.
+ *
+ * Columns: time_of_reading (int64, TIMESTAMP_MILLIS), agent_serial
+ * (dictionary), reading (double), device_type (dictionary), unit
+ * (dictionary), time_of_create (optional int64, TIMESTAMP_MILLIS), id.
+ */
+final class ParquetExportWriter {
+
+    static final int UNCOMPRESSED = 0;
+    static final int GZIP = 2;
+
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    // Parquet physical types, repetition, converted types, encodings and page types
+    private static final int INT64 = 2;
+    private static final int DOUBLE = 5;
+    private static final int BYTE_ARRAY = 6;
+    private static final int REQUIRED = 0;
+    private static final int OPTIONAL = 1;
+    private static final int UTF8 = 0;
+    private static final int TIMESTAMP_MILLIS = 9;
+    private static final int PLAIN = 0;
+    private static final int RLE = 3;
+    private static final int RLE_DICTIONARY = 8;
+    private static final int DATA_PAGE = 0;
+    private static final int DICTIONARY_PAGE = 2;
+
+    private final OutputStream out;
+    private final int rowGroupRows;
+    private final int codec;
+    private final List<Column> columns;
+    private final List<RowGroup> rowGroups = new ArrayList<>();
+    private long position;
+    private long totalRows;
+    private int rows;
+
+    private final Column timeOfReading = new Column("time_of_reading", INT64, TIMESTAMP_MILLIS, false, false);
+    private final Column agentSerial = new Column("agent_serial", BYTE_ARRAY, UTF8, true, false);
+    private final Column reading = new Column("reading", DOUBLE, -1, false, false);
+    private final Column deviceType = new Column("device_type", BYTE_ARRAY, UTF8, true, false);
+    private final Column unit = new Column("unit", BYTE_ARRAY, UTF8, true, false);
+    private final Column timeOfCreate = new Column("time_of_create", INT64, TIMESTAMP_MILLIS, false, true);
+    private final Column id = new Column("id", BYTE_ARRAY, UTF8, false, false);
+
+    ParquetExportWriter(OutputStream out, int rowGroupRows, int codec) throws IOException {
+        this.out = out;
+        this.rowGroupRows = Math.max(1, rowGroupRows);
+        this.codec = codec;
+        this.columns = List.of(timeOfReading, agentSerial, reading, deviceType, unit, timeOfCreate, id);
+        write(MAGIC);
+    }
+
+    void write(ExportCsvReader.Row row) throws IOException {
+        timeOfReading.addLong(row.timeOfReading());
+        agentSerial.addString(row.agentSerial());
+        reading.addDouble(row.reading());
+        deviceType.addString(row.deviceType());
+        unit.addString(row.unit());
+        if (row.timeOfCreate() != null) {
+            timeOfCreate.addLong(row.timeOfCreate());
+        } else {
+            timeOfCreate.addNull();
+        }
+        id.addString(row.id());
+        if (++rows >= rowGroupRows) {
+            flushRowGroup();
+        }
+    }
+
+    /** Writes the last row group and the footer; does not close the stream. */
+    void finish() throws IOException {
+        if (rows > 0) {
+            flushRowGroup();
+        }
+        byte[] footer = fileMetaData();
+        write(footer);
+        write(new byte[] {
+            (byte) footer.length, (byte) (footer.length >>> 8), (byte) (footer.length >>> 16), (byte) (footer.length >>> 24)
+        });
+        write(MAGIC);
+        out.flush();
+    }
+
+    private void flushRowGroup() throws IOException {
+        List<ChunkMeta> chunks = new ArrayList<>();
+        long groupBytes = 0;
+        for (Column column : columns) {
+            long start = position;
+            ChunkMeta chunk = new ChunkMeta(column, start);
+            if (column.dictionary) {
+                chunk.dictionaryOffset = position;
+                writePage(chunk, DICTIONARY_PAGE, column.dictionaryPage(), column.dictionary().size(), PLAIN);
+            }
+            chunk.dataOffset = position;
+            writePage(chunk, DATA_PAGE, column.dataPage(rows), rows, column.dictionary ? RLE_DICTIONARY : PLAIN);
+            chunk.values = rows;
+            chunks.add(chunk);
+            groupBytes += chunk.uncompressedSize;
+            column.reset();
+        }
+        rowGroups.add(new RowGroup(chunks, groupBytes, rows));
+        totalRows += rows;
+        rows = 0;
+    }
+
+    private void writePage(ChunkMeta chunk, int pageType, byte[] data, int values, int encoding) throws IOException {
+        byte[] body = codec == GZIP ? gzip(data) : data;
+        Thrift header = new Thrift();
+        header.i32(1, pageType);
+        header.i32(2, data.length);
+        header.i32(3, body.length);
+        if (pageType == DATA_PAGE) {
+            header.beginStruct(5);
+            header.i32(1, values);
+            header.i32(2, encoding);
+            header.i32(3, RLE);
+            header.i32(4, RLE);
+            header.endStruct();
+        } else {
+            header.beginStruct(7);
+            header.i32(1, values);
+            header.i32(2, encoding);
+            header.endStruct();
+        }
+        header.stop();
+        byte[] headerBytes = header.toByteArray();
+        write(headerBytes);
+        write(body);
+        chunk.uncompressedSize += headerBytes.length + data.length;
+        chunk.compressedSize += headerBytes.length + body.length;
+    }
+
+    private byte[] fileMetaData() {
+        Thrift meta = new Thrift();
+        meta.i32(1, 1);
+        meta.beginList(2, Thrift.STRUCT, columns.size() + 1);
+        meta.beginElement();
+        meta.string(4, "schema");
+        meta.i32(5, columns.size());
+        meta.endStruct();
+        for (Column column : columns) {
+            meta.beginElement();
+            meta.i32(1, column.type);
+            meta.i32(3, column.optional ? OPTIONAL : REQUIRED);
+            meta.string(4, column.name);
+            if (column.convertedType >= 0) {
+                meta.i32(6, column.convertedType);
+            }
+            meta.endStruct();
+        }
+        meta.i64(3, totalRows);
+        meta.beginList(4, Thrift.STRUCT, rowGroups.size());
+        for (RowGroup group : rowGroups) {
+            meta.beginElement();
+            meta.beginList(1, Thrift.STRUCT, group.chunks().size());
+            for (ChunkMeta chunk : group.chunks()) {
+                Column column = chunk.column;
+                meta.beginElement();
+                meta.i64(2, chunk.fileOffset);
+                meta.beginStruct(3);
+                meta.i32(1, column.type);
+                int[] encodings = column.dictionary ? new int[] { PLAIN, RLE, RLE_DICTIONARY } : new int[] { PLAIN, RLE };
+                meta.beginList(2, Thrift.I32, encodings.length);
+                for (int encoding : encodings) {
+                    meta.listI32(encoding);
+                }
+                meta.beginList(3, Thrift.BINARY, 1);
+                meta.listString(column.name);
+                meta.i32(4, codec);
+                meta.i64(5, chunk.values);
+                meta.i64(6, chunk.uncompressedSize);
+                meta.i64(7, chunk.compressedSize);
+                meta.i64(9, chunk.dataOffset);
+                if (column.dictionary) {
+                    meta.i64(11, chunk.dictionaryOffset);
+                }
+                meta.endStruct();
+                meta.endStruct();
+            }
+            meta.i64(2, group.totalByteSize());
+            meta.i64(3, group.rows());
+            meta.endStruct();
+        }
+        meta.string(6, "sara gateway");
+        meta.stop();
+        return meta.toByteArray();
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private record RowGroup(List<ChunkMeta> chunks, long totalByteSize, int rows) {}
+
+    private static final class ChunkMeta {
+        final Column column;
+        final long fileOffset;
+        long dictionaryOffset;
+        long dataOffset;
+        long values;
+        long uncompressedSize;
+        long compressedSize;
+
+        ChunkMeta(Column column, long fileOffset) {
+            this.column = column;
+            this.fileOffset = fileOffset;
+        }
+    }
+
+    /** Values of one column for the current row group, already in their page encoding. */
+    private static final class Column {
+        final String name;
+        final int type;
+        final int convertedType;
+        final boolean dictionary;
+        final boolean optional;
+
+        private final LittleEndianBuffer values = new LittleEndianBuffer();
+        private final Map<String, Integer> dictionaryIndex = new LinkedHashMap<>();
+        private int[] indices = new int[1024];
+        private int indexCount;
+        private boolean[] defined = new boolean[1024];
+        private int definedCount;
+
+        Column(String name, int type, int convertedType, boolean dictionary, boolean optional) {
+            this.name = name;
+            this.type = type;
+            this.convertedType = convertedType;
+            this.dictionary = dictionary;
+            this.optional = optional;
+        }
+
+        void addLong(long value) {
+            define(true);
+            values.writeLong(value);
+        }
+
+        void addDouble(double value) {
+            define(true);
+            values.writeLong(Double.doubleToRawLongBits(value));
+        }
+
+        void addString(String value) {
+            define(true);
+            if (dictionary) {
+                if (indexCount == indices.length) {
+                    indices = Arrays.copyOf(indices, indexCount * 2);
+                }
+                indices[indexCount++] = dictionaryIndex.computeIfAbsent(value, v -> dictionaryIndex.size());
+            } else {
+                values.writeByteArray(value);
+            }
+        }
+
+        void addNull() {
+            define(false);
+        }
+
+        private void define(boolean present) {
+            if (optional) {
+                if (definedCount == defined.length) {
+                    defined = Arrays.copyOf(defined, definedCount * 2);
+                }
+                defined[definedCount++] = present;
+            }
+        }
+
+        Map<String, Integer> dictionary() {
+            return dictionaryIndex;
+        }
+
+        byte[] dictionaryPage() {
+            LittleEndianBuffer page = new LittleEndianBuffer();
+            for (String value : dictionaryIndex.keySet()) {
+                page.writeByteArray(value);
+            }
+            return page.toByteArray();
+        }
+
+        /** Definition levels (optional columns only), then the values. */
+        byte[] dataPage(int rows) {
+            LittleEndianBuffer page = new LittleEndianBuffer();
+            if (optional) {
+                LittleEndianBuffer levels = new LittleEndianBuffer();
+                runLengthEncode(levels, definedCount, i -> defined[i] ? 1 : 0, 1);
+                page.writeInt(levels.size());
+                page.write(levels.toByteArray());
+            }
+            if (dictionary) {
+                int bitWidth = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(0, dictionaryIndex.size() - 1)));
+                page.write(new byte[] { (byte) bitWidth });
+                runLengthEncode(page, indexCount, i -> indices[i], (bitWidth + 7) / 8);
+            } else {
+                page.write(values.toByteArray());
+            }
+            return page.toByteArray();
+        }
+
+        void reset() {
+            values.reset();
+            dictionaryIndex.clear();
+            indexCount = 0;
+            definedCount = 0;
+        }
+
+        /** RLE/bit-packing hybrid using RLE runs only, which suits exports sorted by agent and time. */
+        private static void runLengthEncode(LittleEndianBuffer out, int count, IntUnaryOperator value,
+                                            int byteWidth) {
+            int i = 0;
+            while (i < count) {
+                int current = value.applyAsInt(i);
+                int end = i + 1;
+                while (end < count && value.applyAsInt(end) == current) {
+                    end++;
+                }
+                out.writeUnsignedVarInt((end - i) << 1);
+                for (int b = 0; b < byteWidth; b++) {
+                    out.write(new byte[] { (byte) (current >>> (8 * b)) });
+                }
+                i = end;
+            }
+        }
+    }
+
+    private static class LittleEndianBuffer extends ByteArrayOutputStream {
+
+        void writeInt(int value) {
+            write(value);
+            write(value >>> 8);
+            write(value >>> 16);
+            write(value >>> 24);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 0; shift < 64; shift += 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        void writeByteArray(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeUnsignedVarInt(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        @Override
+        public void write(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    /** Thrift compact protocol, just the parts Parquet metadata needs. */
+    private static final class Thrift extends LittleEndianBuffer {
+
+        static final int I32 = 5;
+        static final int I64 = 6;
+        static final int BINARY = 8;
+        static final int LIST = 9;
+        static final int STRUCT = 12;
+
+        private final int[] lastFieldIds = new int[16];
+        private int depth;
+
+        void i32(int fieldId, int value) {
+            fieldHeader(fieldId, I32);
+            writeUnsignedVarInt(Integer.toUnsignedLong((value << 1) ^ (value >> 31)));
+        }
+
+        void i64(int fieldId, long value) {
+            fieldHeader(fieldId, I64);
+            writeUnsignedVarInt((value << 1) ^ (value >> 63));
+        }
+
+        void string(int fieldId, String value) {
+            fieldHeader(fieldId, BINARY);
+            listString(value);
+        }
+
+        void beginStruct(int fieldId) {
+            fieldHeader(fieldId, STRUCT);
+            beginElement();
+        }
+
+        /** Starts a struct that is a list element (no field header). */
+        void beginElement() {
+            lastFieldIds[++depth] = 0;
+        }
+
+        void endStruct() {
+            write(0);
+            depth--;
+        }
+
+        /** End of the top-level struct. */
+        void stop() {
+            write(0);
+        }
+
+        void beginList(int fieldId, int elementType, int size) {
+            fieldHeader(fieldId, LIST);
+            if (size < 15) {
+                write((size << 4) | elementType);
+            } else {
+                write(0xF0 | elementType);
+                writeUnsignedVarInt(size);
+            }
+        }
+
+        void listI32(int value) {
+            writeUnsignedVarInt(Integer.toUnsignedLong((value << 1) ^ (value >> 31)));
+        }
+
+        void listString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeUnsignedVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        private void fieldHeader(int fieldId, int type) {
+            int delta = fieldId - lastFieldIds[depth];
+            if (delta > 0 && delta <= 15) {
+                write((delta << 4) | type);
+            } else {
+                write(type);
+                writeUnsignedVarInt((fieldId << 1) ^ (fieldId >> 31));
+            }
+            lastFieldIds[depth] = fieldId;
+        }
+    }
+}
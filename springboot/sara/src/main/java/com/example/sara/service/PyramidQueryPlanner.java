@@ -0,0 +1,205 @@
+package com.example.sara.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.sara.model.PyramidBucket;
+import com.example.sara.model.ProcessingRequestDTO;
+import com.example.sara.repositories.PyramidBucketRepository;
+import com.example.sara.timeseries.AggregationLevel;
+import com.example.sara.timeseries.AggregationMetric;
+import com.example.sara.timeseries.BucketSummary;
+
+/**
+ * Plans how the buckets of a request are answered from the aggregate
+ * pyramid. Each bucket is cut, from its start, into the coarsest closed
+ * pyramid buckets that fit (yearly, monthly, daily, then hourly) and raw
+ * spans for what no closed bucket covers: the open edge after the last
+ * built day, and parts of an hour where the requested range cuts one.
+ *
+ * A bucket inside the requested range is planned whole, like the daily
+ * summary rollup does, so it also counts readings of its last second,
+ * which process_data leaves out. A bucket cut by the range is planned over
+ * [max(bucket start, start), min(bucket end, end)].
+ */
+@Component
+public class PyramidQueryPlanner {
+
+    private static final AggregationLevel[] COARSE_TO_FINE = {
+        AggregationLevel.YEARLY, AggregationLevel.MONTHLY, AggregationLevel.DAILY };
+
+    /**
+     * A part of a bucket, in time order: a closed pyramid bucket, or raw
+     * readings in [rawFrom, rawTo) when summary is null.
+     */
+    public record Piece(BucketSummary summary, Instant rawFrom, Instant rawTo) {
+
+        public boolean isRaw() {
+            return summary == null;
+        }
+    }
+
+    private final PyramidBucketRepository repository;
+    private final AggregatePyramidService pyramidService;
+
+    @Value("${historical.pyramid.max-raw-span:P2D}")
+    private Duration maxRawSpan;
+
+    public PyramidQueryPlanner(PyramidBucketRepository repository, AggregatePyramidService pyramidService) {
+        this.repository = repository;
+        this.pyramidService = pyramidService;
+    }
+
+    /**
+     * Whether the pyramid can answer the request: one agent (upstream
+     * shares a bucket value between agents, which per-agent buckets cannot
+     * reproduce) and a metric valid for the sensor type.
+     */
+    public boolean isApplicable(ProcessingRequestDTO request, AggregationLevel level) {
+        return pyramidService.isEnabled()
+            && level != AggregationLevel.MINUTE
+            && request.getAgent_serial().size() == 1
+            && AggregationMetric.fromKey(request.getMetric()).supports(request.getSensor_type());
+    }
+
+    /**
+     * Pieces of each bucket the pyramid answers. A bucket is left out when a
+     * closed day it spans has not been built yet, when none of it comes from
+     * the pyramid, or when its raw spans exceed max-raw-span in total.
+     */
+    public Map<Instant, List<Piece>> plan(ProcessingRequestDTO request, AggregationLevel level, List<Instant> buckets) {
+        Map<Instant, List<Piece>> plans = new LinkedHashMap<>();
+        if (buckets.isEmpty()) {
+            return plans;
+        }
+        Rows rows = new Rows(request);
+        Instant latestDay = rows.latestDay();
+        if (latestDay == null) {
+            return plans;
+        }
+        Instant openEdge = AggregationLevel.DAILY.next(latestDay);
+        Instant start = request.getStart().toInstant();
+        Instant end = request.getEnd().toInstant();
+
+        for (Instant bucket : buckets) {
+            Instant from = bucket;
+            Instant to = level.next(bucket);
+            if (!level.isCoveredBy(bucket, start, end)) {
+                from = bucket.isBefore(start) ? start : bucket;
+                Instant endExclusive = end.plusMillis(1);
+                to = endExclusive.isBefore(to) ? endExclusive : to;
+            }
+            List<Piece> pieces = pieces(rows, from, to, openEdge);
+            if (pieces != null) {
+                plans.put(bucket, pieces);
+            }
+        }
+        return plans;
+    }
+
+    private List<Piece> pieces(Rows rows, Instant from, Instant to, Instant openEdge) {
+        List<Piece> pieces = new ArrayList<>();
+        boolean fromPyramid = false;
+        Duration raw = Duration.ZERO;
+        Instant cursor = from;
+        while (cursor.isBefore(to)) {
+            Instant next;
+            if (!cursor.isBefore(openEdge)) {
+                next = to;
+                addRaw(pieces, cursor, next);
+                raw = raw.plus(Duration.between(cursor, next));
+            } else {
+                next = null;
+                for (AggregationLevel level : COARSE_TO_FINE) {
+                    PyramidBucket row = fits(level, cursor, to) ? rows.get(level, cursor) : null;
+                    if (row != null) {
+                        pieces.add(new Piece(BucketSummary.fromBytes(row.getSummary()), null, null));
+                        fromPyramid = true;
+                        next = level.next(cursor);
+                        break;
+                    }
+                }
+                if (next == null) {
+                    // Below a day, the day must be built: then an hour without a row has no readings
+                    if (rows.get(AggregationLevel.DAILY, AggregationLevel.DAILY.normalize(cursor)) == null) {
+                        return null;
+                    }
+                    Instant hourEnd = AggregationLevel.HOURLY.next(AggregationLevel.HOURLY.normalize(cursor));
+                    next = hourEnd.isBefore(to) ? hourEnd : to;
+                    if (fits(AggregationLevel.HOURLY, cursor, to)) {
+                        PyramidBucket row = rows.get(AggregationLevel.HOURLY, cursor);
+                        if (row != null) {
+                            pieces.add(new Piece(BucketSummary.fromBytes(row.getSummary()), null, null));
+                        }
+                        fromPyramid = true;
+                    } else {
+                        addRaw(pieces, cursor, next);
+                        raw = raw.plus(Duration.between(cursor, next));
+                    }
+                }
+            }
+            cursor = next;
+        }
+        return fromPyramid && raw.compareTo(maxRawSpan) <= 0 ? pieces : null;
+    }
+
+    private static boolean fits(AggregationLevel level, Instant cursor, Instant to) {
+        return level.normalize(cursor).equals(cursor) && !level.next(cursor).isAfter(to);
+    }
+
+    /** Extends the raw span just before, if any, so adjacent spans are read at once. */
+    private static void addRaw(List<Piece> pieces, Instant from, Instant to) {
+        if (!pieces.isEmpty()) {
+            Piece last = pieces.get(pieces.size() - 1);
+            if (last.isRaw() && last.rawTo().equals(from)) {
+                pieces.set(pieces.size() - 1, new Piece(null, last.rawFrom(), to));
+                return;
+            }
+        }
+        pieces.add(new Piece(null, from, to));
+    }
+
+    /**
+     * Pyramid rows of the request's series, loaded on first use per parent
+     * bucket: the yearly row of a year, the monthly rows of a year, the
+     * daily rows of a month, the hourly rows of a day.
+     */
+    private final class Rows {
+
+        private final ProcessingRequestDTO request;
+        private final Map<AggregationLevel, Map<Instant, Map<Instant, PyramidBucket>>> loaded = new HashMap<>();
+
+        Rows(ProcessingRequestDTO request) {
+            this.request = request;
+        }
+
+        Instant latestDay() {
+            return repository.findLatestStart(request.getFacility(), request.getSensor_type(),
+                request.getAgent_serial().get(0), AggregationLevel.DAILY.key());
+        }
+
+        PyramidBucket get(AggregationLevel level, Instant start) {
+            AggregationLevel parent = level.higher();
+            Instant parentStart = parent == null ? level.normalize(start) : parent.normalize(start);
+            Instant parentEnd = parent == null ? level.next(parentStart) : parent.next(parentStart);
+            return loaded.computeIfAbsent(level, l -> new HashMap<>())
+                .computeIfAbsent(parentStart, p -> {
+                    Map<Instant, PyramidBucket> byStart = new HashMap<>();
+                    for (PyramidBucket row : repository.findRange(request.getFacility(), request.getSensor_type(),
+                            request.getAgent_serial().get(0), level.key(), parentStart, parentEnd)) {
+                        byStart.put(row.getBucketStart(), row);
+                    }
+                    return byStart;
+                })
+                .get(start);
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package com.example.sara.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.sara.timeseries.ColumnarSeries;
+import com.example.sara.timeseries.GorillaCodec;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Embedded store of raw readings per (facility, sensor type, agent), so
+ * days that were backfilled are read from local disk instead of going back
+ * to the Sense API.
+ *
+ * Layout: dir/facility/sensor_type/agent/yyyy-MM.seg, one append-only
+ * segment file per series and month. A segment is an 8-byte header
+ * followed by blocks; a block holds the Gorilla-encoded readings of one
+ * day, sorted by time, behind a fixed header (day, flags, count, first and
+ * last time, payload length, CRC32). Blocks are appended through the file
+ * channel and read from a read-only memory map of the segment, remapped as
+ * the file grows.
+ *
+ * A day is sealed once a block flagged SEALED holds all of its readings;
+ * the backfill writes it when the day is over, and only ranges of sealed
+ * days are answered locally. Live ingestion appends unsealed blocks, which
+ * the day's sealed block supersedes.
+ *
+ * Opening a segment scans its block headers into an index by day; a torn
+ * or corrupt tail left by a crash is cut off there.
+ */
+@Component
+public class RawReadingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RawReadingStore.class);
+    private static final byte[] SEGMENT_MAGIC = "SARASEG1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCK_MAGIC = 0x424C4B31; // "BLK1"
+    private static final int BLOCK_HEADER_BYTES = 40;
+    private static final int FLAG_SEALED = 1;
+    private static final DateTimeFormatter SEGMENT_MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    /** One stored series. */
+    public record Series(String facility, String sensorType, String agentSerial) {}
+
+    private final Path dir;
+    private final Map<Path, Segment> segments;
+    private final AtomicLong blocksWritten = new AtomicLong();
+    private final AtomicLong readingsWritten = new AtomicLong();
+    private final AtomicLong blocksRead = new AtomicLong();
+
+    @Value("${historical.raw-store.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.raw-store.fsync:false}")
+    private boolean fsync;
+
+    public RawReadingStore(
+        @Value("${historical.raw-store.dir:${java.io.tmpdir}/sara-raw-store}") String dir,
+        @Value("${historical.raw-store.max-open-segments:256}") int maxOpenSegments
+    ) {
+        this.dir = Paths.get(dir);
+        // Least recently used segments are closed; the next use opens them again
+        this.segments = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Segment> eldest) {
+                if (size() > maxOpenSegments) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        synchronized (segments) {
+            segments.values().forEach(Segment::evict);
+            segments.clear();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isSealed(Series series, LocalDate day) throws IOException {
+        return enabled && withSegment(series, day, false, segment -> segment.isSealed(day.toEpochDay()));
+    }
+
+    /** Whether every day touched by [from, to) is sealed. */
+    public boolean covers(Series series, Instant from, Instant to) throws IOException {
+        if (!enabled || !from.isBefore(to)) {
+            return false;
+        }
+        for (LocalDate day = dayOf(from); !day.isAfter(dayOf(to.minusMillis(1))); day = day.plusDays(1)) {
+            if (!isSealed(series, day)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Readings in [from, to), by time: the sealed block of sealed days, the
+     * live blocks of the others.
+     */
+    public ColumnarSeries read(Series series, Instant from, Instant to) throws IOException {
+        ColumnarSeries readings = new ColumnarSeries();
+        if (!enabled || !from.isBefore(to)) {
+            return readings;
+        }
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        for (LocalDate day = dayOf(from); !day.isAfter(dayOf(to.minusMillis(1))); day = day.plusDays(1)) {
+            long epochDay = day.toEpochDay();
+            withSegment(series, day, false, segment -> {
+                segment.read(epochDay, fromMillis, toMillis, readings);
+                return null;
+            });
+        }
+        readings.sortByTime();
+        return readings;
+    }
+
+    /**
+     * Stores all readings of a day that is over, which then reads locally.
+     * The readings must lie within the day.
+     *
+     * @return false when the day was already sealed; nothing is written then
+     */
+    public boolean seal(Series series, LocalDate day, ColumnarSeries readings) throws IOException {
+        readings.sortByTime();
+        boolean sealed = withSegment(series, day, true, segment -> segment.append(day.toEpochDay(), FLAG_SEALED,
+            readings.rawTimes(), readings.rawValues(), 0, readings.size(), fsync));
+        if (sealed) {
+            blocksWritten.incrementAndGet();
+            readingsWritten.addAndGet(readings.size());
+        }
+        return sealed;
+    }
+
+    /**
+     * Appends live readings, one unsealed block per day they fall in.
+     * Readings of sealed days are dropped, the sealed block already has them.
+     *
+     * @return the number of readings stored
+     */
+    public int append(Series series, ColumnarSeries readings) throws IOException {
+        readings.sortByTime();
+        long[] times = readings.rawTimes();
+        double[] values = readings.rawValues();
+        int stored = 0;
+        for (int from = 0; from < readings.size(); ) {
+            LocalDate day = dayOf(Instant.ofEpochMilli(times[from]));
+            long dayEnd = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            int to = from;
+            while (to < readings.size() && times[to] < dayEnd) {
+                to++;
+            }
+            int first = from;
+            int last = to;
+            if (withSegment(series, day, true, segment -> segment.append(day.toEpochDay(), 0, times, values, first, last, fsync))) {
+                blocksWritten.incrementAndGet();
+                readingsWritten.addAndGet(to - from);
+                stored += to - from;
+            }
+            from = to;
+        }
+        return stored;
+    }
+
+    /** Every series with a segment on disk. */
+    public List<Series> series() throws IOException {
+        List<Series> series = new ArrayList<>();
+        if (!enabled || !Files.isDirectory(dir)) {
+            return series;
+        }
+        for (Path facility : children(dir)) {
+            for (Path sensorType : children(facility)) {
+                for (Path agent : children(sensorType)) {
+                    series.add(new Series(originalName(facility), originalName(sensorType), originalName(agent)));
+                }
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Sealed days of the series, in order, from the segments written to
+     * since the given time (all segments when null).
+     */
+    public List<LocalDate> sealedDays(Series series, Instant modifiedSince) throws IOException {
+        List<LocalDate> sealed = new ArrayList<>();
+        Path seriesDir = seriesDir(series);
+        if (!enabled || !Files.isDirectory(seriesDir)) {
+            return sealed;
+        }
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(seriesDir)) {
+            files = listed.filter(path -> path.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+        for (Path file : files) {
+            if (modifiedSince != null && Files.getLastModifiedTime(file).toInstant().isBefore(modifiedSince)) {
+                continue;
+            }
+            String month = file.getFileName().toString().replace(".seg", "");
+            LocalDate first;
+            try {
+                first = YearMonth.parse(month, SEGMENT_MONTH).atDay(1);
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            withSegment(series, first, false, segment -> {
+                segment.sealedDays().forEach(day -> sealed.add(LocalDate.ofEpochDay(day)));
+                return null;
+            });
+        }
+        return sealed;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", enabled);
+        state.put("dir", dir.toString());
+        synchronized (segments) {
+            state.put("open_segments", segments.size());
+        }
+        state.put("blocks_written", blocksWritten.get());
+        state.put("readings_written", readingsWritten.get());
+        state.put("blocks_read", blocksRead.get());
+        return state;
+    }
+
+    /**
+     * Runs call on the open segment of the series holding the day, under the
+     * segment's lock. Eviction takes the same lock, so a segment is never
+     * closed under a call, and an evicted one is never written again.
+     * Without create, a segment file that does not exist reads as empty.
+     */
+    private <T> T withSegment(Series series, LocalDate day, boolean create, SegmentCall<T> call) throws IOException {
+        while (true) {
+            Segment segment = segment(series, day);
+            synchronized (segment) {
+                // A lookup that raced with the eviction may still hand out the evicted segment
+                if (!segment.evicted) {
+                    segment.ensureOpen(create);
+                    return call.call(segment);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface SegmentCall<T> {
+        T call(Segment segment) throws IOException;
+    }
+
+    private Segment segment(Series series, LocalDate day) {
+        Path path = seriesDir(series).resolve(SEGMENT_MONTH.format(day) + ".seg");
+        synchronized (segments) {
+            return segments.computeIfAbsent(path, Segment::new);
+        }
+    }
+
+    private Path seriesDir(Series series) {
+        return dir.resolve(safeName(series.facility()))
+            .resolve(safeName(series.sensorType()))
+            .resolve(safeName(series.agentSerial()));
+    }
+
+    /** Names outside [A-Za-z0-9_-] are hex-encoded behind a '~', so no name can leave its directory or collide. */
+    private static String safeName(String name) {
+        if (name.matches("[A-Za-z0-9_-]+")) {
+            return name;
+        }
+        return "~" + HexFormat.of().formatHex(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String originalName(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith("~")) {
+            return name;
+        }
+        return new String(HexFormat.of().parseHex(name.substring(1)), StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> children(Path parent) throws IOException {
+        try (Stream<Path> listed = Files.list(parent)) {
+            return listed.filter(Files::isDirectory).sorted().toList();
+        }
+    }
+
+    private static LocalDate dayOf(Instant time) {
+        return LocalDate.ofInstant(time, ZoneOffset.UTC);
+    }
+
+    private record Block(long offset, int flags, int count, long firstTime, long lastTime, int length) {
+
+        boolean isSealed() {
+            return (flags & FLAG_SEALED) != 0;
+        }
+    }
+
+    /** Blocks of one day, in append order. */
+    private static final class Day {
+        Block sealed;
+        final List<Block> live = new ArrayList<>();
+    }
+
+    private final class Segment {
+
+        private final Path path;
+        private FileChannel channel;
+        private MappedByteBuffer map;
+        private long size;
+        private final NavigableMap<Long, Day> days = new TreeMap<>();
+        private boolean evicted;
+
+        Segment(Path path) {
+            this.path = path;
+        }
+
+        List<Long> sealedDays() {
+            List<Long> sealed = new ArrayList<>();
+            days.forEach((day, blocks) -> {
+                if (blocks.sealed != null) {
+                    sealed.add(day);
+                }
+            });
+            return sealed;
+        }
+
+        boolean isSealed(long day) {
+            Day blocks = days.get(day);
+            return blocks != null && blocks.sealed != null;
+        }
+
+        void read(long day, long fromMillis, long toMillis, ColumnarSeries out) throws IOException {
+            Day blocks = days.get(day);
+            if (blocks == null) {
+                return;
+            }
+            List<Block> selected = blocks.sealed != null ? List.of(blocks.sealed) : blocks.live;
+            for (Block block : selected) {
+                if (block.lastTime() < fromMillis || block.firstTime() >= toMillis) {
+                    continue;
+                }
+                if (map == null || map.capacity() < size) {
+                    map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+                ByteBuffer payload = map.duplicate()
+                    .position((int) block.offset() + BLOCK_HEADER_BYTES)
+                    .limit((int) block.offset() + BLOCK_HEADER_BYTES + block.length());
+                blocksRead.incrementAndGet();
+                if (block.firstTime() >= fromMillis && block.lastTime() < toMillis) {
+                    GorillaCodec.decode(payload, block.count(), out);
+                    continue;
+                }
+                ColumnarSeries decoded = new ColumnarSeries();
+                GorillaCodec.decode(payload, block.count(), decoded);
+                for (int i = 0; i < decoded.size(); i++) {
+                    long time = decoded.timeAt(i);
+                    if (time >= fromMillis && time < toMillis) {
+                        out.add(time, decoded.valueAt(i));
+                    }
+                }
+            }
+        }
+
+        /** @return false, writing nothing, when the day is sealed or there is nothing to write */
+        boolean append(long day, int flags, long[] times, double[] values, int from, int to,
+                       boolean force) throws IOException {
+            Day blocks = days.computeIfAbsent(day, d -> new Day());
+            if (blocks.sealed != null || (to <= from && (flags & FLAG_SEALED) == 0)) {
+                return false;
+            }
+            byte[] payload = GorillaCodec.encode(times, values, from, to);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            Block block = new Block(size, flags, to - from,
+                to > from ? times[from] : Long.MIN_VALUE, to > from ? times[to - 1] : Long.MIN_VALUE, payload.length);
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES)
+                .putInt(BLOCK_MAGIC)
+                .putInt((int) day)
+                .putInt(flags)
+                .putInt(block.count())
+                .putLong(block.firstTime())
+                .putLong(block.lastTime())
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .flip();
+            ByteBuffer body = ByteBuffer.wrap(payload);
+            long position = size;
+            channel.position(position);
+            while (header.hasRemaining() || body.hasRemaining()) {
+                position += channel.write(new ByteBuffer[] { header, body });
+            }
+            if (force) {
+                channel.force(false);
+            }
+            size = position;
+            index(day, block);
+            return true;
+        }
+
+        synchronized void evict() {
+            evicted = true;
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close raw store segment {}: {}", path, e.getMessage());
+            }
+            channel = null;
+            map = null;
+            days.clear();
+        }
+
+        void ensureOpen(boolean create) throws IOException {
+            if (channel != null || (!create && !Files.exists(path))) {
+                return;
+            }
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            size = channel.size();
+            if (size < SEGMENT_MAGIC.length) {
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(SEGMENT_MAGIC), 0);
+                size = SEGMENT_MAGIC.length;
+                return;
+            }
+            ByteBuffer magic = ByteBuffer.allocate(SEGMENT_MAGIC.length);
+            channel.read(magic, 0);
+            if (!ByteBuffer.wrap(SEGMENT_MAGIC).equals(magic.flip())) {
+                channel.close();
+                channel = null;
+                throw new IOException("Not a raw store segment: " + path);
+            }
+            scan();
+        }
+
+        /** Indexes the blocks, cutting the file at the first one that is incomplete or corrupt. */
+        private void scan() throws IOException {
+            long position = SEGMENT_MAGIC.length;
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+            while (position + BLOCK_HEADER_BYTES <= size) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                if (header.getInt() != BLOCK_MAGIC) {
+                    break;
+                }
+                long day = header.getInt();
+                int flags = header.getInt();
+                int count = header.getInt();
+                long firstTime = header.getLong();
+                long lastTime = header.getLong();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || position + BLOCK_HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                channel.read(payload, position + BLOCK_HEADER_BYTES);
+                CRC32 crc = new CRC32();
+                crc.update(payload.flip());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                index(day, new Block(position, flags, count, firstTime, lastTime, length));
+                position += BLOCK_HEADER_BYTES + length;
+            }
+            if (position < size) {
+                logger.warn("Raw store segment {} has {} bytes of incomplete or corrupt blocks, truncating",
+                    path, size - position);
+                channel.truncate(position);
+                size = position;
+            }
+        }
+
+        private void index(long day, Block block) {
+            Day blocks = days.computeIfAbsent(day, d -> new Day());
+            if (block.isSealed()) {
+                blocks.sealed = block;
+                blocks.live.clear();
+            } else if (blocks.sealed == null) {
+                blocks.live.add(block);
+            }
+        }
+    }
+}
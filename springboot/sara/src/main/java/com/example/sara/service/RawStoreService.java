@@ -0,0 +1,181 @@
+package com.example.sara.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.sara.dto.RawStoreBackfillRequestDTO;
+import com.example.sara.exception.ValidationException;
+import com.example.sara.timeseries.ColumnarSeries;
+import com.example.sara.timeseries.RawReadings;
+
+/**
+ * Fills the raw store: by backfill, which copies whole past days from the
+ * CSV export of upstream and seals them, and by live ingestion of raw
+ * Sense API readings, which are appended to their (unsealed) days.
+ */
+@Service
+public class RawStoreService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RawStoreService.class);
+    private static final Pattern FACILITY = Pattern.compile("uoa|istic");
+    private static final Pattern SENSOR_TYPE =
+        Pattern.compile("humidity|luminance|microphone|motion|presence|radio|temperature|thermalmap|thermography");
+
+    /** What the backfill did with one day of one agent; status is sealed, already_sealed or open. */
+    public record DayResult(String agent_serial, LocalDate day, String status, int readings) {}
+
+    private final HistoricalProcessingService processingService;
+    private final RawReadingStore store;
+
+    @Value("${historical.raw-store.backfill.max-days:366}")
+    private int maxDays;
+
+    @Value("${historical.raw-store.backfill.fetch-days:7}")
+    private int fetchDays;
+
+    @Value("${historical.raw-store.seal-delay:PT1H}")
+    private Duration sealDelay;
+
+    public RawStoreService(HistoricalProcessingService processingService, RawReadingStore store) {
+        this.processingService = processingService;
+        this.store = store;
+    }
+
+    /**
+     * @throws ValidationException when the store is disabled, end is before
+     *         start or the range spans more than backfill.max-days days
+     */
+    public void validate(RawStoreBackfillRequestDTO request) {
+        if (!store.isEnabled()) {
+            throw new ValidationException("The raw store is disabled");
+        }
+        if (request.getEnd().isBefore(request.getStart())) {
+            throw new ValidationException("end must not be before start");
+        }
+        if (days(request) > maxDays) {
+            throw new ValidationException("A backfill spans at most " + maxDays + " days");
+        }
+    }
+
+    /** Number of (agent, day) results the backfill reports. */
+    public long resultCount(RawStoreBackfillRequestDTO request) {
+        return days(request) * request.getAgent_serial().size();
+    }
+
+    /**
+     * Seals every day of the range that is over (by seal-delay, for late
+     * readings) and not sealed yet, agent by agent, reading upstream in runs
+     * of at most backfill.fetch-days days. Days are reported in order as
+     * they are done.
+     */
+    public void backfill(RawStoreBackfillRequestDTO request, String userEmail, Consumer<DayResult> onDay)
+            throws IOException {
+        LocalDate first = LocalDate.ofInstant(request.getStart(), ZoneOffset.UTC);
+        LocalDate last = LocalDate.ofInstant(request.getEnd(), ZoneOffset.UTC);
+        Instant sealableUntil = Instant.now().minus(sealDelay);
+
+        for (String agent : request.getAgent_serial()) {
+            RawReadingStore.Series series = new RawReadingStore.Series(request.getFacility(), request.getSensor_type(), agent);
+            List<LocalDate> pending = new ArrayList<>();
+            for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                boolean over = !startOf(day.plusDays(1)).isAfter(sealableUntil);
+                if (over && !store.isSealed(series, day)) {
+                    pending.add(day);
+                    boolean runEnds = pending.size() >= fetchDays || day.equals(last);
+                    if (runEnds) {
+                        sealRun(series, pending, userEmail, onDay);
+                    }
+                    continue;
+                }
+                // A day that is not pending ends the run before it
+                sealRun(series, pending, userEmail, onDay);
+                onDay.accept(new DayResult(agent, day, over ? "already_sealed" : "open", 0));
+            }
+        }
+    }
+
+    /** Reads consecutive days from upstream and seals each; the list is emptied. */
+    private void sealRun(RawReadingStore.Series series, List<LocalDate> days, String userEmail,
+                         Consumer<DayResult> onDay) throws IOException {
+        if (days.isEmpty()) {
+            return;
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Backfill cancelled");
+        }
+        LocalDate firstDay = days.get(0);
+        LocalDate lastDay = days.get(days.size() - 1);
+        ColumnarSeries readings = processingService.exportReadings(series, startOf(firstDay),
+            startOf(lastDay.plusDays(1)), userEmail);
+
+        long[] times = readings.rawTimes();
+        double[] values = readings.rawValues();
+        int cursor = 0;
+        for (LocalDate day : days) {
+            long dayEnd = startOf(day.plusDays(1)).toEpochMilli();
+            int from = cursor;
+            while (cursor < readings.size() && times[cursor] < dayEnd) {
+                cursor++;
+            }
+            ColumnarSeries slice = new ColumnarSeries(Arrays.copyOfRange(times, from, cursor),
+                Arrays.copyOfRange(values, from, cursor), cursor - from);
+            boolean sealed = store.seal(series, day, slice);
+            onDay.accept(new DayResult(series.agentSerial(), day, sealed ? "sealed" : "already_sealed", slice.size()));
+        }
+        logger.info("Raw store sealed {} days of {}/{} from {} ({} readings)", days.size(), series.sensorType(),
+            series.agentSerial(), firstDay, readings.size());
+        days.clear();
+    }
+
+    /**
+     * Appends raw Sense API readings (a JSON array, as the API returns them)
+     * to the days they fall in, normalised like clean_data.
+     *
+     * @return readings stored per agent; readings of sealed days are not stored
+     * @throws ValidationException for an unknown facility or sensor type, or when the store is disabled
+     */
+    public Map<String, Integer> ingest(String facility, String sensorType, InputStream readings) throws IOException {
+        if (!store.isEnabled()) {
+            throw new ValidationException("The raw store is disabled");
+        }
+        if (facility == null || !FACILITY.matcher(facility).matches()) {
+            throw new ValidationException("Facility must be 'uoa' or 'istic'");
+        }
+        if (sensorType == null || !SENSOR_TYPE.matcher(sensorType).matches()) {
+            throw new ValidationException("Unknown sensor type: " + sensorType);
+        }
+        Map<String, Integer> stored = new LinkedHashMap<>();
+        for (Map.Entry<String, ColumnarSeries> agent : RawReadings.read(readings, sensorType).entrySet()) {
+            RawReadingStore.Series series = new RawReadingStore.Series(facility, sensorType, agent.getKey());
+            stored.put(agent.getKey(), store.append(series, agent.getValue()));
+        }
+        return stored;
+    }
+
+    private static long days(RawStoreBackfillRequestDTO request) {
+        return ChronoUnit.DAYS.between(LocalDate.ofInstant(request.getStart(), ZoneOffset.UTC),
+            LocalDate.ofInstant(request.getEnd(), ZoneOffset.UTC)) + 1;
+    }
+
+    private static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
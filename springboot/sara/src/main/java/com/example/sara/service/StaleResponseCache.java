@@ -0,0 +1,66 @@
+package com.example.sara.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Last known good response per request, kept in a bounded in-process LRU.
+ * Only read while the upstream circuit is open, so it never competes with
+ * fresh data; the aggregate cache remains the regular cache.
+ *
+ * Entries are the very objects returned to callers and must not be modified.
+ */
+@Component
+public class StaleResponseCache {
+
+    private final Map<String, Entry> entries;
+
+    @Value("${historical.stale-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.stale-cache.max-age:PT24H}")
+    private Duration maxAge;
+
+    public StaleResponseCache(@Value("${historical.stale-cache.max-entries:200}") int maxEntries) {
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public void put(String key, Object response) {
+        if (!enabled || response == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(response, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * @return the last response stored under the key, or null when there is
+     *         none, it is older than max-age or of another type
+     */
+    public <T> T get(String key, Class<T> type) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || System.currentTimeMillis() - entry.storedAt() > maxAge.toMillis()
+            || !type.isInstance(entry.response())) {
+            return null;
+        }
+        return type.cast(entry.response());
+    }
+
+    private record Entry(Object response, long storedAt) {}
+}
@@ -0,0 +1,129 @@
+package com.example.sara.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.example.sara.timeseries.ThermalFrame;
+
+/**
+ * In-process LRU of thermalmap frames keyed by facility, agent and minute
+ * (the precision of /thermalmap/reading_at_time), bounded by the bytes the
+ * frames hold rather than by their number.
+ *
+ * Minutes known to have no reading are cached as empty frames with a short
+ * TTL, so late-arriving readings are picked up again soon.
+ */
+@Component
+public class ThermalFrameCache {
+
+    private static final long MINUTE_MILLIS = 60_000;
+
+    private final Map<String, Entry> frames = new LinkedHashMap<>(1024, 0.75f, true);
+    private final long maxBytes;
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Value("${historical.thermal-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.thermal-cache.empty-ttl:PT5M}")
+    private Duration emptyTtl;
+
+    public ThermalFrameCache(@Value("${historical.thermal-cache.max-size:128MB}") DataSize maxSize) {
+        this.maxBytes = maxSize.toBytes();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Start of the minute the timestamp falls in, in epoch millis. */
+    public static long minuteOf(Instant timestamp) {
+        return Math.floorDiv(timestamp.toEpochMilli(), MINUTE_MILLIS) * MINUTE_MILLIS;
+    }
+
+    public static long minutes(long count) {
+        return count * MINUTE_MILLIS;
+    }
+
+    /** @return the frame of that minute (possibly empty), or null when unknown */
+    public ThermalFrame get(String facility, String agentSerial, long minute) {
+        if (!enabled) {
+            return null;
+        }
+        String key = key(facility, agentSerial, minute);
+        synchronized (frames) {
+            Entry entry = frames.get(key);
+            if (entry != null && entry.expiresAt() <= System.currentTimeMillis()) {
+                remove(key);
+                entry = null;
+            }
+            (entry == null ? misses : hits).incrementAndGet();
+            return entry == null ? null : entry.frame();
+        }
+    }
+
+    public boolean contains(String facility, String agentSerial, long minute) {
+        if (!enabled) {
+            return false;
+        }
+        synchronized (frames) {
+            Entry entry = frames.get(key(facility, agentSerial, minute));
+            return entry != null && entry.expiresAt() > System.currentTimeMillis();
+        }
+    }
+
+    public void put(String facility, String agentSerial, long minute, ThermalFrame frame) {
+        if (!enabled || frame.sizeInBytes() > maxBytes) {
+            return;
+        }
+        long expiresAt = frame.isEmpty() ? System.currentTimeMillis() + emptyTtl.toMillis() : Long.MAX_VALUE;
+        String key = key(facility, agentSerial, minute);
+        synchronized (frames) {
+            remove(key);
+            frames.put(key, new Entry(frame, expiresAt));
+            bytes += frame.sizeInBytes();
+            // Least recently used first
+            Iterator<Entry> eldest = frames.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().frame().sizeInBytes();
+                eldest.remove();
+            }
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        synchronized (frames) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("enabled", enabled);
+            state.put("frames", frames.size());
+            state.put("bytes", bytes);
+            state.put("max_bytes", maxBytes);
+            state.put("hits", hits.get());
+            state.put("misses", misses.get());
+            return state;
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = frames.remove(key);
+        if (removed != null) {
+            bytes -= removed.frame().sizeInBytes();
+        }
+    }
+
+    private static String key(String facility, String agentSerial, long minute) {
+        return facility + "|" + agentSerial + "|" + minute;
+    }
+
+    private record Entry(ThermalFrame frame, long expiresAt) {}
+}
@@ -0,0 +1,159 @@
+package com.example.sara.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import com.example.sara.timeseries.ThermalFrame;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decodes the frame sequence of /thermalmap/frames
+ * (application/vnd.sara.thermal-frames).
+ *
+ * One frame per reading, all integers big-endian:
+ * <pre>
+ * uint32 frame length (bytes after this field)
+ * int64 epoch millis, uint16 rows, uint16 cols
+ * uint8 encoding (0 = float32, 1 = uint16), uint8 flags (1 = delta, 2 = zlib)
+ * float32 scale, float32 offset (uint16: value = offset + q * scale)
+ * rows x cols values, row-major, possibly zlib-compressed
+ * </pre>
+ * A delta frame holds the XOR of the float32 bits, or the difference modulo
+ * 65536 of the uint16 steps, with the previous frame, so frames must be
+ * decoded in order. The encoder is ThermalFrameEncoder in historical-processing-ms.
+ */
+final class ThermalFrameDecoder {
+
+    private static final int ENCODING_UINT16 = 1;
+    private static final int FLAG_DELTA = 0x01;
+    private static final int FLAG_ZLIB = 0x02;
+
+    private ThermalFrameDecoder() {}
+
+    /** One frame per reading; frames may be split across network buffers. */
+    static Flux<ThermalFrame> decode(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            FrameReader reader = new FrameReader();
+            return body
+                .concatMapIterable(reader::feed)
+                .concatWith(Mono.fromRunnable(reader::finish));
+        });
+    }
+
+    /** Accumulates bytes until whole frames are available; keeps the previous frame for deltas. */
+    private static final class FrameReader {
+
+        private byte[] pending = new byte[64 * 1024];
+        private int pendingLength;
+        private int[] previous;
+
+        List<ThermalFrame> feed(DataBuffer buffer) {
+            int readable = buffer.readableByteCount();
+            ensureCapacity(pendingLength + readable);
+            buffer.read(pending, pendingLength, readable);
+            DataBufferUtils.release(buffer);
+            pendingLength += readable;
+            return drain();
+        }
+
+        void finish() {
+            if (pendingLength > 0) {
+                throw new IllegalStateException("Thermal frame stream ended inside a frame (" + pendingLength + " bytes left)");
+            }
+        }
+
+        private List<ThermalFrame> drain() {
+            List<ThermalFrame> frames = new ArrayList<>();
+            int offset = 0;
+            while (pendingLength - offset >= Integer.BYTES) {
+                int frameLength = ByteBuffer.wrap(pending, offset, Integer.BYTES).getInt();
+                if (pendingLength - offset - Integer.BYTES < frameLength) {
+                    break;
+                }
+                frames.add(readFrame(ByteBuffer.wrap(pending, offset + Integer.BYTES, frameLength)));
+                offset += Integer.BYTES + frameLength;
+            }
+            if (offset > 0) {
+                System.arraycopy(pending, offset, pending, 0, pendingLength - offset);
+                pendingLength -= offset;
+            }
+            return frames;
+        }
+
+        private ThermalFrame readFrame(ByteBuffer frame) {
+            long time = frame.getLong();
+            int rows = Short.toUnsignedInt(frame.getShort());
+            int cols = Short.toUnsignedInt(frame.getShort());
+            int encoding = Byte.toUnsignedInt(frame.get());
+            int flags = Byte.toUnsignedInt(frame.get());
+            float scale = frame.getFloat();
+            float offset = frame.getFloat();
+            int n = rows * cols;
+            boolean uint16 = encoding == ENCODING_UINT16;
+
+            ByteBuffer payload = (flags & FLAG_ZLIB) != 0
+                ? ByteBuffer.wrap(inflate(frame, n * (uint16 ? Short.BYTES : Float.BYTES)))
+                : frame.slice();
+
+            int[] raw = new int[n];
+            for (int i = 0; i < n; i++) {
+                raw[i] = uint16 ? Short.toUnsignedInt(payload.getShort()) : payload.getInt();
+            }
+            if ((flags & FLAG_DELTA) != 0) {
+                if (previous == null || previous.length != n) {
+                    throw new IllegalStateException("Delta thermal frame without a matching previous frame");
+                }
+                for (int i = 0; i < n; i++) {
+                    raw[i] = uint16 ? (previous[i] + raw[i]) & 0xFFFF : previous[i] ^ raw[i];
+                }
+            }
+            previous = raw;
+
+            float[] values = new float[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = uint16 ? offset + raw[i] * scale : Float.intBitsToFloat(raw[i]);
+            }
+            return new ThermalFrame(time, rows, cols, values);
+        }
+
+        private static byte[] inflate(ByteBuffer frame, int length) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(frame.slice());
+                byte[] out = new byte[length];
+                int read = 0;
+                while (read < length && !inflater.finished()) {
+                    int n = inflater.inflate(out, read, length - read);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != length) {
+                    throw new IllegalStateException("Thermal frame payload inflated to " + read + " bytes, expected " + length);
+                }
+                return out;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Invalid compressed thermal frame", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > pending.length) {
+                byte[] grown = new byte[Math.max(capacity, pending.length * 2)];
+                System.arraycopy(pending, 0, grown, 0, pendingLength);
+                pending = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.sara.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.example.sara.dto.ThermalmapFramesRequestDTO;
+import com.example.sara.exception.UpstreamServiceException;
+import com.example.sara.timeseries.ThermalFrame;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Fills the thermal frame cache ahead of a user scrubbing the timeline.
+ *
+ * Each lookup is compared with the same user's previous lookup for that
+ * agent to get the scrub direction. When fewer than half a window of
+ * minutes ahead in that direction is cached, the next window is fetched in
+ * the background with one /thermalmap/frames call (one upstream read for
+ * the whole window instead of one per minute) and every minute of it is
+ * cached, empty ones included.
+ */
+@Component
+public class ThermalFramePrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThermalFramePrefetcher.class);
+    private static final int MAX_TRACKED_SCRUBS = 10_000;
+
+    private final WebClient webClient;
+    private final ThermalFrameCache frameCache;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final Semaphore prefetchSlots;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> lastMinute = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_TRACKED_SCRUBS;
+        }
+    };
+
+    @Value("${historical.thermal-cache.prefetch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.thermal-cache.prefetch.window:PT30M}")
+    private Duration window;
+
+    @Value("${historical.processing.timeout.thermalmap:PT300S}")
+    private Duration timeout;
+
+    public ThermalFramePrefetcher(
+        @Qualifier("historicalProcessingWebClient") WebClient webClient,
+        ThermalFrameCache frameCache,
+        UpstreamCircuitBreaker circuitBreaker,
+        @Value("${historical.thermal-cache.prefetch.max-concurrent:4}") int maxConcurrent
+    ) {
+        this.webClient = webClient;
+        this.frameCache = frameCache;
+        this.circuitBreaker = circuitBreaker;
+        this.prefetchSlots = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Records a lookup and starts a background prefetch when needed. Never
+     * blocks and never fails the lookup.
+     */
+    public void onLookup(String userEmail, String facility, String agentSerial, Instant timestamp, String authToken) {
+        if (!enabled || !frameCache.isEnabled()) {
+            return;
+        }
+        long minute = ThermalFrameCache.minuteOf(timestamp);
+        Long previous;
+        synchronized (lastMinute) {
+            previous = lastMinute.put(userEmail + "|" + facility + "|" + agentSerial, minute);
+        }
+        int direction = previous == null || minute > previous ? 1 : minute < previous ? -1 : 0;
+        if (direction == 0) {
+            return;
+        }
+
+        // First uncached minute ahead; nothing to do while at least half a window is cached
+        long windowMinutes = Math.max(1, window.toMinutes());
+        long step = direction * ThermalFrameCache.minutes(1);
+        long next = minute + step;
+        long ahead = 0;
+        while (ahead < windowMinutes / 2 && frameCache.contains(facility, agentSerial, next)) {
+            next += step;
+            ahead++;
+        }
+        if (ahead >= windowMinutes / 2 && windowMinutes > 1) {
+            return;
+        }
+
+        long first = direction > 0 ? next : next - ThermalFrameCache.minutes(windowMinutes - 1);
+        long last = first + ThermalFrameCache.minutes(windowMinutes - 1);
+        // No frames exist past the current minute
+        long currentMinute = ThermalFrameCache.minuteOf(Instant.now());
+        if (first > currentMinute) {
+            return;
+        }
+        last = Math.min(last, currentMinute);
+        prefetch(facility, agentSerial, first, last, authToken);
+    }
+
+    private void prefetch(String facility, String agentSerial, long first, long last, String authToken) {
+        String key = facility + "|" + agentSerial + "|" + first;
+        if (!inFlight.add(key)) {
+            return;
+        }
+        if (!prefetchSlots.tryAcquire()) {
+            inFlight.remove(key);
+            logger.debug("Skipping thermal prefetch for {}: all prefetch slots busy", agentSerial);
+            return;
+        }
+
+        ThermalmapFramesRequestDTO request = new ThermalmapFramesRequestDTO();
+        request.setFacility(facility);
+        request.setAgent_serial(agentSerial);
+        request.setStart(Instant.ofEpochMilli(first));
+        // Inclusive end: the last millisecond of the last minute
+        request.setEnd(Instant.ofEpochMilli(last + ThermalFrameCache.minutes(1) - 1));
+
+        circuitBreaker.protect("thermalmap", webClient.post()
+                .uri("/thermalmap/frames")
+                .header("Authorization", "Bearer " + authToken)
+                .accept(MediaType.parseMediaType(HistoricalProcessingService.THERMAL_FRAMES_MEDIA_TYPE))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, response -> response.createException()
+                    .map(e -> new UpstreamServiceException(e.getStatusCode().value(), e.getMessage())))
+                .bodyToFlux(DataBuffer.class)
+                .transform(ThermalFrameDecoder::decode))
+            .timeout(timeout)
+            .reduceWith(LinkedHashMap<Long, ThermalFrame>::new, (byMinute, frame) -> {
+                // Same rule as reading_at_time: the first reading of a minute is the minute's frame
+                byMinute.putIfAbsent(ThermalFrameCache.minuteOf(Instant.ofEpochMilli(frame.getTime())), frame);
+                return byMinute;
+            })
+            .doOnNext(byMinute -> {
+                for (long minute = first; minute <= last; minute += ThermalFrameCache.minutes(1)) {
+                    ThermalFrame frame = byMinute.get(minute);
+                    frameCache.put(facility, agentSerial, minute, frame != null ? frame : ThermalFrame.empty(minute));
+                }
+                logger.debug("Prefetched {} thermal frames for {} from {}", byMinute.size(), agentSerial, Instant.ofEpochMilli(first));
+            })
+            .onErrorResume(e -> {
+                logger.warn("Thermal prefetch for {} failed: {}", agentSerial, e.getMessage());
+                return Mono.empty();
+            })
+            .doFinally(signal -> {
+                inFlight.remove(key);
+                prefetchSlots.release();
+            })
+            .subscribe();
+    }
+}
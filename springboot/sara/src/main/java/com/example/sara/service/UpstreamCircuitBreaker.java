@@ -0,0 +1,268 @@
+package com.example.sara.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.sara.exception.CircuitOpenException;
+import com.example.sara.exception.UpstreamServiceException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * One circuit breaker per upstream endpoint of historical-processing-ms.
+ *
+ * Closed: calls go through and their outcome is kept over the last
+ * windowSize calls. Once at least minimumCalls have been seen, the circuit
+ * opens when the failure rate or the slow-call rate reaches its threshold.
+ * A call is slow when its first data (or its failure) takes longer than
+ * slowCallThreshold; a streamed call is judged on its first chunk.
+ *
+ * Open: calls fail at once with CircuitOpenException, so callers can serve
+ * a stale answer or fail fast instead of waiting out the upstream timeout.
+ *
+ * Half-open: after openDuration, halfOpenCalls probe calls are let through.
+ * If they all succeed the circuit closes; a single failed or slow probe
+ * opens it again.
+ *
+ * Client errors (4xx) mean upstream is up and count as successes.
+ */
+@Component
+public class UpstreamCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamCircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private enum Outcome { SUCCESS, FAILURE, SLOW, IGNORED }
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    @Value("${historical.circuit-breaker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${historical.circuit-breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${historical.circuit-breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${historical.circuit-breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${historical.circuit-breaker.slow-call-threshold:PT30S}")
+    private Duration slowCallThreshold;
+
+    @Value("${historical.circuit-breaker.slow-call-rate-threshold:0.8}")
+    private double slowCallRateThreshold;
+
+    @Value("${historical.circuit-breaker.open-duration:PT30S}")
+    private Duration openDuration;
+
+    @Value("${historical.circuit-breaker.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    public <T> Mono<T> protect(String endpoint, Mono<T> call) {
+        return protect(endpoint, call.flux()).next();
+    }
+
+    /**
+     * Runs the call through the endpoint's breaker. Each subscription is one
+     * call; when the circuit does not admit it the flux fails with
+     * CircuitOpenException without subscribing to the call.
+     */
+    public <T> Flux<T> protect(String endpoint, Flux<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Flux.defer(() -> {
+            Breaker breaker = breaker(endpoint);
+            long generation = breaker.admit();
+            long startedAt = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+
+            Runnable onData = () -> {
+                if (recorded.compareAndSet(false, true)) {
+                    breaker.record(generation, isSlow(startedAt) ? Outcome.SLOW : Outcome.SUCCESS);
+                }
+            };
+            return call
+                .doOnNext(item -> onData.run())
+                .doOnComplete(onData)
+                .doOnError(e -> {
+                    if (recorded.compareAndSet(false, true)) {
+                        breaker.record(generation, countsAsFailure(e) ? Outcome.FAILURE : Outcome.SUCCESS);
+                    }
+                })
+                .doOnCancel(() -> {
+                    // Cancelled by a timeout or a client going away: only telling if it was already slow
+                    if (recorded.compareAndSet(false, true)) {
+                        breaker.record(generation, isSlow(startedAt) ? Outcome.SLOW : Outcome.IGNORED);
+                    }
+                });
+        });
+    }
+
+    /**
+     * Fails fast while the endpoint's circuit is open, without taking a
+     * half-open probe slot. Lets streaming callers reject a request before
+     * the response has started.
+     */
+    public void rejectIfOpen(String endpoint) {
+        if (!enabled) {
+            return;
+        }
+        Breaker breaker = breakers.get(endpoint);
+        if (breaker != null) {
+            breaker.rejectIfOpen();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> states = new TreeMap<>();
+        breakers.forEach((endpoint, breaker) -> states.put(endpoint, breaker.snapshot()));
+        return states;
+    }
+
+    private Breaker breaker(String endpoint) {
+        return breakers.computeIfAbsent(endpoint, Breaker::new);
+    }
+
+    private boolean isSlow(long startedAt) {
+        return System.nanoTime() - startedAt > slowCallThreshold.toNanos();
+    }
+
+    private boolean countsAsFailure(Throwable e) {
+        if (e instanceof CircuitOpenException) {
+            return false;
+        }
+        if (e instanceof UpstreamServiceException upstream) {
+            return upstream.isServerError();
+        }
+        return true;
+    }
+
+    private final class Breaker {
+
+        private final String endpoint;
+        private final Outcome[] window;
+        private int next;
+        private int calls;
+        private State state = State.CLOSED;
+        private long openUntil;
+        private int probesAdmitted;
+        private int probesSucceeded;
+        // Bumped on every transition, so outcomes of calls admitted in an earlier state are dropped
+        private long generation;
+
+        Breaker(String endpoint) {
+            this.endpoint = endpoint;
+            this.window = new Outcome[Math.max(1, windowSize)];
+        }
+
+        synchronized long admit() {
+            long now = System.currentTimeMillis();
+            if (state == State.OPEN) {
+                if (now < openUntil) {
+                    throw new CircuitOpenException(endpoint, retryAfterSeconds(now));
+                }
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesAdmitted >= halfOpenCalls) {
+                    throw new CircuitOpenException(endpoint, 1);
+                }
+                probesAdmitted++;
+            }
+            return generation;
+        }
+
+        synchronized void rejectIfOpen() {
+            long now = System.currentTimeMillis();
+            if (state == State.OPEN && now < openUntil) {
+                throw new CircuitOpenException(endpoint, retryAfterSeconds(now));
+            }
+        }
+
+        synchronized void record(long callGeneration, Outcome outcome) {
+            if (callGeneration != generation) {
+                return;
+            }
+            if (state == State.HALF_OPEN) {
+                switch (outcome) {
+                    case SUCCESS -> {
+                        if (++probesSucceeded >= halfOpenCalls) {
+                            transition(State.CLOSED);
+                        }
+                    }
+                    case FAILURE, SLOW -> transition(State.OPEN);
+                    case IGNORED -> probesAdmitted--;
+                }
+                return;
+            }
+            if (state != State.CLOSED || outcome == Outcome.IGNORED) {
+                return;
+            }
+            window[next] = outcome;
+            next = (next + 1) % window.length;
+            calls = Math.min(calls + 1, window.length);
+            if (calls >= minimumCalls
+                && (rate(Outcome.FAILURE) >= failureRateThreshold || rate(Outcome.SLOW) >= slowCallRateThreshold)) {
+                logger.warn("Opening circuit for {}: failure rate {}, slow-call rate {} over {} calls",
+                    endpoint, rate(Outcome.FAILURE), rate(Outcome.SLOW), calls);
+                transition(State.OPEN);
+            }
+        }
+
+        private void transition(State target) {
+            if (target == State.OPEN) {
+                openUntil = System.currentTimeMillis() + openDuration.toMillis();
+            }
+            if (target == State.CLOSED) {
+                calls = 0;
+                next = 0;
+            }
+            if (state != target && target != State.OPEN) {
+                logger.info("Circuit for {} is now {}", endpoint, target);
+            }
+            probesAdmitted = 0;
+            probesSucceeded = 0;
+            state = target;
+            generation++;
+        }
+
+        private double rate(Outcome outcome) {
+            int count = 0;
+            for (int i = 0; i < calls; i++) {
+                if (window[i] == outcome) {
+                    count++;
+                }
+            }
+            return calls == 0 ? 0 : (double) count / calls;
+        }
+
+        private long retryAfterSeconds(long now) {
+            return Math.max(1, (openUntil - now + 999) / 1000);
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("state", this.state.name());
+            state.put("calls", calls);
+            state.put("failure_rate", rate(Outcome.FAILURE));
+            state.put("slow_call_rate", rate(Outcome.SLOW));
+            state.put("retry_after_seconds",
+                this.state == State.OPEN ? retryAfterSeconds(System.currentTimeMillis()) : 0);
+            return state;
+        }
+    }
+}
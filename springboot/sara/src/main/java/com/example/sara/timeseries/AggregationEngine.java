@@ -0,0 +1,148 @@
+package com.example.sara.timeseries;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.example.sara.dto.ColumnarProcessingResponseDTO;
+import com.example.sara.dto.MetaDTO;
+import com.example.sara.model.ProcessingRequestDTO;
+
+/**
+ * Aggregates raw readings the way process_data of historical-processing-ms
+ * does when nothing is cached, so the gateway can answer from readings it
+ * holds itself.
+ *
+ * Each agent's readings are sorted by time (stable, so readings of the same
+ * instant keep their order) and walked once: bucket by bucket, the metric is
+ * computed over the slice of the primitive arrays the bucket covers, with
+ * no per-bucket lists. Agents are independent and are aggregated as
+ * separate tasks of the pool.
+ *
+ * Bucket windows follow process_data exactly: a bucket covers
+ * [bucket start, bucket end) with bucket end the last second of the bucket,
+ * or the requested end for the last one, and the first bucket starts at the
+ * start of the bucket containing the requested start. Minute level returns
+ * the readings in [start, end] at their minute, as process_data does.
+ */
+public final class AggregationEngine {
+
+    private final ForkJoinPool pool;
+
+    public AggregationEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public AggregationEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * One response per agent, in the order of readingsByAgent, each what
+     * process_data returns for a request naming that agent alone. (With
+     * several agents in one request, process_data keeps only the first
+     * agent of each bucket, so per-agent results are the comparable ones.)
+     * The series are sorted in place.
+     *
+     * @throws IllegalArgumentException for an unknown level or metric, or a
+     *         metric the sensor type does not support
+     */
+    public Map<String, ColumnarProcessingResponseDTO> aggregate(ProcessingRequestDTO request,
+                                                               Map<String, ColumnarSeries> readingsByAgent) {
+        AggregationLevel level = AggregationLevel.fromKey(request.getAggregation_level());
+        AggregationMetric metric = AggregationMetric.fromKey(request.getMetric());
+        Instant start = request.getStart().toInstant();
+        Instant end = request.getEnd().toInstant();
+
+        Map<String, ForkJoinTask<ColumnarProcessingResponseDTO>> tasks = new LinkedHashMap<>();
+        readingsByAgent.forEach((agent, readings) -> tasks.put(agent, pool.submit(() -> {
+            readings.sortByTime();
+            ColumnarProcessingResponseDTO response = level == AggregationLevel.MINUTE
+                ? minute(readings, start, end)
+                : aggregate(readings, request.getSensor_type(), level, metric, start, end);
+            response.setFacility(request.getFacility());
+            response.setAgent_serial(List.of(agent));
+            response.setSensor_type(request.getSensor_type());
+            response.setAggregation_level(level.key());
+            if (response.getMetric() == null) {
+                response.setMetric(metric.key());
+            }
+            return response;
+        })));
+
+        Map<String, ColumnarProcessingResponseDTO> responses = new LinkedHashMap<>();
+        tasks.forEach((agent, task) -> responses.put(agent, task.join()));
+        return responses;
+    }
+
+    private static ColumnarProcessingResponseDTO aggregate(ColumnarSeries readings, String sensorType,
+                                                           AggregationLevel level, AggregationMetric metric,
+                                                           Instant start, Instant end) {
+        long endMillis = end.toEpochMilli();
+        long[] times = readings.rawTimes();
+        double[] values = readings.rawValues();
+        int size = readings.size();
+
+        ColumnarProcessingResponseDTO response = new ColumnarProcessingResponseDTO();
+        List<Instant> buckets = level.bucketStarts(start, end);
+        MetaDTO meta = new MetaDTO();
+        meta.setTotal_buckets(buckets.size());
+        response.setMeta(meta);
+        if (size == 0) {
+            // process_data answers without counting buckets when there is no raw data at all
+            return response;
+        }
+
+        double[] scratch = metric == AggregationMetric.MEDIAN ? new double[size] : null;
+        int rawHits = 0;
+        int empty = 0;
+        int cursor = 0;
+        for (Instant bucket : buckets) {
+            long bucketStart = bucket.toEpochMilli();
+            long bucketEnd = Math.min(level.lastSecondOf(bucket).toEpochMilli(), endMillis);
+            while (cursor < size && times[cursor] < bucketStart) {
+                cursor++;
+            }
+            int from = cursor;
+            while (cursor < size && times[cursor] < bucketEnd) {
+                cursor++;
+            }
+            if (cursor == from) {
+                empty++;
+                continue;
+            }
+            rawHits++;
+            response.seriesFor(level.groupKey(bucket))
+                .add(bucketStart, metric.compute(values, from, cursor, sensorType, scratch));
+        }
+        meta.setRaw_hits(rawHits);
+        meta.setEmpty_buckets(empty);
+        return response;
+    }
+
+    private static ColumnarProcessingResponseDTO minute(ColumnarSeries readings, Instant start, Instant end) {
+        long startMillis = start.toEpochMilli();
+        long endMillis = end.toEpochMilli();
+        ColumnarProcessingResponseDTO response = new ColumnarProcessingResponseDTO();
+        response.setMetric("raw_reading");
+        ColumnarSeries all = null;
+        for (int i = 0; i < readings.size(); i++) {
+            long time = readings.timeAt(i);
+            if (time >= startMillis && time <= endMillis) {
+                if (all == null) {
+                    all = response.seriesFor(AggregationLevel.MINUTE.groupKey(start));
+                }
+                all.add(Math.floorDiv(time, 60_000L) * 60_000L, readings.valueAt(i));
+            }
+        }
+        // process_data counts every cleaned reading, in the window or not
+        MetaDTO meta = new MetaDTO();
+        meta.setTotal_buckets(readings.size());
+        meta.setRaw_hits(readings.size());
+        response.setMeta(meta);
+        return response;
+    }
+}
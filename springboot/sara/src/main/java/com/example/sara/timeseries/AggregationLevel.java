@@ -0,0 +1,141 @@
+package com.example.sara.timeseries;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregation levels of the historical pipeline and their bucket arithmetic.
+ *
+ * Mirrors normalize_time, get_aggregation_interval, get_group_key and
+ * calculate_ttl of historical-processing-ms, so buckets computed in the
+ * gateway line up exactly with the ones the Python service returns.
+ * All computations are done in UTC.
+ */
+public enum AggregationLevel {
+
+    MINUTE("minute", 604_800L),      // 7 days
+    HOURLY("hourly", 2_592_000L),    // 30 days
+    DAILY("daily", 7_776_000L),      // 90 days
+    MONTHLY("monthly", 31_536_000L), // 1 year
+    YEARLY("yearly", 63_072_000L);   // 2 years
+
+    private static final long MIN_TTL_SECONDS = 60L;
+    private static final DateTimeFormatter DAY_KEY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter MONTH_KEY = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final DateTimeFormatter YEAR_KEY = DateTimeFormatter.ofPattern("yyyy");
+
+    private final String key;
+    private final long historicalTtlSeconds;
+
+    AggregationLevel(String key, long historicalTtlSeconds) {
+        this.key = key;
+        this.historicalTtlSeconds = historicalTtlSeconds;
+    }
+
+    /** Name used on the wire (ProcessingRequestDTO.aggregation_level). */
+    public String key() {
+        return key;
+    }
+
+    public static AggregationLevel fromKey(String key) {
+        for (AggregationLevel level : values()) {
+            if (level.key.equals(key)) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("Unknown aggregation level: " + key);
+    }
+
+    /** The next finer level, or null for minute. */
+    public AggregationLevel lower() {
+        return ordinal() == 0 ? null : values()[ordinal() - 1];
+    }
+
+    /** The next coarser level, or null for yearly. */
+    public AggregationLevel higher() {
+        return ordinal() == values().length - 1 ? null : values()[ordinal() + 1];
+    }
+
+    /** Start of the bucket containing the given instant. */
+    public Instant normalize(Instant time) {
+        ZonedDateTime utc = time.atZone(ZoneOffset.UTC);
+        return switch (this) {
+            case MINUTE -> utc.truncatedTo(ChronoUnit.MINUTES).toInstant();
+            case HOURLY -> utc.truncatedTo(ChronoUnit.HOURS).toInstant();
+            case DAILY -> utc.truncatedTo(ChronoUnit.DAYS).toInstant();
+            case MONTHLY -> utc.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).toInstant();
+            case YEARLY -> utc.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1).toInstant();
+        };
+    }
+
+    /** Start of the bucket following the one starting at bucketStart. */
+    public Instant next(Instant bucketStart) {
+        ZonedDateTime utc = bucketStart.atZone(ZoneOffset.UTC);
+        return switch (this) {
+            case MINUTE -> utc.plusMinutes(1).toInstant();
+            case HOURLY -> utc.plusHours(1).toInstant();
+            case DAILY -> utc.plusDays(1).toInstant();
+            case MONTHLY -> utc.plusMonths(1).toInstant();
+            case YEARLY -> utc.plusYears(1).toInstant();
+        };
+    }
+
+    /**
+     * Bucket starts between start and end, as generate_time_buckets does:
+     * from the bucket containing start up to the last bucket starting at or before end.
+     */
+    public List<Instant> bucketStarts(Instant start, Instant end) {
+        List<Instant> buckets = new ArrayList<>();
+        for (Instant current = normalize(start); !current.isAfter(end); current = next(current)) {
+            buckets.add(current);
+        }
+        return buckets;
+    }
+
+    /**
+     * Whether the bucket lies entirely inside [start, end], i.e. its value
+     * does not depend on where the requested range begins or ends.
+     */
+    public boolean isCoveredBy(Instant bucketStart, Instant start, Instant end) {
+        return !bucketStart.isBefore(start) && !lastSecondOf(bucketStart).isAfter(end);
+    }
+
+    /** Last second of the bucket, the bucket_end the Python service uses for full buckets. */
+    public Instant lastSecondOf(Instant bucketStart) {
+        return next(bucketStart).minusSeconds(1);
+    }
+
+    /** Grouping key of aggregated_results for a bucket (get_group_key). */
+    public String groupKey(Instant bucketStart) {
+        ZonedDateTime utc = bucketStart.atZone(ZoneOffset.UTC);
+        return switch (this) {
+            case HOURLY -> DAY_KEY.format(utc);
+            case DAILY -> MONTH_KEY.format(utc);
+            case MONTHLY -> YEAR_KEY.format(utc);
+            default -> "all";
+        };
+    }
+
+    /**
+     * Cache TTL for a bucket, following calculate_ttl: completed buckets keep
+     * the long historical TTL, the bucket still in progress expires when the
+     * next finer bucket starts (never below 60 seconds).
+     */
+    public long ttlSeconds(Instant bucketStart, Instant now) {
+        if (next(bucketStart).isBefore(now)) {
+            return historicalTtlSeconds;
+        }
+        AggregationLevel lowerLevel = lower();
+        if (lowerLevel == null) {
+            return MIN_TTL_SECONDS;
+        }
+        Instant nextLowerStart = lowerLevel.next(lowerLevel.normalize(now));
+        long ttl = ChronoUnit.SECONDS.between(now, nextLowerStart);
+        return Math.max(ttl, MIN_TTL_SECONDS);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.sara.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Metrics of ProcessingRequestDTO.metric, computed as historical-processing-ms
+ * computes them (calculate_linear, calculate_non_linear, calculate_motion_metrics).
+ */
+public enum AggregationMetric {
+    AVERAGE("average"),
+    SUM("sum"),
+    MEDIAN("median"),
+    MIN("min"),
+    MAX("max"),
+    SKEWNESS("skewness"),
+    EVENT_COUNT("event_count"),
+    ACTIVITY_PERCENT("activity_percent"),
+    EVENT_DURATION_AVG("event_duration_avg"),
+    EVENT_DURATION_MAX("event_duration_max");
+
+    /** A motion event is at least MOTION_MIN_CONSECUTIVE readings at or above MOTION_THRESHOLD. */
+    static final double MOTION_THRESHOLD = 0.5;
+    static final int MOTION_MIN_CONSECUTIVE = 2;
+
+    private final String key;
+
+    AggregationMetric(String key) {
+        this.key = key;
+    }
+
+    /** Name used on the wire (ProcessingRequestDTO.metric). */
+    public String key() {
+        return key;
+    }
+
+    public static AggregationMetric fromKey(String key) {
+        for (AggregationMetric metric : values()) {
+            if (metric.key.equals(key)) {
+                return metric;
+            }
+        }
+        throw new IllegalArgumentException("Unknown metric: " + key);
+    }
+
+    /** Linear metrics (is_linear_metric) are the ones the Python service caches and rolls up. */
+    public boolean isLinear() {
+        return this == AVERAGE || this == SUM || this == MIN || this == MAX;
+    }
+
+    /** Metrics defined only on motion readings (0/1 presence of motion). */
+    public boolean isMotion() {
+        return this == EVENT_COUNT || this == ACTIVITY_PERCENT
+            || this == EVENT_DURATION_AVG || this == EVENT_DURATION_MAX;
+    }
+
+    /** Whether compute accepts this metric for the sensor type. */
+    public boolean supports(String sensorType) {
+        return isLinear() || "motion".equals(sensorType) == isMotion();
+    }
+
+    /**
+     * The metric of values[from, to), in reading order; scratch must hold
+     * at least to - from values and is overwritten.
+     *
+     * @throws IllegalArgumentException for a motion metric on another sensor
+     *         type, or median/skewness on motion, as the Python service rejects them
+     */
+    public double compute(double[] values, int from, int to, String sensorType, double[] scratch) {
+        int n = to - from;
+        if (isLinear()) {
+            double result = values[from];
+            if (this == AVERAGE || this == SUM) {
+                // Left to right like Python's sum(), so results match to the bit
+                result = 0;
+                for (int i = from; i < to; i++) {
+                    result += values[i];
+                }
+                return this == AVERAGE ? result / n : result;
+            }
+            for (int i = from + 1; i < to; i++) {
+                result = this == MIN ? Math.min(result, values[i]) : Math.max(result, values[i]);
+            }
+            return result;
+        }
+
+        if ("motion".equals(sensorType)) {
+            if (!isMotion()) {
+                throw new IllegalArgumentException("Invalid motion metric: " + key);
+            }
+            return motion(values, from, to);
+        }
+        return switch (this) {
+            case MEDIAN -> {
+                System.arraycopy(values, from, scratch, 0, n);
+                Arrays.sort(scratch, 0, n);
+                int mid = n / 2;
+                yield (scratch[mid] + scratch[n - 1 - mid]) / 2;
+            }
+            case SKEWNESS -> {
+                double mean = 0;
+                for (int i = from; i < to; i++) {
+                    mean += values[i];
+                }
+                mean /= n;
+                double m2 = 0;
+                double m3 = 0;
+                for (int i = from; i < to; i++) {
+                    double d = values[i] - mean;
+                    m2 += d * d;
+                    m3 += d * d * d;
+                }
+                double stdDev = Math.sqrt(m2 / n);
+                // Same epsilon as the Python service, so constant buckets give 0
+                yield m3 / n / (stdDev * stdDev * stdDev + 1e-9);
+            }
+            default -> throw new IllegalArgumentException(
+                "Unsupported non-linear metric: " + key + " for " + sensorType);
+        };
+    }
+
+    private double motion(double[] values, int from, int to) {
+        int events = 0;
+        int activeFrames = 0;
+        int longest = 0;
+        int run = 0;
+        for (int i = from; i <= to; i++) {
+            if (i < to && values[i] >= MOTION_THRESHOLD) {
+                run++;
+                continue;
+            }
+            // A run ends at a reading below the threshold or at the end of the bucket
+            if (run >= MOTION_MIN_CONSECUTIVE) {
+                events++;
+                activeFrames += run;
+                longest = Math.max(longest, run);
+            }
+            run = 0;
+        }
+        return switch (this) {
+            case EVENT_COUNT -> events;
+            case ACTIVITY_PERCENT -> (double) activeFrames / (to - from) * 100;
+            case EVENT_DURATION_AVG -> events > 0 ? (double) activeFrames / events : 0;
+            default -> longest;
+        };
+    }
+}
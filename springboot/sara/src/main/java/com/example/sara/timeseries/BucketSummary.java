@@ -0,0 +1,244 @@
+package com.example.sara.timeseries;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mergeable summary of the readings of one bucket, from which every metric
+ * of ProcessingRequestDTO can be computed, so coarse buckets can be answered
+ * by merging the summaries of the finer buckets they contain.
+ *
+ * It keeps count, sum, min and max, the mean and the second and third
+ * central moments (merged with the pairwise formulas of Chan et al. and
+ * Pebay), a KLL sketch for the median, and the runs of readings at or above
+ * the motion threshold: the run the bucket starts with, the run it ends
+ * with, and the events strictly inside it. Readings must be added and
+ * summaries merged in time order, as runs depend on it.
+ *
+ * Error bounds against computing the metric over all readings at once:
+ * <ul>
+ * <li>min, max and the motion metrics are exact; runs that cross a bucket
+ * boundary are stitched when merging;</li>
+ * <li>sum, average and skewness are exact up to floating-point rounding, as
+ * partial sums are added in a different order;</li>
+ * <li>median is exact while the summary holds at most k readings, otherwise
+ * approximate within the rank error of QuantileSketch.</li>
+ * </ul>
+ */
+public final class BucketSummary {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double mean;
+    private double m2;
+    private double m3;
+
+    // Runs of readings >= MOTION_THRESHOLD; leadingRun == count when every reading is active
+    private long leadingRun;
+    private long trailingRun;
+    private long innerEvents;
+    private long innerActive;
+    private long innerLongest;
+
+    private final QuantileSketch sketch;
+
+    public BucketSummary(int sketchK) {
+        this(new QuantileSketch(sketchK));
+    }
+
+    private BucketSummary(QuantileSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    /** Summary of values[from, to), in reading order. */
+    public static BucketSummary of(double[] values, int from, int to, int sketchK) {
+        BucketSummary summary = new BucketSummary(sketchK);
+        for (int i = from; i < to; i++) {
+            summary.add(values[i]);
+        }
+        return summary;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** Adds the reading following all readings summarised so far. */
+    public void add(double value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+
+        double delta = value - mean;
+        double deltaN = delta / count;
+        double term = delta * deltaN * (count - 1);
+        mean += deltaN;
+        m3 += term * deltaN * (count - 2) - 3 * deltaN * m2;
+        m2 += term;
+
+        if (value >= AggregationMetric.MOTION_THRESHOLD) {
+            if (leadingRun == count - 1) {
+                leadingRun++;
+            }
+            trailingRun++;
+        } else {
+            // A run that did not start the bucket is an inner one
+            if (trailingRun > 0 && trailingRun < count - 1) {
+                closeInnerRun(trailingRun);
+            }
+            trailingRun = 0;
+        }
+
+        sketch.add(value);
+    }
+
+    /** Adds the summary of the readings that follow; later is left unchanged. */
+    public void merge(BucketSummary later) {
+        if (later.count == 0) {
+            return;
+        }
+        long n1 = count;
+        long n2 = later.count;
+        double n = n1 + n2;
+        double delta = later.mean - mean;
+        m3 += later.m3 + delta * delta * delta * n1 * n2 * (n1 - n2) / (n * n)
+            + 3 * delta * (n1 * later.m2 - n2 * m2) / n;
+        m2 += later.m2 + delta * delta * n1 * n2 / n;
+        mean += delta * n2 / n;
+
+        boolean allActive = leadingRun == count;
+        boolean laterAllActive = later.leadingRun == later.count;
+        if (!allActive && !laterAllActive) {
+            // Our last run and later's first one join into a run with inactive readings on both sides
+            closeInnerRun(trailingRun + later.leadingRun);
+        }
+        innerEvents += later.innerEvents;
+        innerActive += later.innerActive;
+        innerLongest = Math.max(innerLongest, later.innerLongest);
+        leadingRun = allActive ? count + later.leadingRun : leadingRun;
+        trailingRun = laterAllActive ? trailingRun + later.count : later.trailingRun;
+
+        count += n2;
+        sum += later.sum;
+        min = Math.min(min, later.min);
+        max = Math.max(max, later.max);
+        sketch.merge(later.sketch);
+    }
+
+    /**
+     * The metric over the summarised readings, as AggregationMetric.compute
+     * gives it for the same readings (within the bounds above); NaN when empty.
+     *
+     * @throws IllegalArgumentException for a metric the sensor type does not support
+     */
+    public double value(AggregationMetric metric, String sensorType) {
+        if (!metric.supports(sensorType)) {
+            throw new IllegalArgumentException("Unsupported metric: " + metric.key() + " for " + sensorType);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return switch (metric) {
+            case AVERAGE -> sum / count;
+            case SUM -> sum;
+            case MIN -> min;
+            case MAX -> max;
+            case MEDIAN -> sketch.median();
+            case SKEWNESS -> {
+                double stdDev = Math.sqrt(m2 / count);
+                yield m3 / count / (stdDev * stdDev * stdDev + 1e-9);
+            }
+            default -> motion(metric);
+        };
+    }
+
+    private double motion(AggregationMetric metric) {
+        long events = innerEvents;
+        long active = innerActive;
+        long longest = innerLongest;
+        long[] edges = leadingRun == count ? new long[] { count } : new long[] { leadingRun, trailingRun };
+        for (long run : edges) {
+            if (run >= AggregationMetric.MOTION_MIN_CONSECUTIVE) {
+                events++;
+                active += run;
+                longest = Math.max(longest, run);
+            }
+        }
+        return switch (metric) {
+            case EVENT_COUNT -> events;
+            case ACTIVITY_PERCENT -> (double) active / count * 100;
+            case EVENT_DURATION_AVG -> events > 0 ? (double) active / events : 0;
+            default -> longest;
+        };
+    }
+
+    private void closeInnerRun(long run) {
+        if (run >= AggregationMetric.MOTION_MIN_CONSECUTIVE) {
+            innerEvents++;
+            innerActive += run;
+            innerLongest = Math.max(innerLongest, run);
+        }
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer out = ByteBuffer.allocate(1 + 6 * Long.BYTES + 6 * Double.BYTES + sketch.serializedSize());
+        out.put(FORMAT_VERSION);
+        out.putLong(count);
+        out.putDouble(sum);
+        out.putDouble(min);
+        out.putDouble(max);
+        out.putDouble(mean);
+        out.putDouble(m2);
+        out.putDouble(m3);
+        out.putLong(leadingRun);
+        out.putLong(trailingRun);
+        out.putLong(innerEvents);
+        out.putLong(innerActive);
+        out.putLong(innerLongest);
+        sketch.writeTo(out);
+        return out.array();
+    }
+
+    /** @throws IllegalArgumentException for bytes not written by toBytes of this version */
+    public static BucketSummary fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (bytes.length == 0 || in.get() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown bucket summary format");
+        }
+        long count = in.getLong();
+        double sum = in.getDouble();
+        double min = in.getDouble();
+        double max = in.getDouble();
+        double mean = in.getDouble();
+        double m2 = in.getDouble();
+        double m3 = in.getDouble();
+        long leadingRun = in.getLong();
+        long trailingRun = in.getLong();
+        long innerEvents = in.getLong();
+        long innerActive = in.getLong();
+        long innerLongest = in.getLong();
+
+        BucketSummary summary = new BucketSummary(QuantileSketch.readFrom(in));
+        summary.count = count;
+        summary.sum = sum;
+        summary.min = min;
+        summary.max = max;
+        summary.mean = mean;
+        summary.m2 = m2;
+        summary.m3 = m3;
+        summary.leadingRun = leadingRun;
+        summary.trailingRun = trailingRun;
+        summary.innerEvents = innerEvents;
+        summary.innerActive = innerActive;
+        summary.innerLongest = innerLongest;
+        return summary;
+    }
+}
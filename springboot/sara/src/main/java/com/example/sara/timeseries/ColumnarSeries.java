@@ -0,0 +1,144 @@
+package com.example.sara.timeseries;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One series of points held as two parallel primitive arrays: epoch
+ * milliseconds and values. Grows like an ArrayList, without boxing.
+ *
+ * Serialises as {"time": [...], "value": [...]}.
+ */
+public class ColumnarSeries {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] times;
+    private double[] values;
+    private int size;
+
+    public ColumnarSeries() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ColumnarSeries(int capacity) {
+        this.times = new long[Math.max(capacity, 1)];
+        this.values = new double[Math.max(capacity, 1)];
+    }
+
+    /** Wraps existing arrays without copying; the first {@code size} entries are used. */
+    public ColumnarSeries(long[] times, double[] values, int size) {
+        this.times = times;
+        this.values = values;
+        this.size = size;
+    }
+
+    public void add(long epochMillis, double value) {
+        if (size == times.length) {
+            grow(size + 1);
+        }
+        times[size] = epochMillis;
+        values[size] = value;
+        size++;
+    }
+
+    public void append(ColumnarSeries other) {
+        if (size + other.size > times.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.times, 0, times, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long timeAt(int index) {
+        return times[index];
+    }
+
+    public double valueAt(int index) {
+        return values[index];
+    }
+
+    /** Backing array of times; only the first {@link #size()} entries are meaningful. */
+    @JsonIgnore
+    public long[] rawTimes() {
+        return times;
+    }
+
+    /** Backing array of values; only the first {@link #size()} entries are meaningful. */
+    @JsonIgnore
+    public double[] rawValues() {
+        return values;
+    }
+
+    /**
+     * Copy of the first {@link #size()} times. Cached series are serialised
+     * by several threads at once, so the getters never touch the arrays.
+     */
+    @JsonProperty("time")
+    public long[] getTime() {
+        return Arrays.copyOf(times, size);
+    }
+
+    /** Copy of the first {@link #size()} values. */
+    @JsonProperty("value")
+    public double[] getValue() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Stable sort by time. Runs are usually already sorted (one per merged
+     * slice), so a bottom-up merge sort on the primitive arrays is used
+     * rather than sorting boxed pairs.
+     */
+    public void sortByTime() {
+        if (isSorted()) {
+            return;
+        }
+        long[] t = times;
+        double[] v = values;
+        long[] tBuf = new long[size];
+        double[] vBuf = new double[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int lo = 0; lo < size; lo += 2 * width) {
+                int mid = Math.min(lo + width, size);
+                int hi = Math.min(lo + 2 * width, size);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    if (t[j] < t[i]) {
+                        tBuf[k] = t[j]; vBuf[k++] = v[j++];
+                    } else {
+                        tBuf[k] = t[i]; vBuf[k++] = v[i++];
+                    }
+                }
+                while (i < mid) { tBuf[k] = t[i]; vBuf[k++] = v[i++]; }
+                while (j < hi) { tBuf[k] = t[j]; vBuf[k++] = v[j++]; }
+            }
+            long[] tSwap = t; t = tBuf; tBuf = tSwap;
+            double[] vSwap = v; v = vBuf; vBuf = vSwap;
+        }
+        times = t;
+        values = v;
+    }
+
+    private boolean isSorted() {
+        for (int i = 1; i < size; i++) {
+            if (times[i] < times[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, times.length + (times.length >> 1));
+        times = Arrays.copyOf(times, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+}
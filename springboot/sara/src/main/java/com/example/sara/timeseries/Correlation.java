@@ -0,0 +1,312 @@
+package com.example.sara.timeseries;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Alignment and correlation of series held in primitive arrays.
+ *
+ * Series are aligned on the bucket timestamps present in all of them;
+ * readings sharing a bucket are averaged and NaN readings are skipped.
+ * Lagged correlation needs the series on a regular grid instead, so that
+ * a lag is a fixed number of buckets whatever the gaps: missing buckets
+ * are NaN there and pairs holding one are skipped.
+ * Coefficients that are undefined (fewer than three points, or a constant
+ * series) are NaN.
+ */
+public final class Correlation {
+
+    private static final int MIN_POINTS = 3;
+
+    /**
+     * Series aligned on common timestamps, or on a grid: values[s][i] is
+     * series s at times[i], NaN on a grid where the series has no value.
+     */
+    public record Aligned(long[] times, double[][] values) {
+
+        public int size() {
+            return times.length;
+        }
+    }
+
+    private Correlation() {}
+
+    /**
+     * Aligns the series on the buckets they all have.
+     *
+     * @param bucketOf maps a reading time to the start of its bucket
+     */
+    public static Aligned align(List<ColumnarSeries> series, LongUnaryOperator bucketOf) {
+        int count = series.size();
+        long[][] times = new long[count][];
+        double[][] values = new double[count][];
+        int[] sizes = collapseAll(series, bucketOf, times, values);
+        int capacity = Integer.MAX_VALUE;
+        for (int s = 0; s < count; s++) {
+            capacity = Math.min(capacity, sizes[s]);
+        }
+        if (count == 0) {
+            return new Aligned(new long[0], new double[0][]);
+        }
+
+        // k-way intersection: advance every cursor behind the largest current time
+        long[] alignedTimes = new long[capacity];
+        double[][] alignedValues = new double[count][capacity];
+        int[] cursor = new int[count];
+        int size = 0;
+        outer:
+        while (true) {
+            long target = Long.MIN_VALUE;
+            for (int s = 0; s < count; s++) {
+                if (cursor[s] == sizes[s]) {
+                    break outer;
+                }
+                target = Math.max(target, times[s][cursor[s]]);
+            }
+            boolean matched = true;
+            for (int s = 0; s < count; s++) {
+                while (cursor[s] < sizes[s] && times[s][cursor[s]] < target) {
+                    cursor[s]++;
+                }
+                if (cursor[s] == sizes[s]) {
+                    break outer;
+                }
+                matched &= times[s][cursor[s]] == target;
+            }
+            if (matched) {
+                alignedTimes[size] = target;
+                for (int s = 0; s < count; s++) {
+                    alignedValues[s][size] = values[s][cursor[s]++];
+                }
+                size++;
+            }
+        }
+
+        for (int s = 0; s < count; s++) {
+            alignedValues[s] = Arrays.copyOf(alignedValues[s], size);
+        }
+        return new Aligned(Arrays.copyOf(alignedTimes, size), alignedValues);
+    }
+
+    /**
+     * Places the series on every bucket from the first to the last any of
+     * them has, NaN where a series has no value.
+     *
+     * @param bucketOf   maps a reading time to the start of its bucket
+     * @param nextBucket maps the start of a bucket to the start of the next
+     */
+    public static Aligned grid(List<ColumnarSeries> series, LongUnaryOperator bucketOf, LongUnaryOperator nextBucket) {
+        int count = series.size();
+        long[][] times = new long[count][];
+        double[][] values = new double[count][];
+        int[] sizes = collapseAll(series, bucketOf, times, values);
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int s = 0; s < count; s++) {
+            if (sizes[s] > 0) {
+                first = Math.min(first, times[s][0]);
+                last = Math.max(last, times[s][sizes[s] - 1]);
+            }
+        }
+        if (first > last) {
+            return new Aligned(new long[0], new double[count][0]);
+        }
+
+        int cells = 0;
+        for (long t = first; t <= last; t = nextBucket.applyAsLong(t)) {
+            cells++;
+        }
+        long[] gridTimes = new long[cells];
+        gridTimes[0] = first;
+        for (int c = 1; c < cells; c++) {
+            gridTimes[c] = nextBucket.applyAsLong(gridTimes[c - 1]);
+        }
+        double[][] gridValues = new double[count][cells];
+        for (int s = 0; s < count; s++) {
+            Arrays.fill(gridValues[s], Double.NaN);
+            int c = 0;
+            for (int i = 0; i < sizes[s]; i++) {
+                while (gridTimes[c] < times[s][i]) {
+                    c++;
+                }
+                gridValues[s][c] = values[s][i];
+            }
+        }
+        return new Aligned(gridTimes, gridValues);
+    }
+
+    /** Sorts and collapses every series into times[s]/values[s]; returns their bucket counts. */
+    private static int[] collapseAll(List<ColumnarSeries> series, LongUnaryOperator bucketOf,
+                                     long[][] times, double[][] values) {
+        int[] sizes = new int[series.size()];
+        for (int s = 0; s < sizes.length; s++) {
+            ColumnarSeries one = series.get(s);
+            one.sortByTime();
+            times[s] = new long[one.size()];
+            values[s] = new double[one.size()];
+            sizes[s] = collapse(one, bucketOf, times[s], values[s]);
+        }
+        return sizes;
+    }
+
+    /** Buckets a time-sorted series into times/values, averaging per bucket; returns the bucket count. */
+    private static int collapse(ColumnarSeries series, LongUnaryOperator bucketOf, long[] times, double[] values) {
+        int size = 0;
+        int inBucket = 0;
+        for (int i = 0; i < series.size(); i++) {
+            double value = series.valueAt(i);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            long bucket = bucketOf.applyAsLong(series.timeAt(i));
+            if (size > 0 && times[size - 1] == bucket) {
+                // Running mean of the readings of the bucket
+                inBucket++;
+                values[size - 1] += (value - values[size - 1]) / inBucket;
+            } else {
+                times[size] = bucket;
+                values[size] = value;
+                inBucket = 1;
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /** Pearson correlation of two series of the same length. */
+    public static double pearson(double[] x, double[] y) {
+        return pearson(x, 0, y, 0, Math.min(x.length, y.length));
+    }
+
+    /** Pearson correlation of x[xFrom, xFrom + length) and y[yFrom, yFrom + length). */
+    public static double pearson(double[] x, int xFrom, double[] y, int yFrom, int length) {
+        if (length < MIN_POINTS) {
+            return Double.NaN;
+        }
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < length; i++) {
+            meanX += x[xFrom + i];
+            meanY += y[yFrom + i];
+        }
+        meanX /= length;
+        meanY /= length;
+
+        // Two-pass: centred sums avoid the cancellation of the one-pass formula
+        double sxy = 0;
+        double sxx = 0;
+        double syy = 0;
+        for (int i = 0; i < length; i++) {
+            double dx = x[xFrom + i] - meanX;
+            double dy = y[yFrom + i] - meanY;
+            sxy += dx * dy;
+            sxx += dx * dx;
+            syy += dy * dy;
+        }
+        if (sxx == 0 || syy == 0) {
+            return Double.NaN;
+        }
+        return Math.max(-1, Math.min(1, sxy / Math.sqrt(sxx * syy)));
+    }
+
+    /**
+     * Fractional ranks (1-based, ties get the mean of their ranks), the
+     * input of Spearman's correlation: spearman(x, y) = pearson(ranks(x), ranks(y)).
+     */
+    public static double[] ranks(double[] x) {
+        double[] sorted = x.clone();
+        Arrays.sort(sorted);
+        double[] ranks = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            int first = lowerBound(sorted, x[i]);
+            int last = lowerBound(sorted, Math.nextUp(x[i])) - 1;
+            ranks[i] = (first + last) / 2.0 + 1;
+        }
+        return ranks;
+    }
+
+    private static int lowerBound(double[] sorted, double value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Cross-correlation of two series on the same grid for lags
+     * -maxLag..maxLag, at index lag + maxLag. At lag k, x at bucket i is
+     * paired with y at bucket i + k, so a peak at a positive lag means y
+     * follows x. Pairs where either value is NaN are skipped.
+     */
+    public static double[] crossCorrelation(double[] x, double[] y, int maxLag) {
+        int n = Math.min(x.length, y.length);
+        double[] coefficients = new double[2 * maxLag + 1];
+        for (int lag = -maxLag; lag <= maxLag; lag++) {
+            int overlap = n - Math.abs(lag);
+            coefficients[lag + maxLag] = overlap < MIN_POINTS
+                ? Double.NaN
+                : lag >= 0 ? pearsonOfPairs(x, 0, y, lag, overlap) : pearsonOfPairs(x, -lag, y, 0, overlap);
+        }
+        return coefficients;
+    }
+
+    /** Pearson correlation over the pairs of x[xFrom, xFrom + length) and y[yFrom, yFrom + length) without NaN. */
+    static double pearsonOfPairs(double[] x, int xFrom, double[] y, int yFrom, int length) {
+        int pairs = 0;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < length; i++) {
+            double a = x[xFrom + i];
+            double b = y[yFrom + i];
+            if (!Double.isNaN(a) && !Double.isNaN(b)) {
+                pairs++;
+                meanX += a;
+                meanY += b;
+            }
+        }
+        if (pairs < MIN_POINTS) {
+            return Double.NaN;
+        }
+        meanX /= pairs;
+        meanY /= pairs;
+
+        double sxy = 0;
+        double sxx = 0;
+        double syy = 0;
+        for (int i = 0; i < length; i++) {
+            double dx = x[xFrom + i] - meanX;
+            double dy = y[yFrom + i] - meanY;
+            if (!Double.isNaN(dx) && !Double.isNaN(dy)) {
+                sxy += dx * dy;
+                sxx += dx * dx;
+                syy += dy * dy;
+            }
+        }
+        if (sxx == 0 || syy == 0) {
+            return Double.NaN;
+        }
+        return Math.max(-1, Math.min(1, sxy / Math.sqrt(sxx * syy)));
+    }
+
+    /** Indices of at most maxPoints aligned points, evenly spread and including the last. */
+    public static int[] sample(int size, int maxPoints) {
+        int count = Math.min(size, Math.max(0, maxPoints));
+        int[] indices = new int[count];
+        if (count == 1) {
+            indices[0] = size - 1;
+        } else {
+            for (int i = 0; i < count; i++) {
+                indices[i] = (int) ((long) i * (size - 1) / (count - 1));
+            }
+        }
+        return indices;
+    }
+}
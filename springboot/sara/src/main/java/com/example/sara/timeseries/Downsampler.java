@@ -0,0 +1,216 @@
+package com.example.sara.timeseries;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reduces a series to a point budget for charting. Selected points are
+ * always original points, so every kept point keeps its time, value and group.
+ *
+ * Both methods make a single pass over the series:
+ * LTTB (Largest-Triangle-Three-Buckets) keeps the visual shape of a line,
+ * MIN_MAX keeps the minimum and maximum of each bucket, i.e. the envelope.
+ */
+public final class Downsampler {
+
+    public enum Method {
+        LTTB("lttb"),
+        MIN_MAX("minmax");
+
+        private final String key;
+
+        Method(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        /** Null selects LTTB. */
+        public static Method fromKey(String key) {
+            if (key == null) {
+                return LTTB;
+            }
+            for (Method method : values()) {
+                if (method.key.equalsIgnoreCase(key)) {
+                    return method;
+                }
+            }
+            throw new IllegalArgumentException("Unknown downsampling method: " + key);
+        }
+    }
+
+    private Downsampler() {}
+
+    /**
+     * Downsamples the groups of a response as one series. The groups are
+     * consecutive pieces of the same timeline (days, months, ...), so the
+     * budget applies to their concatenation rather than to each group.
+     * Groups left without points are removed.
+     *
+     * @return the number of points dropped
+     */
+    public static int downsampleGroups(Map<String, ColumnarSeries> groups, int maxPoints, Method method) {
+        int total = 0;
+        for (ColumnarSeries series : groups.values()) {
+            total += series.size();
+        }
+        if (total <= maxPoints) {
+            return 0;
+        }
+
+        ColumnarSeries flat = new ColumnarSeries(total);
+        for (ColumnarSeries series : groups.values()) {
+            flat.append(series);
+        }
+        int[] kept = select(flat.rawTimes(), flat.rawValues(), total, maxPoints, method);
+
+        // Hand the kept points back to the group whose index range they fall in
+        int next = 0;
+        int groupStart = 0;
+        Iterator<Map.Entry<String, ColumnarSeries>> it = groups.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, ColumnarSeries> entry = it.next();
+            int groupEnd = groupStart + entry.getValue().size();
+            ColumnarSeries reduced = new ColumnarSeries(8);
+            while (next < kept.length && kept[next] < groupEnd) {
+                reduced.add(flat.timeAt(kept[next]), flat.valueAt(kept[next]));
+                next++;
+            }
+            if (reduced.size() == 0) {
+                it.remove();
+            } else {
+                entry.setValue(reduced);
+            }
+            groupStart = groupEnd;
+        }
+        return total - kept.length;
+    }
+
+    /** Indices of the points to keep, ascending. */
+    public static int[] select(long[] times, double[] values, int size, int maxPoints, Method method) {
+        if (size <= maxPoints) {
+            int[] all = new int[size];
+            Arrays.setAll(all, i -> i);
+            return all;
+        }
+        return method == Method.MIN_MAX
+            ? minMax(values, size, maxPoints)
+            : lttb(times, values, size, maxPoints);
+    }
+
+    /**
+     * Steinarsson's LTTB: the first and last points are kept, the rest is cut
+     * into maxPoints - 2 buckets and each bucket keeps the point forming the
+     * largest triangle with the previously kept point and the average of the
+     * next bucket. Points without a value (NaN) are left out of the averages
+     * and never picked, unless a bucket has nothing else.
+     */
+    static int[] lttb(long[] times, double[] values, int size, int maxPoints) {
+        if (maxPoints < 3) {
+            return maxPoints == 2 ? new int[] { 0, size - 1 } : new int[] { 0 };
+        }
+        int[] kept = new int[maxPoints];
+        int count = 0;
+        // Times relative to the first point keep the double arithmetic exact
+        long origin = times[0];
+        double every = (double) (size - 2) / (maxPoints - 2);
+
+        int a = 0;
+        kept[count++] = 0;
+        for (int bucket = 0; bucket < maxPoints - 2; bucket++) {
+            int avgStart = (int) Math.floor((bucket + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((bucket + 2) * every) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            int avgCount = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                if (!Double.isNaN(values[j])) {
+                    avgX += times[j] - origin;
+                    avgY += values[j];
+                    avgCount++;
+                }
+            }
+            if (avgCount > 0) {
+                avgX /= avgCount;
+                avgY /= avgCount;
+            } else {
+                avgX = (times[avgStart] + times[avgEnd - 1]) / 2.0 - origin;
+                avgY = Double.NaN;
+            }
+
+            int rangeStart = (int) Math.floor(bucket * every) + 1;
+            int rangeEnd = (int) Math.floor((bucket + 1) * every) + 1;
+            double ax = times[a] - origin;
+            double ay = values[a];
+            // Without a value on one side, the other stands in; without either, the largest magnitude wins
+            if (Double.isNaN(ay)) {
+                ay = Double.isNaN(avgY) ? 0 : avgY;
+            }
+            if (Double.isNaN(avgY)) {
+                avgY = ay;
+            }
+            double maxArea = -1;
+            int selected = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (values[j] - ay) - (ax - (times[j] - origin)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = j;
+                }
+            }
+            kept[count++] = selected;
+            a = selected;
+        }
+        kept[count++] = size - 1;
+        return kept;
+    }
+
+    /**
+     * Keeps the first and last points, cuts the points in between into
+     * (maxPoints - 2) / 2 buckets of equal point count and keeps the minimum
+     * and the maximum of each, in time order. Points without a value (NaN)
+     * are skipped; a bucket with none but those keeps its first point.
+     */
+    static int[] minMax(double[] values, int size, int maxPoints) {
+        if (maxPoints < 2) {
+            return new int[] { 0 };
+        }
+        int buckets = (maxPoints - 2) / 2;
+        int inner = size - 2;
+        int[] kept = new int[buckets * 2 + 2];
+        int count = 0;
+        kept[count++] = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int from = 1 + (int) ((long) bucket * inner / buckets);
+            int to = 1 + (int) ((long) (bucket + 1) * inner / buckets);
+            int min = from;
+            int max = from;
+            boolean found = false;
+            for (int j = from; j < to; j++) {
+                if (Double.isNaN(values[j])) {
+                    continue;
+                }
+                if (!found) {
+                    min = j;
+                    max = j;
+                    found = true;
+                }
+                if (values[j] < values[min]) {
+                    min = j;
+                }
+                if (values[j] > values[max]) {
+                    max = j;
+                }
+            }
+            kept[count++] = Math.min(min, max);
+            if (min != max) {
+                kept[count++] = Math.max(min, max);
+            }
+        }
+        kept[count++] = size - 1;
+        return Arrays.copyOf(kept, count);
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.sara.timeseries;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla compression of (time, value) pairs (Pelkonen et al., VLDB 2015):
+ * timestamps as delta-of-delta, values as the XOR with the previous value.
+ *
+ * The first pair is stored in full (64 + 64 bits). Then, per pair:
+ * <ul>
+ * <li>time: the change of the interval to the previous reading, in
+ * milliseconds: '0' for none, else '10', '110', '1110', '11110' followed by
+ * 7, 9, 12 or 32 bits, or '11111' and 64 bits;</li>
+ * <li>value: '0' when equal to the previous one, '10' and the meaningful
+ * bits when they fit the previous window of leading and trailing zeros,
+ * else '11', 5 bits of leading zeros, 6 bits of length - 1 and the bits.</li>
+ * </ul>
+ * Readings a minute apart with slowly moving values take about two bytes.
+ * The pair count is not part of the encoding; the caller keeps it.
+ */
+public final class GorillaCodec {
+
+    private static final int[] DOD_BITS = { 7, 9, 12, 32 };
+
+    private GorillaCodec() {}
+
+    /** Encodes times[from, to) and values[from, to), in that order. */
+    public static byte[] encode(long[] times, double[] values, int from, int to) {
+        BitWriter out = new BitWriter(Math.max(16, (to - from) * 3));
+        if (to <= from) {
+            return out.toBytes();
+        }
+        out.write(times[from], 64);
+        long previousBits = Double.doubleToRawLongBits(values[from]);
+        out.write(previousBits, 64);
+
+        long previousTime = times[from];
+        long previousDelta = 0;
+        int leading = Integer.MAX_VALUE;
+        int trailing = 0;
+        for (int i = from + 1; i < to; i++) {
+            long delta = times[i] - previousTime;
+            writeDeltaOfDelta(out, delta - previousDelta);
+            previousDelta = delta;
+            previousTime = times[i];
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previousBits;
+            previousBits = bits;
+            if (xor == 0) {
+                out.write(0, 1);
+                continue;
+            }
+            int lead = Math.min(31, Long.numberOfLeadingZeros(xor));
+            int trail = Long.numberOfTrailingZeros(xor);
+            if (leading != Integer.MAX_VALUE && lead >= leading && trail >= trailing) {
+                out.write(0b10, 2);
+                out.write(xor >>> trailing, 64 - leading - trailing);
+            } else {
+                leading = lead;
+                trailing = trail;
+                int length = 64 - lead - trail;
+                out.write(0b11, 2);
+                out.write(lead, 5);
+                out.write(length - 1, 6);
+                out.write(xor >>> trail, length);
+            }
+        }
+        return out.toBytes();
+    }
+
+    /** Decodes count pairs from in, at its position, into out. */
+    public static void decode(ByteBuffer in, int count, ColumnarSeries out) {
+        if (count == 0) {
+            return;
+        }
+        BitReader reader = new BitReader(in);
+        long time = reader.read(64);
+        long bits = reader.read(64);
+        out.add(time, Double.longBitsToDouble(bits));
+
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(reader);
+            time += delta;
+
+            if (reader.read(1) == 1) {
+                if (reader.read(1) == 1) {
+                    leading = (int) reader.read(5);
+                    int length = (int) reader.read(6) + 1;
+                    trailing = 64 - leading - length;
+                }
+                bits ^= reader.read(64 - leading - trailing) << trailing;
+            }
+            out.add(time, Double.longBitsToDouble(bits));
+        }
+    }
+
+    private static void writeDeltaOfDelta(BitWriter out, long dod) {
+        if (dod == 0) {
+            out.write(0, 1);
+            return;
+        }
+        for (int b = 0; b < DOD_BITS.length; b++) {
+            int width = DOD_BITS[b];
+            if (dod >= -(1L << (width - 1)) && dod < (1L << (width - 1))) {
+                // b + 1 ones then a zero
+                out.write(((1L << (b + 1)) - 1) << 1, b + 2);
+                out.write(dod, width);
+                return;
+            }
+        }
+        out.write(0b11111, 5);
+        out.write(dod, 64);
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        int ones = 0;
+        while (ones < 5 && in.read(1) == 1) {
+            ones++;
+        }
+        if (ones == 0) {
+            return 0;
+        }
+        int width = ones <= DOD_BITS.length ? DOD_BITS[ones - 1] : 64;
+        long raw = in.read(width);
+        // Sign-extend the two's complement value of width bits
+        return width == 64 ? raw : (raw << (64 - width)) >> (64 - width);
+    }
+
+    private static final class BitWriter {
+
+        private byte[] bytes;
+        private int bitCount;
+
+        BitWriter(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        /** Writes the low width bits of value, most significant first. */
+        void write(long value, int width) {
+            if (bitCount + width > bytes.length * 8L) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, (bitCount + width) / 8 + 1));
+            }
+            for (int remaining = width; remaining > 0; ) {
+                int free = 8 - (bitCount & 7);
+                int take = Math.min(free, remaining);
+                int chunk = (int) (value >>> (remaining - take)) & ((1 << take) - 1);
+                bytes[bitCount >>> 3] |= (byte) (chunk << (free - take));
+                bitCount += take;
+                remaining -= take;
+            }
+        }
+
+        byte[] toBytes() {
+            return Arrays.copyOf(bytes, (bitCount + 7) >>> 3);
+        }
+    }
+
+    private static final class BitReader {
+
+        private final ByteBuffer in;
+        private int current;
+        private int available;
+
+        BitReader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        /** Reads width bits, most significant first. */
+        long read(int width) {
+            long value = 0;
+            for (int remaining = width; remaining > 0; ) {
+                if (available == 0) {
+                    current = in.get() & 0xFF;
+                    available = 8;
+                }
+                int take = Math.min(available, remaining);
+                int chunk = (current >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                available -= take;
+                remaining -= take;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.sara.timeseries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads raw Sense API readings (a JSON array of objects with agentSerial,
+ * deviceType, reading, timeOfReading, ... as in sensor_readings.json)
+ * straight into one ColumnarSeries per agent, without building a tree.
+ *
+ * Readings are normalised like clean_data of historical-processing-ms:
+ * microphone uses the record's "average", motion is 1 when reading is
+ * 1, "1" or true and 0 otherwise, thermalmap and thermography are the mean
+ * of the reading matrix, and anything else is the reading as a number
+ * (0 when missing). Records that cannot be read are skipped.
+ */
+public final class RawReadings {
+
+    private static final Logger logger = LoggerFactory.getLogger(RawReadings.class);
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private RawReadings() {}
+
+    /** Series per agent, in order of first appearance; readings keep their input order. */
+    public static Map<String, ColumnarSeries> read(InputStream in, String sensorType) throws IOException {
+        String kind = sensorType.toLowerCase();
+        Map<String, ColumnarSeries> byAgent = new LinkedHashMap<>();
+        try (JsonParser parser = JSON.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Raw readings must be a JSON array");
+            }
+            // Trailing content after the array is ignored
+            Record record = new Record();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                record.clear();
+                readRecord(parser, kind, record);
+                if (record.agentSerial == null || record.timeOfReading == null || record.invalid) {
+                    logger.warn("Skipping raw reading without agentSerial, timeOfReading or a numeric reading");
+                    continue;
+                }
+                long time;
+                try {
+                    time = parseMillis(record.timeOfReading);
+                } catch (DateTimeParseException e) {
+                    logger.warn("Skipping raw reading with timeOfReading {}", record.timeOfReading);
+                    continue;
+                }
+                double value = kind.contains("microphone") ? record.average : record.reading;
+                byAgent.computeIfAbsent(record.agentSerial, k -> new ColumnarSeries()).add(time, value);
+            }
+        }
+        return byAgent;
+    }
+
+    private static void readRecord(JsonParser parser, String kind, Record record) throws IOException {
+        boolean motion = kind.contains("motion");
+        boolean matrix = kind.contains("thermalmap") || kind.contains("thermography");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "agentSerial" -> record.agentSerial = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                case "timeOfReading" -> record.timeOfReading = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                case "average" -> record.average = token.isNumeric() ? parser.getDoubleValue() : 0.0;
+                case "reading" -> {
+                    if (motion) {
+                        record.reading = isOne(parser, token) ? 1.0 : 0.0;
+                        parser.skipChildren();
+                    } else if (matrix) {
+                        record.reading = token == JsonToken.START_ARRAY ? matrixMean(parser) : 0.0;
+                        parser.skipChildren();
+                    } else {
+                        record.reading = number(parser, token, record);
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /** Python's raw_reading in [1, "1", True]: 1.0 == 1 holds too. */
+    private static boolean isOne(JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue() == 1.0;
+            case VALUE_STRING -> "1".equals(parser.getText());
+            case VALUE_TRUE -> true;
+            default -> false;
+        };
+    }
+
+    /** float(reading): numbers, numeric strings and booleans; null is 0. */
+    private static double number(JsonParser parser, JsonToken token, Record record) throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return 1.0;
+            case VALUE_FALSE, VALUE_NULL:
+                return 0.0;
+            case VALUE_STRING:
+                try {
+                    return Double.parseDouble(parser.getText().trim());
+                } catch (NumberFormatException e) {
+                    record.invalid = true;
+                    return 0.0;
+                }
+            default:
+                parser.skipChildren();
+                record.invalid = true;
+                return 0.0;
+        }
+    }
+
+    /** Mean of a list of lists of numbers, read in place; the parser is left on the closing bracket. */
+    private static double matrixMean(JsonParser parser) throws IOException {
+        double sum = 0;
+        long count = 0;
+        int depth = 1;
+        while (depth > 0) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                depth++;
+            } else if (token == JsonToken.END_ARRAY) {
+                depth--;
+            } else if (token.isNumeric()) {
+                sum += parser.getDoubleValue();
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : 0.0;
+    }
+
+    /** ISO-8601 with offset or 'Z'; without an offset UTC is assumed. */
+    static long parseMillis(String text) {
+        try {
+            return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+    }
+
+    private static final class Record {
+        String agentSerial;
+        String timeOfReading;
+        double reading;
+        double average;
+        boolean invalid;
+
+        void clear() {
+            agentSerial = null;
+            timeOfReading = null;
+            reading = 0.0;
+            average = 0.0;
+            invalid = false;
+        }
+    }
+}
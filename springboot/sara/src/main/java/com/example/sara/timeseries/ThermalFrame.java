@@ -0,0 +1,88 @@
+package com.example.sara.timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One thermalmap reading held as a flat row-major float array.
+ *
+ * A frame with no rows stands for "no reading at that time", so known gaps
+ * can be cached like readings.
+ */
+public final class ThermalFrame {
+
+    private final long time;
+    private final int rows;
+    private final int cols;
+    private final float[] values;
+
+    public ThermalFrame(long time, int rows, int cols, float[] values) {
+        if (values.length != rows * cols) {
+            throw new IllegalArgumentException("Expected " + rows * cols + " values, got " + values.length);
+        }
+        this.time = time;
+        this.rows = rows;
+        this.cols = cols;
+        this.values = values;
+    }
+
+    public static ThermalFrame empty(long time) {
+        return new ThermalFrame(time, 0, 0, new float[0]);
+    }
+
+    /** From the nested lists of /thermalmap/reading_at_time; rows are expected to have equal length. */
+    public static ThermalFrame fromReading(long time, List<List<Double>> reading) {
+        if (reading == null || reading.isEmpty()) {
+            return empty(time);
+        }
+        int rows = reading.size();
+        int cols = reading.get(0).size();
+        float[] values = new float[rows * cols];
+        for (int r = 0; r < rows; r++) {
+            List<Double> row = reading.get(r);
+            for (int c = 0; c < cols; c++) {
+                Double value = c < row.size() ? row.get(c) : null;
+                values[r * cols + c] = value == null ? Float.NaN : value.floatValue();
+            }
+        }
+        return new ThermalFrame(time, rows, cols, values);
+    }
+
+    /**
+     * Back to nested lists. Values go through their shortest float text, so
+     * a reading such as 21.37 comes back as 21.37 rather than as the exact
+     * double value of the float (21.3700008...). Cells stored as NaN, null
+     * upstream, come back as null, as on an uncached lookup.
+     */
+    public List<List<Double>> toReading() {
+        List<List<Double>> reading = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            List<Double> row = new ArrayList<>(cols);
+            for (int c = 0; c < cols; c++) {
+                float value = values[r * cols + c];
+                row.add(Float.isNaN(value) ? null : Double.parseDouble(Float.toString(value)));
+            }
+            reading.add(row);
+        }
+        return reading;
+    }
+
+    public boolean isEmpty() {
+        return rows == 0;
+    }
+
+    /** Approximate heap footprint, used to bound caches by bytes. */
+    public long sizeInBytes() {
+        return 48L + (long) values.length * Float.BYTES;
+    }
+
+    public long getTime() { return time; }
+
+    public int getRows() { return rows; }
+
+    public int getCols() { return cols; }
+
+    public float valueAt(int row, int col) {
+        return values[row * cols + col];
+    }
+}
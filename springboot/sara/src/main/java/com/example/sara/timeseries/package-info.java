@@ -0,0 +1 @@
+package com.example.sara.timeseries;
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.example.sara.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Routing over two replicas behind an exchange that answers in place of
+ * the network: requests go to the replica with fewer outstanding, and a
+ * replica failing in a row is skipped until its ejection ends.
+ */
+class HistoricalReplicaBalancerTest {
+
+    private static final ClientRequest REQUEST =
+        ClientRequest.create(HttpMethod.POST, URI.create("http://historical:8000/process")).build();
+
+    private final HistoricalReplicaBalancer balancer =
+        new HistoricalReplicaBalancer("http://replica-a:8000, http://replica-b:8000");
+    private final List<String> hosts = new ArrayList<>();
+    private final ExchangeFunction exchange = request -> {
+        String host = request.url().getHost();
+        hosts.add(host);
+        HttpStatus status = host.equals("replica-a") ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK;
+        return Mono.just(ClientResponse.create(status).build());
+    };
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(balancer, "failuresBeforeEjection", 2);
+        ReflectionTestUtils.setField(balancer, "ejectionTime", Duration.ofMinutes(1));
+    }
+
+    @Test
+    void requestsGoToTheReplicaWithFewerOutstanding() {
+        // Its body not read yet, so the request is still outstanding
+        ClientResponse held = balancer.filter(REQUEST, exchange).block();
+        String busy = hosts.get(0);
+        hosts.clear();
+
+        for (int i = 0; i < 4; i++) {
+            send();
+        }
+        assertEquals(4, hosts.size());
+        hosts.forEach(host -> assertNotEquals(busy, host));
+
+        held.releaseBody().block();
+        balancer.snapshot().forEach(state -> assertEquals(0, state.get("outstanding")));
+    }
+
+    @Test
+    void anEjectedReplicaIsSkipped() {
+        while (hosts.stream().filter("replica-a"::equals).count() < 2) {
+            send();
+        }
+        Map<String, Object> a = balancer.snapshot().get(0);
+        assertEquals("http://replica-a:8000", a.get("url"));
+        assertEquals(true, a.get("ejected"));
+
+        hosts.clear();
+        for (int i = 0; i < 4; i++) {
+            assertEquals(HttpStatus.OK, send());
+        }
+        assertEquals(List.of("replica-b", "replica-b", "replica-b", "replica-b"), hosts);
+    }
+
+    private HttpStatus send() {
+        return balancer.filter(REQUEST, exchange)
+            .flatMap(response -> response.releaseBody().thenReturn(HttpStatus.valueOf(response.statusCode().value())))
+            .block();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.sara.controller;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.example.sara.model.User;
+import com.example.sara.service.HistoricalJobService;
+
+/**
+ * Downloads of a finished job's result of ten bytes, in ranges: through
+ * Tomcat's sendfile when the connector offers it (only the request
+ * attributes are set, the body is left to Tomcat), through Spring's copy
+ * otherwise, and what an If-Range or an unsatisfiable range gives.
+ */
+class HistoricalJobControllerTest {
+
+    private static final String JOB_ID = "5b0c0a4e-3f2e-4b7a-9a59-0f3c2d9f1f1e";
+    private static final String RESULT_URL = "/api/historical/jobs/" + JOB_ID + "/result";
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    @TempDir
+    Path dir;
+
+    private final HistoricalJobService jobService = mock(HistoricalJobService.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path result = Files.writeString(dir.resolve(JOB_ID + ".csv"), "abcdefghij");
+        when(jobService.result(JOB_ID, "user@example.com"))
+            .thenReturn(new HistoricalJobService.JobResult(result, MediaType.TEXT_PLAIN_VALUE));
+
+        HistoricalJobController controller = new HistoricalJobController(jobService);
+        ReflectionTestUtils.setField(controller, "sendfileEnabled", true);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+            .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+            .build();
+
+        User user = new User();
+        user.setEmail("user@example.com");
+        user.setRole("USER");
+        SecurityContextHolder.getContext()
+            .setAuthentication(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void aRangeIsHandedToSendfileAsPartialContent() throws Exception {
+        mockMvc.perform(get(RESULT_URL).requestAttr(SENDFILE_SUPPORT, true).header(HttpHeaders.RANGE, "bytes=2-5"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+            .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + JOB_ID + "\""))
+            .andExpect(request().attribute("org.apache.tomcat.sendfile.start", 2L))
+            .andExpect(request().attribute("org.apache.tomcat.sendfile.end", 6L));
+    }
+
+    @Test
+    void aStaleIfRangeGetsTheWholeFile() throws Exception {
+        mockMvc.perform(get(RESULT_URL).requestAttr(SENDFILE_SUPPORT, true).header(HttpHeaders.RANGE, "bytes=2-5")
+                .header(HttpHeaders.IF_RANGE, "\"another-job\""))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+            .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+            .andExpect(request().attribute("org.apache.tomcat.sendfile.start", 0L))
+            .andExpect(request().attribute("org.apache.tomcat.sendfile.end", 10L));
+    }
+
+    @Test
+    void aMatchingIfRangeKeepsTheRange() throws Exception {
+        mockMvc.perform(get(RESULT_URL).requestAttr(SENDFILE_SUPPORT, true).header(HttpHeaders.RANGE, "bytes=7-")
+                .header(HttpHeaders.IF_RANGE, "\"" + JOB_ID + "\""))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"));
+    }
+
+    @Test
+    void aRangePastTheEndIsNotSatisfiable() throws Exception {
+        // Left by sendfile to the regular copy, which rejects it
+        mockMvc.perform(get(RESULT_URL).requestAttr(SENDFILE_SUPPORT, true).header(HttpHeaders.RANGE, "bytes=10-"))
+            .andExpect(status().isRequestedRangeNotSatisfiable())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"))
+            .andExpect(request().attribute("org.apache.tomcat.sendfile.start", (Object) null));
+    }
+
+    @Test
+    void withoutSendfileTheRangeIsCopied() throws Exception {
+        mockMvc.perform(get(RESULT_URL).header(HttpHeaders.RANGE, "bytes=2-5"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+            .andExpect(content().string("cdef"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.model.PyramidBucket;
+import com.example.sara.repositories.PyramidBucketRepository;
+import com.example.sara.timeseries.AggregationLevel;
+import com.example.sara.timeseries.AggregationMetric;
+import com.example.sara.timeseries.BucketSummary;
+import com.example.sara.timeseries.ColumnarSeries;
+
+/**
+ * Refresh runs over a raw store on a temporary directory, with the
+ * pyramid table held in memory: days are built within the run budget and
+ * a month is closed only once all its days are in.
+ */
+class AggregatePyramidServiceTest {
+
+    private static final RawReadingStore.Series SERIES = new RawReadingStore.Series("uoa", "temperature", "AGENT_001");
+
+    @TempDir
+    Path dir;
+
+    private final List<PyramidBucket> rows = new ArrayList<>();
+    private final PyramidBucketRepository repository = mock(PyramidBucketRepository.class);
+    private RawReadingStore rawStore;
+    private AggregatePyramidService service;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findRange(anyString(), anyString(), anyString(), anyString(), any(), any()))
+            .thenAnswer(invocation -> range(invocation.getArgument(3), invocation.getArgument(4),
+                invocation.getArgument(5)));
+        when(repository.findStarts(anyString(), anyString(), anyString(), anyString(), any(), any()))
+            .thenAnswer(invocation -> range(invocation.getArgument(3), invocation.getArgument(4),
+                invocation.getArgument(5)).stream().map(PyramidBucket::getBucketStart).toList());
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<PyramidBucket> saved = invocation.getArgument(0);
+            rows.addAll(saved);
+            return saved;
+        });
+
+        rawStore = new RawReadingStore(dir.toString(), 16);
+        ReflectionTestUtils.setField(rawStore, "enabled", true);
+        service = new AggregatePyramidService(repository, rawStore);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "sketchK", 200);
+        ReflectionTestUtils.setField(service, "maxDaysPerRun", 20);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rawStore.shutdown();
+    }
+
+    @Test
+    void aMonthIsClosedOnceAllItsDaysAreBuilt() throws IOException {
+        // All of February and the first days of March, two readings a day
+        for (LocalDate day = LocalDate.parse("2024-02-01"); day.isBefore(LocalDate.parse("2024-03-04"));
+                day = day.plusDays(1)) {
+            long start = day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            ColumnarSeries readings = new ColumnarSeries();
+            readings.add(start + 1_800_000, day.getDayOfMonth());
+            readings.add(start + 45_000_000, day.getDayOfMonth() + 0.5);
+            rawStore.seal(SERIES, day, readings);
+        }
+
+        // The budget stops the first run within February, which then stays open
+        service.refresh();
+        assertEquals(20, count(AggregationLevel.DAILY));
+        assertEquals(40, count(AggregationLevel.HOURLY));
+        assertEquals(0, count(AggregationLevel.MONTHLY));
+
+        // The next run builds the rest and closes February from its days; March is short of days
+        service.refresh();
+        assertEquals(32, count(AggregationLevel.DAILY));
+        assertEquals(64, count(AggregationLevel.HOURLY));
+        List<PyramidBucket> months = range(AggregationLevel.MONTHLY.key(), Instant.EPOCH, Instant.MAX);
+        assertEquals(1, months.size());
+        assertEquals(Instant.parse("2024-02-01T00:00:00Z"), months.get(0).getBucketStart());
+        assertEquals(58, months.get(0).getReadings());
+        BucketSummary february = BucketSummary.fromBytes(months.get(0).getSummary());
+        assertEquals(15.25, february.value(AggregationMetric.AVERAGE, "temperature"), 1e-9);
+        assertEquals(0, count(AggregationLevel.YEARLY));
+
+        // Nothing more to do
+        int written = rows.size();
+        service.refresh();
+        assertEquals(written, rows.size());
+        assertNotNull(service.snapshot().get("scanned_since"));
+    }
+
+    private long count(AggregationLevel level) {
+        return rows.stream().filter(row -> row.getLevel().equals(level.key())).count();
+    }
+
+    private List<PyramidBucket> range(String level, Instant from, Instant to) {
+        return rows.stream()
+            .filter(row -> row.getLevel().equals(level))
+            .filter(row -> !row.getBucketStart().isBefore(from) && row.getBucketStart().isBefore(to))
+            .sorted(Comparator.comparing(PyramidBucket::getBucketStart))
+            .toList();
+    }
+}
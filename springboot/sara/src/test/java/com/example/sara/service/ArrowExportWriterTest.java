@@ -0,0 +1,121 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Arrow IPC streams of the export read back with Arrow's own reader: one
+ * record batch per batchRows rows, agent_serial decoded through the
+ * dictionary, nulls in time_of_create, with and without compression.
+ */
+class ArrowExportWriterTest {
+
+    private static final int ROWS = 2500;
+    private static final long T0 = 1_700_000_000_000L;
+    private static final List<String> AGENTS = List.of("AGENT_001", "AGENT_002", "AGENT_003");
+
+    @Test
+    void uncompressedStreamReadsBack() throws IOException {
+        assertReadsBack(write(CompressionUtil.CodecType.NO_COMPRESSION));
+    }
+
+    @Test
+    void zstdStreamReadsBack() throws IOException {
+        assertReadsBack(write(CompressionUtil.CodecType.ZSTD));
+    }
+
+    @Test
+    void aRowOfAnAgentNotRequestedIsRejected() throws IOException {
+        try (ArrowExportWriter writer = new ArrowExportWriter(new ByteArrayOutputStream(), List.of("AGENT_001"), 10,
+                CompressionUtil.CodecType.NO_COMPRESSION)) {
+            writer.start();
+            assertThrows(IOException.class, () -> writer.write(row(ROWS - 1)));
+        }
+    }
+
+    private static byte[] write(CompressionUtil.CodecType codec) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ArrowExportWriter writer = new ArrowExportWriter(out, AGENTS, 1000, codec)) {
+            writer.start();
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(row(i));
+            }
+            writer.finish();
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertReadsBack(byte[] stream) throws IOException {
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(stream), allocator,
+                 CommonsCompressionFactory.INSTANCE)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals(List.of("time_of_reading", "agent_serial", "reading", "device_type", "unit",
+                "time_of_create", "id"), root.getSchema().getFields().stream().map(Field::getName).toList());
+            Field agentField = root.getSchema().findField("agent_serial");
+            assertNotNull(agentField.getDictionary());
+            assertTrue(root.getSchema().findField("time_of_create").isNullable());
+
+            int batches = 0;
+            int row = 0;
+            while (reader.loadNextBatch()) {
+                batches++;
+                VarCharVector agents = (VarCharVector) reader.getDictionaryVectors()
+                    .get(agentField.getDictionary().getId()).getVector();
+                TimeStampMilliTZVector timeOfReading = (TimeStampMilliTZVector) root.getVector("time_of_reading");
+                IntVector agentSerial = (IntVector) root.getVector("agent_serial");
+                Float8Vector reading = (Float8Vector) root.getVector("reading");
+                VarCharVector deviceType = (VarCharVector) root.getVector("device_type");
+                VarCharVector unit = (VarCharVector) root.getVector("unit");
+                TimeStampMilliTZVector timeOfCreate = (TimeStampMilliTZVector) root.getVector("time_of_create");
+                VarCharVector id = (VarCharVector) root.getVector("id");
+
+                for (int i = 0; i < root.getRowCount(); i++, row++) {
+                    ExportCsvReader.Row expected = row(row);
+                    assertEquals(expected.timeOfReading(), timeOfReading.get(i));
+                    assertEquals(expected.agentSerial(),
+                        new String(agents.get(agentSerial.get(i)), StandardCharsets.UTF_8));
+                    assertEquals(expected.reading(), reading.get(i));
+                    assertEquals(expected.deviceType(), new String(deviceType.get(i), StandardCharsets.UTF_8));
+                    assertEquals(expected.unit(), new String(unit.get(i), StandardCharsets.UTF_8));
+                    assertEquals(expected.id(), new String(id.get(i), StandardCharsets.UTF_8));
+                    if (expected.timeOfCreate() == null) {
+                        assertTrue(timeOfCreate.isNull(i));
+                    } else {
+                        assertEquals(expected.timeOfCreate(), timeOfCreate.get(i));
+                    }
+                }
+            }
+            assertEquals(3, batches);
+            assertEquals(ROWS, row);
+        }
+    }
+
+    /** Sorted by agent then time, as exports are; every seventh row has no creation time. */
+    private static ExportCsvReader.Row row(int i) {
+        long time = T0 + i * 60_000L;
+        return new ExportCsvReader.Row("id-" + i, AGENTS.get(i * AGENTS.size() / ROWS), "TemperatureSensor",
+            i == 5 ? Double.NaN : 20 + i * 0.01, i % 2 == 0 ? "C" : "°C", time, i % 7 == 0 ? null : time + 1234);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.dto.ExportBundleRequestDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * ZIP entry names of a bundle named by sensor types and agents: safe,
+ * sorted, and unique even when agent serials only differ in characters
+ * that are replaced or in case.
+ */
+class ExportBundleServiceTest {
+
+    @Test
+    void clashingEntryNamesGetASuffix() {
+        ExportBundleService service = new ExportBundleService(null, null, null, new ObjectMapper());
+        ReflectionTestUtils.setField(service, "maxSeries", 100);
+        ExportBundleRequestDTO request = new ExportBundleRequestDTO();
+        request.setSensor_types(List.of("temperature", "humidity"));
+        request.setAgent_serials(List.of("A_1", "A/1", "a_1", "B 2"));
+
+        List<String> names = service.resolveSeries(request).stream().map(series -> series.entryName("csv")).toList();
+
+        assertEquals(List.of(
+            "humidity/A_1.csv", "humidity/A_1-2.csv", "humidity/B_2.csv", "humidity/a_1-3.csv",
+            "temperature/A_1.csv", "temperature/A_1-2.csv", "temperature/B_2.csv", "temperature/a_1-3.csv"), names);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * CSV of /export as Python's csv.DictWriter writes it: CRLF line ends,
+ * fields quoted when they hold a comma, quote or line break, empty fields
+ * for missing values.
+ */
+class ExportCsvReaderTest {
+
+    private static final String HEADER = "id,agentSerial,deviceType,reading,unit,timeOfReading,timeOfCreate\r\n";
+
+    @Test
+    void quotedFieldsAndCrlfLineEnds() throws IOException {
+        ExportCsvReader reader = new ExportCsvReader(new StringReader(HEADER
+            + "1,AGENT_001,\"Sensor, \"\"outdoor\"\"\",21.5,°C,2024-03-10T10:00:00+00:00,2024-03-10T10:00:02+00:00\r\n"
+            + "2,AGENT_001,\"two\r\nlines\",21.75,°C,2024-03-10 10:01:00,\r\n"));
+
+        ExportCsvReader.Row first = reader.next();
+        assertEquals("1", first.id());
+        assertEquals("AGENT_001", first.agentSerial());
+        assertEquals("Sensor, \"outdoor\"", first.deviceType());
+        assertEquals(21.5, first.reading());
+        assertEquals("°C", first.unit());
+        assertEquals(Instant.parse("2024-03-10T10:00:00Z").toEpochMilli(), first.timeOfReading());
+        assertEquals(Long.valueOf(Instant.parse("2024-03-10T10:00:02Z").toEpochMilli()), first.timeOfCreate());
+
+        ExportCsvReader.Row second = reader.next();
+        assertEquals("two\r\nlines", second.deviceType());
+        // Naive and space-separated: read as UTC
+        assertEquals(Instant.parse("2024-03-10T10:01:00Z").toEpochMilli(), second.timeOfReading());
+        assertNull(second.timeOfCreate());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void anEmptyReadingIsNaNAndColumnsAreFoundByName() throws IOException {
+        ExportCsvReader reader = new ExportCsvReader(new StringReader(
+            "timeOfReading,reading,agentSerial\r\n"
+            + "2024-03-10T10:00:00Z,,AGENT_002\r\n"
+            + "\r\n"
+            + "2024-03-10T10:01:00Z,-3,AGENT_002"));
+
+        ExportCsvReader.Row empty = reader.next();
+        assertTrue(Double.isNaN(empty.reading()));
+        assertEquals("AGENT_002", empty.agentSerial());
+        assertEquals("", empty.id());
+        assertNull(empty.timeOfCreate());
+        // The blank line is skipped, the last line needs no line end
+        assertEquals(-3.0, reader.next().reading());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void malformedExportsAreRejected() {
+        assertThrows(IOException.class, () -> new ExportCsvReader(new StringReader("id,reading\r\n1,2\r\n")));
+        assertThrows(IOException.class, () -> new ExportCsvReader(new StringReader(HEADER
+            + "1,AGENT_001,\"unterminated,21.5,°C,2024-03-10T10:00:00Z,\r\n")).next());
+        assertThrows(IOException.class, () -> new ExportCsvReader(new StringReader(HEADER
+            + "1,AGENT_001,Sensor,21.5,°C,,\r\n")).next());
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.model.ProcessingRequestDTO;
+import com.example.sara.timeseries.BucketSummary;
+
+/**
+ * Both tiers of the aggregate cache, with Redis mocked: what is served
+ * locally, what goes to Redis, how its values are decoded, and that a
+ * failing Redis only costs the remote tier.
+ */
+class HistoricalAggregateCacheTest {
+
+    private static final Instant JAN = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant FEB = Instant.parse("2024-02-01T00:00:00Z");
+    private static final Instant MAR = Instant.parse("2024-03-01T00:00:00Z");
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    private final ProcessingRequestDTO request = request("AGENT_001");
+    private HistoricalAggregateCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(redis.opsForValue()).thenReturn(values);
+        cache = new HistoricalAggregateCache(redis, 100, 10);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "emptyTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(cache, "summaryEnabled", true);
+        ReflectionTestUtils.setField(cache, "summarySketchK", 200);
+    }
+
+    @Test
+    void keysHaveTheDimensionsOfTheUpstreamCacheKey() {
+        assertEquals("gateway:aggregate:uoa:temperature:AGENT_001,AGENT_002:monthly:average:2024-01-01T00:00:00Z",
+            cache.key(request("AGENT_001", "AGENT_002"), JAN));
+        assertEquals("gateway:summary:uoa:temperature:AGENT_001:2024-01-01T00:00:00Z",
+            cache.summaryKey(request, "AGENT_001", JAN));
+    }
+
+    @Test
+    void storedBucketsAreServedFromTheLocalTier() {
+        cache.putAll(request, Map.of(JAN, 21.5, FEB, Double.NaN));
+
+        Map<Instant, Double> found = cache.getAll(request, List.of(JAN, FEB));
+        assertEquals(21.5, found.get(JAN), 0);
+        assertTrue(found.get(FEB).isNaN());
+        verify(redis).executePipelined(any(RedisCallback.class));
+        verify(values, never()).multiGet(anyCollection());
+    }
+
+    @Test
+    void redisHitsAreDecodedAndCopiedToTheLocalTier() {
+        when(values.multiGet(anyCollection())).thenReturn(Arrays.asList("19.25", "empty", null));
+        Map<Instant, Double> found = cache.getAll(request, List.of(JAN, FEB, MAR));
+        assertEquals(19.25, found.get(JAN), 0);
+        assertTrue(found.get(FEB).isNaN());
+        assertFalse(found.containsKey(MAR));
+
+        // Only the bucket Redis did not have is asked for again
+        when(values.multiGet(anyCollection())).thenReturn(Arrays.asList((String) null));
+        cache.getAll(request, List.of(JAN, FEB, MAR));
+        verify(values).multiGet(List.of(cache.key(request, MAR)));
+    }
+
+    @Test
+    void aFailingRedisLeavesTheLocalTier() {
+        when(redis.executePipelined(any(RedisCallback.class))).thenThrow(new RedisConnectionFailureException("down"));
+        when(values.multiGet(anyCollection())).thenThrow(new RedisConnectionFailureException("down"));
+
+        cache.putAll(request, Map.of(JAN, 21.5));
+        Map<Instant, Double> found = cache.getAll(request, List.of(JAN, FEB));
+        assertEquals(Map.of(JAN, 21.5), found);
+    }
+
+    @Test
+    void summariesAreReadBackFromRedis() {
+        BucketSummary day = BucketSummary.of(new double[] { 20, 21, 23 }, 0, 3, 200);
+        when(values.multiGet(anyCollection()))
+            .thenReturn(List.of(Base64.getEncoder().encodeToString(day.toBytes()), "empty"));
+
+        Map<Instant, BucketSummary> found = cache.getSummaries(request, "AGENT_001", List.of(JAN, FEB));
+        assertEquals(3, found.get(JAN).count());
+        assertTrue(found.get(FEB).isEmpty());
+    }
+
+    private static ProcessingRequestDTO request(String... agents) {
+        ProcessingRequestDTO request = new ProcessingRequestDTO();
+        request.setFacility("uoa");
+        request.setSensor_type("temperature");
+        request.setAgent_serial(List.of(agents));
+        request.setAggregation_level("monthly");
+        request.setMetric("average");
+        request.setStart(ZonedDateTime.parse("2024-01-01T00:00:00Z"));
+        request.setEnd(ZonedDateTime.parse("2024-03-31T23:59:59Z"));
+        return request;
+    }
+}
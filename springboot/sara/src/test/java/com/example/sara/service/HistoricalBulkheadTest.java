@@ -0,0 +1,112 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.exception.TooManyRequestsException;
+
+/**
+ * Admission of the bulkhead: the per-user limit, waiting for a global slot
+ * and giving up after max-wait, and the AIMD moves of the global limit.
+ */
+class HistoricalBulkheadTest {
+
+    @Test
+    void aUserOverTheLimitIsRejectedAtOnceWhileOthersAreAdmitted() {
+        HistoricalBulkhead bulkhead = bulkhead(32, Duration.ofSeconds(30));
+        HistoricalBulkhead.Permit first = bulkhead.acquire("a@example.com");
+        bulkhead.acquire("a@example.com");
+
+        TooManyRequestsException rejected =
+            assertThrows(TooManyRequestsException.class, () -> bulkhead.acquire("a@example.com"));
+        assertEquals(7L, rejected.getRetryAfterSeconds());
+        assertNotNull(bulkhead.acquire("b@example.com"));
+
+        first.close();
+        // Closing twice frees one slot only
+        first.close();
+        bulkhead.acquire("a@example.com");
+        assertThrows(TooManyRequestsException.class, () -> bulkhead.acquire("a@example.com"));
+        assertEquals(3, bulkhead.snapshot().get("in_flight"));
+    }
+
+    @Test
+    void aRequestOverTheGlobalLimitWaitsForASlot() throws Exception {
+        HistoricalBulkhead bulkhead = bulkhead(1, Duration.ofSeconds(30));
+        HistoricalBulkhead.Permit held = bulkhead.acquire("a@example.com");
+
+        CompletableFuture<HistoricalBulkhead.Permit> waiter =
+            CompletableFuture.supplyAsync(() -> bulkhead.acquire("b@example.com"));
+        while (!Integer.valueOf(1).equals(bulkhead.snapshot().get("waiting"))) {
+            Thread.sleep(5);
+        }
+        held.close();
+
+        assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.snapshot().get("waiting"));
+    }
+
+    @Test
+    void aQueuedRequestIsRejectedAfterMaxWaitOrWhenTheQueueIsFull() {
+        HistoricalBulkhead bulkhead = bulkhead(1, Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(bulkhead, "maxWait", Duration.ofMillis(50));
+        bulkhead.acquire("a@example.com");
+
+        long t0 = System.nanoTime();
+        assertThrows(TooManyRequestsException.class, () -> bulkhead.acquire("b@example.com"));
+        assertTrue(System.nanoTime() - t0 >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        ReflectionTestUtils.setField(bulkhead, "queueSize", 0);
+        ReflectionTestUtils.setField(bulkhead, "maxWait", Duration.ofSeconds(30));
+        t0 = System.nanoTime();
+        assertThrows(TooManyRequestsException.class, () -> bulkhead.acquire("b@example.com"));
+        assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    void theLimitBacksOffOnSlowRequestsAndGrowsBackAdditively() {
+        // A negative threshold makes every request slow
+        HistoricalBulkhead bulkhead = bulkhead(10, Duration.ofNanos(-1));
+        bulkhead.acquire("a@example.com").close();
+        assertEquals(5, bulkhead.snapshot().get("limit"));
+        bulkhead.acquire("a@example.com").close();
+        bulkhead.acquire("a@example.com").close();
+        assertEquals(2, bulkhead.snapshot().get("limit"), "held at min-limit");
+
+        ReflectionTestUtils.setField(bulkhead, "latencyThreshold", Duration.ofSeconds(30));
+        // 2 + 1/2 + 1/2.5 + 1/2.9 = 3.24
+        bulkhead.acquire("a@example.com").close();
+        bulkhead.acquire("a@example.com").close();
+        assertEquals(2, bulkhead.snapshot().get("limit"));
+        bulkhead.acquire("a@example.com").close();
+        assertEquals(3, bulkhead.snapshot().get("limit"));
+
+        for (int i = 0; i < 100; i++) {
+            bulkhead.acquire("a@example.com").close();
+        }
+        assertEquals(12, bulkhead.snapshot().get("limit"), "held at max-limit");
+    }
+
+    private static HistoricalBulkhead bulkhead(int initialLimit, Duration latencyThreshold) {
+        HistoricalBulkhead bulkhead = new HistoricalBulkhead(initialLimit);
+        ReflectionTestUtils.setField(bulkhead, "enabled", true);
+        ReflectionTestUtils.setField(bulkhead, "perUserLimit", 2);
+        ReflectionTestUtils.setField(bulkhead, "queueSize", 8);
+        ReflectionTestUtils.setField(bulkhead, "maxWait", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(bulkhead, "retryAfter", Duration.ofSeconds(7));
+        ReflectionTestUtils.setField(bulkhead, "minLimit", Math.min(2, initialLimit));
+        ReflectionTestUtils.setField(bulkhead, "maxLimit", 12);
+        ReflectionTestUtils.setField(bulkhead, "latencyThreshold", latencyThreshold);
+        ReflectionTestUtils.setField(bulkhead, "backoffRatio", 0.5);
+        return bulkhead;
+    }
+}
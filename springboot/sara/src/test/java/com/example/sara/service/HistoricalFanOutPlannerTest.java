@@ -0,0 +1,132 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.model.ProcessingRequestDTO;
+
+/**
+ * Slices of the fan-out planner: aligned to the groups of the requested
+ * level, contiguous, covering exactly the requested range, and split by
+ * agent only at minute level.
+ */
+class HistoricalFanOutPlannerTest {
+
+    private final HistoricalFanOutPlanner planner = new HistoricalFanOutPlanner();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(planner, "enabled", true);
+        ReflectionTestUtils.setField(planner, "minuteDaysPerSlice", 1);
+        ReflectionTestUtils.setField(planner, "hourlyDaysPerSlice", 7);
+        ReflectionTestUtils.setField(planner, "dailyMonthsPerSlice", 3);
+        ReflectionTestUtils.setField(planner, "monthlyYearsPerSlice", 1);
+    }
+
+    @Test
+    void hourlySlicesEndOnWeekBoundariesCountedFromTheStartDay() {
+        HistoricalFanOutPlanner.Plan plan = planner.plan(
+            request("hourly", "2024-03-03T10:00:00Z", "2024-03-22T12:00:00Z", "AGENT_001", "AGENT_002"));
+
+        assertFalse(plan.agentsSplit());
+        assertRanges(plan.slices(),
+            "2024-03-03T10:00:00Z", "2024-03-09T23:59:59.999Z",
+            "2024-03-10T00:00:00Z", "2024-03-16T23:59:59.999Z",
+            "2024-03-17T00:00:00Z", "2024-03-22T12:00:00Z");
+        // Hourly buckets of all agents are reduced together upstream, so agents stay together
+        plan.slices().forEach(slice -> assertEquals(List.of("AGENT_001", "AGENT_002"), slice.getAgent_serial()));
+    }
+
+    @Test
+    void dailySlicesFollowMonthBoundaries() {
+        HistoricalFanOutPlanner.Plan plan = planner.plan(
+            request("daily", "2023-11-15T00:00:00Z", "2024-05-10T00:00:00Z", "AGENT_001"));
+
+        assertRanges(plan.slices(),
+            "2023-11-15T00:00:00Z", "2024-01-31T23:59:59.999Z",
+            "2024-02-01T00:00:00Z", "2024-04-30T23:59:59.999Z",
+            "2024-05-01T00:00:00Z", "2024-05-10T00:00:00Z");
+    }
+
+    @Test
+    void slicesAreContiguousAndKeepEverythingButTheRange() {
+        ProcessingRequestDTO request = request("monthly", "2019-06-01T00:00:00Z", "2024-02-15T08:30:00Z", "AGENT_001");
+        List<ProcessingRequestDTO> slices = planner.plan(request).slices();
+
+        assertEquals(6, slices.size());
+        assertEquals(request.getStart().toInstant(), slices.get(0).getStart().toInstant());
+        assertEquals(request.getEnd().toInstant(), slices.get(slices.size() - 1).getEnd().toInstant());
+        for (int i = 1; i < slices.size(); i++) {
+            assertEquals(slices.get(i - 1).getEnd().toInstant().plusMillis(1), slices.get(i).getStart().toInstant());
+        }
+        for (ProcessingRequestDTO slice : slices) {
+            assertEquals("uoa", slice.getFacility());
+            assertEquals("temperature", slice.getSensor_type());
+            assertEquals("monthly", slice.getAggregation_level());
+            assertEquals("average", slice.getMetric());
+        }
+    }
+
+    @Test
+    void minuteRequestsAreSplitByDayThenByAgent() {
+        HistoricalFanOutPlanner.Plan plan = planner.plan(
+            request("minute", "2024-03-10T22:00:00Z", "2024-03-11T02:00:00Z", "AGENT_001", "AGENT_002"));
+
+        assertTrue(plan.agentsSplit());
+        List<ProcessingRequestDTO> slices = plan.slices();
+        assertEquals(4, slices.size());
+        assertEquals(List.of("AGENT_001"), slices.get(0).getAgent_serial());
+        assertEquals(List.of("AGENT_002"), slices.get(1).getAgent_serial());
+        assertEquals(List.of("AGENT_001"), slices.get(2).getAgent_serial());
+        assertEquals(List.of("AGENT_002"), slices.get(3).getAgent_serial());
+        assertEquals(Instant.parse("2024-03-10T23:59:59.999Z"), slices.get(1).getEnd().toInstant());
+        assertEquals(Instant.parse("2024-03-11T00:00:00Z"), slices.get(2).getStart().toInstant());
+    }
+
+    @Test
+    void aRequestThatFitsOneSliceIsSentAsIs() {
+        ProcessingRequestDTO small = request("hourly", "2024-03-04T00:00:00Z", "2024-03-06T00:00:00Z", "AGENT_001");
+        ProcessingRequestDTO yearly = request("yearly", "2010-01-01T00:00:00Z", "2024-01-01T00:00:00Z", "AGENT_001");
+
+        assertEquals(1, planner.plan(small).slices().size());
+        assertSame(small, planner.plan(small).slices().get(0));
+        assertSame(yearly, planner.plan(yearly).slices().get(0));
+
+        ReflectionTestUtils.setField(planner, "enabled", false);
+        ProcessingRequestDTO minute = request("minute", "2024-03-01T00:00:00Z", "2024-03-20T00:00:00Z",
+            "AGENT_001", "AGENT_002");
+        HistoricalFanOutPlanner.Plan plan = planner.plan(minute);
+        assertEquals(List.of(minute), plan.slices());
+        assertFalse(plan.agentsSplit());
+    }
+
+    private static void assertRanges(List<ProcessingRequestDTO> slices, String... bounds) {
+        assertEquals(bounds.length / 2, slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            assertEquals(Instant.parse(bounds[2 * i]), slices.get(i).getStart().toInstant());
+            assertEquals(Instant.parse(bounds[2 * i + 1]), slices.get(i).getEnd().toInstant());
+        }
+    }
+
+    private static ProcessingRequestDTO request(String level, String start, String end, String... agents) {
+        ProcessingRequestDTO request = new ProcessingRequestDTO();
+        request.setFacility("uoa");
+        request.setSensor_type("temperature");
+        request.setAgent_serial(List.of(agents));
+        request.setAggregation_level(level);
+        request.setMetric("average");
+        request.setStart(ZonedDateTime.parse(start));
+        request.setEnd(ZonedDateTime.parse(end));
+        return request;
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.dto.ExportRequestDTO;
+import com.example.sara.dto.HistoricalJobStatusDTO;
+import com.example.sara.exception.ResourceNotFoundException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Job lifecycle on one worker with a queue of one, spooling to a
+ * temporary directory: cancelling a queued job, rejecting when the queue
+ * is full, purging expired results, cleaning the spool at startup and
+ * handing an identical export the job already producing it.
+ */
+class HistoricalJobServiceTest {
+
+    private static final String OWNER = "user@example.com";
+
+    @TempDir
+    Path spool;
+
+    private final HistoricalProcessingService processingService = mock(HistoricalProcessingService.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HistoricalJobService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    void aJobCancelledWhileQueuedNeverRuns() throws Exception {
+        HistoricalJobStatusDTO blocking = submitBlocking();
+        AtomicBoolean ran = new AtomicBoolean();
+        HistoricalJobStatusDTO queued = service.submit(OWNER, "text/plain", "txt", null,
+            (job, out) -> ran.set(true));
+        assertEquals("queued", queued.getStatus());
+
+        assertEquals("cancelled", service.cancel(queued.getJob_id(), OWNER).getStatus());
+        assertThrows(ResourceNotFoundException.class, () -> service.status(queued.getJob_id(), OWNER));
+
+        release.countDown();
+        awaitStatus(blocking.getJob_id(), "succeeded");
+        // A job submitted after the cancelled one has the worker to itself
+        awaitStatus(service.submit(OWNER, "text/plain", "txt", null, (job, out) -> { }).getJob_id(), "succeeded");
+        assertFalse(ran.get());
+        assertFalse(Files.exists(spool.resolve(queued.getJob_id() + ".txt")));
+    }
+
+    @Test
+    void aFullQueueRejectsTheSubmission() throws Exception {
+        submitBlocking();
+        service.submit(OWNER, "text/plain", "txt", null, (job, out) -> { });
+
+        assertThrows(RejectedExecutionException.class,
+            () -> service.submit(OWNER, "text/plain", "txt", null, (job, out) -> { }));
+    }
+
+    @Test
+    void resultsArePurgedOnceTheirTtlHasPassed() throws Exception {
+        String id = service.submit(OWNER, "text/plain", "txt", null,
+            (job, out) -> out.write("done".getBytes(StandardCharsets.UTF_8))).getJob_id();
+        HistoricalJobStatusDTO finished = awaitStatus(id, "succeeded");
+        Path result = service.result(id, OWNER).path();
+        assertEquals(4, Files.size(result));
+
+        service.purgeExpired();
+        assertEquals("succeeded", service.status(id, OWNER).getStatus());
+
+        ReflectionTestUtils.setField(service, "resultTtl", Duration.ZERO);
+        while (!Instant.now().isAfter(finished.getFinished_at())) {
+            Thread.sleep(1);
+        }
+        service.purgeExpired();
+        assertThrows(ResourceNotFoundException.class, () -> service.status(id, OWNER));
+        assertFalse(Files.exists(result));
+    }
+
+    @Test
+    void onlyJobResultsAreDeletedFromTheSpoolAtStartup() throws IOException {
+        Path orphan = Files.writeString(spool.resolve(UUID.randomUUID() + ".ndjson"), "{}");
+        Path foreign = Files.writeString(spool.resolve("notes.txt"), "keep me");
+        service.shutdown();
+
+        service = open();
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(foreign));
+    }
+
+    @Test
+    void anIdenticalExportOfTheSameUserReusesItsJob() throws Exception {
+        when(processingService.streamExport(any(), anyString())).thenAnswer(invocation -> Flux.just(
+            DefaultDataBufferFactory.sharedInstance.wrap("time,value\n1,20.5\n2,21.0\n".getBytes(StandardCharsets.UTF_8))));
+        String id = service.submitExport(exportRequest("csv"), OWNER).getJob_id();
+        // The CSV header is not counted as a row
+        assertEquals(2, awaitStatus(id, "succeeded").getBuckets_received());
+
+        assertEquals(id, service.submitExport(exportRequest("csv"), OWNER).getJob_id());
+
+        // Once cancelled, the same export starts over
+        service.cancel(id, OWNER);
+        String again = service.submitExport(exportRequest("csv"), OWNER).getJob_id();
+        assertNotEquals(id, again);
+        awaitStatus(again, "succeeded");
+
+        String json = service.submitExport(exportRequest("json"), OWNER).getJob_id();
+        assertNotEquals(again, json);
+        awaitStatus(json, "succeeded");
+        assertNotEquals(again, service.submitExport(exportRequest("csv"), "other@example.com").getJob_id());
+    }
+
+    private static ExportRequestDTO exportRequest(String format) {
+        ExportRequestDTO request = new ExportRequestDTO();
+        request.setFacility("uoa");
+        request.setSensorType("temperature");
+        request.setAgentSerial(List.of("AGENT_001", "AGENT_002"));
+        request.setStart(Instant.parse("2024-03-01T00:00:00Z"));
+        request.setEnd(Instant.parse("2024-03-08T00:00:00Z"));
+        request.setFormat(format);
+        return request;
+    }
+
+    private HistoricalJobService open() throws IOException {
+        HistoricalJobService opened = new HistoricalJobService(processingService, mock(ExportEncoder.class), null,
+            new ObjectMapper().findAndRegisterModules(), 1, 1, spool.toString());
+        ReflectionTestUtils.setField(opened, "resultTtl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(opened, "streamingPrefetch", 8);
+        return opened;
+    }
+
+    /** Holds the only worker until the test releases it. */
+    private HistoricalJobStatusDTO submitBlocking() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        HistoricalJobStatusDTO status = service.submit(OWNER, "text/plain", "txt", null, (job, out) -> {
+            started.countDown();
+            release.await();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return status;
+    }
+
+    private HistoricalJobStatusDTO awaitStatus(String id, String expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        HistoricalJobStatusDTO status = service.status(id, OWNER);
+        while (!status.getStatus().equals(expected) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            status = service.status(id, OWNER);
+        }
+        assertEquals(expected, status.getStatus());
+        return status;
+    }
+}
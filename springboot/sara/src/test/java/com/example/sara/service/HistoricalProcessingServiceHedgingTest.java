@@ -0,0 +1,126 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.exception.UpstreamServiceException;
+
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * Hedged lookups in virtual time, with the hedge due 100 ms after the
+ * first attempt (the p95 of the recorded latencies): which attempt wins,
+ * which errors end the call, and what gets cancelled.
+ */
+class HistoricalProcessingServiceHedgingTest {
+
+    private static final String ENDPOINT = "radio";
+
+    private final EndpointLatencyTracker latencyTracker = new EndpointLatencyTracker();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private HistoricalProcessingService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(latencyTracker, "minSamples", 20);
+        for (int i = 0; i < 20; i++) {
+            latencyTracker.record(ENDPOINT, 100);
+        }
+        // Nothing but the latency tracker is used by hedged calls
+        service = new HistoricalProcessingService(null, null, null, null, null, latencyTracker, null, null, null,
+            null, null, null);
+        ReflectionTestUtils.setField(service, "hedgingEnabled", true);
+        ReflectionTestUtils.setField(service, "hedgingPercentile", 0.95);
+        ReflectionTestUtils.setField(service, "hedgingMinDelay", Duration.ofMillis(50));
+    }
+
+    @Test
+    void theFasterReplicaWinsAndTheSlowerIsCancelled() {
+        StepVerifier.withVirtualTime(() -> hedged(
+                attempt("primary", Duration.ofSeconds(1)),
+                attempt("hedge", Duration.ofMillis(200))))
+            .expectSubscription()
+            .expectNoEvent(Duration.ofMillis(300))
+            .expectNext("hedge")
+            .verifyComplete();
+        assertEquals(2, calls.get());
+        assertEquals(1, cancelled.get());
+    }
+
+    @Test
+    void aPrimaryAnsweringBeforeTheHedgeIsDueIsNotHedged() {
+        StepVerifier.withVirtualTime(() -> hedged(
+                attempt("primary", Duration.ofMillis(80)),
+                attempt("hedge", Duration.ofMillis(10))))
+            .expectSubscription()
+            .expectNoEvent(Duration.ofMillis(80))
+            .expectNext("primary")
+            .verifyComplete();
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void aPrimaryFailingBeforeTheHedgeFailsTheCall() {
+        UpstreamServiceException unavailable = new UpstreamServiceException(503, "unavailable");
+        StepVerifier.withVirtualTime(() -> hedged(
+                failure(unavailable, Duration.ofMillis(30)),
+                attempt("hedge", Duration.ofMillis(10))))
+            .expectSubscription()
+            .expectNoEvent(Duration.ofMillis(30))
+            .expectErrorMatches(e -> e == unavailable)
+            .verify();
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void aClientErrorAfterTheHedgeFailsAtOnceAndCancelsTheHedge() {
+        UpstreamServiceException notFound = new UpstreamServiceException(404, "no such agent");
+        StepVerifier.withVirtualTime(() -> hedged(
+                failure(notFound, Duration.ofMillis(150)),
+                attempt("hedge", Duration.ofSeconds(1))))
+            .expectSubscription()
+            .expectNoEvent(Duration.ofMillis(150))
+            .expectErrorMatches(e -> e == notFound)
+            .verify();
+        assertEquals(2, calls.get());
+        assertEquals(1, cancelled.get());
+    }
+
+    @Test
+    void aServerErrorAfterTheHedgeLeavesTheHedgeToAnswer() {
+        StepVerifier.withVirtualTime(() -> hedged(
+                failure(new UpstreamServiceException(503, "unavailable"), Duration.ofMillis(150)),
+                attempt("hedge", Duration.ofMillis(200))))
+            .expectSubscription()
+            .expectNoEvent(Duration.ofMillis(300))
+            .expectNext("hedge")
+            .verifyComplete();
+        assertEquals(2, calls.get());
+    }
+
+    /** The attempts in the order they are sent: the first attempt, then the hedge. */
+    @SafeVarargs
+    private Mono<String> hedged(Supplier<Mono<String>>... attempts) {
+        List<Supplier<Mono<String>>> sent = List.of(attempts);
+        Supplier<Mono<String>> call = () -> sent.get(calls.getAndIncrement()).get();
+        return ReflectionTestUtils.invokeMethod(service, "hedged", ENDPOINT, call);
+    }
+
+    private Supplier<Mono<String>> attempt(String answer, Duration latency) {
+        return () -> Mono.just(answer).delayElement(latency).doOnCancel(cancelled::incrementAndGet);
+    }
+
+    private Supplier<Mono<String>> failure(Throwable error, Duration latency) {
+        return () -> Mono.delay(latency).then(Mono.<String>error(error)).doOnCancel(cancelled::incrementAndGet);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * Single-flight on virtual time, against an upstream call emitting "a" and
+ * "b" one and two seconds after it starts: who shares a call, who gets
+ * their own, and what a cancelling subscriber leaves running.
+ */
+class InFlightRequestCoalescerTest {
+
+    private final InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+
+    @Test
+    void aCallerArrivingBeforeTheFirstElementSharesTheCall() {
+        StepVerifier.withVirtualTime(() -> Flux.merge(call("1"), call("2")))
+            .thenAwait(Duration.ofSeconds(1))
+            .expectNext("1a", "2a")
+            .thenAwait(Duration.ofSeconds(1))
+            .expectNext("1b", "2b")
+            .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    void aCallerArrivingAfterTheFirstElementMakesItsOwnCall() {
+        StepVerifier.withVirtualTime(() -> Flux.merge(call("1"),
+                Mono.delay(Duration.ofMillis(1500)).thenMany(call("2"))))
+            .thenAwait(Duration.ofSeconds(1))
+            .expectNext("1a")
+            .thenAwait(Duration.ofSeconds(1))
+            .expectNext("1b")
+            // Its own call started at 1.5 s
+            .thenAwait(Duration.ofMillis(500))
+            .expectNext("2a")
+            .thenAwait(Duration.ofSeconds(1))
+            .expectNext("2b")
+            .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    @Test
+    void aSubscriberCancellingLeavesTheOthersRunning() {
+        StepVerifier.withVirtualTime(() -> Flux.merge(call("1").take(Duration.ofMillis(500)), call("2")))
+            .thenAwait(Duration.ofSeconds(1))
+            .expectNext("2a")
+            .thenAwait(Duration.ofSeconds(1))
+            .expectNext("2b")
+            .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, cancelled.get());
+    }
+
+    @Test
+    void theCallIsCancelledWhenTheLastSubscriberGoesAway() {
+        StepVerifier.withVirtualTime(() -> Flux.merge(call("1").take(Duration.ofMillis(500)),
+                call("2").take(Duration.ofMillis(700))))
+            .thenAwait(Duration.ofSeconds(1))
+            .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(1, cancelled.get());
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    /** A caller's view of the coalesced call, its elements prefixed with the caller's tag. */
+    private Flux<String> call(String tag) {
+        return coalescer.flux("radio:uoa|AGENT_001|2024-03-10T10:00:00Z", this::upstream).map(item -> tag + item);
+    }
+
+    private Flux<String> upstream() {
+        return Flux.defer(() -> {
+                calls.incrementAndGet();
+                return Flux.just("a", "b").delayElements(Duration.ofSeconds(1));
+            })
+            .doOnCancel(cancelled::incrementAndGet);
+    }
+}
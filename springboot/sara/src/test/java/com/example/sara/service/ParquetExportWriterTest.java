@@ -0,0 +1,130 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Files of the hand-written Parquet writer read back with parquet-mr:
+ * schema, dictionary-encoded string columns, the optional time_of_create
+ * with nulls, several row groups, with and without GZIP.
+ */
+class ParquetExportWriterTest {
+
+    private static final int ROWS = 2500;
+    private static final int ROW_GROUP_ROWS = 1000;
+    private static final long T0 = 1_700_000_000_000L;
+    private static final String[] AGENTS = { "AGENT_001", "AGENT_002", "AGENT_003" };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void uncompressedFileReadsBack() throws IOException {
+        assertReadsBack(write(ParquetExportWriter.UNCOMPRESSED), CompressionCodecName.UNCOMPRESSED);
+    }
+
+    @Test
+    void gzipFileReadsBack() throws IOException {
+        assertReadsBack(write(ParquetExportWriter.GZIP), CompressionCodecName.GZIP);
+    }
+
+    private Path write(int codec) throws IOException {
+        Path file = dir.resolve("export-" + codec + ".parquet");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ParquetExportWriter writer = new ParquetExportWriter(out, ROW_GROUP_ROWS, codec);
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(row(i));
+            }
+            writer.finish();
+        }
+        return file;
+    }
+
+    private static void assertReadsBack(Path file, CompressionCodecName codec) throws IOException {
+        List<Group> rows = new ArrayList<>();
+        try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(file))) {
+            ParquetMetadata footer = reader.getFooter();
+            MessageType schema = footer.getFileMetaData().getSchema();
+            assertEquals(List.of("time_of_reading", "agent_serial", "reading", "device_type", "unit",
+                "time_of_create", "id"), schema.getFields().stream().map(Type::getName).toList());
+            assertTrue(schema.getType("time_of_create").isRepetition(Type.Repetition.OPTIONAL));
+            assertTrue(schema.getType("time_of_reading").isRepetition(Type.Repetition.REQUIRED));
+            assertEquals(LogicalTypeAnnotation.timestampType(true, LogicalTypeAnnotation.TimeUnit.MILLIS),
+                schema.getType("time_of_reading").getLogicalTypeAnnotation());
+
+            List<BlockMetaData> blocks = footer.getBlocks();
+            assertEquals(3, blocks.size());
+            assertEquals(List.of(1000L, 1000L, 500L), blocks.stream().map(BlockMetaData::getRowCount).toList());
+            for (BlockMetaData block : blocks) {
+                for (ColumnChunkMetaData column : block.getColumns()) {
+                    assertEquals(codec, column.getCodec());
+                    String name = column.getPath().toDotString();
+                    boolean dictionary = name.equals("agent_serial") || name.equals("device_type") || name.equals("unit");
+                    assertEquals(dictionary, column.hasDictionaryPage(), name);
+                    assertEquals(dictionary, column.getEncodings().contains(Encoding.RLE_DICTIONARY), name);
+                }
+            }
+
+            PageReadStore pages;
+            while ((pages = reader.readNextRowGroup()) != null) {
+                RecordReader<Group> records = new ColumnIOFactory().getColumnIO(schema)
+                    .getRecordReader(pages, new GroupRecordConverter(schema));
+                for (long i = 0; i < pages.getRowCount(); i++) {
+                    rows.add(records.read());
+                }
+            }
+        }
+
+        assertEquals(ROWS, rows.size());
+        for (int i = 0; i < ROWS; i++) {
+            ExportCsvReader.Row expected = row(i);
+            Group actual = rows.get(i);
+            assertEquals(expected.timeOfReading(), actual.getLong("time_of_reading", 0));
+            assertEquals(expected.agentSerial(), actual.getString("agent_serial", 0));
+            assertEquals(expected.reading(), actual.getDouble("reading", 0));
+            assertEquals(expected.deviceType(), actual.getString("device_type", 0));
+            assertEquals(expected.unit(), actual.getString("unit", 0));
+            assertEquals(expected.id(), actual.getString("id", 0));
+            if (expected.timeOfCreate() == null) {
+                assertEquals(0, actual.getFieldRepetitionCount("time_of_create"));
+            } else {
+                assertEquals(expected.timeOfCreate(), actual.getLong("time_of_create", 0));
+            }
+        }
+        assertTrue(Double.isNaN(rows.get(5).getDouble("reading", 0)));
+        assertNull(row(7).timeOfCreate());
+    }
+
+    /** Sorted by agent then time, as exports are; every seventh row has no creation time. */
+    private static ExportCsvReader.Row row(int i) {
+        long time = T0 + i * 60_000L;
+        return new ExportCsvReader.Row("id-" + i, AGENTS[i * AGENTS.length / ROWS], "TemperatureSensor",
+            i == 5 ? Double.NaN : 20 + i * 0.01, i % 2 == 0 ? "C" : "°C", time, i % 7 == 0 ? null : time + 1234);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.model.ProcessingRequestDTO;
+import com.example.sara.model.PyramidBucket;
+import com.example.sara.repositories.PyramidBucketRepository;
+import com.example.sara.timeseries.AggregationLevel;
+import com.example.sara.timeseries.BucketSummary;
+
+/**
+ * Plans over a pyramid held in memory: February 2024 closed as a month,
+ * March 1 to 5 built as days with a few hourly rows, nothing after.
+ */
+class PyramidQueryPlannerTest {
+
+    private final List<PyramidBucket> rows = new ArrayList<>();
+    private final PyramidBucketRepository repository = mock(PyramidBucketRepository.class);
+    private PyramidQueryPlanner planner;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findRange(anyString(), anyString(), anyString(), anyString(), any(), any()))
+            .thenAnswer(invocation -> rows.stream()
+                .filter(row -> row.getLevel().equals(invocation.getArgument(3)))
+                .filter(row -> !row.getBucketStart().isBefore(invocation.getArgument(4))
+                    && row.getBucketStart().isBefore(invocation.getArgument(5)))
+                .sorted(Comparator.comparing(PyramidBucket::getBucketStart))
+                .toList());
+        when(repository.findLatestStart(anyString(), anyString(), anyString(), anyString()))
+            .thenAnswer(invocation -> rows.stream()
+                .filter(row -> row.getLevel().equals(invocation.getArgument(3)))
+                .map(PyramidBucket::getBucketStart)
+                .max(Comparator.naturalOrder())
+                .orElse(null));
+        planner = new PyramidQueryPlanner(repository, mock(AggregatePyramidService.class));
+        ReflectionTestUtils.setField(planner, "maxRawSpan", Duration.ofDays(2));
+
+        add(AggregationLevel.MONTHLY, "2024-02-01T00:00:00Z", 290);
+        for (int day = 1; day <= 29; day++) {
+            add(AggregationLevel.DAILY, String.format("2024-02-%02dT00:00:00Z", day), 10);
+        }
+        for (int day = 1; day <= 5; day++) {
+            add(AggregationLevel.DAILY, String.format("2024-03-%02dT00:00:00Z", day), 10);
+        }
+        add(AggregationLevel.HOURLY, "2024-03-04T12:00:00Z", 3);
+        add(AggregationLevel.HOURLY, "2024-03-04T20:00:00Z", 7);
+    }
+
+    @Test
+    void theCoarsestClosedBucketsComeFirstAndTheOpenEdgeIsRaw() {
+        ProcessingRequestDTO request = request("2024-02-01T00:00:00Z", "2024-03-06T11:59:59Z");
+        Map<Instant, List<PyramidQueryPlanner.Piece>> plans = plan(request, AggregationLevel.YEARLY);
+
+        List<PyramidQueryPlanner.Piece> pieces = plans.get(t("2024-01-01T00:00:00Z"));
+        // February as one month, March 1 to 5 as days, then the raw edge up to the end of the range
+        assertEquals(7, pieces.size());
+        assertEquals(290, pieces.get(0).summary().count());
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(10, pieces.get(i).summary().count());
+        }
+        assertRaw(pieces.get(6), "2024-03-06T00:00:00Z", "2024-03-06T11:59:59.001Z");
+    }
+
+    @Test
+    void aBucketCutByTheRangeIsPlannedOverItsPartOnly() {
+        ProcessingRequestDTO request = request("2024-03-04T10:30:00Z", "2024-03-05T23:59:59Z");
+        Map<Instant, List<PyramidQueryPlanner.Piece>> plans = plan(request, AggregationLevel.DAILY);
+
+        // The rest of the cut hour is raw, its closed hours come from the pyramid
+        List<PyramidQueryPlanner.Piece> cut = plans.get(t("2024-03-04T00:00:00Z"));
+        assertEquals(3, cut.size());
+        assertRaw(cut.get(0), "2024-03-04T10:30:00Z", "2024-03-04T11:00:00Z");
+        assertEquals(3, cut.get(1).summary().count());
+        assertEquals(7, cut.get(2).summary().count());
+
+        List<PyramidQueryPlanner.Piece> whole = plans.get(t("2024-03-05T00:00:00Z"));
+        assertEquals(1, whole.size());
+        assertEquals(10, whole.get(0).summary().count());
+    }
+
+    @Test
+    void bucketsWithNothingFromThePyramidAreLeftOut() {
+        ProcessingRequestDTO request = request("2024-03-05T00:00:00Z", "2024-03-06T11:59:59Z");
+        Map<Instant, List<PyramidQueryPlanner.Piece>> plans = plan(request, AggregationLevel.DAILY);
+
+        assertTrue(plans.containsKey(t("2024-03-05T00:00:00Z")));
+        assertFalse(plans.containsKey(t("2024-03-06T00:00:00Z")));
+    }
+
+    @Test
+    void aMissingDailyRowLeavesItsBucketsOut() {
+        rows.removeIf(row -> row.getLevel().equals(AggregationLevel.DAILY.key())
+            && row.getBucketStart().equals(t("2024-03-03T00:00:00Z")));
+        ProcessingRequestDTO request = request("2024-03-01T00:00:00Z", "2024-03-06T11:59:59Z");
+
+        assertTrue(plan(request, AggregationLevel.MONTHLY).isEmpty());
+        Map<Instant, List<PyramidQueryPlanner.Piece>> daily = plan(request, AggregationLevel.DAILY);
+        assertEquals(List.of(t("2024-03-01T00:00:00Z"), t("2024-03-02T00:00:00Z"), t("2024-03-04T00:00:00Z"),
+            t("2024-03-05T00:00:00Z")), List.copyOf(daily.keySet()));
+    }
+
+    @Test
+    void rawSpansOverMaxRawSpanLeaveTheBucketOut() {
+        ProcessingRequestDTO request = request("2024-03-01T00:00:00Z", "2024-03-06T11:59:59Z");
+        assertEquals(6, plan(request, AggregationLevel.MONTHLY).get(t("2024-03-01T00:00:00Z")).size());
+
+        ReflectionTestUtils.setField(planner, "maxRawSpan", Duration.ofHours(6));
+        assertNull(plan(request, AggregationLevel.MONTHLY).get(t("2024-03-01T00:00:00Z")));
+    }
+
+    @Test
+    void anEmptyPyramidPlansNothing() {
+        rows.clear();
+        assertTrue(plan(request("2024-03-01T00:00:00Z", "2024-03-06T11:59:59Z"), AggregationLevel.DAILY).isEmpty());
+    }
+
+    private Map<Instant, List<PyramidQueryPlanner.Piece>> plan(ProcessingRequestDTO request, AggregationLevel level) {
+        return planner.plan(request, level,
+            level.bucketStarts(request.getStart().toInstant(), request.getEnd().toInstant()));
+    }
+
+    private void add(AggregationLevel level, String start, int readings) {
+        double[] values = new double[readings];
+        for (int i = 0; i < readings; i++) {
+            values[i] = 20 + i;
+        }
+        PyramidBucket row = new PyramidBucket();
+        row.setFacility("uoa");
+        row.setSensorType("temperature");
+        row.setAgentSerial("AGENT_001");
+        row.setLevel(level.key());
+        row.setBucketStart(t(start));
+        row.setReadings(readings);
+        row.setSummary(BucketSummary.of(values, 0, readings, 200).toBytes());
+        rows.add(row);
+    }
+
+    private static void assertRaw(PyramidQueryPlanner.Piece piece, String from, String to) {
+        assertTrue(piece.isRaw());
+        assertEquals(t(from), piece.rawFrom());
+        assertEquals(t(to), piece.rawTo());
+    }
+
+    private static ProcessingRequestDTO request(String start, String end) {
+        ProcessingRequestDTO request = new ProcessingRequestDTO();
+        request.setFacility("uoa");
+        request.setSensor_type("temperature");
+        request.setAgent_serial(List.of("AGENT_001"));
+        request.setMetric("average");
+        request.setStart(t(start).atZone(ZoneOffset.UTC));
+        request.setEnd(t(end).atZone(ZoneOffset.UTC));
+        return request;
+    }
+
+    private static Instant t(String instant) {
+        return Instant.parse(instant);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.timeseries.ColumnarSeries;
+
+/**
+ * Segments of the raw store on a temporary directory: what reads back,
+ * which blocks of a day win, and what survives a torn write, an eviction
+ * and a reopen.
+ */
+class RawReadingStoreTest {
+
+    private static final RawReadingStore.Series SERIES = new RawReadingStore.Series("uoa", "temperature", "AGENT_001");
+    private static final LocalDate MAR_10 = LocalDate.parse("2024-03-10");
+    private static final LocalDate MAR_11 = LocalDate.parse("2024-03-11");
+    private static final LocalDate APR_02 = LocalDate.parse("2024-04-02");
+
+    @TempDir
+    Path dir;
+
+    private RawReadingStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    void aSealedDayReadsBackWithinTheRange() throws IOException {
+        store = open(256);
+        assertTrue(store.seal(SERIES, MAR_10, readings(t("2024-03-10T00:00:00Z"), 21.0, t("2024-03-10T12:00:00Z"),
+            Double.NaN, t("2024-03-10T23:59:59Z"), 19.5)));
+
+        assertTrue(store.covers(SERIES, t("2024-03-10T06:00:00Z"), t("2024-03-11T00:00:00Z")));
+        assertFalse(store.covers(SERIES, t("2024-03-10T06:00:00Z"), t("2024-03-11T00:00:01Z")));
+
+        ColumnarSeries read = store.read(SERIES, t("2024-03-10T06:00:00Z"), t("2024-03-11T00:00:00Z"));
+        assertArrayEquals(new long[] { t("2024-03-10T12:00:00Z").toEpochMilli(),
+            t("2024-03-10T23:59:59Z").toEpochMilli() }, read.getTime());
+        assertTrue(Double.isNaN(read.valueAt(0)));
+        assertEquals(19.5, read.valueAt(1), 0);
+    }
+
+    @Test
+    void theSealedBlockSupersedesLiveBlocks() throws IOException {
+        store = open(256);
+        assertEquals(2, store.append(SERIES, readings(t("2024-03-10T08:00:00Z"), 20.0, t("2024-03-10T09:00:00Z"), 20.5)));
+        assertEquals(1, store.append(SERIES, readings(t("2024-03-10T07:00:00Z"), 19.0)));
+        assertEquals(3, store.read(SERIES, dayStart(MAR_10), dayStart(MAR_11)).size());
+        assertFalse(store.isSealed(SERIES, MAR_10));
+
+        store.seal(SERIES, MAR_10, readings(t("2024-03-10T10:00:00Z"), 22.0));
+        assertEquals(List.of(22.0), values(store.read(SERIES, dayStart(MAR_10), dayStart(MAR_11))));
+        // Late live readings and a second seal are dropped
+        assertEquals(0, store.append(SERIES, readings(t("2024-03-10T11:00:00Z"), 23.0)));
+        assertFalse(store.seal(SERIES, MAR_10, readings(t("2024-03-10T11:00:00Z"), 23.0)));
+
+        // The index rebuilt from disk agrees
+        store.shutdown();
+        store = open(256);
+        assertTrue(store.isSealed(SERIES, MAR_10));
+        assertEquals(List.of(22.0), values(store.read(SERIES, dayStart(MAR_10), dayStart(MAR_11))));
+    }
+
+    @Test
+    void aTornTailIsCutOffOnReopen() throws IOException {
+        store = open(256);
+        store.seal(SERIES, MAR_10, readings(t("2024-03-10T10:00:00Z"), 22.0));
+        Path segment = dir.resolve("uoa/temperature/AGENT_001/2024-03.seg");
+        long intact = Files.size(segment);
+        store.seal(SERIES, MAR_11, readings(t("2024-03-11T10:00:00Z"), 23.0, t("2024-03-11T11:00:00Z"), 24.0));
+        store.shutdown();
+
+        // A crash halfway through the second block
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        store = open(256);
+        assertTrue(store.isSealed(SERIES, MAR_10));
+        assertFalse(store.isSealed(SERIES, MAR_11));
+        assertEquals(intact, Files.size(segment));
+
+        // Appends continue after the cut
+        assertTrue(store.seal(SERIES, MAR_11, readings(t("2024-03-11T12:00:00Z"), 25.0)));
+        store.shutdown();
+        store = open(256);
+        assertEquals(List.of(22.0, 25.0), values(store.read(SERIES, dayStart(MAR_10), dayStart(MAR_11.plusDays(1)))));
+    }
+
+    @Test
+    void anEvictedSegmentIsReopenedOnNextUse() throws IOException {
+        store = open(1);
+        store.seal(SERIES, MAR_10, readings(t("2024-03-10T10:00:00Z"), 22.0));
+        // Another month's segment evicts March
+        store.seal(SERIES, APR_02, readings(t("2024-04-02T10:00:00Z"), 18.0));
+        assertEquals(1, store.snapshot().get("open_segments"));
+
+        assertTrue(store.isSealed(SERIES, MAR_10));
+        assertEquals(List.of(22.0), values(store.read(SERIES, dayStart(MAR_10), dayStart(MAR_11))));
+        assertEquals(1, store.append(SERIES, readings(t("2024-03-11T08:00:00Z"), 20.0)));
+        assertEquals(List.of(MAR_10, APR_02), store.sealedDays(SERIES, null));
+        assertEquals(List.of(22.0, 20.0, 18.0),
+            values(store.read(SERIES, dayStart(MAR_10), dayStart(APR_02.plusDays(1)))));
+    }
+
+    private RawReadingStore open(int maxOpenSegments) {
+        RawReadingStore opened = new RawReadingStore(dir.toString(), maxOpenSegments);
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        return opened;
+    }
+
+    /** Pairs of (time, value). */
+    private static ColumnarSeries readings(Object... pairs) {
+        ColumnarSeries series = new ColumnarSeries();
+        for (int i = 0; i < pairs.length; i += 2) {
+            series.add(((Instant) pairs[i]).toEpochMilli(), (Double) pairs[i + 1]);
+        }
+        return series;
+    }
+
+    private static List<Double> values(ColumnarSeries series) {
+        return Arrays.stream(series.getValue()).boxed().toList();
+    }
+
+    private static Instant dayStart(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private static Instant t(String instant) {
+        return Instant.parse(instant);
+    }
+}
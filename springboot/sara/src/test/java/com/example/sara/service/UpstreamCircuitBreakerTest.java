@@ -0,0 +1,153 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.sara.exception.CircuitOpenException;
+import com.example.sara.exception.UpstreamServiceException;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * State changes of one endpoint's breaker: opening on the failure and
+ * slow-call rates, half-open probes, and outcomes of calls admitted before
+ * a transition being dropped.
+ */
+class UpstreamCircuitBreakerTest {
+
+    private static final String ENDPOINT = "process";
+
+    private final UpstreamCircuitBreaker breaker = new UpstreamCircuitBreaker();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(breaker, "enabled", true);
+        ReflectionTestUtils.setField(breaker, "windowSize", 4);
+        ReflectionTestUtils.setField(breaker, "minimumCalls", 4);
+        ReflectionTestUtils.setField(breaker, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(breaker, "slowCallThreshold", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(breaker, "slowCallRateThreshold", 0.8);
+        ReflectionTestUtils.setField(breaker, "openDuration", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(breaker, "halfOpenCalls", 2);
+    }
+
+    @Test
+    void opensOnceTheFailureRateIsReachedOverMinimumCalls() {
+        succeed();
+        succeed();
+        fail(new RuntimeException("connection reset"));
+        assertEquals("CLOSED", state());
+        fail(new UpstreamServiceException(503, "unavailable"));
+        assertEquals("OPEN", state());
+
+        AtomicBoolean called = new AtomicBoolean();
+        assertThrows(CircuitOpenException.class,
+            () -> breaker.protect(ENDPOINT, Mono.fromCallable(() -> called.getAndSet(true))).block());
+        assertFalse(called.get());
+        assertThrows(CircuitOpenException.class, () -> breaker.rejectIfOpen(ENDPOINT));
+    }
+
+    @Test
+    void clientErrorsCountAsSuccesses() {
+        for (int i = 0; i < 8; i++) {
+            fail(new UpstreamServiceException(404, "no such sensor"));
+        }
+        assertEquals("CLOSED", state());
+    }
+
+    @Test
+    void opensOnTheSlowCallRate() {
+        ReflectionTestUtils.setField(breaker, "slowCallThreshold", Duration.ofNanos(-1));
+        for (int i = 0; i < 3; i++) {
+            succeed();
+        }
+        assertEquals("CLOSED", state());
+        succeed();
+        assertEquals("OPEN", state());
+    }
+
+    @Test
+    void halfOpenAdmitsTheProbesAndClosesWhenAllSucceed() {
+        open();
+        Sinks.One<String> first = probe();
+        Sinks.One<String> second = probe();
+        assertEquals("HALF_OPEN", state());
+        // Only halfOpenCalls probes at a time
+        assertThrows(CircuitOpenException.class, this::succeed);
+
+        first.tryEmitValue("ok");
+        assertEquals("HALF_OPEN", state());
+        second.tryEmitValue("ok");
+        assertEquals("CLOSED", state());
+        succeed();
+    }
+
+    @Test
+    void aFailedProbeOpensTheCircuitAgain() {
+        open();
+        Sinks.One<String> first = probe();
+        Sinks.One<String> second = probe();
+        ReflectionTestUtils.setField(breaker, "openDuration", Duration.ofMinutes(1));
+
+        first.tryEmitError(new UpstreamServiceException(502, "bad gateway"));
+        assertEquals("OPEN", state());
+        // The other probe was admitted under the previous state: its success changes nothing
+        second.tryEmitValue("ok");
+        assertEquals("OPEN", state());
+        assertThrows(CircuitOpenException.class, this::succeed);
+    }
+
+    @Test
+    void outcomesOfCallsAdmittedBeforeATransitionAreDropped() {
+        ReflectionTestUtils.setField(breaker, "halfOpenCalls", 1);
+        Sinks.One<String> admittedWhileClosed = probe();
+        open();
+
+        Sinks.One<String> probe = probe();
+        assertEquals("HALF_OPEN", state());
+        // Would open the circuit again if it counted as a probe
+        admittedWhileClosed.tryEmitError(new RuntimeException("timeout"));
+        assertEquals("HALF_OPEN", state());
+        probe.tryEmitValue("ok");
+        assertEquals("CLOSED", state());
+    }
+
+    /** Trips the circuit with an open duration of zero, so the next call is a half-open probe. */
+    private void open() {
+        ReflectionTestUtils.setField(breaker, "openDuration", Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            fail(new RuntimeException("connection refused"));
+        }
+        assertEquals("OPEN", state());
+    }
+
+    /** A call that stays pending until the returned sink completes it. */
+    private Sinks.One<String> probe() {
+        Sinks.One<String> sink = Sinks.one();
+        breaker.protect(ENDPOINT, sink.asMono()).subscribe(value -> { }, error -> { });
+        return sink;
+    }
+
+    private void succeed() {
+        breaker.protect(ENDPOINT, Mono.just("ok")).block();
+    }
+
+    private void fail(RuntimeException error) {
+        assertThrows(error.getClass(), () -> breaker.protect(ENDPOINT, Mono.error(error)).block());
+    }
+
+    @SuppressWarnings("unchecked")
+    private String state() {
+        return (String) ((Map<String, Object>) breaker.snapshot().get(ENDPOINT)).get("state");
+    }
+}
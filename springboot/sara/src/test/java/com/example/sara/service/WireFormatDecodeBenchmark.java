@@ -0,0 +1,96 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import com.example.sara.dto.ColumnarProcessingResponseDTO;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Decode cost of a year of minute buckets, one chunk per day as the
+ * fan-out receives them, in both wire formats of /process/batched_stream.
+ * Prints the payload size and the CPU time of the calling thread per
+ * decode (best and median of the timed runs, after warm-up), and checks
+ * that the binary format is both smaller and cheaper.
+ *
+ * Tagged "benchmark" and left out of the unit run; run it with
+ * {@code mvn -Pbenchmark test}.
+ */
+@Tag("benchmark")
+class WireFormatDecodeBenchmark {
+
+    private static final int DAYS = 365;
+    private static final int POINTS_PER_DAY = 1440;
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 10;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @Test
+    void binaryDecodesAYearOfMinuteBucketsWithLessCpuThanNdjson() {
+        long[][] times = new long[DAYS][POINTS_PER_DAY];
+        double[][] values = new double[DAYS][POINTS_PER_DAY];
+        Random random = new Random(42);
+        long start = Instant.parse("2023-01-01T00:00:00Z").toEpochMilli();
+        for (int d = 0; d < DAYS; d++) {
+            for (int m = 0; m < POINTS_PER_DAY; m++) {
+                times[d][m] = start + (d * POINTS_PER_DAY + m) * 60_000L;
+                values[d][m] = m % 97 == 0 ? Double.NaN : 20 + random.nextGaussian() * 3;
+            }
+        }
+        byte[] ndjson = WireFormatRoundTripTest.encodeNdjson(times, values);
+        byte[] binary = WireFormatRoundTripTest.encodeBinary(times, values);
+
+        long[] ndjsonNanos = time(ndjson, NdjsonColumnarDecoder::decode);
+        long[] binaryNanos = time(binary, BinarySeriesDecoder::decode);
+
+        System.out.printf("%d minute buckets%n", DAYS * POINTS_PER_DAY);
+        report("ndjson", ndjson.length, ndjsonNanos);
+        report("binary", binary.length, binaryNanos);
+        System.out.printf("binary/ndjson: %.2f of the bytes, %.2f of the CPU time (median)%n",
+            (double) binary.length / ndjson.length, (double) median(binaryNanos) / median(ndjsonNanos));
+
+        assertTrue(binary.length < ndjson.length);
+        assertTrue(median(binaryNanos) < median(ndjsonNanos));
+    }
+
+    /** CPU nanoseconds of each timed run, sorted. */
+    private long[] time(byte[] payload, Function<Flux<DataBuffer>, Flux<ColumnarProcessingResponseDTO>> decoder) {
+        long[] nanos = new long[TIMED_RUNS];
+        for (int run = -WARMUP_RUNS; run < TIMED_RUNS; run++) {
+            // Fresh buffers every run: decoding consumes them
+            Flux<DataBuffer> body = WireFormatRoundTripTest.split(payload);
+            long before = threads.getCurrentThreadCpuTime();
+            List<ColumnarProcessingResponseDTO> chunks = decoder.apply(body).collectList().block();
+            long elapsed = threads.getCurrentThreadCpuTime() - before;
+            assertEquals(DAYS, chunks.size());
+            if (run >= 0) {
+                nanos[run] = elapsed;
+            }
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static void report(String format, int bytes, long[] nanos) {
+        System.out.printf("%-6s %,12d bytes  best %7.1f ms  median %7.1f ms%n", format, bytes,
+            nanos[0] / 1e6, median(nanos) / 1e6);
+    }
+
+    private static long median(long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.sara.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import com.example.sara.dto.ColumnarProcessingResponseDTO;
+import com.example.sara.model.AggregatedResultDTO;
+import com.example.sara.timeseries.ColumnarSeries;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Round trip of a week of minute buckets through both wire formats of
+ * /process/batched_stream, encoded the way historical-processing-ms does
+ * (one chunk per day, as produced by the fan-out). Checks that both decoders
+ * return the same series, missing values included, and that the binary
+ * payload is the smaller one.
+ */
+class WireFormatRoundTripTest {
+
+    private static final int DAYS = 7;
+    private static final int POINTS_PER_DAY = 1440;
+    private static final int NETWORK_BUFFER = 8 * 1024;
+    private static final DateTimeFormatter PYTHON_ISO =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx", Locale.ROOT).withZone(ZoneOffset.UTC);
+    private static final String HEADER =
+        "\"facility\": \"Facility_A\", \"agent_serial\": [\"AGENT_001\"], \"sensor_type\": \"temperature\", "
+        + "\"aggregation_level\": \"minute\", \"metric\": \"raw_reading\"";
+    private static final String META =
+        "{\"total_buckets\": 1440, \"cache_hits\": 0, \"raw_hits\": 1440, \"empty_buckets\": 0}";
+
+    @Test
+    void binaryAndNdjsonDecodeToTheSameSeries() {
+        long[][] times = new long[DAYS][POINTS_PER_DAY];
+        double[][] values = new double[DAYS][POINTS_PER_DAY];
+        Random random = new Random(42);
+        long start = Instant.parse("2023-01-01T00:00:00Z").toEpochMilli();
+        for (int d = 0; d < DAYS; d++) {
+            for (int m = 0; m < POINTS_PER_DAY; m++) {
+                times[d][m] = start + (d * POINTS_PER_DAY + m) * 60_000L;
+                // A bucket without a value: null in JSON, NaN in the frames
+                values[d][m] = m % 97 == 0 ? Double.NaN : 20 + random.nextGaussian() * 3;
+            }
+        }
+
+        byte[] ndjson = encodeNdjson(times, values);
+        byte[] binary = encodeBinary(times, values);
+
+        List<ColumnarProcessingResponseDTO> fromNdjson = NdjsonColumnarDecoder.decode(split(ndjson)).collectList().block();
+        List<ColumnarProcessingResponseDTO> fromBinary = BinarySeriesDecoder.decode(split(binary)).collectList().block();
+
+        assertEquals(DAYS, fromNdjson.size());
+        assertEquals(DAYS, fromBinary.size());
+        for (int d = 0; d < DAYS; d++) {
+            ColumnarSeries a = fromNdjson.get(d).getSeries().get("all");
+            ColumnarSeries b = fromBinary.get(d).getSeries().get("all");
+            assertArrayEquals(times[d], a.getTime());
+            assertArrayEquals(times[d], b.getTime());
+            assertArrayEquals(values[d], a.getValue());
+            assertArrayEquals(values[d], b.getValue());
+            assertEquals("minute", fromBinary.get(d).getAggregation_level());
+            assertEquals(1440, fromBinary.get(d).getMeta().getRaw_hits());
+        }
+
+
+        // 16 bytes per point plus framing, against ~60 bytes of JSON text
+        assertTrue(binary.length * 3L < ndjson.length);
+    }
+
+    @Test
+    void aMissingValueIsNullInTheResponseWhicheverFormatItCameIn() {
+        long[][] times = { { 0L, 60_000L } };
+        double[][] values = { { Double.NaN, 21.5 } };
+
+        ColumnarSeries fromNdjson = NdjsonColumnarDecoder.decode(split(encodeNdjson(times, values)))
+            .blockFirst().getSeries().get("all");
+        ColumnarSeries fromBinary = BinarySeriesDecoder.decode(split(encodeBinary(times, values)))
+            .blockFirst().getSeries().get("all");
+        assertTrue(Double.isNaN(fromNdjson.valueAt(0)));
+        assertTrue(Double.isNaN(fromBinary.valueAt(0)));
+        assertEquals(21.5, fromNdjson.valueAt(1));
+
+        AggregatedResultDTO point = new AggregatedResultDTO();
+        point.setValueOrNaN(fromBinary.valueAt(0));
+        assertNull(point.getValue());
+        assertTrue(Double.isNaN(point.valueOrNaN()));
+    }
+
+    static Flux<DataBuffer> split(byte[] payload) {
+        DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < payload.length; offset += NETWORK_BUFFER) {
+            int length = Math.min(NETWORK_BUFFER, payload.length - offset);
+            buffers.add(factory.wrap(ByteBuffer.wrap(payload, offset, length).slice()));
+        }
+        return Flux.fromIterable(buffers);
+    }
+
+    /** Same text json.dumps produces in batched_stream. */
+    static byte[] encodeNdjson(long[][] times, double[][] values) {
+        StringBuilder out = new StringBuilder();
+        for (int d = 0; d < times.length; d++) {
+            out.append('{').append(HEADER).append(", \"aggregated_results\": {\"all\": [");
+            for (int m = 0; m < times[d].length; m++) {
+                if (m > 0) {
+                    out.append(", ");
+                }
+                out.append("{\"time\": \"").append(PYTHON_ISO.format(Instant.ofEpochMilli(times[d][m])))
+                    .append("\", \"value\": ").append(Double.isNaN(values[d][m]) ? "null" : values[d][m]).append('}');
+            }
+            out.append("]}, \"meta\": ").append(META).append("}\n");
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Same frames encode_series_frame produces. */
+    static byte[] encodeBinary(long[][] times, double[][] values) {
+        byte[] header = ("{" + HEADER + ", \"meta\": " + META + "}").getBytes(StandardCharsets.UTF_8);
+        byte[] key = "all".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int d = 0; d < times.length; d++) {
+            int n = times[d].length;
+            int bodyLength = 4 + header.length + 4 + 2 + key.length + 4 + n * 16;
+            ByteBuffer frame = ByteBuffer.allocate(4 + bodyLength);
+            frame.putInt(bodyLength).putInt(header.length).put(header).putInt(1);
+            frame.putShort((short) key.length).put(key).putInt(n);
+            for (long t : times[d]) {
+                frame.putLong(t);
+            }
+            for (double v : values[d]) {
+                frame.putDouble(v);
+            }
+            out.writeBytes(frame.array());
+        }
+        return out.toByteArray();
+    }
+}
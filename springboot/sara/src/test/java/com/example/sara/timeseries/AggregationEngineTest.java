@@ -0,0 +1,166 @@
+package com.example.sara.timeseries;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.sara.dto.ColumnarProcessingResponseDTO;
+import com.example.sara.dto.MetaDTO;
+import com.example.sara.model.ProcessingRequestDTO;
+
+/**
+ * Aggregates sensor_readings.json (repository root: AGENT001, temperature,
+ * one reading a minute from 2022-03-10T12:00Z to 14:59Z) and compares with
+ * what process_data of historical-processing-ms returns for the same
+ * requests without cache. The expected values were produced by running the
+ * service's own clean_data, generate_time_buckets and aggregate_data on the
+ * file; linear metrics match to the bit.
+ */
+class AggregationEngineTest {
+
+    private static final Path READINGS = Path.of("../../sensor_readings.json");
+    private static final double EXACT = 1e-12;
+
+    private final AggregationEngine engine = new AggregationEngine();
+
+    @Test
+    void hourlyAverageIncludesTheWholeFirstBucketAndStopsBeforeEnd() throws IOException {
+        // The first bucket starts at 12:00 although the range starts at 12:30;
+        // the last one ends at 14:59 (exclusive), so it averages 59 readings
+        ColumnarProcessingResponseDTO response = aggregateFile("hourly", "average",
+            "2022-03-10T12:30:00Z", "2022-03-10T14:59:00Z");
+        assertSeries(response, "2022-03-10",
+            new String[] { "2022-03-10T12:00:00Z", "2022-03-10T13:00:00Z", "2022-03-10T14:00:00Z" },
+            new double[] { 23.568333333333324, 23.406666666666663, 23.45084745762711 }, EXACT);
+        assertMeta(response.getMeta(), 3, 3, 0);
+    }
+
+    @Test
+    void hourlyNonLinearMetrics() throws IOException {
+        String[] hours = { "2022-03-10T12:00:00Z", "2022-03-10T13:00:00Z", "2022-03-10T14:00:00Z" };
+        String start = "2022-03-10T12:00:00Z";
+        String end = "2022-03-10T15:00:00Z";
+
+        ColumnarProcessingResponseDTO median = aggregateFile("hourly", "median", start, end);
+        assertSeries(median, "2022-03-10", hours, new double[] { 23.55, 23.4, 23.3 }, EXACT);
+        // 15:00 is a bucket of its own, without readings
+        assertMeta(median.getMeta(), 4, 3, 1);
+
+        assertSeries(aggregateFile("hourly", "skewness", start, end), "2022-03-10", hours,
+            new double[] { -0.13364957623596044, 0.23496264469648193, 0.07513993352639764 }, 1e-9);
+        assertSeries(aggregateFile("hourly", "min", start, end), "2022-03-10", hours,
+            new double[] { 22.0, 22.0, 22.1 }, EXACT);
+        assertSeries(aggregateFile("hourly", "max", start, end), "2022-03-10", hours,
+            new double[] { 24.9, 25.0, 25.0 }, EXACT);
+    }
+
+    @Test
+    void coarserLevelsGroupLikeThePythonService() throws IOException {
+        ColumnarProcessingResponseDTO daily = aggregateFile("daily", "sum",
+            "2022-03-01T00:00:00Z", "2022-03-31T00:00:00Z");
+        assertSeries(daily, "2022-03", new String[] { "2022-03-10T00:00:00Z" }, new double[] { 4226.700000000002 }, EXACT);
+        assertMeta(daily.getMeta(), 31, 1, 30);
+
+        ColumnarProcessingResponseDTO monthly = aggregateFile("monthly", "average",
+            "2022-01-01T00:00:00Z", "2022-12-31T00:00:00Z");
+        assertSeries(monthly, "2022", new String[] { "2022-03-01T00:00:00Z" }, new double[] { 23.481666666666676 }, EXACT);
+        assertMeta(monthly.getMeta(), 12, 1, 11);
+
+        ColumnarProcessingResponseDTO yearly = aggregateFile("yearly", "median",
+            "2022-01-01T00:00:00Z", "2022-12-31T00:00:00Z");
+        assertSeries(yearly, "all", new String[] { "2022-01-01T00:00:00Z" }, new double[] { 23.5 }, EXACT);
+    }
+
+    @Test
+    void minuteLevelReturnsTheReadingsOfTheRange() throws IOException {
+        ColumnarProcessingResponseDTO response = aggregateFile("minute", "average",
+            "2022-03-10T12:58:30Z", "2022-03-10T13:02:00Z");
+        assertEquals("raw_reading", response.getMetric());
+        assertSeries(response, "all",
+            new String[] { "2022-03-10T12:59:00Z", "2022-03-10T13:00:00Z", "2022-03-10T13:01:00Z", "2022-03-10T13:02:00Z" },
+            new double[] { 24.1, 23.4, 22.7, 23.6 }, 0);
+        assertMeta(response.getMeta(), 180, 180, 0);
+    }
+
+    @Test
+    void motionEventsAreDetectedPerBucket() throws IOException {
+        // 1, "1", true and 1.0 all count as motion, as in clean_data
+        Object[] readings = { 1, 1, 0, "\"1\"", true, 1, 0, 1, 0, 1, 1, 1.0, 0, 0, 1, 1 };
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < readings.length; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("{\"agentSerial\":\"M1\",\"deviceType\":\"PIR\",\"reading\":").append(readings[i])
+                .append(",\"timeOfReading\":\"2022-03-10T12:").append(String.format("%02d", i)).append(":00+00:00\"}");
+        }
+        json.append("]");
+
+        String[] metrics = { "event_count", "activity_percent", "event_duration_avg", "event_duration_max" };
+        double[] expected = { 4.0, 62.5, 2.5, 3 };
+        for (int m = 0; m < metrics.length; m++) {
+            Map<String, ColumnarSeries> byAgent = RawReadings.read(
+                new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)), "motion");
+            ColumnarProcessingResponseDTO response = engine.aggregate(
+                request("motion", "hourly", metrics[m], "2022-03-10T12:00:00Z", "2022-03-10T13:00:00Z"), byAgent).get("M1");
+            assertSeries(response, "2022-03-10", new String[] { "2022-03-10T12:00:00Z" }, new double[] { expected[m] }, EXACT);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> engine.aggregate(
+            request("temperature", "hourly", "event_count", "2022-03-10T12:00:00Z", "2022-03-10T13:00:00Z"),
+            Map.of("M1", new ColumnarSeries(new long[] { Instant.parse("2022-03-10T12:00:00Z").toEpochMilli() }, new double[] { 1 }, 1))));
+    }
+
+    private ColumnarProcessingResponseDTO aggregateFile(String level, String metric, String start, String end) throws IOException {
+        assumeTrue(Files.exists(READINGS), "sensor_readings.json not found at the repository root");
+        Map<String, ColumnarSeries> byAgent;
+        try (InputStream in = Files.newInputStream(READINGS)) {
+            byAgent = RawReadings.read(in, "temperature");
+        }
+        assertEquals(List.of("AGENT001"), List.copyOf(byAgent.keySet()));
+        assertEquals(180, byAgent.get("AGENT001").size());
+        return engine.aggregate(request("temperature", level, metric, start, end), byAgent).get("AGENT001");
+    }
+
+    private static ProcessingRequestDTO request(String sensorType, String level, String metric, String start, String end) {
+        ProcessingRequestDTO request = new ProcessingRequestDTO();
+        request.setFacility("uoa");
+        request.setSensor_type(sensorType);
+        request.setAgent_serial(List.of("AGENT001"));
+        request.setAggregation_level(level);
+        request.setMetric(metric);
+        request.setStart(ZonedDateTime.parse(start));
+        request.setEnd(ZonedDateTime.parse(end));
+        return request;
+    }
+
+    private static void assertSeries(ColumnarProcessingResponseDTO response, String group, String[] times,
+                                     double[] values, double delta) {
+        assertEquals(List.of(group), List.copyOf(response.getSeries().keySet()));
+        ColumnarSeries series = response.getSeries().get(group);
+        long[] expectedTimes = new long[times.length];
+        for (int i = 0; i < times.length; i++) {
+            expectedTimes[i] = Instant.parse(times[i]).toEpochMilli();
+        }
+        assertArrayEquals(expectedTimes, series.getTime());
+        assertArrayEquals(values, series.getValue(), delta);
+    }
+
+    private static void assertMeta(MetaDTO meta, int totalBuckets, int rawHits, int emptyBuckets) {
+        assertEquals(totalBuckets, meta.getTotal_buckets());
+        assertEquals(rawHits, meta.getRaw_hits());
+        assertEquals(emptyBuckets, meta.getEmpty_buckets());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.sara.timeseries;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Bucket arithmetic against what generate_time_buckets, get_group_key and
+ * calculate_ttl of historical-processing-ms produce.
+ */
+class AggregationLevelTest {
+
+    @Test
+    void bucketStartsRunFromTheBucketOfStartToTheLastStartingAtOrBeforeEnd() {
+        assertEquals(List.of(t("2024-03-10T10:00:00Z"), t("2024-03-10T11:00:00Z"), t("2024-03-10T12:00:00Z"),
+                t("2024-03-10T13:00:00Z")),
+            AggregationLevel.HOURLY.bucketStarts(t("2024-03-10T10:30:00Z"), t("2024-03-10T13:00:00Z")));
+        assertEquals(List.of(t("2023-11-01T00:00:00Z"), t("2023-12-01T00:00:00Z"), t("2024-01-01T00:00:00Z"),
+                t("2024-02-01T00:00:00Z")),
+            AggregationLevel.MONTHLY.bucketStarts(t("2023-11-15T08:00:00Z"), t("2024-02-29T23:59:59Z")));
+        assertEquals(List.of(t("2023-01-01T00:00:00Z"), t("2024-01-01T00:00:00Z")),
+            AggregationLevel.YEARLY.bucketStarts(t("2023-06-01T00:00:00Z"), t("2024-01-01T00:00:00Z")));
+        // Leap day
+        assertEquals(t("2024-03-01T00:00:00Z"), AggregationLevel.DAILY.next(t("2024-02-29T00:00:00Z")));
+    }
+
+    @Test
+    void aBucketIsCoveredUpToItsLastSecond() {
+        Instant day = t("2024-03-10T00:00:00Z");
+        assertTrue(AggregationLevel.DAILY.isCoveredBy(day, day, t("2024-03-10T23:59:59Z")));
+        assertTrue(AggregationLevel.DAILY.isCoveredBy(day, t("2024-03-01T00:00:00Z"), t("2024-03-20T00:00:00Z")));
+        assertFalse(AggregationLevel.DAILY.isCoveredBy(day, day, t("2024-03-10T23:59:58Z")));
+        assertFalse(AggregationLevel.DAILY.isCoveredBy(day, t("2024-03-10T00:00:01Z"), t("2024-03-11T00:00:00Z")));
+        assertEquals(t("2024-02-29T23:59:59Z"), AggregationLevel.MONTHLY.lastSecondOf(t("2024-02-01T00:00:00Z")));
+    }
+
+    @Test
+    void groupKeysFollowGetGroupKey() {
+        assertEquals("2024-03-10", AggregationLevel.HOURLY.groupKey(t("2024-03-10T13:00:00Z")));
+        assertEquals("2024-03", AggregationLevel.DAILY.groupKey(t("2024-03-10T00:00:00Z")));
+        assertEquals("2024", AggregationLevel.MONTHLY.groupKey(t("2024-03-01T00:00:00Z")));
+        assertEquals("all", AggregationLevel.YEARLY.groupKey(t("2024-01-01T00:00:00Z")));
+        assertEquals("all", AggregationLevel.MINUTE.groupKey(t("2024-03-10T13:05:00Z")));
+    }
+
+    @Test
+    void closedBucketsKeepTheHistoricalTtlAndOpenOnesExpireWithTheNextFinerBucket() {
+        Instant now = t("2024-03-10T10:20:30Z");
+        assertEquals(2_592_000L, AggregationLevel.HOURLY.ttlSeconds(t("2024-03-10T09:00:00Z"), now));
+        assertEquals(63_072_000L, AggregationLevel.YEARLY.ttlSeconds(t("2023-01-01T00:00:00Z"), now));
+
+        // Open daily bucket: until the next hour starts
+        assertEquals(2370L, AggregationLevel.DAILY.ttlSeconds(t("2024-03-10T00:00:00Z"), now));
+        // Open monthly bucket: until the next day starts
+        assertEquals(49_170L, AggregationLevel.MONTHLY.ttlSeconds(t("2024-03-01T00:00:00Z"), now));
+        // 30 seconds to the next minute, raised to the 60 second floor
+        assertEquals(60L, AggregationLevel.HOURLY.ttlSeconds(t("2024-03-10T10:00:00Z"), now));
+        assertEquals(60L, AggregationLevel.MINUTE.ttlSeconds(t("2024-03-10T10:20:00Z"), now));
+    }
+
+    private static Instant t(String instant) {
+        return Instant.parse(instant);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.sara.timeseries;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Merged summaries against AggregationMetric.compute over the same
+ * readings in one piece, within the bounds BucketSummary documents.
+ */
+class BucketSummaryTest {
+
+    private static final int K = 200;
+
+    @Test
+    void mergedDaysGiveTheMetricsOfTheWholeMonth() {
+        Random random = new Random(7);
+        int days = 30;
+        int perDay = 1440;
+        double[] readings = new double[days * perDay];
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = 20 + 5 * Math.sin(i / 300.0) + random.nextGaussian() * Math.exp(random.nextGaussian());
+        }
+
+        BucketSummary month = new BucketSummary(K);
+        for (int day = 0; day < days; day++) {
+            BucketSummary daily = BucketSummary.of(readings, day * perDay, (day + 1) * perDay, K);
+            // As stored in the cache
+            month.merge(BucketSummary.fromBytes(daily.toBytes()));
+        }
+        assertEquals(readings.length, month.count());
+
+        double[] scratch = new double[readings.length];
+        for (AggregationMetric metric : new AggregationMetric[] {
+                AggregationMetric.AVERAGE, AggregationMetric.SUM, AggregationMetric.MIN,
+                AggregationMetric.MAX, AggregationMetric.SKEWNESS }) {
+            double expected = metric.compute(readings, 0, readings.length, "temperature", scratch);
+            assertEquals(expected, month.value(metric, "temperature"), Math.abs(expected) * 1e-12, metric.key());
+        }
+
+        // Median: rank within the sketch's error bound
+        double median = month.value(AggregationMetric.MEDIAN, "temperature");
+        double[] sorted = readings.clone();
+        Arrays.sort(sorted);
+        int rank = Arrays.binarySearch(sorted, median);
+        rank = rank < 0 ? -rank - 1 : rank;
+        assertTrue(Math.abs(rank - sorted.length / 2) < 0.0165 * sorted.length, "median rank " + rank);
+    }
+
+    @Test
+    void medianIsExactUpToKReadings() {
+        double[] readings = { 3, 1, 4, 1, 5, 9, 2, 6 };
+        BucketSummary first = BucketSummary.of(readings, 0, 3, K);
+        first.merge(BucketSummary.of(readings, 3, readings.length, K));
+        assertEquals(3.5, first.value(AggregationMetric.MEDIAN, "humidity"), 0);
+    }
+
+    @Test
+    void motionRunsAreStitchedAcrossBuckets() {
+        Random random = new Random(11);
+        AggregationMetric[] metrics = {
+            AggregationMetric.EVENT_COUNT, AggregationMetric.ACTIVITY_PERCENT,
+            AggregationMetric.EVENT_DURATION_AVG, AggregationMetric.EVENT_DURATION_MAX };
+        for (int trial = 0; trial < 500; trial++) {
+            double[] readings = new double[1 + random.nextInt(60)];
+            for (int i = 0; i < readings.length; i++) {
+                readings[i] = random.nextDouble() < 0.6 ? 1 : 0;
+            }
+            // Buckets of 0 to 4 readings, so runs often span several of them
+            BucketSummary total = new BucketSummary(K);
+            for (int from = 0; from < readings.length; ) {
+                int to = Math.min(readings.length, from + random.nextInt(5));
+                total.merge(BucketSummary.of(readings, from, to, K));
+                from = to;
+            }
+            for (AggregationMetric metric : metrics) {
+                assertEquals(metric.compute(readings, 0, readings.length, "motion", null),
+                    total.value(metric, "motion"), 1e-9, metric.key() + " of " + Arrays.toString(readings));
+            }
+        }
+
+        BucketSummary motion = BucketSummary.of(new double[] { 1, 1 }, 0, 2, K);
+        assertThrows(IllegalArgumentException.class, () -> motion.value(AggregationMetric.MEDIAN, "motion"));
+        assertThrows(IllegalArgumentException.class, () -> motion.value(AggregationMetric.EVENT_COUNT, "presence"));
+    }
+}
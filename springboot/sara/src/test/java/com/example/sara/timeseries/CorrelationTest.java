@@ -0,0 +1,90 @@
+package com.example.sara.timeseries;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongUnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lagged correlation on the bucket grid: a series following another by a
+ * known number of hours is found at that lag even when both have gaps,
+ * which would shift the lag if only the common buckets were kept.
+ */
+class CorrelationTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long T0 = Instant.parse("2024-03-01T00:00:00Z").toEpochMilli();
+    private static final LongUnaryOperator HOUR_OF = time -> Math.floorDiv(time, HOUR) * HOUR;
+    private static final LongUnaryOperator NEXT_HOUR = time -> time + HOUR;
+
+    @Test
+    void aKnownLagIsFoundAcrossGaps() {
+        int hours = 300;
+        int lag = 3;
+        double[] signal = new double[hours + lag];
+        Random random = new Random(11);
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = random.nextGaussian();
+        }
+        // y at hour i is x at hour i - 3; x misses hours 120-124, y misses hours 50-59
+        ColumnarSeries x = new ColumnarSeries();
+        ColumnarSeries y = new ColumnarSeries();
+        for (int i = 0; i < hours; i++) {
+            if (i < 120 || i > 124) {
+                x.add(T0 + i * HOUR + 60_000L, signal[i + lag]);
+            }
+            if (i < 50 || i > 59) {
+                y.add(T0 + i * HOUR, signal[i]);
+            }
+        }
+
+        Correlation.Aligned grid = Correlation.grid(List.of(x, y), HOUR_OF, NEXT_HOUR);
+        assertEquals(hours, grid.size());
+        assertTrue(Double.isNaN(grid.values()[0][122]));
+        assertTrue(Double.isNaN(grid.values()[1][55]));
+
+        double[] coefficients = Correlation.crossCorrelation(grid.values()[0], grid.values()[1], 6);
+        int best = 0;
+        for (int k = 1; k < coefficients.length; k++) {
+            if (coefficients[k] > coefficients[best]) {
+                best = k;
+            }
+        }
+        assertEquals(lag, best - 6);
+        assertEquals(1.0, coefficients[best], 1e-12);
+        assertTrue(Math.abs(coefficients[6]) < 0.3);
+    }
+
+    @Test
+    void theGridSpansAllSeriesAndAveragesWithinABucket() {
+        ColumnarSeries a = new ColumnarSeries();
+        a.add(T0 + 2 * HOUR, 4);
+        a.add(T0 + 2 * HOUR + 30 * 60_000L, 6);
+        a.add(T0 + 4 * HOUR, Double.NaN);
+        ColumnarSeries b = new ColumnarSeries();
+        b.add(T0, 1);
+        b.add(T0 + 3 * HOUR, 2);
+
+        Correlation.Aligned grid = Correlation.grid(List.of(a, b), HOUR_OF, NEXT_HOUR);
+        assertArrayEquals(new long[] { T0, T0 + HOUR, T0 + 2 * HOUR, T0 + 3 * HOUR }, grid.times());
+        assertArrayEquals(new double[] { Double.NaN, Double.NaN, 5, Double.NaN }, grid.values()[0]);
+        assertArrayEquals(new double[] { 1, Double.NaN, Double.NaN, 2 }, grid.values()[1]);
+    }
+
+    @Test
+    void pairsWithAMissingValueAreSkipped() {
+        double[] x = { 1, 2, Double.NaN, 4, 5, 6 };
+        double[] y = { 2, 4, 6, Double.NaN, 10, 12 };
+        double[] coefficients = Correlation.crossCorrelation(x, y, 1);
+        assertEquals(1.0, coefficients[1], 1e-12);
+        // Too few complete pairs
+        assertTrue(Double.isNaN(Correlation.crossCorrelation(new double[] { 1, Double.NaN, 3, 4 },
+            new double[] { 1, 2, Double.NaN, 4 }, 0)[0]));
+    }
+}
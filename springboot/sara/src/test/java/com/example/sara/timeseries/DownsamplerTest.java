@@ -0,0 +1,146 @@
+package com.example.sara.timeseries;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Both downsampling methods on a noisy series with spikes: the first and
+ * last points are kept, the budget is respected, indices are ascending and
+ * the groups of a response share one budget.
+ */
+class DownsamplerTest {
+
+    private static final int SIZE = 10_000;
+
+    @Test
+    void bothMethodsKeepTheEndsAndRespectTheBudget() {
+        long[] times = new long[SIZE];
+        double[] values = new double[SIZE];
+        fill(times, values);
+
+        for (Downsampler.Method method : Downsampler.Method.values()) {
+            for (int maxPoints : new int[] { 3, 4, 5, 100, 1001, SIZE - 1 }) {
+                int[] kept = Downsampler.select(times, values, SIZE, maxPoints, method);
+                String where = method.key() + " to " + maxPoints;
+                assertTrue(kept.length <= maxPoints, where);
+                assertEquals(0, kept[0], where);
+                assertEquals(SIZE - 1, kept[kept.length - 1], where);
+                for (int i = 1; i < kept.length; i++) {
+                    assertTrue(kept[i - 1] < kept[i], where);
+                }
+            }
+        }
+        assertEquals(100, Downsampler.select(times, values, SIZE, 100, Downsampler.Method.LTTB).length);
+    }
+
+    @Test
+    void minMaxKeepsTheEnvelope() {
+        long[] times = new long[SIZE];
+        double[] values = new double[SIZE];
+        fill(times, values);
+        values[1234] = 1_000;
+        values[8765] = -1_000;
+
+        int[] kept = Downsampler.select(times, values, SIZE, 50, Downsampler.Method.MIN_MAX);
+        assertTrue(contains(kept, 1234));
+        assertTrue(contains(kept, 8765));
+    }
+
+    @Test
+    void lttbKeepsASpike() {
+        long[] times = new long[SIZE];
+        double[] values = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            times[i] = i * 60_000L;
+        }
+        values[4321] = 50;
+
+        assertTrue(contains(Downsampler.select(times, values, SIZE, 20, Downsampler.Method.LTTB), 4321));
+    }
+
+    @Test
+    void bucketsWithoutAValueDoNotHideTheShape() {
+        long[] times = new long[SIZE];
+        double[] values = new double[SIZE];
+        fill(times, values);
+        // Empty buckets come as NaN: scattered ones and a whole missing stretch
+        for (int i = 1; i < SIZE - 1; i += 7) {
+            values[i] = Double.NaN;
+        }
+        Arrays.fill(values, 5000, 6000, Double.NaN);
+        values[1234] = 1_000;
+        values[8765] = -1_000;
+
+        int[] minMax = Downsampler.select(times, values, SIZE, 50, Downsampler.Method.MIN_MAX);
+        assertTrue(contains(minMax, 1234));
+        assertTrue(contains(minMax, 8765));
+        for (int i = 1; i < minMax.length - 1; i++) {
+            assertTrue(!Double.isNaN(values[minMax[i]]) || minMax[i] >= 5000 && minMax[i] < 6000, "kept " + minMax[i]);
+        }
+
+        int[] lttb = Downsampler.select(times, values, SIZE, 20, Downsampler.Method.LTTB);
+        assertTrue(contains(lttb, 1234));
+        assertTrue(contains(lttb, 8765));
+    }
+
+    @Test
+    void aSeriesWithinTheBudgetIsKeptWhole() {
+        long[] times = { 0, 1, 2, 3 };
+        double[] values = { 1, 2, 3, 4 };
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, Downsampler.select(times, values, 4, 4, Downsampler.Method.LTTB));
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, Downsampler.select(times, values, 4, 10, Downsampler.Method.MIN_MAX));
+    }
+
+    @Test
+    void groupsShareTheBudgetAndEmptiedGroupsAreRemoved() {
+        Map<String, ColumnarSeries> groups = new LinkedHashMap<>();
+        groups.put("2024-03-01", series(0, 1000));
+        groups.put("2024-03-02", series(1000, 1));
+        groups.put("2024-03-03", series(1001, 1000));
+
+        int dropped = Downsampler.downsampleGroups(groups, 10, Downsampler.Method.LTTB);
+
+        int kept = groups.values().stream().mapToInt(ColumnarSeries::size).sum();
+        assertEquals(2001, kept + dropped);
+        assertTrue(kept <= 10);
+        assertEquals(List.of("2024-03-01", "2024-03-03"), List.copyOf(groups.keySet()));
+        assertEquals(0L, groups.get("2024-03-01").timeAt(0));
+        ColumnarSeries last = groups.get("2024-03-03");
+        assertEquals(2000 * 60_000L, last.timeAt(last.size() - 1));
+        assertEquals(0, Downsampler.downsampleGroups(groups, 10, Downsampler.Method.LTTB));
+    }
+
+    private static void fill(long[] times, double[] values) {
+        Random random = new Random(7);
+        for (int i = 0; i < times.length; i++) {
+            times[i] = i * 60_000L;
+            values[i] = 20 + Math.sin(i / 300.0) * 5 + random.nextGaussian();
+        }
+    }
+
+    private static ColumnarSeries series(int first, int count) {
+        ColumnarSeries series = new ColumnarSeries(count);
+        for (int i = first; i < first + count; i++) {
+            series.add(i * 60_000L, Math.cos(i / 50.0));
+        }
+        return series;
+    }
+
+    private static boolean contains(int[] kept, int index) {
+        for (int i : kept) {
+            if (i == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.sara.timeseries;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Round trips through the Gorilla encoding, bit for bit, across every
+ * delta-of-delta width and the value cases of the XOR encoding.
+ */
+class GorillaCodecTest {
+
+    private static final long T0 = 1_709_251_200_000L; // 2024-03-01T00:00:00Z
+
+    @Test
+    void irregularTimesAndAwkwardValuesRoundTripExactly() {
+        long[] deltas = {
+            60_000, 60_000,        // delta-of-delta 0
+            60_050, 59_990,        // 7 bits, both signs
+            60_250, 59_800,        // 9 bits
+            61_250, 59_000,        // 12 bits
+            3_661_250, 60_000,     // 32 bits
+            3_456_000_000L, 60_000 // 64 bits: a gap of 40 days, and back
+        };
+        long[] times = new long[deltas.length + 1];
+        times[0] = T0;
+        for (int i = 0; i < deltas.length; i++) {
+            times[i + 1] = times[i] + deltas[i];
+        }
+        double[] values = { 21.5, 21.5, 21.5, -21.5, 0.0, -0.0, Double.NaN, Double.NaN, 21.25,
+            Double.MAX_VALUE, Double.MIN_VALUE, Double.NEGATIVE_INFINITY, 1e-300 };
+
+        assertRoundTrip(times, values, 0, times.length);
+        // A slice, as blocks of a day are encoded
+        assertRoundTrip(times, values, 3, 9);
+    }
+
+    @Test
+    void aRegularConstantSeriesTakesTwoBitsPerReading() {
+        int count = 1000;
+        long[] times = new long[count];
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = T0 + i * 60_000L;
+            values[i] = 19.75;
+        }
+        // 128 bits for the first pair, 5 + 32 for the first interval (a change from 0), then '0' and '0'
+        assertEquals((128 + 37 + 1 + (count - 2) * 2 + 7) / 8, GorillaCodec.encode(times, values, 0, count).length);
+        assertRoundTrip(times, values, 0, count);
+    }
+
+    @Test
+    void emptyAndSingleReadingRangesRoundTrip() {
+        long[] times = { T0, T0 + 1 };
+        double[] values = { Double.NaN, 1 };
+        assertEquals(0, GorillaCodec.encode(times, values, 1, 1).length);
+        assertRoundTrip(times, values, 1, 1);
+        assertRoundTrip(times, values, 0, 1);
+    }
+
+    /** Decodes from behind a prefix, like the payload of a block in a mapped segment. */
+    private static void assertRoundTrip(long[] times, double[] values, int from, int to) {
+        byte[] encoded = GorillaCodec.encode(times, values, from, to);
+        ByteBuffer in = ByteBuffer.allocate(encoded.length + 3).position(3).put(encoded).position(3);
+
+        ColumnarSeries decoded = new ColumnarSeries();
+        GorillaCodec.decode(in, to - from, decoded);
+        assertEquals(to - from, decoded.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            assertEquals(times[from + i], decoded.timeAt(i), "time " + i);
+            assertEquals(Double.doubleToRawLongBits(values[from + i]), Double.doubleToRawLongBits(decoded.valueAt(i)),
+                "value " + i);
+        }
+    }
+}